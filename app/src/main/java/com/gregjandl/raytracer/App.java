@@ -84,6 +84,14 @@ public class App {
     scene.addLight(new PointLight(new Point(-10, 10, -10)));
   }
 
+  public Scene getScene() {
+    return scene;
+  }
+
+  public Camera getCamera() {
+    return camera;
+  }
+
   public BufferedImage render() {
     return camera.render(scene);
   }
@@ -0,0 +1,77 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.rtlib.Camera;
+import com.gregjandl.raytracer.rtlib.CheckerPattern;
+import com.gregjandl.raytracer.rtlib.Color;
+import com.gregjandl.raytracer.rtlib.Material;
+import com.gregjandl.raytracer.rtlib.Matrix4x4;
+import com.gregjandl.raytracer.rtlib.Plane;
+import com.gregjandl.raytracer.rtlib.Point;
+import com.gregjandl.raytracer.rtlib.PointLight;
+import com.gregjandl.raytracer.rtlib.Scene;
+import com.gregjandl.raytracer.rtlib.Sphere;
+import com.gregjandl.raytracer.rtlib.Vector3;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering spheres over a checkered floor without antialiasing, with adaptive
+ * antialiasing at the default threshold, and with a threshold of 0, which splits every pixel
+ * that isn't perfectly flat, as uniform supersampling would. The average number of rays per pixel
+ * of each is printed at the end of the trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class AntialiasingBenchmark {
+  @Param({"none", "adaptive", "uniform"})
+  public String sampling;
+
+  private Scene scene;
+  private Camera camera;
+
+  @Setup
+  public void setup() {
+    scene = new Scene();
+    var floor = new CheckerPattern(Color.WHITE, Color.GRAY);
+    scene.addObject(new Plane().setMaterial(new Material.Builder().pattern(floor).build()));
+    for (int z = 0; z < 3; ++z) {
+      for (int x = 0; x < 3; ++x) {
+        var transform = Matrix4x4.scaling(.6f, .6f, .6f).translate(x * 2 - 2, .6f, z * 2);
+        scene.addObject(new Sphere().setTransform(transform));
+      }
+    }
+    scene.addLight(new PointLight(new Point(-10, 10, -10)));
+    camera = new Camera(320, 160, Math.PI / 3);
+    camera.setViewTransform(new Point(0, 4, -6), new Point(0, 0, 2), new Vector3(0, 1, 0));
+    if (!sampling.equals("none")) {
+      camera.setAntialiasingDepth(2);
+      camera.setAntialiasingThreshold(sampling.equals("uniform") ? 0 : .1f);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    System.out.printf("%n%s: %.2f rays per pixel%n", sampling, camera.getRaysPerPixel());
+  }
+
+  @Benchmark
+  public BufferedImage render() {
+    return camera.render(scene);
+  }
+}
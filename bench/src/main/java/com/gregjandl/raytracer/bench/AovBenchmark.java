@@ -0,0 +1,79 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.rtlib.Aov;
+import com.gregjandl.raytracer.rtlib.Camera;
+import com.gregjandl.raytracer.rtlib.CheckerPattern;
+import com.gregjandl.raytracer.rtlib.Color;
+import com.gregjandl.raytracer.rtlib.Material;
+import com.gregjandl.raytracer.rtlib.Matrix4x4;
+import com.gregjandl.raytracer.rtlib.Plane;
+import com.gregjandl.raytracer.rtlib.Point;
+import com.gregjandl.raytracer.rtlib.PointLight;
+import com.gregjandl.raytracer.rtlib.Scene;
+import com.gregjandl.raytracer.rtlib.Sphere;
+import com.gregjandl.raytracer.rtlib.Vector3;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering spheres over a checkered floor with no AOVs, and filling depth, normal,
+ * albedo and object id AOVs from the same render, a pixel at a time and with the wavefront
+ * renderer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class AovBenchmark {
+  @Param({"false", "true"})
+  public boolean filling;
+
+  @Param({"0", "65536"})
+  public int wavefrontSize;
+
+  private Scene scene;
+  private Camera camera;
+  private Aov[] aovs;
+
+  @Setup
+  public void setup() {
+    scene = new Scene();
+    var floor = new CheckerPattern(Color.WHITE, Color.GRAY);
+    scene.addObject(new Plane().setMaterial(new Material.Builder().pattern(floor).build()));
+    for (int z = 0; z < 3; ++z) {
+      for (int x = 0; x < 3; ++x) {
+        var transform = Matrix4x4.scaling(.6f, .6f, .6f).translate(x * 2 - 2, .6f, z * 2);
+        scene.addObject(new Sphere().setTransform(transform));
+      }
+    }
+    scene.addLight(new PointLight(new Point(-10, 10, -10)));
+    camera = new Camera(320, 160, Math.PI / 3);
+    camera.setViewTransform(new Point(0, 4, -6), new Point(0, 0, 2), new Vector3(0, 1, 0));
+    camera.setWavefrontSize(wavefrontSize);
+    aovs = new Aov[0];
+    if (filling) {
+      aovs = new Aov[Aov.Kind.values().length];
+      for (var kind : Aov.Kind.values()) {
+        aovs[kind.ordinal()] = new Aov(kind, 320, 160);
+      }
+    }
+  }
+
+  @Benchmark
+  public BufferedImage render() {
+    return camera.render(scene, aovs);
+  }
+}
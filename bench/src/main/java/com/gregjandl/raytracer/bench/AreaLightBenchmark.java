@@ -0,0 +1,81 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.rtlib.AreaLight;
+import com.gregjandl.raytracer.rtlib.Camera;
+import com.gregjandl.raytracer.rtlib.Color;
+import com.gregjandl.raytracer.rtlib.Material;
+import com.gregjandl.raytracer.rtlib.Matrix4x4;
+import com.gregjandl.raytracer.rtlib.Plane;
+import com.gregjandl.raytracer.rtlib.Point;
+import com.gregjandl.raytracer.rtlib.Scene;
+import com.gregjandl.raytracer.rtlib.Sphere;
+import com.gregjandl.raytracer.rtlib.Vector3;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering spheres over a floor lit by an 8 by 8 area light, with 4 probe samples per
+ * shadow test and with all 64 cells probed, which is the same as sampling every cell of every
+ * test. The average number of shadow rays per test is printed after each iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class AreaLightBenchmark {
+  @Param({"4", "64"})
+  public int probeSamples;
+
+  private Scene scene;
+  private Camera camera;
+
+  @Setup
+  public void setup() {
+    scene = new Scene();
+    scene.addObject(
+        new Plane().setMaterial(new Material.Builder().color(new Color(1, .9f, .9f)).build()));
+    for (int z = 0; z < 3; ++z) {
+      for (int x = 0; x < 3; ++x) {
+        var transform = Matrix4x4.scaling(.6f, .6f, .6f).translate(x * 2 - 2, .6f, z * 2);
+        scene.addObject(new Sphere().setTransform(transform));
+      }
+    }
+    scene.addLight(
+        new AreaLight(
+            new Point(-2, 6, -2),
+            new Vector3(3, 0, 0),
+            8,
+            new Vector3(0, 0, 3),
+            8,
+            Color.WHITE,
+            probeSamples));
+    camera = new Camera(160, 80, Math.PI / 3);
+    camera.setViewTransform(new Point(0, 4, -6), new Point(0, 0, 2), new Vector3(0, 1, 0));
+  }
+
+  @Benchmark
+  public BufferedImage render() {
+    return camera.render(scene);
+  }
+
+  @TearDown(Level.Iteration)
+  public void report() {
+    System.out.printf("%n%.2f shadow rays per area light test%n", scene.getAverageShadowSamples());
+    scene.resetRayCounts();
+  }
+}
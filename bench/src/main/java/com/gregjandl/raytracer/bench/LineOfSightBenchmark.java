@@ -0,0 +1,73 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.rtlib.Matrix4x4;
+import com.gregjandl.raytracer.rtlib.Plane;
+import com.gregjandl.raytracer.rtlib.Scene;
+import com.gregjandl.raytracer.rtlib.Sphere;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput, in queries per second, of {@code Scene.lineOfSight} over a field of
+ * spheres standing on a plane, between random points above the plane.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineOfSightBenchmark {
+  static final int QUERIES = 1 << 16;
+
+  /** The sphere field is {@code spheres} x {@code spheres}. */
+  @Param({"4", "16"})
+  public int spheres;
+
+  private Scene scene;
+  private float[] from;
+  private float[] to;
+
+  @Setup
+  public void setup() {
+    scene = new Scene();
+    scene.addObject(new Plane());
+    for (int z = 0; z < spheres; ++z) {
+      for (int x = 0; x < spheres; ++x) {
+        scene.addObject(
+            new Sphere()
+                .setTransform(Matrix4x4.scaling(.4f, .4f, .4f).translate(x + .5f, .4f, z + .5f)));
+      }
+    }
+    var random = new Random(42);
+    from = new float[QUERIES * 3];
+    to = new float[QUERIES * 3];
+    for (int i = 0; i < QUERIES * 3; i += 3) {
+      from[i] = random.nextFloat() * spheres;
+      from[i + 1] = random.nextFloat() * 2 + .01f;
+      from[i + 2] = random.nextFloat() * spheres;
+      to[i] = random.nextFloat() * spheres;
+      to[i + 1] = random.nextFloat() * 2 + .01f;
+      to[i + 2] = random.nextFloat() * spheres;
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public BitSet lineOfSight() {
+    return scene.lineOfSight(from, to, QUERIES);
+  }
+}
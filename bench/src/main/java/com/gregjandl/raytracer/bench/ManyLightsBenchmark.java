@@ -0,0 +1,77 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.rtlib.Camera;
+import com.gregjandl.raytracer.rtlib.Color;
+import com.gregjandl.raytracer.rtlib.Matrix4x4;
+import com.gregjandl.raytracer.rtlib.Plane;
+import com.gregjandl.raytracer.rtlib.Point;
+import com.gregjandl.raytracer.rtlib.PointLight;
+import com.gregjandl.raytracer.rtlib.Scene;
+import com.gregjandl.raytracer.rtlib.Sphere;
+import com.gregjandl.raytracer.rtlib.Vector3;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering a room-sized scene lit by many small lights which fall off with distance,
+ * considering every light at every point, only those above a threshold of 0.01, and 8 sampled
+ * lights.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ManyLightsBenchmark {
+  @Param({"200", "2000"})
+  public int lightCount;
+
+  @Param({"all", "threshold", "sampled"})
+  public String lights;
+
+  private Scene scene;
+  private Camera camera;
+
+  @Setup
+  public void setup() {
+    scene = new Scene();
+    scene.addObject(new Plane());
+    for (int z = 0; z < 8; ++z) {
+      for (int x = 0; x < 8; ++x) {
+        var transform = Matrix4x4.scaling(.5f, .5f, .5f).translate(x * 2 - 7, .5f, z * 2);
+        scene.addObject(new Sphere().setTransform(transform));
+      }
+    }
+    var random = new Random(1);
+    for (int i = 0; i < lightCount; ++i) {
+      var position = new Point(random.nextFloat() * 20 - 10, 1.5f, random.nextFloat() * 20 - 2);
+      var color = new Color(random.nextFloat(), random.nextFloat(), random.nextFloat());
+      scene.addLight(new PointLight(position, color.multiply(.2f), .5f));
+    }
+    switch (lights) {
+      case "threshold" -> scene.setLightThreshold(.01f);
+      case "sampled" -> scene.setLightSamples(8);
+      default -> {}
+    }
+    camera = new Camera(100, 50, Math.PI / 3);
+    camera.setViewTransform(new Point(0, 6, -8), new Point(0, 0, 8), new Vector3(0, 1, 0));
+  }
+
+  @Benchmark
+  public BufferedImage render() {
+    return camera.render(scene);
+  }
+}
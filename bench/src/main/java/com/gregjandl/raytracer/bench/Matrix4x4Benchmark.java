@@ -0,0 +1,103 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.rtlib.Matrix4x4;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@code Matrix4x4}'s scalar code against its Vector API kernels, through the same public
+ * operations: each scalar benchmark runs in a JVM with the kernels disabled, and each vector one in
+ * a JVM with the {@code jdk.incubator.vector} module added, so both sides allocate the same result
+ * matrices and only the arithmetic differs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class Matrix4x4Benchmark {
+  private static final int POINTS = 1024;
+
+  /** The JVM option disabling the kernels, for the scalar side. */
+  private static final String SCALAR = "-Drtlib.simd.disable=true";
+
+  /** The module the kernels need, added for the vector side. */
+  private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+  private Matrix4x4 affine;
+  private Matrix4x4 general;
+  private float[] src;
+  private float[] dst;
+
+  @Setup
+  public void setup() {
+    affine = Matrix4x4.scaling(2, .5f, 3).rotateOnX(.7).rotateOnY(-1.1).translate(4, -5, 6);
+    var projective =
+        new Matrix4x4(new float[][] {{1, 0, 0, 0}, {0, 1, 0, 0}, {0, 0, 1, 0}, {.25f, 0, -.5f, 1}});
+    general = affine.multiply(projective);
+    src = new float[POINTS * 3];
+    dst = new float[POINTS * 3];
+    for (int i = 0; i < src.length; ++i) {
+      src[i] = i * .37f - 100;
+    }
+  }
+
+  @Benchmark
+  @Fork(value = 1, jvmArgsAppend = SCALAR)
+  public Matrix4x4 multiplyGeneralScalar() {
+    return general.multiply(affine);
+  }
+
+  @Benchmark
+  @Fork(value = 1, jvmArgsAppend = {"--add-modules", VECTOR_MODULE})
+  public Matrix4x4 multiplyGeneralVector() {
+    return general.multiply(affine);
+  }
+
+  @Benchmark
+  @Fork(value = 1, jvmArgsAppend = SCALAR)
+  public Matrix4x4 multiplyAffineScalar() {
+    return affine.multiply(affine);
+  }
+
+  @Benchmark
+  @Fork(value = 1, jvmArgsAppend = {"--add-modules", VECTOR_MODULE})
+  public Matrix4x4 multiplyAffineVector() {
+    return affine.multiply(affine);
+  }
+
+  @Benchmark
+  @Fork(value = 1, jvmArgsAppend = SCALAR)
+  public Matrix4x4 invertGeneralScalar() {
+    return general.invert();
+  }
+
+  @Benchmark
+  @Fork(value = 1, jvmArgsAppend = {"--add-modules", VECTOR_MODULE})
+  public Matrix4x4 invertGeneralVector() {
+    return general.invert();
+  }
+
+  @Benchmark
+  @Fork(value = 1, jvmArgsAppend = SCALAR)
+  public float[] transformPointsScalar() {
+    affine.transformPoints(src, 0, dst, 0, POINTS);
+    return dst;
+  }
+
+  @Benchmark
+  @Fork(value = 1, jvmArgsAppend = {"--add-modules", VECTOR_MODULE})
+  public float[] transformPointsVector() {
+    affine.transformPoints(src, 0, dst, 0, POINTS);
+    return dst;
+  }
+}
@@ -0,0 +1,80 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.App;
+import com.gregjandl.raytracer.rtlib.Camera;
+import com.gregjandl.raytracer.rtlib.Matrix4x4;
+import com.gregjandl.raytracer.rtlib.Plane;
+import com.gregjandl.raytracer.rtlib.Point;
+import com.gregjandl.raytracer.rtlib.PointLight;
+import com.gregjandl.raytracer.rtlib.Scene;
+import com.gregjandl.raytracer.rtlib.Sphere;
+import com.gregjandl.raytracer.rtlib.Vector3;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering with primary rays traced individually (a packet size of 1) and as packets of
+ * 4x4 and 8x8 tiles, for the {@code App} scene and for a large field of spheres.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PacketTracingBenchmark {
+  @Param({"app", "sphereField"})
+  public String scene;
+
+  @Param({"1", "4", "8"})
+  public int packetSize;
+
+  private Scene world;
+  private Camera camera;
+
+  @Setup
+  public void setup() {
+    if (scene.equals("app")) {
+      var app = new App(400, 200);
+      world = app.getScene();
+      camera = app.getCamera();
+    } else {
+      world = sphereField(32);
+      camera = new Camera(400, 200, Math.PI / 3);
+      camera.setViewTransform(new Point(0, 6, -8), new Point(0, 0, 12), new Vector3(0, 1, 0));
+    }
+    camera.setPacketSize(packetSize);
+  }
+
+  /** A {@code size} x {@code size} grid of small spheres on a plane, lit by one light. */
+  static Scene sphereField(int size) {
+    var field = new Scene();
+    field.addLight(new PointLight(new Point(-10, 10, -10)));
+    field.addObject(new Plane());
+    for (int z = 0; z < size; ++z) {
+      for (int x = 0; x < size; ++x) {
+        field.addObject(
+            new Sphere()
+                .setTransform(
+                    Matrix4x4.scaling(.3f, .3f, .3f).translate(x - size / 2f, .3f, z)));
+      }
+    }
+    return field;
+  }
+
+  @Benchmark
+  public BufferedImage render() {
+    return camera.render(world);
+  }
+}
@@ -0,0 +1,83 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.rtlib.Camera;
+import com.gregjandl.raytracer.rtlib.CheckerPattern;
+import com.gregjandl.raytracer.rtlib.Color;
+import com.gregjandl.raytracer.rtlib.Material;
+import com.gregjandl.raytracer.rtlib.Matrix4x4;
+import com.gregjandl.raytracer.rtlib.Pattern;
+import com.gregjandl.raytracer.rtlib.PerlinPattern;
+import com.gregjandl.raytracer.rtlib.Plane;
+import com.gregjandl.raytracer.rtlib.Point;
+import com.gregjandl.raytracer.rtlib.PointLight;
+import com.gregjandl.raytracer.rtlib.RingPattern;
+import com.gregjandl.raytracer.rtlib.Scene;
+import com.gregjandl.raytracer.rtlib.StripePattern;
+import com.gregjandl.raytracer.rtlib.Vector3;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering a plane filling the view, colored by a pattern: transformed stripes, checkers,
+ * Perlin noise, and checkers of noise and rings. Rendering a pixel at a time evaluates the pattern
+ * at one hit at a time, and the wavefront renderer evaluates it in batches, over each block of
+ * hits. The plane with no pattern gives the cost of everything but the pattern.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternBenchmark {
+  @Param({"none", "stripe", "checker", "perlin", "composite"})
+  public String kind;
+
+  @Param({"pixel", "wavefront"})
+  public String renderer;
+
+  private Scene scene;
+  private Camera camera;
+
+  @Setup
+  public void setup() {
+    var rotation = Matrix4x4.rotationOnY(.5);
+    Pattern pattern =
+        switch (kind) {
+          case "none" -> null;
+          case "stripe" -> new StripePattern(Color.WHITE, Color.BLACK).withTransform(rotation);
+          case "checker" -> new CheckerPattern(Color.WHITE, Color.BLACK);
+          case "perlin" -> new PerlinPattern(Color.RED, Color.BLUE);
+          case "composite" -> new CheckerPattern(
+                  new PerlinPattern(Color.RED, Color.BLUE),
+                  new RingPattern(Color.WHITE, Color.GREEN).withTransform(rotation))
+              .withTransform(Matrix4x4.scaling(2, 2, 2));
+          default -> throw new IllegalArgumentException(kind);
+        };
+    scene = new Scene();
+    scene.addLight(new PointLight(new Point(-10, 10, -10)));
+    scene.addObject(new Plane().setMaterial(new Material.Builder().pattern(pattern).build()));
+    // looking straight down, so the plane fills the view
+    camera = new Camera(200, 200, Math.PI / 3);
+    camera.setViewTransform(new Point(0, 5, 0), Point.ORIGIN, new Vector3(0, 0, 1));
+    if (renderer.equals("wavefront")) {
+      camera.setWavefrontSize(1 << 16);
+    }
+  }
+
+  @Benchmark
+  public BufferedImage render() {
+    return camera.render(scene);
+  }
+}
@@ -0,0 +1,70 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.rtlib.Camera;
+import com.gregjandl.raytracer.rtlib.Matrix4x4;
+import com.gregjandl.raytracer.rtlib.Plane;
+import com.gregjandl.raytracer.rtlib.Point;
+import com.gregjandl.raytracer.rtlib.PointLight;
+import com.gregjandl.raytracer.rtlib.Scene;
+import com.gregjandl.raytracer.rtlib.Sphere;
+import com.gregjandl.raytracer.rtlib.Vector3;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering a field of small spheres over a floor, finding primary visibility by tracing
+ * each pixel's ray, by tracing packets, and by rasterizing, for fields of increasing size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class PrimaryVisibilityBenchmark {
+  @Param({"traced", "packets", "rasterized"})
+  public String visibility;
+
+  /** The number of spheres along each side of the square field. */
+  @Param({"4", "16"})
+  public int side;
+
+  private Scene scene;
+  private Camera camera;
+
+  @Setup
+  public void setup() {
+    scene = new Scene();
+    scene.addObject(new Plane());
+    var radius = 2f / side;
+    for (int z = 0; z < side; ++z) {
+      for (int x = 0; x < side; ++x) {
+        var transform =
+            Matrix4x4.scaling(radius, radius, radius)
+                .translate((x * 2 + 1) * 5f / side - 5, radius, (z * 2 + 1) * 5f / side - 2);
+        scene.addObject(new Sphere().setTransform(transform));
+      }
+    }
+    scene.addLight(new PointLight(new Point(-10, 10, -10)));
+    camera = new Camera(320, 160, Math.PI / 3);
+    camera.setViewTransform(new Point(0, 4, -8), new Point(0, 0, 3), new Vector3(0, 1, 0));
+    camera.setPacketSize(visibility.equals("packets") ? 4 : 1);
+    camera.setRasterizing(visibility.equals("rasterized"));
+  }
+
+  @Benchmark
+  public BufferedImage render() {
+    return camera.render(scene);
+  }
+}
@@ -0,0 +1,61 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.rtlib.Camera;
+import com.gregjandl.raytracer.rtlib.Point;
+import com.gregjandl.raytracer.rtlib.PointLight;
+import com.gregjandl.raytracer.rtlib.Scene;
+import com.gregjandl.raytracer.rtlib.Vector3;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the wavefront renderer, with and without sorting rays between steps, on a 400x200
+ * rendering of a field of small spheres on a plane lit by 1 light and by 8. Each light adds a pass
+ * of shadow rays, each sorted by direction octant and origin, so the more lights, the more the
+ * sorting has to pay for itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RaySortBenchmark {
+  @Param({"1", "8"})
+  public int lights;
+
+  @Param({"false", "true"})
+  public boolean sorted;
+
+  private Scene scene;
+  private Camera camera;
+
+  @Setup
+  public void setup() {
+    // the field comes with a light at (-10, 10, -10)
+    scene = PacketTracingBenchmark.sphereField(32);
+    for (int i = 1; i < lights; ++i) {
+      scene.addLight(new PointLight(new Point(i * 20f / (lights - 1) - 10, 10, -10)));
+    }
+    camera = new Camera(400, 200, Math.PI / 3);
+    camera.setViewTransform(new Point(0, 6, -8), new Point(0, 0, 12), new Vector3(0, 1, 0));
+    camera.setWavefrontSize(1 << 16);
+    camera.setSortingRays(sorted);
+  }
+
+  @Benchmark
+  public BufferedImage render() {
+    return camera.render(scene);
+  }
+}
@@ -0,0 +1,102 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.rtlib.Camera;
+import com.gregjandl.raytracer.rtlib.Color;
+import com.gregjandl.raytracer.rtlib.Material;
+import com.gregjandl.raytracer.rtlib.Matrix4x4;
+import com.gregjandl.raytracer.rtlib.Plane;
+import com.gregjandl.raytracer.rtlib.Point;
+import com.gregjandl.raytracer.rtlib.PointLight;
+import com.gregjandl.raytracer.rtlib.Scene;
+import com.gregjandl.raytracer.rtlib.Sphere;
+import com.gregjandl.raytracer.rtlib.Vector3;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering a field of glass and mirror spheres over a mirrored floor, with reflected
+ * and refracted rays limited by depth alone and by the default contribution threshold too. The
+ * number of rays skipped per rendering is printed after each iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class SecondaryRaysBenchmark {
+  @Param({"0", "default"})
+  public String threshold;
+
+  @Param({"5", "10"})
+  public int maxDepth;
+
+  private Scene scene;
+  private Camera camera;
+  private long renders;
+
+  @Setup
+  public void setup() {
+    scene = new Scene();
+    scene.addObject(
+        new Plane()
+            .setMaterial(
+                new Material.Builder()
+                    .color(new Color(.3f, .3f, .35f))
+                    .reflective(.3f)
+                    .specular(0)
+                    .build()));
+    var glass =
+        new Material.Builder()
+            .color(new Color(.05f, .05f, .05f))
+            .diffuse(.1f)
+            .reflective(.9f)
+            .transparency(.9f)
+            .refractiveIndex(1.5f)
+            .build();
+    var mirror = new Material.Builder().color(new Color(.2f, .2f, .2f)).reflective(.7f).build();
+    for (int z = 0; z < 4; ++z) {
+      for (int x = 0; x < 4; ++x) {
+        var transform = Matrix4x4.scaling(.8f, .8f, .8f).translate(x * 2 - 3, .8f, z * 2);
+        var material = (x + z) % 2 == 0 ? glass : mirror;
+        scene.addObject(new Sphere().setTransform(transform).setMaterial(material));
+      }
+    }
+    scene.addLight(new PointLight(new Point(-10, 10, -10)));
+    scene.setMaxDepth(maxDepth);
+    if (threshold.equals("0")) {
+      scene.setContributionThreshold(0);
+    }
+    camera = new Camera(160, 80, Math.PI / 3);
+    camera.setViewTransform(new Point(0, 4, -6), new Point(0, 0, 4), new Vector3(0, 1, 0));
+  }
+
+  @Benchmark
+  public BufferedImage render() {
+    ++renders;
+    return camera.render(scene);
+  }
+
+  @TearDown(Level.Iteration)
+  public void report() {
+    System.out.printf(
+        "%n%d rays culled, %d cut off by depth, per rendering%n",
+        scene.getCulledRayCount() / renders,
+        scene.getDepthLimitedRayCount() / renders);
+    scene.resetRayCounts();
+    renders = 0;
+  }
+}
@@ -0,0 +1,78 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.rtlib.Camera;
+import com.gregjandl.raytracer.rtlib.Color;
+import com.gregjandl.raytracer.rtlib.Matrix4x4;
+import com.gregjandl.raytracer.rtlib.Plane;
+import com.gregjandl.raytracer.rtlib.Point;
+import com.gregjandl.raytracer.rtlib.PointLight;
+import com.gregjandl.raytracer.rtlib.Scene;
+import com.gregjandl.raytracer.rtlib.Sphere;
+import com.gregjandl.raytracer.rtlib.Vector3;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering a field of spheres lit by four lights with shadows found by tracing shadow
+ * rays (a shadow map resolution of 0) and looked up in shadow maps of each resolution, both with
+ * the maps already built and with an object moved, so that they're rebuilt, before each rendering.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class ShadowMapBenchmark {
+  @Param({"0", "256", "1024"})
+  public int resolution;
+
+  private Scene scene;
+  private Sphere moving;
+  private Camera camera;
+  private float offset;
+
+  @Setup
+  public void setup() {
+    scene = new Scene();
+    scene.addObject(new Plane());
+    for (int z = 0; z < 8; ++z) {
+      for (int x = 0; x < 8; ++x) {
+        var transform = Matrix4x4.scaling(.5f, .5f, .5f).translate(x * 2 - 7, .5f, z * 2);
+        scene.addObject(new Sphere().setTransform(transform));
+      }
+    }
+    moving = new Sphere();
+    scene.addObject(moving);
+    scene.addLight(new PointLight(new Point(-10, 10, -10), new Color(.5f, .5f, .5f)));
+    scene.addLight(new PointLight(new Point(10, 8, -6), new Color(.3f, .3f, .4f)));
+    scene.addLight(new PointLight(new Point(0, 6, 20), new Color(.2f, .3f, .2f)));
+    scene.addLight(new PointLight(new Point(0, 3, 7), new Color(.2f, .2f, .2f)));
+    scene.setShadowMapResolution(resolution);
+    camera = new Camera(200, 100, Math.PI / 3);
+    camera.setViewTransform(new Point(0, 6, -8), new Point(0, 0, 8), new Vector3(0, 1, 0));
+  }
+
+  @Benchmark
+  public BufferedImage render() {
+    return camera.render(scene);
+  }
+
+  @Benchmark
+  public BufferedImage renderAfterMove() {
+    offset = (offset + .1f) % 4;
+    moving.setTransform(Matrix4x4.scaling(.3f, .3f, .3f).translate(offset, 2, 1));
+    return camera.render(scene);
+  }
+}
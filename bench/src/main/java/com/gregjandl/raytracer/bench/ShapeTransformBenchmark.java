@@ -0,0 +1,78 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.rtlib.Matrix4x4;
+import com.gregjandl.raytracer.rtlib.Point;
+import com.gregjandl.raytracer.rtlib.Ray;
+import com.gregjandl.raytracer.rtlib.Sphere;
+import com.gregjandl.raytracer.rtlib.Vector3;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures sphere intersection and normal calculation for each class of shape transform.
+ *
+ * <p>The {@code perCallInvert} benchmarks reproduce the cost of the original implementation, which
+ * inverted the transform and multiplied the ray by it on every call, for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShapeTransformBenchmark {
+  @Param({"identity", "translation", "uniformScale", "general"})
+  public String transformClass;
+
+  private Sphere sphere;
+  private Sphere untransformed;
+  private Ray ray;
+  private Point point;
+
+  @Setup
+  public void setup() {
+    var t =
+        switch (transformClass) {
+          case "identity" -> Matrix4x4.identity();
+          case "translation" -> Matrix4x4.translation(.5f, 1, -2);
+          case "uniformScale" -> Matrix4x4.scaling(2, 2, 2).translate(.5f, 1, -2);
+          default -> Matrix4x4.scaling(2, 1, 2).rotateOnY(.3).translate(.5f, 1, -2);
+        };
+    sphere = new Sphere().setTransform(t);
+    untransformed = new Sphere();
+    ray = new Ray(new Point(.5f, 1.2f, -10), new Vector3(0, 0, 1));
+    point = t.multiply(new Point(0, 0, -1));
+  }
+
+  @Benchmark
+  public Object intersects() {
+    return sphere.intersects(ray);
+  }
+
+  @Benchmark
+  public Object normalAt() {
+    return sphere.normalAt(point);
+  }
+
+  @Benchmark
+  public Object perCallInvertIntersects() {
+    return untransformed.intersects(ray.transform(sphere.getTransform().invert()));
+  }
+
+  @Benchmark
+  public Object perCallInvertNormalAt() {
+    var inverse = sphere.getTransform().invert();
+    var localNormal = untransformed.normalAt(inverse.multiply(point));
+    return inverse.transpose().multiply(localNormal).normalize();
+  }
+}
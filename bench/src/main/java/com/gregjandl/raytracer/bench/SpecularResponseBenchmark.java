@@ -0,0 +1,62 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.rtlib.Camera;
+import com.gregjandl.raytracer.rtlib.Material;
+import com.gregjandl.raytracer.rtlib.Point;
+import com.gregjandl.raytracer.rtlib.PointLight;
+import com.gregjandl.raytracer.rtlib.Scene;
+import com.gregjandl.raytracer.rtlib.Sphere;
+import com.gregjandl.raytracer.rtlib.Vector3;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering a sphere filling the view, lit by 8 point lights in front of it, at a low and
+ * a high shininess. Each hit computes a specular response per light, which is looked up in the
+ * material's table, so the cost shouldn't depend on the shininess.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpecularResponseBenchmark {
+  private static final int LIGHTS = 8;
+
+  @Param({"10", "200"})
+  public float shininess;
+
+  private Scene scene;
+  private Camera camera;
+
+  @Setup
+  public void setup() {
+    scene = new Scene();
+    for (int i = 0; i < LIGHTS; ++i) {
+      var angle = i * 2 * Math.PI / LIGHTS;
+      var x = (float) (10 * Math.cos(angle));
+      var y = (float) (10 * Math.sin(angle));
+      scene.addLight(new PointLight(new Point(x, y, -10)));
+    }
+    scene.addObject(new Sphere().setMaterial(new Material.Builder().shininess(shininess).build()));
+    camera = new Camera(200, 200, Math.PI / 3);
+    camera.setViewTransform(new Point(0, 0, -1.8f), Point.ORIGIN, new Vector3(0, 1, 0));
+  }
+
+  @Benchmark
+  public BufferedImage render() {
+    return camera.render(scene);
+  }
+}
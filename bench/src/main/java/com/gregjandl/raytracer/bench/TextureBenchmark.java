@@ -0,0 +1,102 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.rtlib.Camera;
+import com.gregjandl.raytracer.rtlib.Material;
+import com.gregjandl.raytracer.rtlib.Matrix4x4;
+import com.gregjandl.raytracer.rtlib.Plane;
+import com.gregjandl.raytracer.rtlib.Point;
+import com.gregjandl.raytracer.rtlib.PointLight;
+import com.gregjandl.raytracer.rtlib.Scene;
+import com.gregjandl.raytracer.rtlib.Sphere;
+import com.gregjandl.raytracer.rtlib.Texture;
+import com.gregjandl.raytracer.rtlib.TextureCache;
+import com.gregjandl.raytracer.rtlib.Vector3;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering a floor and spheres textured with a 2048 by 2048 texture, whose full
+ * resolution level alone is 16 MiB, through texture caches of 64 KiB, 256 KiB and 4 MiB. Mip
+ * level selection keeps the working set to a couple of hundred tiles. The cache's hit rate and
+ * the number of tiles read are printed after each iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class TextureBenchmark {
+  private static final int SIZE = 2048;
+
+  @Param({"64", "256", "4096"})
+  public int budgetKiB;
+
+  private Path file;
+  private TextureCache cache;
+  private Texture texture;
+  private Scene scene;
+  private Camera camera;
+
+  @Setup
+  public void setup() throws IOException {
+    var random = new Random(1);
+    var image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < SIZE; ++y) {
+      for (int x = 0; x < SIZE; ++x) {
+        image.setRGB(x, y, random.nextInt(1 << 24));
+      }
+    }
+    file = Files.createTempFile("texture", ".tex");
+    Texture.write(image, file);
+    cache = new TextureCache((long) budgetKiB << 10);
+    texture = Texture.open(file, cache);
+
+    scene = new Scene();
+    var material = new Material.Builder().texture(texture).build();
+    scene.addObject(
+        new Plane().setTransform(Matrix4x4.scaling(8, 8, 8)).setMaterial(material));
+    for (int x = 0; x < 3; ++x) {
+      var transform = Matrix4x4.translation(x * 2.5f - 2.5f, 1, 2);
+      scene.addObject(new Sphere().setTransform(transform).setMaterial(material));
+    }
+    scene.addLight(new PointLight(new Point(-10, 10, -10)));
+    camera = new Camera(640, 320, Math.PI / 3);
+    camera.setViewTransform(new Point(0, 2, -5), new Point(0, 1, 2), new Vector3(0, 1, 0));
+  }
+
+  @Benchmark
+  public BufferedImage render() {
+    return camera.render(scene);
+  }
+
+  @TearDown(Level.Iteration)
+  public void report() {
+    System.out.printf(
+        "%n%.1f%% tile hit rate, %d tiles read%n", 100 * cache.getHitRate(), cache.getMissCount());
+    cache.resetCounts();
+  }
+
+  @TearDown
+  public void close() throws IOException {
+    texture.close();
+    Files.delete(file);
+  }
+}
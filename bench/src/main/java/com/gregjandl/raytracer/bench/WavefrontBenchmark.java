@@ -0,0 +1,63 @@
+package com.gregjandl.raytracer.bench;
+
+import com.gregjandl.raytracer.App;
+import com.gregjandl.raytracer.rtlib.Camera;
+import com.gregjandl.raytracer.rtlib.Point;
+import com.gregjandl.raytracer.rtlib.Scene;
+import com.gregjandl.raytracer.rtlib.Vector3;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rendering a pixel at a time and with the wavefront renderer, with and without sorting
+ * rays between steps, for the {@code App} scene and for a large field of spheres.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WavefrontBenchmark {
+  @Param({"app", "sphereField"})
+  public String scene;
+
+  @Param({"pixel", "wavefront", "wavefrontSorted"})
+  public String renderer;
+
+  private Scene world;
+  private Camera camera;
+
+  @Setup
+  public void setup() {
+    if (scene.equals("app")) {
+      var app = new App(400, 200);
+      world = app.getScene();
+      camera = app.getCamera();
+    } else {
+      world = PacketTracingBenchmark.sphereField(32);
+      camera = new Camera(400, 200, Math.PI / 3);
+      camera.setViewTransform(new Point(0, 6, -8), new Point(0, 0, 12), new Vector3(0, 1, 0));
+    }
+    if (!renderer.equals("pixel")) {
+      camera.setWavefrontSize(1 << 16);
+      camera.setSortingRays(renderer.equals("wavefrontSorted"));
+    }
+  }
+
+  @Benchmark
+  public BufferedImage render() {
+    return camera.render(world);
+  }
+}
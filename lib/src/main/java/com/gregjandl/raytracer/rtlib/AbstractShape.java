@@ -1,16 +1,44 @@
 package com.gregjandl.raytracer.rtlib;
 
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class AbstractShape<T extends AbstractShape<T>> implements Shape {
+  /**
+   * The number of times any shape has been given a new transform or material, so that a scene can
+   * tell whether what it derived from its objects may be out of date without checking each one.
+   */
+  private static final AtomicLong modifications = new AtomicLong();
+
   private final T thisObj;
   protected Matrix4x4 transform = Matrix4x4.identity();
   protected Material material = new Material.Builder().build();
 
+  /*
+   * Derived from the transform by setTransform(), so the work of inverting it is done once, and
+   * transforms which are only a translation and/or uniform scaling can skip matrix math entirely.
+   */
+  private TransformClass transformClass = TransformClass.IDENTITY;
+  private Matrix4x4 inverse = transform;
+  private Matrix4x4 inverseTranspose = transform;
+  private float tx;
+  private float ty;
+  private float tz;
+  private float invScale = 1;
+  private float boundingScale = 1;
+
   public AbstractShape() {
     thisObj = getThis();
   }
 
+  /**
+   * Return the number of times any {@code AbstractShape} has been given a new transform or
+   * material, which changes after each.
+   */
+  static long modificationCount() {
+    return modifications.get();
+  }
+
   protected abstract T getThis();
 
   /**
@@ -37,9 +65,34 @@ public abstract class AbstractShape<T extends AbstractShape<T>> implements Shape
   public T setTransform(Matrix4x4 t) {
     Objects.requireNonNull(t);
     transform = t;
+    transformClass = TransformClass.of(t);
+    tx = t.get(0, 3);
+    ty = t.get(1, 3);
+    tz = t.get(2, 3);
+    invScale = 1 / t.get(0, 0);
+    boundingScale = largestScale(t);
+    if (transformClass == TransformClass.GENERAL && t.isInvertible()) {
+      inverse = t.invert();
+      inverseTranspose = inverse.transpose();
+    } else {
+      // singular transforms fail on use, via invert(), as they always have
+      inverse = null;
+      inverseTranspose = null;
+    }
+    modifications.incrementAndGet();
     return thisObj;
   }
 
+  /**
+   * Return the class of this shape's transform, which determines how rays and points are
+   * transformed into object space.
+   *
+   * @return the transform class
+   */
+  TransformClass getTransformClass() {
+    return transformClass;
+  }
+
   /**
    * Return this {@code AbstractShape}'s {@code Material}.
    *
@@ -60,6 +113,7 @@ public abstract class AbstractShape<T extends AbstractShape<T>> implements Shape
   public T setMaterial(Material m) {
     Objects.requireNonNull(m);
     material = m;
+    modifications.incrementAndGet();
     return thisObj;
   }
 
@@ -131,7 +185,14 @@ public abstract class AbstractShape<T extends AbstractShape<T>> implements Shape
    */
   @Override
   public IntersectionList intersects(Ray r, IntersectionList xs) {
-    var localRay = r.transform(transform.invert());
+    var localRay =
+        switch (transformClass) {
+          case IDENTITY -> r;
+          case TRANSLATION -> new Ray(toLocal(r.getOrigin()), r.getDirection());
+          case UNIFORM_SCALE -> new Ray(
+              toLocal(r.getOrigin()), r.getDirection().multiply(invScale));
+          case GENERAL -> r.transform(getInverse());
+        };
     return localIntersect(localRay, xs);
   }
 
@@ -165,9 +226,360 @@ public abstract class AbstractShape<T extends AbstractShape<T>> implements Shape
   @Override
   public Vector3 normalAt(Point worldPoint) {
     Objects.requireNonNull(worldPoint);
-    var localPoint = transform.invert().multiply(worldPoint);
-    var localNormal = localNormalAt(localPoint);
-    var worldNormal = transform.invert().transpose().multiply(localNormal);
-    return worldNormal.normalize();
+    return toWorldNormal(localNormalAt(toLocal(worldPoint)));
+  }
+
+  /**
+   * Return the normal at the specified point on the indicated sub-primitive of this shape.
+   *
+   * <p>Shapes made up of sub-primitives override this to use the index; by default it is ignored.
+   *
+   * @param localPoint Point on shape for which to calculate the normal
+   * @param index index of the sub-primitive on which the point lies
+   * @return the normal
+   */
+  protected Vector3 localNormalAt(Point localPoint, int index) {
+    return localNormalAt(localPoint);
+  }
+
+  /**
+   * Return the normal at the specified point on the indicated sub-primitive of this shape.
+   *
+   * @param worldPoint Point on shape for which to calculate the normal
+   * @param index index of the sub-primitive on which the point lies
+   * @return the normal
+   */
+  @Override
+  public Vector3 normalAt(Point worldPoint, int index) {
+    Objects.requireNonNull(worldPoint);
+    return toWorldNormal(localNormalAt(toLocal(worldPoint), index));
+  }
+
+  /**
+   * Intersect the current ray of the specified {@code Tracer} with this shape, offering any hits
+   * to the tracer. Unlike {@link #intersects(Ray, IntersectionList)}, this doesn't allocate, as
+   * long as the shape overrides {@link #localIntersect(Tracer)}.
+   *
+   * @param tr the tracer whose ray is to be intersected
+   */
+  final void intersect(Tracer tr) {
+    var o = tr.localOrigin.set(tr.origin);
+    var d = tr.localDirection.set(tr.direction);
+    switch (transformClass) {
+      case IDENTITY -> {}
+      case TRANSLATION -> o.subtract(tx, ty, tz);
+      case UNIFORM_SCALE -> {
+        o.subtract(tx, ty, tz).multiply(invScale);
+        d.multiply(invScale);
+      }
+      case GENERAL -> {
+        var inv = getInverse();
+        o.transformPoint(inv);
+        d.transformVector(inv);
+      }
+    }
+    localIntersect(tr);
+  }
+
+  /**
+   * Intersect the specified {@code Tracer}'s ray, already transformed into object space ({@code
+   * localOrigin} and {@code localDirection}), with this shape, calling {@link Tracer#offer(float,
+   * Shape, int)} for each intersection.
+   *
+   * <p>The default implementation allocates, by way of {@link #localIntersect(Ray,
+   * IntersectionList)}; shapes should override it with primitive or mutable math.
+   *
+   * @param tr the tracer whose ray is to be intersected
+   */
+  void localIntersect(Tracer tr) {
+    var localRay = new Ray(tr.localOrigin.toPoint(), tr.localDirection.toVector3());
+    for (var x : localIntersect(localRay, new IntersectionList())) {
+      tr.offer(x.getT(), this, x.getIndex());
+    }
+  }
+
+  /**
+   * Intersect every ray of the specified packet with this shape, offering any hits to the packet.
+   * The whole packet is skipped if it can't reach this shape's bounding sphere.
+   *
+   * @param p the packet whose rays are to be intersected
+   * @param tr the tracer of the thread tracing the packet, for scratch space
+   */
+  final void intersect(RayPacket p, Tracer tr) {
+    var radius = worldBoundingSphere(tr.scratch);
+    if (radius < Float.POSITIVE_INFINITY && p.misses(tr.scratch, radius)) {
+      return;
+    }
+    var o = p.localOrigin.set(p.origin);
+    switch (transformClass) {
+      case IDENTITY -> {
+        System.arraycopy(p.dx, 0, p.ldx, 0, p.size);
+        System.arraycopy(p.dy, 0, p.ldy, 0, p.size);
+        System.arraycopy(p.dz, 0, p.ldz, 0, p.size);
+      }
+      case TRANSLATION -> {
+        o.subtract(tx, ty, tz);
+        System.arraycopy(p.dx, 0, p.ldx, 0, p.size);
+        System.arraycopy(p.dy, 0, p.ldy, 0, p.size);
+        System.arraycopy(p.dz, 0, p.ldz, 0, p.size);
+      }
+      case UNIFORM_SCALE -> {
+        o.subtract(tx, ty, tz).multiply(invScale);
+        for (int i = 0; i < p.size; ++i) {
+          p.ldx[i] = p.dx[i] * invScale;
+          p.ldy[i] = p.dy[i] * invScale;
+          p.ldz[i] = p.dz[i] * invScale;
+        }
+      }
+      case GENERAL -> {
+        var inv = getInverse();
+        o.transformPoint(inv);
+        var m = inv.m();
+        for (int i = 0; i < p.size; ++i) {
+          p.ldx[i] = m[0] * p.dx[i] + m[1] * p.dy[i] + m[2] * p.dz[i];
+          p.ldy[i] = m[4] * p.dx[i] + m[5] * p.dy[i] + m[6] * p.dz[i];
+          p.ldz[i] = m[8] * p.dx[i] + m[9] * p.dy[i] + m[10] * p.dz[i];
+        }
+      }
+    }
+    localIntersect(p, tr);
+  }
+
+  /**
+   * Intersect every ray of the specified packet, already transformed into object space ({@code
+   * localOrigin} and {@code ldx}, etc.), with this shape, calling {@link RayPacket#offer(int,
+   * float, Shape, int)} for each intersection.
+   *
+   * <p>The default implementation intersects the rays one at a time, with {@link
+   * #localIntersect(Tracer)}; shapes should override it with a loop over the packet's lanes.
+   *
+   * @param p the packet whose rays are to be intersected
+   * @param tr the tracer of the thread tracing the packet
+   */
+  void localIntersect(RayPacket p, Tracer tr) {
+    tr.localOrigin.set(p.localOrigin);
+    for (int i = 0; i < p.size; ++i) {
+      tr.localDirection.set(p.ldx[i], p.ldy[i], p.ldz[i]);
+      tr.t = p.t[i];
+      tr.object = null;
+      localIntersect(tr);
+      if (tr.object != null) {
+        p.offer(i, tr.t, this, tr.index);
+      }
+    }
+  }
+
+  /**
+   * Compute a sphere, in object space, which bounds this shape.
+   *
+   * <p>The default implementation returns an infinite radius, meaning the shape is unbounded (or
+   * its bounds are unknown), so it is never skipped.
+   *
+   * @param center receives the center of the sphere
+   * @return the radius of the sphere
+   */
+  float localBoundingSphere(MutableVector3 center) {
+    return Float.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Compute a sphere, in world space, which bounds this shape: its {@link
+   * #localBoundingSphere(MutableVector3) object space bounding sphere}, transformed.
+   *
+   * @param center receives the center of the sphere
+   * @return the radius of the sphere, which is infinite if the shape is unbounded
+   */
+  final float worldBoundingSphere(MutableVector3 center) {
+    var radius = localBoundingSphere(center);
+    if (radius == Float.POSITIVE_INFINITY) {
+      return radius;
+    }
+    center.transformPoint(transform);
+    return radius * boundingScale;
+  }
+
+  /**
+   * Return the most the specified transform stretches any vector: the largest singular value of
+   * its upper left 3 x 3 part, rounded up a little. A sphere scaled by this bounds the transformed
+   * sphere, whatever mix of rotation, scaling and shearing the transform is.
+   */
+  static float largestScale(Matrix4x4 t) {
+    // the largest eigenvalue of (M^T)M, by the trigonometric solution of its characteristic cubic
+    var a = new double[3][3];
+    for (int i = 0; i < 3; ++i) {
+      for (int j = 0; j < 3; ++j) {
+        for (int k = 0; k < 3; ++k) {
+          a[i][j] += (double) t.get(k, i) * t.get(k, j);
+        }
+      }
+    }
+    var p1 = a[0][1] * a[0][1] + a[0][2] * a[0][2] + a[1][2] * a[1][2];
+    var q = (a[0][0] + a[1][1] + a[2][2]) / 3;
+    var d0 = a[0][0] - q;
+    var d1 = a[1][1] - q;
+    var d2 = a[2][2] - q;
+    var p2 = d0 * d0 + d1 * d1 + d2 * d2 + 2 * p1;
+    var largest = q;
+    if (p2 > 0) {
+      var p = Math.sqrt(p2 / 6);
+      // half the determinant of (A - qI) / p
+      var det =
+          d0 * (d1 * d2 - a[1][2] * a[1][2])
+              - a[0][1] * (a[0][1] * d2 - a[1][2] * a[0][2])
+              + a[0][2] * (a[0][1] * a[1][2] - d1 * a[0][2]);
+      var r = Math.max(-1, Math.min(1, det / (2 * p * p * p)));
+      largest = q + 2 * p * Math.cos(Math.acos(r) / 3);
+    }
+    return (float) (Math.sqrt(Math.max(0, largest)) * (1 + 1e-5));
+  }
+
+  /**
+   * Compute the world space normal at the specified {@code Tracer}'s hit point ({@code point}) on
+   * its hit sub-primitive ({@code index}), leaving it, normalized, in {@code normal}. The
+   * equivalent of {@link #normalAt(Point, int)}, without allocating.
+   *
+   * @param tr the tracer whose hit is on this shape
+   */
+  final void normalAt(Tracer tr) {
+    var p = tr.localPoint.set(tr.point);
+    switch (transformClass) {
+      case IDENTITY -> {}
+      case TRANSLATION -> p.subtract(tx, ty, tz);
+      case UNIFORM_SCALE -> p.subtract(tx, ty, tz).multiply(invScale);
+      case GENERAL -> p.transformPoint(getInverse());
+    }
+    localNormalAt(tr);
+    var n = tr.normal;
+    if (transformClass == TransformClass.GENERAL) {
+      n.transformVector(getInverseTranspose());
+    } else if (transformClass == TransformClass.UNIFORM_SCALE && invScale < 0) {
+      n.negate();
+    }
+    n.normalize();
+  }
+
+  /**
+   * Compute the object space normal at the specified {@code Tracer}'s object space hit point
+   * ({@code localPoint}) on its hit sub-primitive ({@code index}), leaving it in {@code normal}. It
+   * needn't be normalized.
+   *
+   * <p>The default implementation allocates, by way of {@link #localNormalAt(Point, int)}; shapes
+   * should override it with primitive or mutable math.
+   *
+   * @param tr the tracer whose hit is on this shape
+   */
+  void localNormalAt(Tracer tr) {
+    tr.normal.set(localNormalAt(tr.localPoint.toPoint(), tr.index));
+  }
+
+  /**
+   * Compute the texture coordinates at the specified {@code Tracer}'s object space hit point
+   * ({@code localPoint}), leaving them in {@code u} and {@code v}, and return how fast they change
+   * there, per unit of distance in object space.
+   *
+   * <p>The default implementation maps the x-z plane onto the texture, repeating every unit.
+   *
+   * @param tr the tracer whose hit is on this shape
+   * @return the change in texture coordinates per unit of distance
+   */
+  float textureCoordinates(Tracer tr) {
+    var p = tr.localPoint;
+    tr.u = p.x - (float) Math.floor(p.x);
+    tr.v = p.z - (float) Math.floor(p.z);
+    return 1;
+  }
+
+  /**
+   * Return the length in object space of a unit of distance in world space along the specified
+   * {@code Tracer}'s ray.
+   *
+   * @param tr the tracer whose hit is on this shape
+   */
+  final float localScale(Tracer tr) {
+    return switch (transformClass) {
+      case IDENTITY, TRANSLATION -> 1;
+      case UNIFORM_SCALE -> Math.abs(invScale);
+      case GENERAL -> {
+        var d = tr.scratch.set(tr.direction).transformVector(getInverse());
+        yield d.magnitude() / tr.direction.magnitude();
+      }
+    };
+  }
+
+  private Point toLocal(Point p) {
+    return switch (transformClass) {
+      case IDENTITY -> p;
+      case TRANSLATION -> new Point(p.getX() - tx, p.getY() - ty, p.getZ() - tz);
+      case UNIFORM_SCALE -> new Point(
+          (p.getX() - tx) * invScale, (p.getY() - ty) * invScale, (p.getZ() - tz) * invScale);
+      case GENERAL -> getInverse().multiply(p);
+    };
+  }
+
+  private Vector3 toWorldNormal(Vector3 localNormal) {
+    return switch (transformClass) {
+      case IDENTITY, TRANSLATION -> localNormal.normalize();
+      // the inverse transpose of a uniform scaling is a uniform scaling by 1 / s, which only
+      // changes the normal's direction when s is negative
+      case UNIFORM_SCALE -> invScale < 0
+          ? localNormal.negate().normalize()
+          : localNormal.normalize();
+      case GENERAL -> getInverseTranspose().multiply(localNormal).normalize();
+    };
+  }
+
+  private Matrix4x4 getInverse() {
+    return inverse != null ? inverse : transform.invert();
+  }
+
+  private Matrix4x4 getInverseTranspose() {
+    return inverseTranspose != null ? inverseTranspose : transform.invert().transpose();
+  }
+
+  /**
+   * Classes of transformation matrix, from cheapest to most expensive to apply. Each class also
+   * covers the ones before it, but a matrix is always classified as the cheapest possible class.
+   */
+  enum TransformClass {
+    /** No transformation at all. */
+    IDENTITY,
+    /** Translation only. */
+    TRANSLATION,
+    /** Uniform scaling (by the same, non-zero, factor in each dimension) then translation. */
+    UNIFORM_SCALE,
+    /** Anything else, such as rotation, shearing, or non-uniform scaling. */
+    GENERAL;
+
+    /**
+     * Classify the specified matrix. Only exact zeros and ones are recognized, so a matrix which
+     * is only approximately a translation or scaling is classified as {@code GENERAL}.
+     *
+     * @param m the matrix to classify
+     * @return the cheapest class which can represent {@code m}
+     */
+    static TransformClass of(Matrix4x4 m) {
+      if (m.get(0, 1) != 0
+          || m.get(0, 2) != 0
+          || m.get(1, 0) != 0
+          || m.get(1, 2) != 0
+          || m.get(2, 0) != 0
+          || m.get(2, 1) != 0) {
+        return GENERAL;
+      }
+      if (m.get(3, 0) != 0 || m.get(3, 1) != 0 || m.get(3, 2) != 0 || m.get(3, 3) != 1) {
+        return GENERAL;
+      }
+      var s = m.get(0, 0);
+      if (s == 0 || m.get(1, 1) != s || m.get(2, 2) != s) {
+        return GENERAL;
+      }
+      if (s != 1) {
+        return UNIFORM_SCALE;
+      }
+      if (m.get(0, 3) != 0 || m.get(1, 3) != 0 || m.get(2, 3) != 0) {
+        return TRANSLATION;
+      }
+      return IDENTITY;
+    }
   }
 }
@@ -0,0 +1,161 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.util.Arrays;
+
+/**
+ * Renders a scene with adaptive supersampling: instead of one ray through the center of each
+ * pixel, a ray through each pixel corner, with pixels whose corners differ too much in color split
+ * into four squares, each sampled at its own corners and split in turn, up to a maximum depth.
+ *
+ * <p>Samples are shared wherever squares meet: a split square's new samples (the midpoints of its
+ * edges and its center) are the corners of its quarters, and every sample lies on a grid {@code
+ * 2^depth} times finer than the pixels, so each point is traced at most once, however many
+ * squares, in the same pixel or its neighbors, have it as a corner. A square's color is the
+ * average of its quarters' colors, or of its corners' if it isn't split, so smooth regions cost
+ * little more than a ray per pixel, and edges get as many rays as they need. Samples are clamped
+ * to displayable colors before they're compared or averaged, so a highlight brighter than white
+ * doesn't bleed into its neighbors.
+ *
+ * <p>An {@code AdaptiveSampler} is not thread safe: each thread's {@link Tracer} has its own,
+ * which takes its depth and threshold from the camera of each render.
+ */
+final class AdaptiveSampler {
+  private final Tracer tracer;
+  private Camera camera;
+  private int maxDepth;
+  private float threshold;
+
+  /** The number of columns of the finest grid across the view. */
+  private int columns;
+
+  /**
+   * The colors of the samples on the rows of the finest grid spanning the current row of pixels,
+   * each row stored at its index modulo the number of rows, so the samples along the bottom of one
+   * row of pixels are still there as the top of the next.
+   */
+  private float[] colors = new float[0];
+
+  /** The row of the finest grid each sample in {@code colors} is from, or -1 if none. */
+  private int[] rows = new int[0];
+
+  private final MutableColor result = new MutableColor();
+  private final MutableVector3 origin = new MutableVector3();
+  private final MutableVector3 direction = new MutableVector3();
+  private Matrix4x4 inverse;
+  private long rayCount;
+
+  /** Construct an {@code AdaptiveSampler} which traces its samples with the specified tracer. */
+  AdaptiveSampler(Tracer tracer) {
+    this.tracer = tracer;
+  }
+
+  /** Return the number of rays traced by the last call to {@link #render(Camera, int[])}. */
+  long getRayCount() {
+    return rayCount;
+  }
+
+  /**
+   * Render the tracer's scene, as seen by the specified camera, into the specified array of packed
+   * RGB pixels, in row major order, splitting pixels up to the camera's antialiasing depth where
+   * the colors of their corners differ, in any channel, by more than its antialiasing threshold.
+   */
+  int[] render(Camera camera, int[] pixels) {
+    var hSize = camera.getHSize();
+    var vSize = camera.getVSize();
+    this.camera = camera;
+    maxDepth = camera.getAntialiasingDepth();
+    threshold = camera.getAntialiasingThreshold();
+    var scale = 1 << maxDepth;
+    columns = hSize * scale + 1;
+    var size = (scale + 1) * columns;
+    if (rows.length != size) {
+      rows = new int[size];
+      colors = new float[size * 3];
+    }
+    Arrays.fill(rows, -1);
+    inverse = camera.getInverseViewTransform();
+    // the eye is at the origin of camera space
+    origin.set(0, 0, 0).transformPoint(inverse);
+    rayCount = 0;
+    for (int y = 0; y < vSize; ++y) {
+      for (int x = 0; x < hSize; ++x) {
+        average(maxDepth, x * scale, y * scale);
+        pixels[y * hSize + x] = result.toRgb();
+      }
+    }
+    this.camera = null;
+    return pixels;
+  }
+
+  /**
+   * Return the index in {@code colors} of the sample at the specified point of the finest grid,
+   * first tracing the ray through that point of the canvas if it hasn't been traced.
+   */
+  private int sample(int gx, int gy) {
+    var scale = 1 << maxDepth;
+    var i = gy % (scale + 1) * columns + gx;
+    if (rows[i] != gy) {
+      camera.sampleDirection(gx / (float) scale, gy / (float) scale, inverse, direction);
+      var tr = tracer;
+      tr.colorAt(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z);
+      ++rayCount;
+      colors[i * 3] = Utils.clamp(tr.color.r);
+      colors[i * 3 + 1] = Utils.clamp(tr.color.g);
+      colors[i * 3 + 2] = Utils.clamp(tr.color.b);
+      rows[i] = gy;
+    }
+    return i * 3;
+  }
+
+  /**
+   * Set {@code result} to the average color over the square of the specified depth, {@code
+   * 2^depth} steps of the finest grid across, whose top left corner is at the specified point of
+   * the grid, splitting it while its corners differ by more than the threshold and the depth
+   * remains.
+   */
+  private void average(int depth, int gx, int gy) {
+    var size = 1 << depth;
+    var nw = sample(gx, gy);
+    var ne = sample(gx + size, gy);
+    var sw = sample(gx, gy + size);
+    var se = sample(gx + size, gy + size);
+    if (depth == 0 || !contrasting(nw, ne, sw, se)) {
+      result.set(
+          (colors[nw] + colors[ne] + colors[sw] + colors[se]) / 4,
+          (colors[nw + 1] + colors[ne + 1] + colors[sw + 1] + colors[se + 1]) / 4,
+          (colors[nw + 2] + colors[ne + 2] + colors[sw + 2] + colors[se + 2]) / 4);
+      return;
+    }
+    // the quarters sample the midpoints and center, unless a neighboring square already has
+    var half = size / 2;
+    float r = 0;
+    float g = 0;
+    float b = 0;
+    for (int qy = 0; qy < 2; ++qy) {
+      for (int qx = 0; qx < 2; ++qx) {
+        average(depth - 1, gx + qx * half, gy + qy * half);
+        r += result.r;
+        g += result.g;
+        b += result.b;
+      }
+    }
+    result.set(r / 4, g / 4, b / 4);
+  }
+
+  /**
+   * Determine whether any channel of the samples at the specified indices in {@code colors}
+   * varies by more than the threshold.
+   */
+  private boolean contrasting(int nw, int ne, int sw, int se) {
+    for (int c = 0; c < 3; ++c) {
+      var max = Math.max(Math.max(colors[nw + c], colors[ne + c]), colors[sw + c]);
+      max = Math.max(max, colors[se + c]);
+      var min = Math.min(Math.min(colors[nw + c], colors[ne + c]), colors[sw + c]);
+      min = Math.min(min, colors[se + c]);
+      if (max - min > threshold) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,135 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.util.Objects;
+
+/**
+ * A pattern which divides space into regions, such as stripes, each of which is one of two other
+ * patterns.
+ */
+abstract class AlternatingPattern extends Pattern {
+  private final Pattern a;
+  private final Pattern b;
+
+  AlternatingPattern(Pattern a, Pattern b, Matrix4x4 transform) {
+    super(transform);
+    this.a = Objects.requireNonNull(a);
+    this.b = Objects.requireNonNull(b);
+  }
+
+  /**
+   * Return the pattern of the regions which {@link #isA(float, float, float)} is {@code true} for.
+   *
+   * @return the first pattern
+   */
+  public Pattern getA() {
+    return a;
+  }
+
+  /**
+   * Return the pattern of the other regions.
+   *
+   * @return the second pattern
+   */
+  public Pattern getB() {
+    return b;
+  }
+
+  /** Return whether the specified point, in this pattern's own space, is in a region of a. */
+  abstract boolean isA(float x, float y, float z);
+
+  @Override
+  final void localColorAt(float x, float y, float z, Scratch s, MutableColor result) {
+    (isA(x, y, z) ? a : b).colorAt(x, y, z, s, result);
+  }
+
+  @Override
+  final void localColorAt(
+      float[] x,
+      float[] y,
+      float[] z,
+      int from,
+      int to,
+      Scratch s,
+      float[] r,
+      float[] g,
+      float[] b) {
+    if (a instanceof SolidPattern solidA && this.b instanceof SolidPattern solidB) {
+      // the usual case, of two colors, needs no more than a choice between them
+      var colorA = solidA.getColor();
+      var colorB = solidB.getColor();
+      var ar = colorA.getR();
+      var ag = colorA.getG();
+      var ab = colorA.getB();
+      var br = colorB.getR();
+      var bg = colorB.getG();
+      var bb = colorB.getB();
+      for (int i = from; i < to; ++i) {
+        var isA = isA(x[i], y[i], z[i]);
+        r[i] = isA ? ar : br;
+        g[i] = isA ? ag : bg;
+        b[i] = isA ? ab : bb;
+      }
+      return;
+    }
+    // otherwise the points are partitioned, those in regions of a first, so that each pattern is
+    // evaluated only where it's needed, then the colors are put back in the points' order
+    var px = s.array(to);
+    var py = s.array(to);
+    var pz = s.array(to);
+    var pr = s.array(to);
+    var pg = s.array(to);
+    var pb = s.array(to);
+    var split = from;
+    for (int i = from; i < to; ++i) {
+      if (isA(x[i], y[i], z[i])) {
+        px[split] = x[i];
+        py[split] = y[i];
+        pz[split] = z[i];
+        ++split;
+      }
+    }
+    for (int i = from, j = split; i < to; ++i) {
+      if (!isA(x[i], y[i], z[i])) {
+        px[j] = x[i];
+        py[j] = y[i];
+        pz[j] = z[i];
+        ++j;
+      }
+    }
+    a.colorAt(px, py, pz, from, split, s, pr, pg, pb);
+    this.b.colorAt(px, py, pz, split, to, s, pr, pg, pb);
+    for (int i = from, j = from, k = split; i < to; ++i) {
+      var source = isA(x[i], y[i], z[i]) ? j++ : k++;
+      r[i] = pr[source];
+      g[i] = pg[source];
+      b[i] = pb[source];
+    }
+    s.releaseArrays(6);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!super.equals(o)) {
+      return false;
+    }
+    var other = (AlternatingPattern) o;
+    return a.equals(other.a) && b.equals(other.b);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), a, b);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{a="
+        + a
+        + ", b="
+        + b
+        + ", transform="
+        + getTransform()
+        + '}';
+  }
+}
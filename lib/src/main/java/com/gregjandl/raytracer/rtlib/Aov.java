@@ -0,0 +1,227 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An arbitrary output variable: an image, other than the rendered color, of some property of the
+ * primary hit at each pixel, for compositing. A {@link Camera} fills any number of them as it
+ * renders, from the hits it shades anyway, so they cost next to nothing.
+ *
+ * <p>Each pixel has one value for each of its kind's channels, held in row major order with the
+ * channels of a pixel together. Pixels whose primary rays hit nothing are given the values of the
+ * background: an infinite depth, a zero normal and albedo, and an object id of -1.
+ */
+public final class Aov {
+  /** The kinds of {@code Aov}: the property of the hit each records. */
+  public enum Kind {
+    /** The distance from the eye to the hit. */
+    DEPTH(1),
+    /** The world space surface normal at the hit, facing the eye. */
+    NORMAL(3),
+    /**
+     * The color of the surface at the hit, before lighting: the material's color, times its
+     * texture's and pattern's there, if any.
+     */
+    ALBEDO(3),
+    /** The index of the object hit, within the scene. */
+    OBJECT_ID(1);
+
+    private final int channels;
+
+    Kind(int channels) {
+      this.channels = channels;
+    }
+
+    /**
+     * Return the number of values each pixel has.
+     *
+     * @return the number of channels
+     */
+    public int getChannelCount() {
+      return channels;
+    }
+  }
+
+  private final Kind kind;
+  private final int width;
+  private final int height;
+  private final float[] values;
+
+  /**
+   * Create an {@code Aov} of the specified kind and size, filled with the values of the
+   * background.
+   *
+   * @param kind the property of the hit to record
+   * @param width the width of the image, which must be the width of the camera rendering it
+   * @param height the height of the image, which must be the height of the camera rendering it
+   * @throws IllegalArgumentException if {@code width} or {@code height} isn't positive
+   */
+  public Aov(Kind kind, int width, int height) {
+    this.kind = Objects.requireNonNull(kind);
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("AOV size must be positive: " + width + " x " + height);
+    }
+    this.width = width;
+    this.height = height;
+    values = new float[width * height * kind.channels];
+    for (int p = 0; p < width * height; ++p) {
+      clear(p);
+    }
+  }
+
+  /**
+   * Return the property this {@code Aov} records.
+   *
+   * @return the kind
+   */
+  public Kind getKind() {
+    return kind;
+  }
+
+  /**
+   * Return the width of this {@code Aov}'s image.
+   *
+   * @return the width in pixels
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Return the height of this {@code Aov}'s image.
+   *
+   * @return the height in pixels
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Return the value of the first (or only) channel of the specified pixel.
+   *
+   * @param x the column of the pixel
+   * @param y the row of the pixel
+   * @return the value
+   */
+  public float get(int x, int y) {
+    return get(x, y, 0);
+  }
+
+  /**
+   * Return the value of the specified channel of the specified pixel.
+   *
+   * @param x the column of the pixel
+   * @param y the row of the pixel
+   * @param channel the channel, from 0 to {@code getKind().getChannelCount() - 1}
+   * @return the value
+   * @throws IndexOutOfBoundsException if the pixel or channel is out of range
+   */
+  public float get(int x, int y, int channel) {
+    Objects.checkIndex(x, width);
+    Objects.checkIndex(y, height);
+    Objects.checkIndex(channel, kind.channels);
+    return values[(y * width + x) * kind.channels + channel];
+  }
+
+  /**
+   * Return the values of every pixel, in row major order with the channels of each pixel together.
+   * The array is this {@code Aov}'s own, not a copy.
+   *
+   * @return the values
+   */
+  public float[] getValues() {
+    return values;
+  }
+
+  /**
+   * Return an image for viewing this {@code Aov}: depth as shades of gray, from white at the eye
+   * to dark gray at the farthest hit; normals with their components mapped from [-1, 1] to red,
+   * green and blue; albedo as is; and object ids as arbitrary but distinct colors. The background
+   * is black.
+   *
+   * @return the image
+   */
+  public BufferedImage toImage() {
+    var farthest = 0f;
+    if (kind == Kind.DEPTH) {
+      for (var depth : values) {
+        if (depth < Float.POSITIVE_INFINITY) {
+          farthest = Math.max(farthest, depth);
+        }
+      }
+    }
+    var pixels = new int[width * height];
+    for (int p = 0; p < pixels.length; ++p) {
+      var at = p * kind.channels;
+      pixels[p] =
+          switch (kind) {
+            case DEPTH -> {
+              var shade = farthest > 0 ? 1 - .9f * values[at] / farthest : 0;
+              yield Color.toRgb(shade, shade, shade);
+            }
+            case NORMAL -> values[at] == 0 && values[at + 1] == 0 && values[at + 2] == 0
+                ? Color.toRgb(0, 0, 0)
+                : Color.toRgb(
+                    (values[at] + 1) / 2, (values[at + 1] + 1) / 2, (values[at + 2] + 1) / 2);
+            case ALBEDO -> Color.toRgb(values[at], values[at + 1], values[at + 2]);
+            // hashed, so that neighboring objects' ids look nothing alike
+            case OBJECT_ID -> values[at] < 0 ? Color.toRgb(0, 0, 0) : 0xff000000 | mix(values[at]);
+          };
+    }
+    var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    image.setRGB(0, 0, width, height, pixels, 0, width);
+    return image;
+  }
+
+  private static int mix(float id) {
+    var h = (int) id * 0x9E3779B9;
+    return (h ^ h >>> 15) | 0x202020;
+  }
+
+  /** Set the specified pixel, by its index in row major order, to the values of the background. */
+  void clear(int pixel) {
+    var at = pixel * kind.channels;
+    switch (kind) {
+      case DEPTH -> values[at] = Float.POSITIVE_INFINITY;
+      case OBJECT_ID -> values[at] = -1;
+      default -> Arrays.fill(values, at, at + kind.channels, 0);
+    }
+  }
+
+  /**
+   * Record the properties of the primary hit at the specified pixel, by its index in row major
+   * order: the distance to it, the normal there, the material and the color there of its texture
+   * and pattern (which is ignored unless it has one), and the index of the object hit.
+   */
+  void record(
+      int pixel,
+      float depth,
+      float nx,
+      float ny,
+      float nz,
+      Material material,
+      float texelR,
+      float texelG,
+      float texelB,
+      int objectIndex) {
+    var at = pixel * kind.channels;
+    switch (kind) {
+      case DEPTH -> values[at] = depth;
+      case NORMAL -> {
+        values[at] = nx;
+        values[at + 1] = ny;
+        values[at + 2] = nz;
+      }
+      case ALBEDO -> {
+        var color = material.getColor();
+        var textured = material.isTextured();
+        values[at] = color.getR() * (textured ? texelR : 1);
+        values[at + 1] = color.getG() * (textured ? texelG : 1);
+        values[at + 2] = color.getB() * (textured ? texelB : 1);
+      }
+      case OBJECT_ID -> values[at] = objectIndex;
+    }
+  }
+}
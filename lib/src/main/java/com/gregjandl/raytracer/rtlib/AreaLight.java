@@ -0,0 +1,275 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.util.Objects;
+
+/**
+ * Represents a rectangular area light, which casts soft shadows.
+ *
+ * <p>The light is the parallelogram with one corner at {@code corner} and edges {@code uVec} and
+ * {@code vVec}, divided into a grid of {@code uSteps} by {@code vSteps} cells. A point's visibility
+ * of the light is the fraction of the cells from which a shadow ray, to a random point within the
+ * cell, reaches it unoccluded. Otherwise the light shades a point as a {@link PointLight} at its
+ * center would, and its intensity doesn't fall off with distance.
+ *
+ * <p>Most points see all of the light or none of it, so a shadow test first traces rays to only a
+ * few cells, the probe samples, spread over the light (its corner cells first). Only if they
+ * disagree, so that the point is in a penumbra, are rays traced to the rest of the cells. A point
+ * whose probes all agree is taken to be fully lit or fully shadowed, which misses shadows of
+ * objects small enough to fall between the probes. See {@link Scene#getAverageShadowSamples()}.
+ */
+public final class AreaLight extends PointLight {
+  /** The number of probe samples used unless otherwise specified, for lights with enough cells. */
+  public static final int DEFAULT_PROBE_SAMPLES = 4;
+
+  private final Point corner;
+  private final Vector3 uVec;
+  private final Vector3 vVec;
+  private final int uSteps;
+  private final int vSteps;
+  private final int probeSamples;
+
+  /** The corner and the edge of a cell along each side, as floats for sampling. */
+  private final float cx;
+
+  private final float cy;
+  private final float cz;
+  private final float ux;
+  private final float uy;
+  private final float uz;
+  private final float vx;
+  private final float vy;
+  private final float vz;
+
+  /** The cells in the order they're sampled, by index in row major order. */
+  private final int[] order;
+
+  /**
+   * Create an {@code AreaLight} with the specified extent, grid and color, which uses {@link
+   * #DEFAULT_PROBE_SAMPLES} probe samples, or all of its cells if it has fewer.
+   *
+   * @param corner one corner of the light
+   * @param uVec one edge of the light, from the corner
+   * @param uSteps the number of cells along {@code uVec}
+   * @param vVec the other edge of the light, from the corner
+   * @param vSteps the number of cells along {@code vVec}
+   * @param color color of the light
+   * @throws IllegalArgumentException if {@code uSteps} or {@code vSteps} isn't positive
+   */
+  public AreaLight(
+      Point corner, Vector3 uVec, int uSteps, Vector3 vVec, int vSteps, Color color) {
+    this(
+        corner,
+        uVec,
+        uSteps,
+        vVec,
+        vSteps,
+        color,
+        Math.min(DEFAULT_PROBE_SAMPLES, cells(uSteps, vSteps)));
+  }
+
+  /**
+   * Create an {@code AreaLight} with the specified extent, grid, color and number of probe samples.
+   *
+   * @param corner one corner of the light
+   * @param uVec one edge of the light, from the corner
+   * @param uSteps the number of cells along {@code uVec}
+   * @param vVec the other edge of the light, from the corner
+   * @param vSteps the number of cells along {@code vVec}
+   * @param color color of the light
+   * @param probeSamples the number of cells sampled before deciding whether to sample them all
+   * @throws IllegalArgumentException if {@code uSteps} or {@code vSteps} isn't positive, or {@code
+   *     probeSamples} isn't between 1 and the number of cells
+   */
+  public AreaLight(
+      Point corner,
+      Vector3 uVec,
+      int uSteps,
+      Vector3 vVec,
+      int vSteps,
+      Color color,
+      int probeSamples) {
+    super(corner.add(uVec.multiply(.5f)).add(vVec.multiply(.5f)), color);
+    var cells = cells(uSteps, vSteps);
+    if (probeSamples < 1 || probeSamples > cells) {
+      throw new IllegalArgumentException(
+          "Probe samples must be between 1 and " + cells + ": " + probeSamples);
+    }
+    this.corner = corner;
+    this.uVec = uVec;
+    this.vVec = vVec;
+    this.uSteps = uSteps;
+    this.vSteps = vSteps;
+    this.probeSamples = probeSamples;
+    cx = corner.getX();
+    cy = corner.getY();
+    cz = corner.getZ();
+    ux = uVec.getX() / uSteps;
+    uy = uVec.getY() / uSteps;
+    uz = uVec.getZ() / uSteps;
+    vx = vVec.getX() / vSteps;
+    vy = vVec.getY() / vSteps;
+    vz = vVec.getZ() / vSteps;
+    order = new int[cells];
+    var corners =
+        new int[] {0, uSteps - 1, (vSteps - 1) * uSteps, (vSteps - 1) * uSteps + uSteps - 1};
+    var n = 0;
+    for (var cell : corners) {
+      if (!contains(order, n, cell)) {
+        order[n++] = cell;
+      }
+    }
+    for (int cell = 0; cell < cells; ++cell) {
+      if (!contains(order, n, cell)) {
+        order[n++] = cell;
+      }
+    }
+  }
+
+  private static int cells(int uSteps, int vSteps) {
+    if (uSteps < 1 || vSteps < 1) {
+      throw new IllegalArgumentException(
+          "Area light steps must be positive: " + uSteps + ", " + vSteps);
+    }
+    return uSteps * vSteps;
+  }
+
+  private static boolean contains(int[] a, int n, int value) {
+    for (int i = 0; i < n; ++i) {
+      if (a[i] == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Return this {@code AreaLight}'s corner.
+   *
+   * @return the light's corner
+   */
+  public Point getCorner() {
+    return corner;
+  }
+
+  /**
+   * Return the edge of this {@code AreaLight} along which it has {@link #getUSteps()} cells.
+   *
+   * @return the light's first edge
+   */
+  public Vector3 getUVec() {
+    return uVec;
+  }
+
+  /**
+   * Return the edge of this {@code AreaLight} along which it has {@link #getVSteps()} cells.
+   *
+   * @return the light's second edge
+   */
+  public Vector3 getVVec() {
+    return vVec;
+  }
+
+  /**
+   * Return the number of cells along this {@code AreaLight}'s first edge.
+   *
+   * @return the number of cells along {@code uVec}
+   */
+  public int getUSteps() {
+    return uSteps;
+  }
+
+  /**
+   * Return the number of cells along this {@code AreaLight}'s second edge.
+   *
+   * @return the number of cells along {@code vVec}
+   */
+  public int getVSteps() {
+    return vSteps;
+  }
+
+  /**
+   * Return the number of shadow rays traced to this light from a point in a penumbra, one per cell.
+   *
+   * @return the number of cells
+   */
+  public int getSamples() {
+    return order.length;
+  }
+
+  /**
+   * Return the number of shadow rays traced to this light from a point before deciding whether it's
+   * in a penumbra.
+   *
+   * @return the number of probe samples
+   */
+  public int getProbeSamples() {
+    return probeSamples;
+  }
+
+  /**
+   * Set {@code into} to the point within the {@code k}th cell sampled which is {@code ju} and
+   * {@code jv}, each in [0, 1), of the way across it.
+   */
+  void samplePoint(int k, float ju, float jv, MutableVector3 into) {
+    var cell = order[k];
+    var u = cell % uSteps + ju;
+    var v = cell / uSteps + jv;
+    into.set(cx + ux * u + vx * v, cy + uy * u + vy * v, cz + uz * u + vz * v);
+  }
+
+  /**
+   * Returns a string representation of this {@code AreaLight}. This method is intended to be used
+   * for debugging purposes; the representation may change, but will not be {@code null}.
+   *
+   * @return a string representation of this {@code AreaLight}
+   */
+  @Override
+  public String toString() {
+    return "AreaLight{corner="
+        + corner
+        + ", uVec="
+        + uVec
+        + ", uSteps="
+        + uSteps
+        + ", vVec="
+        + vVec
+        + ", vSteps="
+        + vSteps
+        + ", color="
+        + getColor()
+        + ", probeSamples="
+        + probeSamples
+        + '}';
+  }
+
+  /**
+   * Compares this {@code AreaLight} with the specified {@code Object} for equality.
+   *
+   * @param o {@code Object} to which this {@code AreaLight} is to be compared.
+   * @return {@code true} if and only if the specified {@code Object} is an {@code AreaLight} whose
+   *     corner, edges, steps, color and probe samples are equal to this {@code AreaLight}'s
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (!super.equals(o)) {
+      return false;
+    }
+    AreaLight that = (AreaLight) o;
+    return uSteps == that.uSteps
+        && vSteps == that.vSteps
+        && probeSamples == that.probeSamples
+        && Objects.equals(corner, that.corner)
+        && Objects.equals(uVec, that.uVec)
+        && Objects.equals(vVec, that.vVec);
+  }
+
+  /**
+   * Returns the hash code for this {@code AreaLight}
+   *
+   * @return hash code for this {@code AreaLight}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), corner, uVec, uSteps, vVec, vSteps, probeSamples);
+  }
+}
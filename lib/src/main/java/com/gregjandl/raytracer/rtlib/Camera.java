@@ -5,6 +5,11 @@ import java.awt.image.BufferedImage;
 /**
  * Represents a view, allowing a {@code World} (i.e., scene) to be rendered to a {@code
  * BufferedImage}.
+ *
+ * <p>A {@code Camera} may render from several threads at once, as long as it isn't reconfigured
+ * meanwhile: everything a render needs besides the camera's settings, such as the wavefront
+ * renderer's queues, the rasterized visibility buffer and the antialiasing samples, belongs to the
+ * rendering thread's {@code Tracer}.
  */
 public class Camera {
   private final int hSize;
@@ -14,6 +19,16 @@ public class Camera {
   private final float halfWidth;
   private final float halfHeight;
   private Matrix4x4 viewTransform;
+  private Matrix4x4 inverseViewTransform;
+  private int packetSize = 1;
+  private int wavefrontSize;
+  private boolean sortingRays;
+  private boolean rasterizing;
+  private int antialiasingDepth;
+  private float antialiasingThreshold = .1f;
+
+  /** The rays per pixel of each thread's last render, so concurrent renders don't mix. */
+  private final ThreadLocal<double[]> raysPerPixel = ThreadLocal.withInitial(() -> new double[1]);
 
   /**
    * Construct a {@code Camera} with the specified view size and field of view. FOV is treated saved
@@ -75,6 +90,14 @@ public class Camera {
     return pixelSize;
   }
 
+  float getHalfWidth() {
+    return halfWidth;
+  }
+
+  float getHalfHeight() {
+    return halfHeight;
+  }
+
   Ray rayForPixel(int pixelX, int pixelY) {
     var xOffset = (pixelX + 0.5f) * pixelSize;
     var yOffset = (pixelY + 0.5f) * pixelSize;
@@ -82,7 +105,7 @@ public class Camera {
     var worldX = halfWidth - xOffset;
     var worldY = halfHeight - yOffset;
 
-    var inverseTransform = viewTransform.invert();
+    var inverseTransform = getInverseViewTransform();
     var pixel = inverseTransform.multiply(new Point(worldX, worldY, -1));
     var origin = inverseTransform.multiply(Point.ORIGIN);
     var direction = pixel.subtract(origin).normalize();
@@ -90,6 +113,181 @@ public class Camera {
     return new Ray(origin, direction);
   }
 
+  Matrix4x4 getInverseViewTransform() {
+    if (inverseViewTransform == null) {
+      inverseViewTransform = viewTransform.invert();
+    }
+    return inverseViewTransform;
+  }
+
+  /**
+   * Returns the width and height, in pixels, of the square tiles whose primary rays are traced
+   * together as packets, or 1 if rays are traced individually.
+   *
+   * @return the packet size
+   */
+  public int getPacketSize() {
+    return packetSize;
+  }
+
+  /**
+   * Sets the width and height, in pixels, of the square tiles whose primary rays are traced
+   * together as packets. A size of 1 traces each ray individually. Packets are only a speed
+   * optimization: the rendered image is the same whatever the size.
+   *
+   * @param packetSize the packet size, from 1 to 8
+   * @throws IllegalArgumentException if {@code packetSize} is out of range
+   */
+  public void setPacketSize(int packetSize) {
+    if (packetSize < 1 || packetSize * packetSize > RayPacket.MAX_SIZE) {
+      throw new IllegalArgumentException("Packet size " + packetSize + " not in [1, 8]");
+    }
+    this.packetSize = packetSize;
+  }
+
+  /**
+   * Returns the number of rays rendered in each wave by the wavefront renderer, or 0 if the pixel
+   * at a time renderer is used.
+   *
+   * @return the wavefront size
+   */
+  public int getWavefrontSize() {
+    return wavefrontSize;
+  }
+
+  /**
+   * Sets the number of rays rendered in each wave by the wavefront renderer, or 0 to render a pixel
+   * at a time (the default). The wavefront renderer traces a wave's rays through each step of
+   * rendering, in parallel, before moving on to the next step, and ignores the packet size. Like
+   * packets, it's only a speed optimization: the rendered image is the same either way.
+   *
+   * @param wavefrontSize the number of rays per wave, or 0
+   * @throws IllegalArgumentException if {@code wavefrontSize} is negative
+   */
+  public void setWavefrontSize(int wavefrontSize) {
+    if (wavefrontSize < 0) {
+      throw new IllegalArgumentException("Wavefront size must be non-negative: " + wavefrontSize);
+    }
+    this.wavefrontSize = wavefrontSize;
+  }
+
+  /**
+   * Returns whether the wavefront renderer sorts rays between steps.
+   *
+   * @return {@code true} if rays are sorted
+   */
+  public boolean isSortingRays() {
+    return sortingRays;
+  }
+
+  /**
+   * Sets whether the wavefront renderer sorts rays between steps, grouping hits by the object hit
+   * before shading them, and shadow rays by direction octant and origin before tracing them, for
+   * better locality. Has no effect unless the wavefront size is non-zero.
+   *
+   * @param sortingRays {@code true} to sort rays
+   */
+  public void setSortingRays(boolean sortingRays) {
+    this.sortingRays = sortingRays;
+  }
+
+  /**
+   * Returns whether primary visibility is found by rasterizing the scene rather than by tracing
+   * rays.
+   *
+   * @return {@code true} if rasterizing
+   */
+  public boolean isRasterizing() {
+    return rasterizing;
+  }
+
+  /**
+   * Sets whether primary visibility is found by rasterizing the scene, an object at a time, into a
+   * buffer of the closest hit at each pixel, rather than by tracing each pixel's ray through every
+   * object. Each object is only intersected with the rays of the pixels its projected bounds cover,
+   * which is cheaper when most objects cover a small part of the view. Shading, shadows and every
+   * ray after the primary ones are traced either way, and the rendered image is the same.
+   *
+   * <p>Rasterizing takes the place of tracing packets, so the packet size is ignored while it's
+   * enabled; the wavefront renderer, if enabled, shades the rasterized hits.
+   *
+   * @param rasterizing {@code true} to rasterize
+   */
+  public void setRasterizing(boolean rasterizing) {
+    this.rasterizing = rasterizing;
+  }
+
+  /**
+   * Returns the number of times a pixel may be split into four for antialiasing, or 0 if
+   * antialiasing is disabled.
+   *
+   * @return the antialiasing depth
+   */
+  public int getAntialiasingDepth() {
+    return antialiasingDepth;
+  }
+
+  /**
+   * Sets the number of times a pixel may be split into four for adaptive antialiasing, or 0 to
+   * trace one ray through the center of each pixel (the default).
+   *
+   * <p>When antialiasing, a ray is traced through each pixel corner, shared by the pixels around
+   * it. A pixel whose corners' colors differ by more than the {@link
+   * #setAntialiasingThreshold(float) threshold} is split into four squares, each sampled at its own
+   * corners (shared with its neighbors) and split again while its corners differ and the depth
+   * allows, and its color is the average of its squares'. So smooth regions cost little more than
+   * a ray per pixel, while edges get up to {@code (2^depth + 1)^2} rays per pixel. Packets,
+   * rasterizing and the wavefront renderer are not used while antialiasing, and AOVs, which record
+   * the hit at the center of each pixel, cost another ray per pixel.
+   *
+   * @param antialiasingDepth the antialiasing depth, from 0 to 4
+   * @throws IllegalArgumentException if {@code antialiasingDepth} is out of range
+   */
+  public void setAntialiasingDepth(int antialiasingDepth) {
+    if (antialiasingDepth < 0 || antialiasingDepth > 4) {
+      throw new IllegalArgumentException(
+          "Antialiasing depth must be in [0, 4]: " + antialiasingDepth);
+    }
+    this.antialiasingDepth = antialiasingDepth;
+  }
+
+  /**
+   * Returns the difference in color, in any channel, between the corners of a pixel (or part of
+   * one) above which it's split when antialiasing.
+   *
+   * @return the antialiasing threshold
+   */
+  public float getAntialiasingThreshold() {
+    return antialiasingThreshold;
+  }
+
+  /**
+   * Sets the difference in color, in any channel, between the corners of a pixel (or part of one)
+   * above which it's split when antialiasing. Channels range from 0 to 1; the default is 0.1. Has
+   * no effect unless the antialiasing depth is non-zero.
+   *
+   * @param antialiasingThreshold the antialiasing threshold
+   * @throws IllegalArgumentException if {@code antialiasingThreshold} is negative or NaN
+   */
+  public void setAntialiasingThreshold(float antialiasingThreshold) {
+    if (!(antialiasingThreshold >= 0)) {
+      throw new IllegalArgumentException(
+          "Antialiasing threshold must be non-negative: " + antialiasingThreshold);
+    }
+    this.antialiasingThreshold = antialiasingThreshold;
+  }
+
+  /**
+   * Returns the average number of primary rays traced per pixel by the last render the calling
+   * thread finished with this camera, which is 1 unless antialiasing, or 0 if the thread hasn't
+   * rendered with it. Renders on other threads don't affect the result.
+   *
+   * @return the rays per pixel
+   */
+  public double getRaysPerPixel() {
+    return raysPerPixel.get()[0];
+  }
+
   /**
    * Returns this {@code Camera}'s view transformation
    *
@@ -119,33 +317,168 @@ public class Camera {
               {-forward.getX(), -forward.getY(), -forward.getZ(), 0},
               {0, 0, 0, 1}
             });
-    viewTransform =
-        orientation.multiply(Matrix4x4.translation(-from.getX(), -from.getY(), -from.getZ()));
+    setViewTransform(
+        orientation.multiply(Matrix4x4.translation(-from.getX(), -from.getY(), -from.getZ())));
   }
 
   void setViewTransform(Matrix4x4 viewTransform) {
     this.viewTransform = viewTransform;
+    inverseViewTransform = null;
   }
 
   /**
    * Render the scene represented by the supplied {@code World} into a BufferedImage, and return the
-   * resulting image.
+   * resulting image, filling the specified arbitrary output variables, if any, from the same
+   * primary hits.
    *
    * @param scene the scene to render
+   * @param aovs the outputs to fill, which must be the same size as this camera's view
    * @return the rendered scene
+   * @throws IllegalArgumentException if an output isn't the same size as the view
    */
-  public BufferedImage render(Scene scene) {
+  public BufferedImage render(Scene scene, Aov... aovs) {
     var image = new BufferedImage(hSize, vSize, BufferedImage.TYPE_INT_RGB);
+    image.setRGB(0, 0, hSize, vSize, render(scene, new int[hSize * vSize], aovs), 0, hSize);
+    return image;
+  }
 
-    for (int y = 0; y < vSize - 1; ++y) {
-      for (int x = 0; x < hSize - 1; ++x) {
-        var r = rayForPixel(x, y);
-        var c = scene.colorAt(r);
-        image.setRGB(x, y, c.toAwtColor().getRGB());
+  /**
+   * Render the specified scene into the specified array of packed RGB pixels, in row major order.
+   *
+   * <p>Rays are generated and traced using primitive math and the calling thread's {@code Tracer},
+   * so nothing is allocated per pixel. The wavefront renderer and rasterizing, if enabled, allocate
+   * the calling thread's queues and visibility buffer on first use.
+   *
+   * @param scene the scene to render
+   * @param pixels array of at least {@code hSize * vSize} pixels to fill
+   * @param aovs the outputs to fill, which must be the same size as this camera's view
+   * @return {@code pixels}
+   * @throws IllegalArgumentException if an output isn't the same size as the view
+   */
+  int[] render(Scene scene, int[] pixels, Aov... aovs) {
+    for (var aov : aovs) {
+      if (aov.getWidth() != hSize || aov.getHeight() != vSize) {
+        throw new IllegalArgumentException(
+            "AOV size must match the camera's: " + aov.getWidth() + " x " + aov.getHeight());
       }
     }
+    scene.prepare();
+    try (var tr = scene.tracer()) {
+      raysPerPixel.get()[0] = 1;
+      if (antialiasingDepth > 0) {
+        return renderAntialiased(tr, pixels, aovs);
+      }
+      VisibilityBuffer visibility = null;
+      if (rasterizing) {
+        visibility = tr.visibility(hSize, vSize);
+        visibility.rasterize(this, scene, tr);
+      }
+      if (wavefrontSize > 0) {
+        var wavefront = tr.wavefront(Math.min(wavefrontSize, hSize * vSize));
+        wavefront.setSorted(sortingRays);
+        return wavefront.render(this, scene, pixels, visibility, aovs);
+      }
+      tr.spread = pixelSize;
+      var recording = aovs.length > 0;
+      tr.aovs = aovs;
+      try {
+        var inverse = getInverseViewTransform();
+        // the eye is at the origin of camera space
+        var origin = new MutableVector3().transformPoint(inverse);
+        var direction = new MutableVector3();
+        if (rasterizing) {
+          for (int p = 0; p < hSize * vSize; ++p) {
+            tr.aovPixel = recording ? p : -1;
+            tr.colorAt(visibility, p);
+            pixels[p] = tr.color.toRgb();
+          }
+        } else if (packetSize > 1) {
+          var packet = tr.packet;
+          for (int tileY = 0; tileY < vSize; tileY += packetSize) {
+            var endY = Math.min(vSize, tileY + packetSize);
+            for (int tileX = 0; tileX < hSize; tileX += packetSize) {
+              var endX = Math.min(hSize, tileX + packetSize);
+              packet.reset(origin.x, origin.y, origin.z);
+              for (int y = tileY; y < endY; ++y) {
+                for (int x = tileX; x < endX; ++x) {
+                  pixelDirection(x, y, inverse, direction);
+                  packet.add(direction.x, direction.y, direction.z);
+                }
+              }
+              tr.intersect(packet);
+              var lane = 0;
+              for (int y = tileY; y < endY; ++y) {
+                for (int x = tileX; x < endX; ++x) {
+                  tr.aovPixel = recording ? y * hSize + x : -1;
+                  tr.colorAt(packet, lane++);
+                  pixels[y * hSize + x] = tr.color.toRgb();
+                }
+              }
+            }
+          }
+        } else {
+          for (int y = 0; y < vSize; ++y) {
+            for (int x = 0; x < hSize; ++x) {
+              pixelDirection(x, y, inverse, direction);
+              tr.aovPixel = recording ? y * hSize + x : -1;
+              tr.colorAt(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z);
+              pixels[y * hSize + x] = tr.color.toRgb();
+            }
+          }
+        }
+      } finally {
+        // a render which fails part way mustn't leave the tracer recording later hits
+        tr.aovs = null;
+        tr.aovPixel = -1;
+      }
+      return pixels;
+    }
+  }
 
-    return image;
+  private int[] renderAntialiased(Tracer tr, int[] pixels, Aov... aovs) {
+    // textures are filtered over a pixel's width, however finely the pixel is sampled
+    tr.spread = pixelSize;
+    var rays = 0L;
+    if (aovs.length > 0) {
+      // the outputs are of the hit at each pixel's center, which isn't sampled
+      tr.aovs = aovs;
+      try {
+        var inverse = getInverseViewTransform();
+        var origin = new MutableVector3().transformPoint(inverse);
+        var direction = new MutableVector3();
+        for (int y = 0; y < vSize; ++y) {
+          for (int x = 0; x < hSize; ++x) {
+            pixelDirection(x, y, inverse, direction);
+            tr.aovPixel = y * hSize + x;
+            tr.colorAt(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z);
+          }
+        }
+      } finally {
+        tr.aovs = null;
+        tr.aovPixel = -1;
+      }
+      rays = hSize * vSize;
+    }
+    var sampler = tr.sampler();
+    sampler.render(this, pixels);
+    raysPerPixel.get()[0] = (rays + sampler.getRayCount()) / (double) (hSize * vSize);
+    return pixels;
+  }
+
+  /** Compute the normalized world space direction from the eye through the specified pixel. */
+  void pixelDirection(int x, int y, Matrix4x4 inverse, MutableVector3 direction) {
+    sampleDirection(x + 0.5f, y + 0.5f, inverse, direction);
+  }
+
+  /**
+   * Compute the normalized world space direction from the eye through the specified point on the
+   * canvas, in pixels from its top left corner.
+   */
+  void sampleDirection(float x, float y, Matrix4x4 inverse, MutableVector3 direction) {
+    var worldX = halfWidth - x * pixelSize;
+    var worldY = halfHeight - y * pixelSize;
+    // the canvas is at z = -1 in camera space
+    direction.set(worldX, worldY, -1).transformVector(inverse).normalize();
   }
 
   /**
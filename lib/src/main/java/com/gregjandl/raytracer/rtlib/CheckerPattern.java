@@ -0,0 +1,51 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static com.gregjandl.raytracer.rtlib.Utils.EPSILON;
+
+/**
+ * A pattern of unit cubes alternating in {@code x}, {@code y} and {@code z} between two other
+ * patterns, starting with {@code a} in the cube whose corner is the origin.
+ *
+ * <p>Points are nudged by {@link Utils#EPSILON} toward positive {@code x}, {@code y} and {@code
+ * z}, so that a surface lying on a face of the cubes, such as an untransformed {@link Plane}, is
+ * evenly checkered, instead of speckled by hit points a rounding error either side of the face.
+ */
+public final class CheckerPattern extends AlternatingPattern {
+  /**
+   * Create a {@code CheckerPattern} alternating between the specified colors.
+   *
+   * @param a the color of the cube at the origin
+   * @param b the color of the cubes next to it
+   */
+  public CheckerPattern(Color a, Color b) {
+    this(Pattern.solid(a), Pattern.solid(b));
+  }
+
+  /**
+   * Create a {@code CheckerPattern} alternating between the specified patterns.
+   *
+   * @param a the pattern of the cube at the origin
+   * @param b the pattern of the cubes next to it
+   */
+  public CheckerPattern(Pattern a, Pattern b) {
+    this(a, b, Matrix4x4.identity());
+  }
+
+  private CheckerPattern(Pattern a, Pattern b, Matrix4x4 transform) {
+    super(a, b, transform);
+  }
+
+  @Override
+  public CheckerPattern withTransform(Matrix4x4 t) {
+    return new CheckerPattern(getA(), getB(), t);
+  }
+
+  @Override
+  boolean isA(float x, float y, float z) {
+    var sum =
+        (int) Math.floor(x + EPSILON)
+            + (int) Math.floor(y + EPSILON)
+            + (int) Math.floor(z + EPSILON);
+    return (sum & 1) == 0;
+  }
+}
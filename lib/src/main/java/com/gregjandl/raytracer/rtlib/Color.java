@@ -106,6 +106,24 @@ public class Color {
     return new java.awt.Color(Utils.clamp(r), Utils.clamp(g), Utils.clamp(b));
   }
 
+  /**
+   * Packs the specified color components, clamped to the range [0.0 - 1.0], into an RGB {@code int}
+   * as returned by {@code java.awt.Color.getRGB()}, without creating any objects.
+   *
+   * @param r the Red component
+   * @param g the Green component
+   * @param b the Blue component
+   * @return the packed RGB value, with an opaque alpha component
+   */
+  static int toRgb(float r, float g, float b) {
+    return 0xff000000 | toByte(r) << 16 | toByte(g) << 8 | toByte(b);
+  }
+
+  private static int toByte(float c) {
+    // rounded the same way as java.awt.Color's float constructor
+    return (int) (Utils.clamp(c) * 255 + 0.5);
+  }
+
   /**
    * Returns a string representation of this {@code Color}. This method is intended to be used for
    * debugging purposes; the representation may change, but will not be {@code null}.
@@ -40,8 +40,20 @@ class IntersectionList extends AbstractList<Intersection> {
    * @param object {@code Sphere} of new {{@code Intersection}
    */
   public void add(float t, Shape object) {
-    var intersection = new Intersection(t, object);
-    add(intersection);
+    add(new Intersection(t, object, 0));
+  }
+
+  /**
+   * Construct a new {@code Intersection} from the specified time {@code t}, {@code object}, and
+   * sub-primitive {@code index} (e.g., the face of a {@code TriangleMesh}) and add it to this
+   * {@code IntersectionList}, maintaining the sorted order of entries.
+   *
+   * @param t time of new {@code Intersection}
+   * @param object {@code Shape} of new {@code Intersection}
+   * @param index index of the intersected sub-primitive within {@code object}
+   */
+  public void add(float t, Shape object, int index) {
+    add(new Intersection(t, object, index));
   }
 
   @Override
@@ -67,11 +79,17 @@ class IntersectionList extends AbstractList<Intersection> {
   static class Intersection {
     private final float t;
     private final Shape object;
+    private final int index;
 
     Intersection(float t, Shape object) {
+      this(t, object, 0);
+    }
+
+    Intersection(float t, Shape object, int index) {
       Objects.requireNonNull(object, "Intersection can't be constructed with null object");
       this.t = t;
       this.object = object;
+      this.index = index;
     }
 
     public float getT() {
@@ -82,6 +100,16 @@ class IntersectionList extends AbstractList<Intersection> {
       return object;
     }
 
+    /**
+     * Returns the index of the intersected sub-primitive within the object (e.g., the face index
+     * of a {@code TriangleMesh}). Always zero for shapes which aren't made up of sub-primitives.
+     *
+     * @return the sub-primitive index
+     */
+    public int getIndex() {
+      return index;
+    }
+
     @Override
     public boolean equals(Object o) {
       if (this == o) {
@@ -91,7 +119,7 @@ class IntersectionList extends AbstractList<Intersection> {
         return false;
       }
       Intersection that = (Intersection) o;
-      return Utils.aboutEqual(t, that.t) && object == that.object;
+      return Utils.aboutEqual(t, that.t) && object == that.object && index == that.index;
     }
 
     @Override
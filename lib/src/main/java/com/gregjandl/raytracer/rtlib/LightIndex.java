@@ -0,0 +1,203 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A uniform grid over a scene's lights, for finding the lights which may light a point above a
+ * threshold intensity without looking at every light.
+ *
+ * <p>Each light has an influence radius, beyond which its intensity is below the threshold (see
+ * {@link PointLight#influenceRadius(float)}). Each cell of the grid lists, in scene order, the
+ * lights whose sphere of influence overlaps the cell, including those whose influence is unbounded.
+ * Points outside the grid get a list of just the unbounded lights. Looking up a point therefore
+ * gives a short list of candidates, each of which still needs its distance checked with {@link
+ * #influences(int, float, float, float)}.
+ *
+ * <p>The grid's cells are about as wide as the average sphere of influence, but there are at most
+ * a few cells per light.
+ */
+final class LightIndex {
+  /** Maximum number of cells along each axis. */
+  static final int MAX_RESOLUTION = 128;
+
+  /** Maximum number of cells per bounded light. */
+  private static final int CELLS_PER_LIGHT = 4;
+
+  /** Each light's position and squared influence radius. */
+  private final float[] x;
+
+  private final float[] y;
+  private final float[] z;
+  private final float[] radiusSquared;
+
+  /** The grid's minimum corner, cells per unit length, and number of cells along each axis. */
+  private final float[] min = new float[3];
+
+  private final float[] scale = new float[3];
+  private final int[] res = {1, 1, 1};
+
+  /**
+   * The lights of cell {@code c} are {@code cellLights[cellStart[c]]} up to {@code
+   * cellLights[cellStart[c + 1]]}. The last cell, past the end of the grid, holds the unbounded
+   * lights.
+   */
+  private final int[] cellStart;
+
+  private final int[] cellLights;
+
+  /**
+   * Build an index over the specified lights, for the specified threshold intensity.
+   *
+   * @param lights the lights to index
+   * @param threshold the intensity below which a light is considered not to light a point
+   */
+  LightIndex(List<PointLight> lights, float threshold) {
+    var n = lights.size();
+    x = new float[n];
+    y = new float[n];
+    z = new float[n];
+    radiusSquared = new float[n];
+    var radius = new float[n];
+    var lo = new float[] {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+    var hi = new float[] {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+    var bounded = 0;
+    var totalRadius = 0.0;
+    for (int i = 0; i < n; ++i) {
+      var light = lights.get(i);
+      var p = light.getPosition();
+      x[i] = p.getX();
+      y[i] = p.getY();
+      z[i] = p.getZ();
+      radius[i] = light.influenceRadius(threshold);
+      radiusSquared[i] = radius[i] * radius[i];
+      if (radius[i] > 0 && radius[i] < Float.POSITIVE_INFINITY) {
+        ++bounded;
+        totalRadius += radius[i];
+        for (int a = 0; a < 3; ++a) {
+          lo[a] = Math.min(lo[a], coordinate(i, a) - radius[i]);
+          hi[a] = Math.max(hi[a], coordinate(i, a) + radius[i]);
+        }
+      }
+    }
+
+    if (bounded > 0) {
+      // cells about as wide as the average sphere of influence, but not too many of them
+      var cellSize = (float) (2 * totalRadius / bounded);
+      while (true) {
+        var cells = 1L;
+        for (int a = 0; a < 3; ++a) {
+          var cellsAlong = Math.ceil((hi[a] - lo[a]) / cellSize);
+          res[a] = (int) Math.max(1, Math.min(MAX_RESOLUTION, cellsAlong));
+          cells *= res[a];
+        }
+        if (cells <= (long) CELLS_PER_LIGHT * bounded) {
+          break;
+        }
+        cellSize *= 1.25f;
+      }
+      for (int a = 0; a < 3; ++a) {
+        min[a] = lo[a];
+        scale[a] = res[a] / Math.max(hi[a] - lo[a], Float.MIN_NORMAL);
+      }
+    }
+
+    // count, then list, the lights overlapping each cell, in scene order
+    var cellCount = res[0] * res[1] * res[2];
+    var first = new int[n * 3];
+    var last = new int[n * 3];
+    cellStart = new int[cellCount + 2];
+    for (int i = 0; i < n; ++i) {
+      if (radius[i] == Float.POSITIVE_INFINITY) {
+        // every cell, and past the end of the grid
+        for (int a = 0; a < 3; ++a) {
+          last[i * 3 + a] = res[a] - 1;
+        }
+        ++cellStart[cellCount + 1];
+      } else if (radius[i] > 0) {
+        for (int a = 0; a < 3; ++a) {
+          first[i * 3 + a] = cell(a, coordinate(i, a) - radius[i]);
+          last[i * 3 + a] = cell(a, coordinate(i, a) + radius[i]);
+        }
+      } else {
+        // never bright enough to list
+        last[i * 3] = -1;
+      }
+      forEachCell(first, last, i, c -> ++cellStart[c + 1]);
+    }
+    for (int c = 0; c <= cellCount; ++c) {
+      cellStart[c + 1] += cellStart[c];
+    }
+    cellLights = new int[cellStart[cellCount + 1]];
+    var fill = cellStart.clone();
+    for (int i = 0; i < n; ++i) {
+      var light = i;
+      forEachCell(first, last, i, c -> cellLights[fill[c]++] = light);
+      if (radius[i] == Float.POSITIVE_INFINITY) {
+        cellLights[fill[cellCount]++] = i;
+      }
+    }
+  }
+
+  private float coordinate(int light, int axis) {
+    return axis == 0 ? x[light] : axis == 1 ? y[light] : z[light];
+  }
+
+  /** Call {@code action} for each cell from {@code first} to {@code last} of light {@code i}. */
+  private void forEachCell(int[] first, int[] last, int i, IntConsumer action) {
+    var j = i * 3;
+    for (int cz = first[j + 2]; cz <= last[j + 2]; ++cz) {
+      for (int cy = first[j + 1]; cy <= last[j + 1]; ++cy) {
+        for (int cx = first[j]; cx <= last[j]; ++cx) {
+          action.accept((cz * res[1] + cy) * res[0] + cx);
+        }
+      }
+    }
+  }
+
+  /** Return the cell containing coordinate {@code v} along axis {@code a}, clamped to the grid. */
+  private int cell(int a, float v) {
+    return Math.max(0, Math.min(res[a] - 1, (int) ((v - min[a]) * scale[a])));
+  }
+
+  /**
+   * Return the cell containing the specified point, whose lights are the only ones which may light
+   * it above the threshold intensity.
+   */
+  int cell(float px, float py, float pz) {
+    var fx = (px - min[0]) * scale[0];
+    var fy = (py - min[1]) * scale[1];
+    var fz = (pz - min[2]) * scale[2];
+    if (!(fx >= 0 && fx < res[0] && fy >= 0 && fy < res[1] && fz >= 0 && fz < res[2])) {
+      // outside the grid (or there's no grid), where only unbounded lights reach
+      return cellStart.length - 2;
+    }
+    return ((int) fz * res[1] + (int) fy) * res[0] + (int) fx;
+  }
+
+  /** Return the index, in {@link #light(int)}, of the first light of the specified cell. */
+  int start(int cell) {
+    return cellStart[cell];
+  }
+
+  /** Return the index, in {@link #light(int)}, just past the last light of the specified cell. */
+  int end(int cell) {
+    return cellStart[cell + 1];
+  }
+
+  /** Return the index within the scene of the {@code k}th light listed in the index. */
+  int light(int k) {
+    return cellLights[k];
+  }
+
+  /**
+   * Return whether the specified light, by its index within the scene, is bright enough at the
+   * specified point to be considered.
+   */
+  boolean influences(int light, float px, float py, float pz) {
+    var dx = px - x[light];
+    var dy = py - y[light];
+    var dz = pz - z[light];
+    return dx * dx + dy * dy + dz * dz <= radiusSquared[light];
+  }
+}
@@ -0,0 +1,263 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.util.List;
+
+/**
+ * A bounding volume hierarchy over a scene's lights, for picking a light at random with probability
+ * roughly proportional to its contribution at a point, in time logarithmic in the number of lights.
+ *
+ * <p>A light's estimated contribution at a point is its intensity there: its power (the largest
+ * component of its color), scaled by {@code r² / (r² + d²)} if it falls off with distance {@code d}
+ * (see {@link PointLight}), which for distances well beyond its falloff radius {@code r} is its
+ * power over its squared distance.
+ *
+ * <p>Each node of the binary tree bounds a contiguous range of the lights, ordered by splitting the
+ * range at the median along the longest axis of its positions. It knows the total power of those
+ * which don't fall off, and of those which do, the sum of their powers times their squared falloff
+ * radii and the weighted mean of the squared radii, which give an estimate of the contribution of
+ * its lights as if they were all at its center. The distance to a node is measured to its center
+ * but is at least its radius. A light is picked by walking down from the root, choosing each child
+ * with probability proportional to its estimated contribution; at a leaf, which holds a single
+ * light, the estimate is exact. The probability of the light picked is the product of the choices
+ * made, and every light with any power has a non-zero probability, so dividing the light's
+ * contribution by it gives an unbiased estimate of the contribution of all the lights.
+ */
+final class LightTree {
+  /** The lights, by their index within the scene, in tree order. */
+  private final int[] lights;
+
+  /** The position in {@code lights} of each light, by its index within the scene. */
+  private final int[] position;
+
+  /**
+   * Each node's first light and number of lights, center and squared radius, and the power of its
+   * lights which don't fall off, and of those which do, the sum of their powers times their squared
+   * falloff radii and the mean of their squared falloff radii. Node 0 is the root, and the children
+   * of an interior node are stored next to each other, from {@code child[node]}.
+   */
+  private final int[] first;
+
+  private final int[] count;
+  private final int[] child;
+  private final float[] cx;
+  private final float[] cy;
+  private final float[] cz;
+  private final float[] radiusSquared;
+  private final float[] power;
+  private final float[] falloffPower;
+  private final float[] falloffRadiusSquared;
+  private int nodeCount;
+
+  /**
+   * Build a tree over the specified lights.
+   *
+   * @param lights the lights
+   */
+  LightTree(List<PointLight> lights) {
+    var n = lights.size();
+    this.lights = new int[n];
+    position = new int[n];
+    var px = new float[n];
+    var py = new float[n];
+    var pz = new float[n];
+    var lightPower = new float[n];
+    var lightRadiusSquared = new float[n];
+    for (int i = 0; i < n; ++i) {
+      var light = lights.get(i);
+      var p = light.getPosition();
+      var c = light.getColor();
+      this.lights[i] = i;
+      px[i] = p.getX();
+      py[i] = p.getY();
+      pz[i] = p.getZ();
+      lightPower[i] = Math.max(0, Math.max(c.getR(), Math.max(c.getG(), c.getB())));
+      if (light.hasFalloff()) {
+        lightRadiusSquared[i] = light.getFalloffRadius() * light.getFalloffRadius();
+      }
+    }
+    var nodes = Math.max(1, 2 * n - 1);
+    first = new int[nodes];
+    count = new int[nodes];
+    child = new int[nodes];
+    cx = new float[nodes];
+    cy = new float[nodes];
+    cz = new float[nodes];
+    radiusSquared = new float[nodes];
+    power = new float[nodes];
+    falloffPower = new float[nodes];
+    falloffRadiusSquared = new float[nodes];
+    nodeCount = 1;
+    build(0, 0, n, new float[][] {px, py, pz}, lightPower, lightRadiusSquared);
+    for (int k = 0; k < n; ++k) {
+      position[this.lights[k]] = k;
+    }
+  }
+
+  private void build(int node, int from, int n, float[][] p, float[] pw, float[] r2) {
+    first[node] = from;
+    count[node] = n;
+    if (n == 0) {
+      return;
+    }
+    var min = new float[] {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+    var max = new float[] {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+    for (int k = from; k < from + n; ++k) {
+      var i = lights[k];
+      for (int a = 0; a < 3; ++a) {
+        min[a] = Math.min(min[a], p[a][i]);
+        max[a] = Math.max(max[a], p[a][i]);
+      }
+      if (r2[i] == 0) {
+        power[node] += pw[i];
+      } else {
+        falloffPower[node] += pw[i] * r2[i];
+        falloffRadiusSquared[node] += pw[i] * r2[i] * r2[i];
+      }
+    }
+    if (falloffPower[node] > 0) {
+      falloffRadiusSquared[node] /= falloffPower[node];
+    }
+    cx[node] = (min[0] + max[0]) / 2;
+    cy[node] = (min[1] + max[1]) / 2;
+    cz[node] = (min[2] + max[2]) / 2;
+    var longest = 0;
+    for (int a = 0; a < 3; ++a) {
+      var extent = max[a] - min[a];
+      radiusSquared[node] += extent * extent / 4;
+      if (extent > max[longest] - min[longest]) {
+        longest = a;
+      }
+    }
+    if (n == 1) {
+      return;
+    }
+    var half = n / 2;
+    select(from, from + n - 1, from + half, p[longest]);
+    var left = nodeCount;
+    nodeCount += 2;
+    child[node] = left;
+    build(left, from, half, p, pw, r2);
+    build(left + 1, from + half, n - half, p, pw, r2);
+  }
+
+  /** Partially sort {@code lights[lo..hi]} by {@code key} so that {@code lights[k]} is in place. */
+  private void select(int lo, int hi, int k, float[] key) {
+    while (lo < hi) {
+      var pivot = key[lights[(lo + hi) >>> 1]];
+      var i = lo;
+      var j = hi;
+      while (i <= j) {
+        while (key[lights[i]] < pivot) {
+          ++i;
+        }
+        while (key[lights[j]] > pivot) {
+          --j;
+        }
+        if (i <= j) {
+          var swap = lights[i];
+          lights[i++] = lights[j];
+          lights[j--] = swap;
+        }
+      }
+      if (k <= j) {
+        hi = j;
+      } else if (k >= i) {
+        lo = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  /** Return the estimated contribution of the lights of the specified node at a point. */
+  private float importance(int node, float x, float y, float z) {
+    if (falloffPower[node] == 0) {
+      return power[node];
+    }
+    var dx = x - cx[node];
+    var dy = y - cy[node];
+    var dz = z - cz[node];
+    var d2 = Math.max(dx * dx + dy * dy + dz * dz, radiusSquared[node]);
+    return power[node] + falloffPower[node] / (falloffRadiusSquared[node] + d2);
+  }
+
+  /**
+   * Pick a light at random for shading the tracer's current hit point, using the specified
+   * uniform random number in [0, 1). The probability with which the light was picked is left in
+   * {@link Tracer#lightProbability}.
+   *
+   * @return the index within the scene of the light picked, or -1 if no light has any power
+   */
+  int sample(Tracer tr, float u) {
+    if (power[0] + falloffPower[0] <= 0) {
+      return -1;
+    }
+    var p = tr.point;
+    var node = 0;
+    var probability = 1f;
+    while (count[node] > 1) {
+      var left = child[node];
+      var a = importance(left, p.x, p.y, p.z);
+      var b = importance(left + 1, p.x, p.y, p.z);
+      // a node's importance is only zero if it has no power, and they can't both be
+      var pLeft = a / (a + b);
+      if (u < pLeft) {
+        node = left;
+        probability *= pLeft;
+        u /= pLeft;
+      } else {
+        node = left + 1;
+        probability *= 1 - pLeft;
+        u = (u - pLeft) / (1 - pLeft);
+      }
+      // guard against rounding pushing u out of [0, 1)
+      u = Math.min(u, Math.nextDown(1f));
+    }
+    tr.lightProbability = probability;
+    return lights[first[node]];
+  }
+
+  /**
+   * Return the probability with which {@link #sample(Tracer, float)} picks the specified light, by
+   * its index within the scene, at the specified point.
+   */
+  float probability(int light, float x, float y, float z) {
+    if (power[0] + falloffPower[0] <= 0) {
+      return 0;
+    }
+    var k = position[light];
+    var node = 0;
+    var probability = 1f;
+    while (count[node] > 1) {
+      var left = child[node];
+      var a = importance(left, x, y, z);
+      var b = importance(left + 1, x, y, z);
+      var pLeft = a / (a + b);
+      if (k < first[left + 1]) {
+        node = left;
+        probability *= pLeft;
+      } else {
+        node = left + 1;
+        probability *= 1 - pLeft;
+      }
+    }
+    return probability;
+  }
+
+  /**
+   * Return a uniform random number in [0, 1) determined by the specified point and sample number,
+   * so that shading a point gives the same result whichever thread, or renderer, shades it.
+   */
+  static float random(float x, float y, float z, int sample) {
+    var h =
+        (long) Float.floatToRawIntBits(x) * 0x9e3779b97f4a7c15L
+            ^ (long) Float.floatToRawIntBits(y) * 0xc2b2ae3d27d4eb4fL
+            ^ (long) Float.floatToRawIntBits(z) * 0x165667b19e3779f9L
+            ^ sample * 0x27d4eb2f165667c5L;
+    // the SplitMix64 finalizer
+    h = (h ^ h >>> 30) * 0xbf58476d1ce4e5b9L;
+    h = (h ^ h >>> 27) * 0x94d049bb133111ebL;
+    h ^= h >>> 31;
+    return (h >>> 40) * 0x1p-24f;
+  }
+}
@@ -0,0 +1,72 @@
+package com.gregjandl.raytracer.rtlib;
+
+/**
+ * The parts of the Phong lighting model which depend only on a material and a light, for each of a
+ * scene's materials and lights, so that shading a point doesn't recompute them.
+ *
+ * <p>For each pair there are {@link #SIZE} constants: the effective color (the material's color
+ * times the light's), the ambient contribution (the effective color times the material's ambient
+ * reflectivity) and the specular color (the light's color times the material's specular
+ * reflectivity). See {@link Material#lighting(PointLight, float[], int, MutableVector3,
+ * MutableVector3, MutableVector3, float, MutableVector3, MutableColor)}.
+ *
+ * <p>The table has a row for each material, by its id in the scene's {@link MaterialRegistry},
+ * and is replaced along with the registry.
+ */
+final class LightingTable {
+  /** The number of constants for each material and light. */
+  static final int SIZE = 9;
+
+  private final int lightCount;
+
+  /** The constants, for each material and then each light. */
+  final float[] constants;
+
+  /**
+   * Build a table for the materials in the specified registry and the specified scene's lights.
+   *
+   * @param materials the registry of the scene's materials
+   * @param scene the scene
+   */
+  LightingTable(MaterialRegistry materials, Scene scene) {
+    lightCount = scene.getLightCount();
+    constants = new float[materials.size() * lightCount * SIZE];
+    for (int id = 0; id < materials.size(); ++id) {
+      var material = materials.get(id);
+      for (int light = 0; light < lightCount; ++light) {
+        compute(material, scene.getLight(light), constants, (id * lightCount + light) * SIZE);
+      }
+    }
+  }
+
+  /**
+   * Return the offset within {@link #constants} of the constants of the specified material and
+   * light.
+   *
+   * @param material the material's id
+   * @param light the light's index within the scene
+   */
+  int offset(int material, int light) {
+    return (material * lightCount + light) * SIZE;
+  }
+
+  /**
+   * Compute the constants for the specified material and light into {@code into}, from {@code at}.
+   */
+  static void compute(Material material, PointLight light, float[] into, int at) {
+    var color = material.getColor();
+    var lightColor = light.getColor();
+    var effectiveR = color.getR() * lightColor.getR();
+    var effectiveG = color.getG() * lightColor.getG();
+    var effectiveB = color.getB() * lightColor.getB();
+    into[at] = effectiveR;
+    into[at + 1] = effectiveG;
+    into[at + 2] = effectiveB;
+    into[at + 3] = effectiveR * material.getAmbient();
+    into[at + 4] = effectiveG * material.getAmbient();
+    into[at + 5] = effectiveB * material.getAmbient();
+    into[at + 6] = lightColor.getR() * material.getSpecular();
+    into[at + 7] = lightColor.getG() * material.getSpecular();
+    into[at + 8] = lightColor.getB() * material.getSpecular();
+  }
+}
@@ -1,14 +1,53 @@
 package com.gregjandl.raytracer.rtlib;
 
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /** Represents the material of an object in the Phong lighting model. */
 public class Material {
+  /** The number of intervals in a specular response table. */
+  static final int SPECULAR_TABLE_SIZE = 2048;
+
+  /**
+   * The range of {@code (1 - x) * shininess} covered by a specular response table, beyond which
+   * {@code x^shininess} is less than {@code e^-16} and taken to be 0.
+   */
+  static final float SPECULAR_TABLE_RANGE = 16;
+
+  /**
+   * The largest difference between {@link #specularResponse(float)} and {@code Math.pow} for
+   * {@code x} in [0, 1].
+   */
+  static final float SPECULAR_ERROR = 1e-5f;
+
+  /** The number of specular response tables kept for materials to share. */
+  static final int SPECULAR_TABLE_CACHE_SIZE = 64;
+
+  /**
+   * Recently built specular response tables, shared by materials with the same shininess. Each
+   * shininess has one slot, by its hash, and a table replaces whichever table was in its slot, so
+   * no more than {@link #SPECULAR_TABLE_CACHE_SIZE} tables are kept however many shininesses are
+   * used.
+   */
+  private static final AtomicReferenceArray<SpecularTable> specularTables =
+      new AtomicReferenceArray<>(SPECULAR_TABLE_CACHE_SIZE);
+
   private final Color color;
   private final float ambient;
   private final float diffuse;
   private final float specular;
   private final float shininess;
+  private final float reflective;
+  private final float transparency;
+  private final float refractiveIndex;
+  private final Texture texture;
+  private final Pattern pattern;
+
+  /** The specular response table, or {@code null} if the shininess is less than 2. */
+  private final float[] specularTable;
+
+  /** Maps {@code 1 - x} to a position in the specular response table. */
+  private final float specularScale;
 
   private Material(Builder builder) {
     color = builder.color;
@@ -16,6 +55,74 @@ public class Material {
     diffuse = builder.diffuse;
     specular = builder.specular;
     shininess = builder.shininess;
+    reflective = builder.reflective;
+    transparency = builder.transparency;
+    refractiveIndex = builder.refractiveIndex;
+    texture = builder.texture;
+    pattern = builder.pattern;
+    if (shininess >= 2 && shininess < Float.POSITIVE_INFINITY) {
+      specularTable = sharedSpecularTable(shininess);
+      specularScale = shininess * SPECULAR_TABLE_SIZE / SPECULAR_TABLE_RANGE;
+    } else {
+      specularTable = null;
+      specularScale = 0;
+    }
+  }
+
+  /** A specular response table, and the shininess it's for. */
+  private record SpecularTable(float shininess, float[] values) {}
+
+  /** Return the specular response table for the specified shininess, building it if necessary. */
+  private static float[] sharedSpecularTable(float shininess) {
+    // the top bits of a Fibonacci hash, since a round shininess has only its top bits set, and
+    // those differ little between shininesses of the same magnitude
+    var slot =
+        Float.floatToIntBits(shininess) * 0x9E3779B9
+            >>> Integer.numberOfLeadingZeros(SPECULAR_TABLE_CACHE_SIZE - 1);
+    var cached = specularTables.get(slot);
+    if (cached != null && cached.shininess() == shininess) {
+      return cached.values();
+    }
+    var values = specularTable(shininess);
+    specularTables.set(slot, new SpecularTable(shininess, values));
+    return values;
+  }
+
+  /**
+   * Build the table of {@code x^shininess} at evenly spaced values of {@code u = (1 - x) *
+   * shininess} from 0 to {@link #SPECULAR_TABLE_RANGE}.
+   *
+   * <p>As a function of {@code u}, {@code x^shininess = (1 - u / shininess)^shininess}, which is
+   * about {@code e^-u} whatever the shininess, and for a shininess of at least 2 its second
+   * derivative is between 0 and 1. Linear interpolation between entries {@code h} apart is
+   * therefore within {@code h² / 8} of it, which for 2048 entries over [0, 16] is under 8e-6, and
+   * beyond the table it's at most {@code e^-16}, about 1e-7.
+   */
+  private static float[] specularTable(float shininess) {
+    var table = new float[SPECULAR_TABLE_SIZE + 1];
+    for (int i = 0; i <= SPECULAR_TABLE_SIZE; ++i) {
+      var u = (double) i * SPECULAR_TABLE_RANGE / SPECULAR_TABLE_SIZE;
+      table[i] = (float) Math.pow(Math.max(0, 1 - u / shininess), shininess);
+    }
+    return table;
+  }
+
+  /**
+   * Return {@code x^shininess} for {@code x} in [0, 1], the specular response at a point where the
+   * cosine of the angle between the reflected light and the eye is {@code x}, to within {@link
+   * #SPECULAR_ERROR}. Shininesses less than 2 use {@code Math.pow}.
+   */
+  float specularResponse(float x) {
+    if (specularTable == null) {
+      return (float) Math.pow(x, shininess);
+    }
+    var u = Math.max(0, (1 - x) * specularScale);
+    var i = (int) u;
+    if (i >= SPECULAR_TABLE_SIZE) {
+      return 0;
+    }
+    var t0 = specularTable[i];
+    return t0 + (specularTable[i + 1] - t0) * (u - i);
   }
 
   /**
@@ -72,13 +179,73 @@ public class Material {
     return shininess;
   }
 
+  /**
+   * Returns the reflectivity of this material: the fraction of the color seen in the direction of
+   * a mirror reflection which is added to the color of the surface.
+   *
+   * <p>In the range [0.0,1.0], with 0.0 (the default) being not reflective at all.
+   *
+   * @return the reflectivity
+   */
+  public float getReflective() {
+    return reflective;
+  }
+
+  /**
+   * Returns the transparency of this material: the fraction of the color seen through the surface,
+   * refracted according to the refractive index, which is added to the color of the surface.
+   *
+   * <p>In the range [0.0,1.0], with 0.0 (the default) being opaque.
+   *
+   * @return the transparency
+   */
+  public float getTransparency() {
+    return transparency;
+  }
+
+  /**
+   * Returns the refractive index of this material, which determines how much light bends entering
+   * or leaving it. Typical values are 1.0 (the default) for a vacuum or air, 1.333 for water, 1.52
+   * for glass and 2.417 for diamond.
+   *
+   * @return the refractive index
+   */
+  public float getRefractiveIndex() {
+    return refractiveIndex;
+  }
+
+  /**
+   * Returns the texture of this material, if any, whose color at a point is multiplied by the
+   * material's color to give the color of the surface there.
+   *
+   * @return the texture, or {@code null} if the material has none
+   */
+  public Texture getTexture() {
+    return texture;
+  }
+
+  /**
+   * Returns the pattern of this material, if any, whose color at a point is multiplied by the
+   * material's color (and its texture's, if it has one) to give the color of the surface there.
+   *
+   * @return the pattern, or {@code null} if the material has none
+   */
+  public Pattern getPattern() {
+    return pattern;
+  }
+
+  /** Return whether the color of this material varies over a surface, by a texture or pattern. */
+  boolean isTextured() {
+    return texture != null || pattern != null;
+  }
+
   /**
    * Compares this {@code Material} to the specified {@code object} for equality.
    *
    * @param o the object to compare
-   * @return {@code true} if and only if the object is a {@code Material} with the same Color and
-   *     with reflection fields differing by less than {@link Utils#EPSILON} from those of this
-   *     object.
+   * @return {@code true} if and only if the object is a {@code Material} with the same Color,
+   *     texture and pattern and with reflection fields differing by less than {@link
+   *     Utils#EPSILON} from those of this object.
    */
   @Override
   public boolean equals(Object o) {
@@ -93,12 +260,27 @@ public class Material {
         && Utils.aboutEqual(material.diffuse, diffuse)
         && Utils.aboutEqual(material.specular, specular)
         && Utils.aboutEqual(material.shininess, shininess)
-        && color.equals(material.color);
+        && Utils.aboutEqual(material.reflective, reflective)
+        && Utils.aboutEqual(material.transparency, transparency)
+        && Utils.aboutEqual(material.refractiveIndex, refractiveIndex)
+        && color.equals(material.color)
+        && texture == material.texture
+        && Objects.equals(pattern, material.pattern);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(color, ambient, diffuse, specular, shininess);
+    return Objects.hash(
+        color,
+        ambient,
+        diffuse,
+        specular,
+        shininess,
+        reflective,
+        transparency,
+        refractiveIndex,
+        texture,
+        pattern);
   }
 
   @Override
@@ -113,6 +295,16 @@ public class Material {
         + specular
         + ", shininess="
         + shininess
+        + ", reflective="
+        + reflective
+        + ", transparency="
+        + transparency
+        + ", refractiveIndex="
+        + refractiveIndex
+        + ", texture="
+        + texture
+        + ", pattern="
+        + pattern
         + '}';
   }
 
@@ -129,40 +321,101 @@ public class Material {
    * @return the resulting apparent color of the illuminated point
    */
   Color lighting(PointLight light, Point point, Vector3 eyeVec, Vector3 normal, boolean inShadow) {
-    // combine surface color with light's color
-    var effectiveColor = color.multiply(light.getColor());
-
-    // find direction to light source
-    var lightVec = (light.getPosition().subtract(point)).normalize();
+    return lighting(light, point, eyeVec, normal, inShadow ? 0 : 1);
+  }
 
-    // ambient contribution
-    var result = effectiveColor.multiply(ambient);
+  /**
+   * Return the effective color of reflected light from a point on a surface using Phong model, as
+   * {@link #lighting(PointLight, Point, Vector3, Vector3, boolean)} does, for a point which sees
+   * only a fraction of the light, such as one in the penumbra of an {@link AreaLight}. The diffuse
+   * and specular components are scaled by the fraction.
+   *
+   * @param light the light source
+   * @param point the point on the surface
+   * @param eyeVec the vector pointing toward the eye position
+   * @param normal the normal vector at the point
+   * @param visibility the fraction of the light visible from the point, from 0 (in shadow) to 1
+   * @return the resulting apparent color of the illuminated point
+   */
+  Color lighting(PointLight light, Point point, Vector3 eyeVec, Vector3 normal, float visibility) {
+    var constants = new float[LightingTable.SIZE];
+    LightingTable.compute(this, light, constants, 0);
+    var result = new MutableColor();
+    lighting(
+        light,
+        constants,
+        0,
+        new MutableVector3().set(point),
+        new MutableVector3().set(eyeVec),
+        new MutableVector3().set(normal),
+        visibility,
+        new MutableVector3(),
+        result);
+    return result.toColor();
+  }
 
-    // Points in shadow have no diffuse or specular contribution
-    if (inShadow) {
-      return result;
+  /**
+   * Add the effective color of reflected light from a point on a surface using Phong model to the
+   * specified {@code MutableColor}, given the constants for this material and the light computed
+   * by {@link LightingTable#compute(Material, PointLight, float[], int)}. This is {@link
+   * #lighting(PointLight, Point, Vector3, Vector3, float)} for hot paths, which allocates nothing.
+   *
+   * @param light the light source
+   * @param constants the lighting constants for this material and the light
+   * @param at the offset of the constants within {@code constants}
+   * @param point the point on the surface
+   * @param eyeVec the vector pointing toward the eye position
+   * @param normal the normal vector at the point
+   * @param visibility the fraction of the light visible from the point, from 0 (in shadow) to 1
+   * @param scratch a vector whose contents may be overwritten
+   * @param result the color to which the apparent color of the illuminated point is added
+   */
+  void lighting(
+      PointLight light,
+      float[] constants,
+      int at,
+      MutableVector3 point,
+      MutableVector3 eyeVec,
+      MutableVector3 normal,
+      float visibility,
+      MutableVector3 scratch,
+      MutableColor result) {
+    var attenuation = 1f;
+    if (light.hasFalloff()) {
+      attenuation = light.attenuation(scratch.setBetween(point, light.getPosition()).magnitude());
     }
 
-    var lightDotNormal = lightVec.dot(normal);
+    // diffuse contribution, relative to the effective color
+    var factor = 0f;
+
+    // Points in shadow have no diffuse or specular contribution
+    if (visibility > 0) {
+      // find direction to light source
+      var lightVec = scratch.setBetween(point, light.getPosition()).normalize();
+      var lightDotNormal = lightVec.dot(normal);
 
-    if (lightDotNormal >= 0) {
-      // light is on same side of the surface as eye, so add diffuse contribution
-      result = result.add(effectiveColor.multiply(diffuse).multiply(lightDotNormal));
+      if (lightDotNormal >= 0) {
+        // light is on same side of the surface as eye, so add diffuse contribution
+        factor = diffuse * lightDotNormal * visibility;
 
-      var reflectDotEye = lightVec.negate().reflect(normal).dot(eyeVec);
+        var reflectDotEye = lightVec.negate().reflect(normal).dot(eyeVec);
 
-      if (reflectDotEye > 0) {
-        // Light reflects toward eye, so add specular contribution
-        result =
-            result.add(
-                light
-                    .getColor()
-                    .multiply(specular)
-                    .multiply((float) Math.pow(reflectDotEye, shininess)));
+        if (reflectDotEye > 0) {
+          // Light reflects toward eye, so add specular contribution
+          var s = specularResponse(reflectDotEye) * attenuation * visibility;
+          result.set(
+              result.r + constants[at + 6] * s,
+              result.g + constants[at + 7] * s,
+              result.b + constants[at + 8] * s);
+        }
       }
     }
 
-    return result;
+    // ambient plus diffuse contribution
+    result.set(
+        result.r + (constants[at + 3] + constants[at] * factor) * attenuation,
+        result.g + (constants[at + 4] + constants[at + 1] * factor) * attenuation,
+        result.b + (constants[at + 5] + constants[at + 2] * factor) * attenuation);
   }
 
   /**
@@ -175,6 +428,11 @@ public class Material {
    *  <tr><td>{@code diffuse}</td>   <td>0.9</td></tr>
    *  <tr><td>{@code specular}</td>  <td>0.9</td></tr>
    *  <tr><td>{@code shininess}</td> <td>200.0</td></tr>
+   *  <tr><td>{@code reflective}</td> <td>0.0</td></tr>
+   *  <tr><td>{@code transparency}</td> <td>0.0</td></tr>
+   *  <tr><td>{@code refractiveIndex}</td> <td>1.0</td></tr>
+   *  <tr><td>{@code texture}</td>   <td>{@code null}</td></tr>
+   *  <tr><td>{@code pattern}</td>   <td>{@code null}</td></tr>
    * </table>
    */
   public static class Builder {
@@ -183,6 +441,11 @@ public class Material {
     private float diffuse = 0.9f;
     private float specular = 0.9f;
     private float shininess = 200;
+    private float reflective = 0;
+    private float transparency = 0;
+    private float refractiveIndex = 1;
+    private Texture texture;
+    private Pattern pattern;
 
     /** Creates a {@code Material#Builder} with default component values. */
     public Builder() {}
@@ -199,6 +462,11 @@ public class Material {
       diffuse = other.diffuse;
       specular = other.specular;
       shininess = other.shininess;
+      reflective = other.reflective;
+      transparency = other.transparency;
+      refractiveIndex = other.refractiveIndex;
+      texture = other.texture;
+      pattern = other.pattern;
     }
 
     /**
@@ -256,6 +524,61 @@ public class Material {
       return this;
     }
 
+    /**
+     * Sets this builder's reflective component to the specified value.
+     *
+     * @param val the reflective value to use when building a {@code Material}
+     * @return this builder, to facilitate a fluent interface
+     */
+    public Builder reflective(float val) {
+      reflective = val;
+      return this;
+    }
+
+    /**
+     * Sets this builder's transparency component to the specified value.
+     *
+     * @param val the transparency value to use when building a {@code Material}
+     * @return this builder, to facilitate a fluent interface
+     */
+    public Builder transparency(float val) {
+      transparency = val;
+      return this;
+    }
+
+    /**
+     * Sets this builder's refractive index component to the specified value.
+     *
+     * @param val the refractive index to use when building a {@code Material}
+     * @return this builder, to facilitate a fluent interface
+     */
+    public Builder refractiveIndex(float val) {
+      refractiveIndex = val;
+      return this;
+    }
+
+    /**
+     * Sets this builder's texture to the specified {@code Texture}, or {@code null} for none.
+     *
+     * @param t the texture to use when building a {@code Material}
+     * @return this builder, to facilitate a fluent interface
+     */
+    public Builder texture(Texture t) {
+      texture = t;
+      return this;
+    }
+
+    /**
+     * Sets this builder's pattern to the specified {@code Pattern}, or {@code null} for none.
+     *
+     * @param p the pattern to use when building a {@code Material}
+     * @return this builder, to facilitate a fluent interface
+     */
+    public Builder pattern(Pattern p) {
+      pattern = p;
+      return this;
+    }
+
     /**
      * Returns a new {@code Material} instance, using the current component values.
      *
@@ -0,0 +1,96 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The distinct materials of a scene's objects, numbered densely from 0, so that hits can refer to
+ * a material by an {@code int} and per-material data, such as the {@link LightingTable}, can be
+ * kept in arrays indexed by it.
+ *
+ * <p>Materials are deduplicated by {@link Material#equals(Object)}, so a scene of thousands of
+ * shapes each built with its own, equal, material has just one id for them all, and each shape is
+ * given the one instance of its material the registry keeps, so that the others can be collected.
+ * Since materials which are equal only to within {@link Utils#EPSILON} needn't have the same hash
+ * code, they may or may not share an id.
+ *
+ * <p>A registry is built from the materials the scene's objects have at the time, and is out of
+ * date, as {@link #isStale(Scene)} checks, once any of them is given a new material.
+ */
+final class MaterialRegistry {
+  /** The distinct materials, by id. */
+  private final Material[] materials;
+
+  /** Each object's material id, by its index within the scene. */
+  private final int[] objectIds;
+
+  /**
+   * Build a registry of the materials of the specified scene's objects, giving each object whose
+   * material is equal to, but not the same as, one registered before it that one instead.
+   *
+   * @param scene the scene
+   */
+  MaterialRegistry(Scene scene) {
+    var objectCount = scene.getObjectCount();
+    var ids = new HashMap<Material, Integer>();
+    var distinct = new ArrayList<Material>();
+    objectIds = new int[objectCount];
+    for (int i = 0; i < objectCount; ++i) {
+      var object = scene.getObject(i);
+      var material = object.getMaterial();
+      var id =
+          ids.computeIfAbsent(
+              material,
+              m -> {
+                distinct.add(m);
+                return distinct.size() - 1;
+              });
+      objectIds[i] = id;
+      if (distinct.get(id) != material) {
+        object.setMaterial(distinct.get(id));
+      }
+    }
+    materials = distinct.toArray(new Material[0]);
+  }
+
+  /**
+   * Return the material with the specified id.
+   *
+   * @param id the id of a material in the registry
+   * @return the material
+   */
+  Material get(int id) {
+    return materials[id];
+  }
+
+  /**
+   * Return the id of the material of the specified object.
+   *
+   * @param objectIndex the object's index within the scene
+   * @return the id of its material
+   */
+  int idOf(int objectIndex) {
+    return objectIds[objectIndex];
+  }
+
+  /** Return the number of distinct materials, one more than the largest id. */
+  int size() {
+    return materials.length;
+  }
+
+  /**
+   * Return whether the specified scene's objects have changed, or any of them has been given a new
+   * material, since this registry was built from it.
+   */
+  boolean isStale(Scene scene) {
+    if (scene.getObjectCount() != objectIds.length) {
+      return true;
+    }
+    for (int i = 0; i < objectIds.length; ++i) {
+      if (scene.getObject(i).getMaterial() != materials[objectIds[i]]) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
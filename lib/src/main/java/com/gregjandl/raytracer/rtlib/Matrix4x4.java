@@ -1,9 +1,19 @@
 package com.gregjandl.raytracer.rtlib;
 
 import java.util.Arrays;
-
-/** {@code Matrix4x4} represents a 4x4 float matrix. */
+import java.util.Objects;
+
+/**
+ * {@code Matrix4x4} represents a 4x4 float matrix.
+ *
+ * <p>When the JVM is started with {@code --add-modules jdk.incubator.vector}, multiplication,
+ * inversion of non-affine matrices, and bulk transformation use vectorized kernels built on the
+ * Vector API.
+ */
 public class Matrix4x4 {
+  /** Vectorized kernels, or {@code null} if the Vector API isn't available. */
+  static final MatrixKernels KERNELS = MatrixKernels.load();
+
   private final float[] m = new float[16];
 
   /** Constructs a 4x4 matrix initialized to all zeros. */
@@ -285,6 +295,24 @@ public class Matrix4x4 {
     return b.toString();
   }
 
+  /** Return the backing array, in row major order. */
+  float[] m() {
+    return m;
+  }
+
+  /**
+   * Tests if this matrix is affine, i.e., its bottom row is {@code 0 0 0 1}. All of the
+   * transformations which can be built with this class's factory methods are affine.
+   *
+   * <p>Affine matrices are multiplied, inverted, and have their determinant calculated using
+   * cheaper 3x4 specializations.
+   *
+   * @return {@code true} if the matrix is affine, {@code false} if not.
+   */
+  public boolean isAffine() {
+    return m[12] == 0 && m[13] == 0 && m[14] == 0 && m[15] == 1;
+  }
+
   /**
    * Returns a {@code Matrix4x4} whose value is (this * other).
    *
@@ -292,21 +320,47 @@ public class Matrix4x4 {
    * @return this * other
    */
   public Matrix4x4 multiply(Matrix4x4 other) {
+    if (KERNELS != null) {
+      var res = new Matrix4x4();
+      KERNELS.multiply(m, other.m, res.m);
+      return res;
+    }
+    return isAffine() && other.isAffine() ? multiplyAffine(other) : multiplyGeneral(other);
+  }
+
+  Matrix4x4 multiplyGeneral(Matrix4x4 other) {
     var res = new Matrix4x4();
-    for (int r = 0; r < 4; ++r) {
+    var a = m;
+    var b = other.m;
+    var r = res.m;
+    for (int row = 0; row < 16; row += 4) {
       for (int c = 0; c < 4; ++c) {
-        res.set(
-            r,
-            c,
-            get(r, 0) * other.get(0, c)
-                + get(r, 1) * other.get(1, c)
-                + get(r, 2) * other.get(2, c)
-                + get(r, 3) * other.get(3, c));
+        r[row + c] =
+            a[row] * b[c] + a[row + 1] * b[4 + c] + a[row + 2] * b[8 + c] + a[row + 3] * b[12 + c];
       }
     }
     return res;
   }
 
+  /** Multiply, assuming both matrices have a bottom row of {@code 0 0 0 1}. */
+  Matrix4x4 multiplyAffine(Matrix4x4 other) {
+    var res = new Matrix4x4();
+    var a = m;
+    var b = other.m;
+    var r = res.m;
+    for (int row = 0; row < 12; row += 4) {
+      var a0 = a[row];
+      var a1 = a[row + 1];
+      var a2 = a[row + 2];
+      r[row] = a0 * b[0] + a1 * b[4] + a2 * b[8];
+      r[row + 1] = a0 * b[1] + a1 * b[5] + a2 * b[9];
+      r[row + 2] = a0 * b[2] + a1 * b[6] + a2 * b[10];
+      r[row + 3] = a0 * b[3] + a1 * b[7] + a2 * b[11] + a[row + 3];
+    }
+    r[15] = 1;
+    return res;
+  }
+
   /**
    * Returns a {@code Matrix4x4} whose value is (this * v).
    *
@@ -314,10 +368,13 @@ public class Matrix4x4 {
    * @return this * v
    */
   public Vector3 multiply(Vector3 v) {
+    var x = v.getX();
+    var y = v.getY();
+    var z = v.getZ();
     return new Vector3(
-        get(0, 0) * v.getX() + get(0, 1) * v.getY() + get(0, 2) * v.getZ(),
-        get(1, 0) * v.getX() + get(1, 1) * v.getY() + get(1, 2) * v.getZ(),
-        get(2, 0) * v.getX() + get(2, 1) * v.getY() + get(2, 2) * v.getZ());
+        m[0] * x + m[1] * y + m[2] * z,
+        m[4] * x + m[5] * y + m[6] * z,
+        m[8] * x + m[9] * y + m[10] * z);
   }
 
   /**
@@ -327,10 +384,81 @@ public class Matrix4x4 {
    * @return this * p
    */
   public Point multiply(Point p) {
+    var x = p.getX();
+    var y = p.getY();
+    var z = p.getZ();
     return new Point(
-        get(0, 0) * p.getX() + get(0, 1) * p.getY() + get(0, 2) * p.getZ() + get(0, 3),
-        get(1, 0) * p.getX() + get(1, 1) * p.getY() + get(1, 2) * p.getZ() + get(1, 3),
-        get(2, 0) * p.getX() + get(2, 1) * p.getY() + get(2, 2) * p.getZ() + get(2, 3));
+        m[0] * x + m[1] * y + m[2] * z + m[3],
+        m[4] * x + m[5] * y + m[6] * z + m[7],
+        m[8] * x + m[9] * y + m[10] * z + m[11]);
+  }
+
+  /**
+   * Transforms {@code count} points, packed as consecutive x, y, z coordinates, from {@code src}
+   * into {@code dst}. As with {@link #multiply(Point)}, the bottom row of the matrix is ignored.
+   *
+   * <p>The source and destination ranges may be the same array, to transform points in place.
+   *
+   * @param src the source coordinates
+   * @param srcOffset index in {@code src} of the first point's x coordinate
+   * @param dst the destination coordinates
+   * @param dstOffset index in {@code dst} of the first point's x coordinate
+   * @param count the number of points to transform
+   */
+  public void transformPoints(float[] src, int srcOffset, float[] dst, int dstOffset, int count) {
+    transform(src, srcOffset, dst, dstOffset, count, 1);
+  }
+
+  /**
+   * Transforms {@code count} vectors, packed as consecutive x, y, z components, from {@code src}
+   * into {@code dst}. As with {@link #multiply(Vector3)}, translation is not applied.
+   *
+   * <p>The source and destination ranges may be the same array, to transform vectors in place.
+   *
+   * @param src the source components
+   * @param srcOffset index in {@code src} of the first vector's x component
+   * @param dst the destination components
+   * @param dstOffset index in {@code dst} of the first vector's x component
+   * @param count the number of vectors to transform
+   */
+  public void transformVectors(float[] src, int srcOffset, float[] dst, int dstOffset, int count) {
+    transform(src, srcOffset, dst, dstOffset, count, 0);
+  }
+
+  private void transform(float[] src, int srcOffset, float[] dst, int dstOffset, int count, int w) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count must be non-negative: " + count);
+    }
+    Objects.checkFromIndexSize(srcOffset, count * 3, src.length);
+    Objects.checkFromIndexSize(dstOffset, count * 3, dst.length);
+    if (KERNELS != null) {
+      KERNELS.transform(m, src, srcOffset, dst, dstOffset, count, w);
+    } else {
+      transformScalar(src, srcOffset, dst, dstOffset, count, w);
+    }
+  }
+
+  void transformScalar(float[] src, int srcOffset, float[] dst, int dstOffset, int count, int w) {
+    var m0 = m[0];
+    var m1 = m[1];
+    var m2 = m[2];
+    var m3 = m[3] * w;
+    var m4 = m[4];
+    var m5 = m[5];
+    var m6 = m[6];
+    var m7 = m[7] * w;
+    var m8 = m[8];
+    var m9 = m[9];
+    var m10 = m[10];
+    var m11 = m[11] * w;
+    for (int i = 0; i < count * 3; i += 3) {
+      var x = src[srcOffset + i];
+      var y = src[srcOffset + i + 1];
+      var z = src[srcOffset + i + 2];
+      dst[dstOffset + i] = m0 * x + m1 * y + m2 * z + m3;
+      dst[dstOffset + i + 1] = m4 * x + m5 * y + m6 * z + m7;
+      dst[dstOffset + i + 2] = m8 * x + m9 * y + m10 * z + m11;
+    }
   }
 
   /**
@@ -342,7 +470,7 @@ public class Matrix4x4 {
     var ret = new Matrix4x4();
     for (int c = 0; c < 4; ++c) {
       for (int r = 0; r < 4; ++r) {
-        ret.set(c, r, get(r, c));
+        ret.m[c * 4 + r] = m[r * 4 + c];
       }
     }
     return ret;
@@ -354,22 +482,32 @@ public class Matrix4x4 {
    * @return the determinant
    */
   public float determinant() {
+    if (isAffine()) {
+      // expanding along the bottom row leaves only the upper left 3x3 determinant
+      return m[0] * (m[5] * m[10] - m[6] * m[9])
+          - m[1] * (m[4] * m[10] - m[6] * m[8])
+          + m[2] * (m[4] * m[9] - m[5] * m[8]);
+    }
+    return determinantGeneral();
+  }
+
+  float determinantGeneral() {
     /*
      * cSpell:ignore CCRR
      * 2x2 determinants needed to compute the full determinant.
      * name format is dCCRR where CC == columns and RR == rows
      */
-    var d2323 = get(2, 2) * get(3, 3) - get(2, 3) * get(3, 2);
-    var d1323 = get(2, 1) * get(3, 3) - get(2, 3) * get(3, 1);
-    var d1223 = get(2, 1) * get(3, 2) - get(2, 2) * get(3, 1);
-    var d0323 = get(2, 0) * get(3, 3) - get(2, 3) * get(3, 0);
-    var d0223 = get(2, 0) * get(3, 2) - get(2, 2) * get(3, 0);
-    var d0123 = get(2, 0) * get(3, 1) - get(2, 1) * get(3, 0);
-
-    return get(0, 0) * (get(1, 1) * d2323 - get(1, 2) * d1323 + get(1, 3) * d1223)
-        - get(0, 1) * (get(1, 0) * d2323 - get(1, 2) * d0323 + get(1, 3) * d0223)
-        + get(0, 2) * (get(1, 0) * d1323 - get(1, 1) * d0323 + get(1, 3) * d0123)
-        - get(0, 3) * (get(1, 0) * d1223 - get(1, 1) * d0223 + get(1, 2) * d0123);
+    var d2323 = m[10] * m[15] - m[11] * m[14];
+    var d1323 = m[9] * m[15] - m[11] * m[13];
+    var d1223 = m[9] * m[14] - m[10] * m[13];
+    var d0323 = m[8] * m[15] - m[11] * m[12];
+    var d0223 = m[8] * m[14] - m[10] * m[12];
+    var d0123 = m[8] * m[13] - m[9] * m[12];
+
+    return m[0] * (m[5] * d2323 - m[6] * d1323 + m[7] * d1223)
+        - m[1] * (m[4] * d2323 - m[6] * d0323 + m[7] * d0223)
+        + m[2] * (m[4] * d1323 - m[5] * d0323 + m[7] * d0123)
+        - m[3] * (m[4] * d1223 - m[5] * d0223 + m[6] * d0123);
   }
 
   /**
@@ -387,23 +525,76 @@ public class Matrix4x4 {
    * @return a matrix that is the inverse of this matrix
    */
   public Matrix4x4 invert() {
+    // the scalar affine inverse does far less work than a full 4x4 inverse, vectorized or not
+    if (isAffine()) {
+      return invertAffine();
+    }
+    if (KERNELS != null) {
+      var inverted = new Matrix4x4();
+      if (!KERNELS.invert(m, inverted.m)) {
+        throw new ArithmeticException("Matrix with 0 determinant not invertible.");
+      }
+      return inverted;
+    }
+    return invertGeneral();
+  }
+
+  /**
+   * Invert, assuming a bottom row of {@code 0 0 0 1}: the result is the inverse of the upper left
+   * 3x3 matrix, with the translation column replaced by the inverse applied to the negated
+   * translation.
+   */
+  Matrix4x4 invertAffine() {
+    // cofactors of the upper left 3x3 matrix
+    var c00 = m[5] * m[10] - m[6] * m[9];
+    var c01 = m[6] * m[8] - m[4] * m[10];
+    var c02 = m[4] * m[9] - m[5] * m[8];
+
+    var determinant = m[0] * c00 + m[1] * c01 + m[2] * c02;
+    if (determinant == 0) {
+      throw new ArithmeticException("Matrix with 0 determinant not invertible.");
+    }
+    var invDeterminant = 1 / determinant;
+
+    var inverted = new Matrix4x4();
+    var r = inverted.m;
+    r[0] = c00 * invDeterminant;
+    r[1] = (m[2] * m[9] - m[1] * m[10]) * invDeterminant;
+    r[2] = (m[1] * m[6] - m[2] * m[5]) * invDeterminant;
+    r[4] = c01 * invDeterminant;
+    r[5] = (m[0] * m[10] - m[2] * m[8]) * invDeterminant;
+    r[6] = (m[2] * m[4] - m[0] * m[6]) * invDeterminant;
+    r[8] = c02 * invDeterminant;
+    r[9] = (m[1] * m[8] - m[0] * m[9]) * invDeterminant;
+    r[10] = (m[0] * m[5] - m[1] * m[4]) * invDeterminant;
+
+    var tx = m[3];
+    var ty = m[7];
+    var tz = m[11];
+    r[3] = -(r[0] * tx + r[1] * ty + r[2] * tz);
+    r[7] = -(r[4] * tx + r[5] * ty + r[6] * tz);
+    r[11] = -(r[8] * tx + r[9] * ty + r[10] * tz);
+    r[15] = 1;
+    return inverted;
+  }
 
+  Matrix4x4 invertGeneral() {
     /*
      * 2x2 determinants needed to compute the full determinant.
      * name format is dCCRR where CC == columns and RR == rows
      */
-    var d2323 = get(2, 2) * get(3, 3) - get(2, 3) * get(3, 2);
-    var d1323 = get(2, 1) * get(3, 3) - get(2, 3) * get(3, 1);
-    var d1223 = get(2, 1) * get(3, 2) - get(2, 2) * get(3, 1);
-    var d0323 = get(2, 0) * get(3, 3) - get(2, 3) * get(3, 0);
-    var d0223 = get(2, 0) * get(3, 2) - get(2, 2) * get(3, 0);
-    var d0123 = get(2, 0) * get(3, 1) - get(2, 1) * get(3, 0);
+    var d2323 = m[10] * m[15] - m[11] * m[14];
+    var d1323 = m[9] * m[15] - m[11] * m[13];
+    var d1223 = m[9] * m[14] - m[10] * m[13];
+    var d0323 = m[8] * m[15] - m[11] * m[12];
+    var d0223 = m[8] * m[14] - m[10] * m[12];
+    var d0123 = m[8] * m[13] - m[9] * m[12];
 
     var determinant =
-        get(0, 0) * (get(1, 1) * d2323 - get(1, 2) * d1323 + get(1, 3) * d1223)
-            - get(0, 1) * (get(1, 0) * d2323 - get(1, 2) * d0323 + get(1, 3) * d0223)
-            + get(0, 2) * (get(1, 0) * d1323 - get(1, 1) * d0323 + get(1, 3) * d0123)
-            - get(0, 3) * (get(1, 0) * d1223 - get(1, 1) * d0223 + get(1, 2) * d0123);
+        m[0] * (m[5] * d2323 - m[6] * d1323 + m[7] * d1223)
+            - m[1] * (m[4] * d2323 - m[6] * d0323 + m[7] * d0223)
+            + m[2] * (m[4] * d1323 - m[5] * d0323 + m[7] * d0123)
+            - m[3] * (m[4] * d1223 - m[5] * d0223 + m[6] * d0123);
 
     if (determinant == 0) {
       throw new ArithmeticException("Matrix with 0 determinant not invertible.");
@@ -415,55 +606,40 @@ public class Matrix4x4 {
      * Additional 2x2 determinants needed to invert matrix
      * names are dCCRR where CC == cols && RR == rows
      */
-    var d2313 = get(1, 2) * get(3, 3) - get(1, 3) * get(3, 2);
-    var d1313 = get(1, 1) * get(3, 3) - get(1, 3) * get(3, 1);
-    var d1213 = get(1, 1) * get(3, 2) - get(1, 2) * get(3, 1);
-    var d2312 = get(1, 2) * get(2, 3) - get(1, 3) * get(2, 2);
-    var d1312 = get(1, 1) * get(2, 3) - get(1, 3) * get(2, 1);
-    var d1212 = get(1, 1) * get(2, 2) - get(1, 2) * get(2, 1);
-    var d0313 = get(1, 0) * get(3, 3) - get(1, 3) * get(3, 0);
-    var d0213 = get(1, 0) * get(3, 2) - get(1, 2) * get(3, 0);
-    var d0312 = get(1, 0) * get(2, 3) - get(1, 3) * get(2, 0);
-    var d0212 = get(1, 0) * get(2, 2) - get(1, 2) * get(2, 0);
-    var d0113 = get(1, 0) * get(3, 1) - get(1, 1) * get(3, 0);
-    var d0112 = get(1, 0) * get(2, 1) - get(1, 1) * get(2, 0);
-
-    Matrix4x4 inverted = new Matrix4x4();
-    inverted.set(
-        0, 0, invDeterminant * (get(1, 1) * d2323 - get(1, 2) * d1323 + get(1, 3) * d1223));
-    inverted.set(
-        0, 1, invDeterminant * -(get(0, 1) * d2323 - get(0, 2) * d1323 + get(0, 3) * d1223));
-    inverted.set(
-        0, 2, invDeterminant * (get(0, 1) * d2313 - get(0, 2) * d1313 + get(0, 3) * d1213));
-    inverted.set(
-        0, 3, invDeterminant * -(get(0, 1) * d2312 - get(0, 2) * d1312 + get(0, 3) * d1212));
-
-    inverted.set(
-        1, 0, invDeterminant * -(get(1, 0) * d2323 - get(1, 2) * d0323 + get(1, 3) * d0223));
-    inverted.set(
-        1, 1, invDeterminant * (get(0, 0) * d2323 - get(0, 2) * d0323 + get(0, 3) * d0223));
-    inverted.set(
-        1, 2, invDeterminant * -(get(0, 0) * d2313 - get(0, 2) * d0313 + get(0, 3) * d0213));
-    inverted.set(
-        1, 3, invDeterminant * (get(0, 0) * d2312 - get(0, 2) * d0312 + get(0, 3) * d0212));
-
-    inverted.set(
-        2, 0, invDeterminant * (get(1, 0) * d1323 - get(1, 1) * d0323 + get(1, 3) * d0123));
-    inverted.set(
-        2, 1, invDeterminant * -(get(0, 0) * d1323 - get(0, 1) * d0323 + get(0, 3) * d0123));
-    inverted.set(
-        2, 2, invDeterminant * (get(0, 0) * d1313 - get(0, 1) * d0313 + get(0, 3) * d0113));
-    inverted.set(
-        2, 3, invDeterminant * -(get(0, 0) * d1312 - get(0, 1) * d0312 + get(0, 3) * d0112));
-
-    inverted.set(
-        3, 0, invDeterminant * -(get(1, 0) * d1223 - get(1, 1) * d0223 + get(1, 2) * d0123));
-    inverted.set(
-        3, 1, invDeterminant * (get(0, 0) * d1223 - get(0, 1) * d0223 + get(0, 2) * d0123));
-    inverted.set(
-        3, 2, invDeterminant * -(get(0, 0) * d1213 - get(0, 1) * d0213 + get(0, 2) * d0113));
-    inverted.set(
-        3, 3, invDeterminant * (get(0, 0) * d1212 - get(0, 1) * d0212 + get(0, 2) * d0112));
+    var d2313 = m[6] * m[15] - m[7] * m[14];
+    var d1313 = m[5] * m[15] - m[7] * m[13];
+    var d1213 = m[5] * m[14] - m[6] * m[13];
+    var d2312 = m[6] * m[11] - m[7] * m[10];
+    var d1312 = m[5] * m[11] - m[7] * m[9];
+    var d1212 = m[5] * m[10] - m[6] * m[9];
+    var d0313 = m[4] * m[15] - m[7] * m[12];
+    var d0213 = m[4] * m[14] - m[6] * m[12];
+    var d0312 = m[4] * m[11] - m[7] * m[8];
+    var d0212 = m[4] * m[10] - m[6] * m[8];
+    var d0113 = m[4] * m[13] - m[5] * m[12];
+    var d0112 = m[4] * m[9] - m[5] * m[8];
+
+    var inverted = new Matrix4x4();
+    var r = inverted.m;
+    r[0] = invDeterminant * (m[5] * d2323 - m[6] * d1323 + m[7] * d1223);
+    r[1] = invDeterminant * -(m[1] * d2323 - m[2] * d1323 + m[3] * d1223);
+    r[2] = invDeterminant * (m[1] * d2313 - m[2] * d1313 + m[3] * d1213);
+    r[3] = invDeterminant * -(m[1] * d2312 - m[2] * d1312 + m[3] * d1212);
+
+    r[4] = invDeterminant * -(m[4] * d2323 - m[6] * d0323 + m[7] * d0223);
+    r[5] = invDeterminant * (m[0] * d2323 - m[2] * d0323 + m[3] * d0223);
+    r[6] = invDeterminant * -(m[0] * d2313 - m[2] * d0313 + m[3] * d0213);
+    r[7] = invDeterminant * (m[0] * d2312 - m[2] * d0312 + m[3] * d0212);
+
+    r[8] = invDeterminant * (m[4] * d1323 - m[5] * d0323 + m[7] * d0123);
+    r[9] = invDeterminant * -(m[0] * d1323 - m[1] * d0323 + m[3] * d0123);
+    r[10] = invDeterminant * (m[0] * d1313 - m[1] * d0313 + m[3] * d0113);
+    r[11] = invDeterminant * -(m[0] * d1312 - m[1] * d0312 + m[3] * d0112);
+
+    r[12] = invDeterminant * -(m[4] * d1223 - m[5] * d0223 + m[6] * d0123);
+    r[13] = invDeterminant * (m[0] * d1223 - m[1] * d0223 + m[2] * d0123);
+    r[14] = invDeterminant * -(m[0] * d1213 - m[1] * d0213 + m[2] * d0113);
+    r[15] = invDeterminant * (m[0] * d1212 - m[1] * d0212 + m[2] * d0112);
 
     return inverted;
   }
@@ -0,0 +1,60 @@
+package com.gregjandl.raytracer.rtlib;
+
+/**
+ * Vectorized implementations of the hot {@code Matrix4x4} operations, over row major {@code
+ * float[16]} matrices.
+ *
+ * <p>The only implementation uses the incubating Vector API, so it's loaded reflectively and only
+ * when the {@code jdk.incubator.vector} module is present (i.e., when the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}). Otherwise {@code Matrix4x4} uses its scalar code.
+ */
+interface MatrixKernels {
+  /** System property which, when {@code true}, disables the vectorized kernels. */
+  String DISABLE_PROPERTY = "rtlib.simd.disable";
+
+  /**
+   * Return the vectorized kernels if they're available, otherwise {@code null}.
+   *
+   * @return the kernels, or {@code null}
+   */
+  static MatrixKernels load() {
+    if (Boolean.getBoolean(DISABLE_PROPERTY)
+        || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+      return null;
+    }
+    try {
+      return (MatrixKernels)
+          Class.forName(MatrixKernels.class.getPackageName() + ".VectorMatrixKernels")
+              .getDeclaredConstructor()
+              .newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+
+  /**
+   * Store {@code a * b} in {@code r}, which must not be either of the operands.
+   *
+   * @param a left operand
+   * @param b right operand
+   * @param r result
+   */
+  void multiply(float[] a, float[] b, float[] r);
+
+  /**
+   * Store the inverse of {@code a} in {@code r}, which must not be {@code a}.
+   *
+   * @param a matrix to invert
+   * @param r result
+   * @return {@code false} if {@code a} is singular, in which case {@code r} is undefined
+   */
+  boolean invert(float[] a, float[] r);
+
+  /**
+   * Transform {@code count} packed x, y, z triples from {@code src} into {@code dst}, treating them
+   * as points if {@code w} is 1 or vectors if it is 0. The ranges have already been checked, and
+   * may be the same.
+   */
+  void transform(
+      float[] a, float[] src, int srcOffset, float[] dst, int dstOffset, int count, int w);
+}
@@ -0,0 +1,216 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A flat bounding volume hierarchy over the triangles of a {@code TriangleMesh}.
+ *
+ * <p>Nodes are stored in two parallel buffers so that the hierarchy can live either on the heap or
+ * in a memory mapped file:
+ *
+ * <ul>
+ *   <li>{@code bounds} holds six floats per node: min x, y, z followed by max x, y, z
+ *   <li>{@code nodes} holds two ints per node: for a leaf, the first triangle and the (positive)
+ *       triangle count; for an interior node, the index of the left child (the right child
+ *       immediately follows it) and a count of zero
+ * </ul>
+ *
+ * <p>Building the hierarchy reorders the triangles so that each leaf covers a contiguous run of
+ * them, so a {@code MeshBvh} always carries the index buffer it was built for.
+ */
+final class MeshBvh {
+  /** Maximum number of triangles stored in a single leaf. */
+  static final int LEAF_SIZE = 4;
+
+  /** Maximum depth of the hierarchy, which bounds the size of the traversal stack. */
+  static final int MAX_DEPTH = 64;
+
+  final FloatBuffer bounds;
+  final IntBuffer nodes;
+  final IntBuffer indices;
+
+  MeshBvh(FloatBuffer bounds, IntBuffer nodes, IntBuffer indices) {
+    this.bounds = bounds;
+    this.nodes = nodes;
+    this.indices = indices;
+  }
+
+  /**
+   * Return the number of nodes in this hierarchy.
+   *
+   * @return the node count
+   */
+  int getNodeCount() {
+    return nodes.limit() / 2;
+  }
+
+  /**
+   * Build a hierarchy over the specified triangles.
+   *
+   * @param vertices packed x, y, z vertex coordinates
+   * @param indices packed vertex indices, three per triangle
+   * @return the hierarchy, along with a reordered copy of {@code indices}
+   */
+  static MeshBvh build(FloatBuffer vertices, IntBuffer indices) {
+    var triCount = indices.limit() / 3;
+    var order = new int[triCount];
+    var centroids = new float[triCount * 3];
+    var triBounds = new float[triCount * 6];
+    var lo = new float[3];
+    var hi = new float[3];
+    for (int t = 0; t < triCount; ++t) {
+      order[t] = t;
+      Arrays.fill(lo, Float.MAX_VALUE);
+      Arrays.fill(hi, -Float.MAX_VALUE);
+      for (int k = 0; k < 3; ++k) {
+        var v = indices.get(t * 3 + k) * 3;
+        for (int a = 0; a < 3; ++a) {
+          var c = vertices.get(v + a);
+          lo[a] = Math.min(lo[a], c);
+          hi[a] = Math.max(hi[a], c);
+        }
+      }
+      for (int a = 0; a < 3; ++a) {
+        triBounds[t * 6 + a] = lo[a];
+        triBounds[t * 6 + 3 + a] = hi[a];
+        centroids[t * 3 + a] = (lo[a] + hi[a]) * 0.5f;
+      }
+    }
+
+    var builder = new Builder(Math.max(1, 2 * triCount / LEAF_SIZE + 1));
+    builder.alloc();
+    // work stack entries: node, first, count, depth
+    var stack = new int[MAX_DEPTH * 4 + 4];
+    var cLo = new float[3];
+    var cHi = new float[3];
+    var sp = 0;
+    stack[sp++] = 0;
+    stack[sp++] = 0;
+    stack[sp++] = triCount;
+    stack[sp++] = 0;
+    while (sp > 0) {
+      var depth = stack[--sp];
+      var count = stack[--sp];
+      var first = stack[--sp];
+      var node = stack[--sp];
+
+      Arrays.fill(lo, Float.MAX_VALUE);
+      Arrays.fill(hi, -Float.MAX_VALUE);
+      Arrays.fill(cLo, Float.MAX_VALUE);
+      Arrays.fill(cHi, -Float.MAX_VALUE);
+      for (int i = first; i < first + count; ++i) {
+        var t = order[i];
+        for (int a = 0; a < 3; ++a) {
+          lo[a] = Math.min(lo[a], triBounds[t * 6 + a]);
+          hi[a] = Math.max(hi[a], triBounds[t * 6 + 3 + a]);
+          cLo[a] = Math.min(cLo[a], centroids[t * 3 + a]);
+          cHi[a] = Math.max(cHi[a], centroids[t * 3 + a]);
+        }
+      }
+      builder.setBounds(node, lo, hi);
+
+      var axis = 0;
+      for (int a = 1; a < 3; ++a) {
+        if (cHi[a] - cLo[a] > cHi[axis] - cLo[axis]) {
+          axis = a;
+        }
+      }
+
+      if (count <= LEAF_SIZE || depth >= MAX_DEPTH - 1 || cHi[axis] == cLo[axis]) {
+        builder.setNode(node, first, count);
+        continue;
+      }
+
+      var mid = first + count / 2;
+      select(order, centroids, axis, first, first + count - 1, mid);
+      var left = builder.alloc();
+      builder.alloc();
+      builder.setNode(node, left, 0);
+
+      stack[sp++] = left;
+      stack[sp++] = first;
+      stack[sp++] = mid - first;
+      stack[sp++] = depth + 1;
+      stack[sp++] = left + 1;
+      stack[sp++] = mid;
+      stack[sp++] = first + count - mid;
+      stack[sp++] = depth + 1;
+    }
+
+    var sorted = new int[triCount * 3];
+    for (int i = 0; i < triCount; ++i) {
+      sorted[i * 3] = indices.get(order[i] * 3);
+      sorted[i * 3 + 1] = indices.get(order[i] * 3 + 1);
+      sorted[i * 3 + 2] = indices.get(order[i] * 3 + 2);
+    }
+
+    return new MeshBvh(
+        FloatBuffer.wrap(Arrays.copyOf(builder.bounds, builder.count * 6)),
+        IntBuffer.wrap(Arrays.copyOf(builder.nodes, builder.count * 2)),
+        IntBuffer.wrap(sorted));
+  }
+
+  /**
+   * Partially sort {@code order[lo..hi]} so the element at {@code k} is the one that would be
+   * there if the range were sorted by centroid along {@code axis} (i.e., quickselect).
+   */
+  private static void select(int[] order, float[] centroids, int axis, int lo, int hi, int k) {
+    while (hi > lo) {
+      var pivot = centroids[order[(lo + hi) >>> 1] * 3 + axis];
+      var i = lo;
+      var j = hi;
+      while (i <= j) {
+        while (centroids[order[i] * 3 + axis] < pivot) {
+          ++i;
+        }
+        while (centroids[order[j] * 3 + axis] > pivot) {
+          --j;
+        }
+        if (i <= j) {
+          var tmp = order[i];
+          order[i++] = order[j];
+          order[j--] = tmp;
+        }
+      }
+      if (k <= j) {
+        hi = j;
+      } else if (k >= i) {
+        lo = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  /** Growable node storage used while building. */
+  private static final class Builder {
+    float[] bounds;
+    int[] nodes;
+    int count;
+
+    Builder(int capacity) {
+      bounds = new float[capacity * 6];
+      nodes = new int[capacity * 2];
+    }
+
+    int alloc() {
+      if (count * 2 == nodes.length) {
+        bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        nodes = Arrays.copyOf(nodes, nodes.length * 2);
+      }
+      return count++;
+    }
+
+    void setBounds(int node, float[] lo, float[] hi) {
+      System.arraycopy(lo, 0, bounds, node * 6, 3);
+      System.arraycopy(hi, 0, bounds, node * 6 + 3, 3);
+    }
+
+    void setNode(int node, int a, int b) {
+      nodes[node * 2] = a;
+      nodes[node * 2 + 1] = b;
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes {@code TriangleMesh}es in a compact binary format designed to be memory mapped.
+ *
+ * <p>A mesh file is a 64 byte header followed by four sections, each starting on a 64 byte
+ * boundary. All values are little endian.
+ *
+ * <pre>
+ *   offset  size  contents
+ *   0       8     magic "RTMESH\0\0"
+ *   8       4     format version (1)
+ *   12      4     vertex count
+ *   16      4     triangle count
+ *   20      4     BVH node count
+ *   24      8     offset of the vertex section      (float x, y, z per vertex)
+ *   32      8     offset of the index section       (int v0, v1, v2 per triangle)
+ *   40      8     offset of the BVH bounds section  (float min x, y, z, max x, y, z per node)
+ *   48      8     offset of the BVH node section    (int first/child, count per node)
+ *   56      8     reserved (0)
+ * </pre>
+ *
+ * <p>The triangles are stored in BVH order along with the hierarchy itself, so loading a mesh only
+ * maps the sections into memory; nothing is parsed, copied, or built. Since the mapping is read
+ * only and shared, every process which loads the same file shares the same pages of the OS page
+ * cache.
+ */
+public final class MeshFile {
+  static final long MAGIC = 0x0000_4853_454d_5452L; // "RTMESH\0\0" read little endian
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+  static final int ALIGNMENT = 64;
+
+  private MeshFile() {}
+
+  /**
+   * Write the specified mesh to the specified file, replacing any existing contents. The mesh's
+   * BVH is built first, if it hasn't been already.
+   *
+   * @param mesh the mesh to write
+   * @param path the file to write to
+   * @throws IOException if the file can't be written
+   */
+  public static void write(TriangleMesh mesh, Path path) throws IOException {
+    var bvh = mesh.getBvh();
+    var vertices = mesh.getVertices();
+    var indices = bvh.indices.duplicate().rewind();
+    var bounds = bvh.bounds.duplicate().rewind();
+    var nodes = bvh.nodes.duplicate().rewind();
+
+    var vertexOffset = (long) HEADER_SIZE;
+    var indexOffset = align(vertexOffset + 4L * vertices.limit());
+    var boundsOffset = align(indexOffset + 4L * indices.limit());
+    var nodesOffset = align(boundsOffset + 4L * bounds.limit());
+
+    var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header
+        .putLong(MAGIC)
+        .putInt(VERSION)
+        .putInt(mesh.getVertexCount())
+        .putInt(mesh.getTriangleCount())
+        .putInt(bvh.getNodeCount())
+        .putLong(vertexOffset)
+        .putLong(indexOffset)
+        .putLong(boundsOffset)
+        .putLong(nodesOffset)
+        .putLong(0)
+        .flip();
+
+    try (var channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      writeFully(channel, header, 0);
+      var buf = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+      writeFloats(channel, buf, vertices, vertexOffset);
+      writeInts(channel, buf, indices, indexOffset);
+      writeFloats(channel, buf, bounds, boundsOffset);
+      writeInts(channel, buf, nodes, nodesOffset);
+    }
+  }
+
+  /**
+   * Load a mesh from the specified file by memory mapping it.
+   *
+   * <p>The file's contents are trusted: out of range vertex indices or a malformed hierarchy are
+   * not detected until the mesh is intersected.
+   *
+   * @param path the file to load
+   * @return the mesh, backed by the mapped file
+   * @throws IOException if the file can't be read or isn't a mesh file
+   */
+  public static TriangleMesh load(Path path) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining()) {
+        if (channel.read(header, header.position()) < 0) {
+          throw new IOException(path + " is too short to be a mesh file");
+        }
+      }
+      header.flip();
+      if (header.getLong() != MAGIC) {
+        throw new IOException(path + " is not a mesh file");
+      }
+      var version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException(path + " has unsupported mesh file version " + version);
+      }
+      var vertexCount = header.getInt();
+      var triangleCount = header.getInt();
+      var nodeCount = header.getInt();
+      var vertexOffset = header.getLong();
+      var indexOffset = header.getLong();
+      var boundsOffset = header.getLong();
+      var nodesOffset = header.getLong();
+      if (vertexCount < 0 || triangleCount < 0 || nodeCount < 1) {
+        throw new IOException(path + " has a corrupt mesh file header");
+      }
+
+      var vertices = map(channel, vertexOffset, 3L * vertexCount).asFloatBuffer();
+      var indices = map(channel, indexOffset, 3L * triangleCount).asIntBuffer();
+      var bounds = map(channel, boundsOffset, 6L * nodeCount).asFloatBuffer();
+      var nodes = map(channel, nodesOffset, 2L * nodeCount).asIntBuffer();
+      return new TriangleMesh(vertices, indices, new MeshBvh(bounds, nodes, indices));
+    }
+  }
+
+  private static ByteBuffer map(FileChannel channel, long offset, long count) throws IOException {
+    var size = count * 4;
+    if (offset < HEADER_SIZE || size > Integer.MAX_VALUE || offset + size > channel.size()) {
+      throw new IOException("Mesh file section [" + offset + ", " + (offset + size) + ") invalid");
+    }
+    return channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static long align(long offset) {
+    return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+  }
+
+  private static void writeFloats(FileChannel channel, ByteBuffer buf, FloatBuffer src, long pos)
+      throws IOException {
+    while (src.hasRemaining()) {
+      buf.clear();
+      var n = Math.min(src.remaining(), buf.capacity() / 4);
+      var view = buf.asFloatBuffer();
+      view.put(src.slice().limit(n));
+      src.position(src.position() + n);
+      buf.limit(n * 4);
+      pos += writeFully(channel, buf, pos);
+    }
+  }
+
+  private static void writeInts(FileChannel channel, ByteBuffer buf, IntBuffer src, long pos)
+      throws IOException {
+    while (src.hasRemaining()) {
+      buf.clear();
+      var n = Math.min(src.remaining(), buf.capacity() / 4);
+      var view = buf.asIntBuffer();
+      view.put(src.slice().limit(n));
+      src.position(src.position() + n);
+      buf.limit(n * 4);
+      pos += writeFully(channel, buf, pos);
+    }
+  }
+
+  private static int writeFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+    var written = 0;
+    while (buf.hasRemaining()) {
+      written += channel.write(buf, pos + written);
+    }
+    return written;
+  }
+}
@@ -0,0 +1,60 @@
+package com.gregjandl.raytracer.rtlib;
+
+/**
+ * A mutable RGB color, for accumulating light in hot paths without allocating.
+ *
+ * <p>As with {@link MutableVector3}, operations modify the color in place and return it, and
+ * instances must never be shared between threads or escape the code that owns them.
+ */
+final class MutableColor {
+  float r;
+  float g;
+  float b;
+
+  MutableColor set(float r, float g, float b) {
+    this.r = r;
+    this.g = g;
+    this.b = b;
+    return this;
+  }
+
+  MutableColor set(Color c) {
+    return set(c.getR(), c.getG(), c.getB());
+  }
+
+  MutableColor add(MutableColor c) {
+    return set(r + c.r, g + c.g, b + c.b);
+  }
+
+  /** Add {@code c * n} to this. */
+  MutableColor addScaled(MutableColor c, float n) {
+    return set(r + c.r * n, g + c.g * n, b + c.b * n);
+  }
+
+  /** Add {@code c * n} to this. */
+  MutableColor addScaled(Color c, float n) {
+    return set(r + c.getR() * n, g + c.getG() * n, b + c.getB() * n);
+  }
+
+  MutableColor multiply(float n) {
+    return set(r * n, g * n, b * n);
+  }
+
+  MutableColor multiply(Color c) {
+    return set(r * c.getR(), g * c.getG(), b * c.getB());
+  }
+
+  /** Pack this color into an RGB {@code int}, as {@link Color#toRgb(float, float, float)}. */
+  int toRgb() {
+    return Color.toRgb(r, g, b);
+  }
+
+  Color toColor() {
+    return new Color(r, g, b);
+  }
+
+  @Override
+  public String toString() {
+    return "MutableColor{r=" + r + ", g=" + g + ", b=" + b + '}';
+  }
+}
@@ -0,0 +1,124 @@
+package com.gregjandl.raytracer.rtlib;
+
+/**
+ * A mutable vector (or point) in 3D space, for reuse as scratch space in hot paths.
+ *
+ * <p>Unlike {@link Vector3} and {@link Point}, whose operations all return new objects, the
+ * operations of a {@code MutableVector3} modify it in place and return it, so that a chain of
+ * operations allocates nothing. Since a single mutable type serves for both points and vectors,
+ * whether the translation of a matrix applies is chosen by calling {@link
+ * #transformPoint(Matrix4x4)} or {@link #transformVector(Matrix4x4)}.
+ *
+ * <p>Instances must never be shared between threads or escape the code that owns them.
+ */
+final class MutableVector3 {
+  float x;
+  float y;
+  float z;
+
+  MutableVector3 set(float x, float y, float z) {
+    this.x = x;
+    this.y = y;
+    this.z = z;
+    return this;
+  }
+
+  MutableVector3 set(MutableVector3 v) {
+    return set(v.x, v.y, v.z);
+  }
+
+  MutableVector3 set(Point p) {
+    return set(p.getX(), p.getY(), p.getZ());
+  }
+
+  MutableVector3 set(Vector3 v) {
+    return set(v.getX(), v.getY(), v.getZ());
+  }
+
+  /** Set this to {@code to - from}, the vector between two points. */
+  MutableVector3 setBetween(MutableVector3 from, Point to) {
+    return set(to.getX() - from.x, to.getY() - from.y, to.getZ() - from.z);
+  }
+
+  MutableVector3 add(MutableVector3 v) {
+    return set(x + v.x, y + v.y, z + v.z);
+  }
+
+  MutableVector3 subtract(MutableVector3 v) {
+    return set(x - v.x, y - v.y, z - v.z);
+  }
+
+  MutableVector3 subtract(float vx, float vy, float vz) {
+    return set(x - vx, y - vy, z - vz);
+  }
+
+  /** Add {@code v * n} to this. */
+  MutableVector3 addScaled(MutableVector3 v, float n) {
+    return set(x + v.x * n, y + v.y * n, z + v.z * n);
+  }
+
+  MutableVector3 multiply(float n) {
+    return set(x * n, y * n, z * n);
+  }
+
+  MutableVector3 divide(float n) {
+    return set(x / n, y / n, z / n);
+  }
+
+  MutableVector3 negate() {
+    return set(-x, -y, -z);
+  }
+
+  float dot(MutableVector3 v) {
+    return x * v.x + y * v.y + z * v.z;
+  }
+
+  float magnitude() {
+    return (float) Math.sqrt(x * x + y * y + z * z);
+  }
+
+  /**
+   * Normalize this vector. Unlike {@link Vector3#normalize()}, a zero vector doesn't throw, but
+   * becomes {@code NaN}s.
+   */
+  MutableVector3 normalize() {
+    return divide(magnitude());
+  }
+
+  /** Reflect this vector around the specified normal. */
+  MutableVector3 reflect(MutableVector3 normal) {
+    var twoDot = dot(normal) * 2;
+    return set(x - normal.x * twoDot, y - normal.y * twoDot, z - normal.z * twoDot);
+  }
+
+  /** Multiply this point by the specified matrix, including its translation. */
+  MutableVector3 transformPoint(Matrix4x4 matrix) {
+    var m = matrix.m();
+    return set(
+        m[0] * x + m[1] * y + m[2] * z + m[3],
+        m[4] * x + m[5] * y + m[6] * z + m[7],
+        m[8] * x + m[9] * y + m[10] * z + m[11]);
+  }
+
+  /** Multiply this vector by the specified matrix, ignoring its translation. */
+  MutableVector3 transformVector(Matrix4x4 matrix) {
+    var m = matrix.m();
+    return set(
+        m[0] * x + m[1] * y + m[2] * z,
+        m[4] * x + m[5] * y + m[6] * z,
+        m[8] * x + m[9] * y + m[10] * z);
+  }
+
+  Point toPoint() {
+    return new Point(x, y, z);
+  }
+
+  Vector3 toVector3() {
+    return new Vector3(x, y, z);
+  }
+
+  @Override
+  public String toString() {
+    return "MutableVector3{x=" + x + ", y=" + y + ", z=" + z + '}';
+  }
+}
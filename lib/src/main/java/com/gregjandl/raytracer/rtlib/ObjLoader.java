@@ -0,0 +1,363 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Loads the geometry of Wavefront OBJ files into {@code TriangleMesh}es.
+ *
+ * <p>Only vertex positions ({@code v}) and faces ({@code f}) are read; faces with more than three
+ * vertices are triangulated as fans, and everything else (normals, texture coordinates, groups,
+ * materials, comments) is skipped. Both absolute and relative (negative) vertex references are
+ * supported.
+ *
+ * <p>To cope with very large files, the file is read through a {@code FileChannel} in chunks which
+ * are split on line boundaries and parsed in parallel. Numbers are parsed directly from the bytes
+ * of each chunk, without creating intermediate {@code String}s, into primitive arrays which are
+ * then stitched together into the mesh's vertex and index arrays.
+ */
+public final class ObjLoader {
+  /** Default size of the chunks into which files are split for parsing. */
+  static final int DEFAULT_CHUNK_SIZE = 16 << 20;
+
+  private static final double[] POWERS_OF_TEN = new double[39];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private ObjLoader() {}
+
+  /**
+   * Load the geometry of the specified OBJ file as a single {@code TriangleMesh}.
+   *
+   * @param path the file to load
+   * @return a mesh containing all of the file's faces
+   * @throws IOException if the file can't be read or is malformed
+   */
+  public static TriangleMesh load(Path path) throws IOException {
+    return load(path, DEFAULT_CHUNK_SIZE);
+  }
+
+  static TriangleMesh load(Path path, int chunkSize) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      var chunks = split(channel, chunkSize);
+      Chunk[] parsed;
+      try {
+        parsed =
+            chunks.parallelStream()
+                .map(
+                    range -> {
+                      try {
+                        return parse(channel, range[0], range[1]);
+                      } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                      }
+                    })
+                .toArray(Chunk[]::new);
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      return merge(parsed, path);
+    }
+  }
+
+  /** Split the channel's contents into ranges of about {@code chunkSize} ending with a newline. */
+  private static List<long[]> split(FileChannel channel, int chunkSize) throws IOException {
+    var size = channel.size();
+    var chunks = new ArrayList<long[]>();
+    var probe = ByteBuffer.allocate(4096);
+    var start = 0L;
+    while (start < size) {
+      var end = Math.min(size, start + chunkSize);
+      // extend the chunk to just past the next newline, so no line is split between chunks
+      while (end < size) {
+        probe.clear();
+        var n = channel.read(probe, end);
+        var i = 0;
+        while (i < n && probe.get(i) != '\n') {
+          ++i;
+        }
+        end += i;
+        if (i < n) {
+          ++end;
+          break;
+        }
+      }
+      chunks.add(new long[] {start, end});
+      start = end;
+    }
+    return chunks;
+  }
+
+  private static Chunk parse(FileChannel channel, long start, long end) throws IOException {
+    var buf = ByteBuffer.allocate((int) (end - start));
+    while (buf.hasRemaining()) {
+      if (channel.read(buf, start + buf.position()) < 0) {
+        throw new IOException("Unexpected end of OBJ file at " + (start + buf.position()));
+      }
+    }
+    var chunk = new Chunk(buf.array(), start);
+    chunk.parse();
+    return chunk;
+  }
+
+  private static TriangleMesh merge(Chunk[] chunks, Path path) throws IOException {
+    var vertexOffsets = new int[chunks.length + 1];
+    var indexOffsets = new int[chunks.length + 1];
+    for (int c = 0; c < chunks.length; ++c) {
+      vertexOffsets[c + 1] = Math.addExact(vertexOffsets[c], chunks[c].vertices.size / 3);
+      indexOffsets[c + 1] = Math.addExact(indexOffsets[c], chunks[c].indices.size);
+    }
+    var vertexCount = vertexOffsets[chunks.length];
+    var vertices = new float[vertexCount * 3];
+    var indices = new int[indexOffsets[chunks.length]];
+
+    var bad =
+        IntStream.range(0, chunks.length)
+            .parallel()
+            .flatMap(
+                c -> {
+                  var chunk = chunks[c];
+                  System.arraycopy(
+                      chunk.vertices.data, 0, vertices, vertexOffsets[c] * 3, chunk.vertices.size);
+                  var base = indexOffsets[c];
+                  System.arraycopy(chunk.indices.data, 0, indices, base, chunk.indices.size);
+                  // relative references were stored relative to the chunk's first vertex
+                  for (int i = 0; i < chunk.relative.size; ++i) {
+                    indices[base + chunk.relative.data[i]] += vertexOffsets[c];
+                  }
+                  for (int i = base; i < base + chunk.indices.size; ++i) {
+                    if (indices[i] < 0 || indices[i] >= vertexCount) {
+                      return IntStream.of(indices[i]);
+                    }
+                  }
+                  return IntStream.empty();
+                })
+            .findAny();
+    if (bad.isPresent()) {
+      throw new IOException(
+          "Malformed OBJ file "
+              + path
+              + ": vertex reference out of range ("
+              + bad.getAsInt()
+              + ")");
+    }
+    return new TriangleMesh(vertices, indices);
+  }
+
+  /** A growable array of {@code float}s. */
+  private static final class FloatArray {
+    float[] data = new float[1024];
+    int size;
+
+    void add(float f) {
+      if (size == data.length) {
+        data = Arrays.copyOf(data, size * 2);
+      }
+      data[size++] = f;
+    }
+  }
+
+  /** A growable array of {@code int}s. */
+  private static final class IntArray {
+    int[] data = new int[1024];
+    int size;
+
+    void add(int i) {
+      if (size == data.length) {
+        data = Arrays.copyOf(data, size * 2);
+      }
+      data[size++] = i;
+    }
+  }
+
+  /** The parsing state and results for one chunk of the file. */
+  private static final class Chunk {
+    final byte[] bytes;
+    final long fileOffset;
+    final FloatArray vertices = new FloatArray();
+    final IntArray indices = new IntArray();
+    /** Positions in {@code indices} which hold references relative to this chunk's vertices. */
+    final IntArray relative = new IntArray();
+
+    private final IntArray face = new IntArray();
+    private final IntArray faceRelative = new IntArray();
+    private int pos;
+
+    Chunk(byte[] bytes, long fileOffset) {
+      this.bytes = bytes;
+      this.fileOffset = fileOffset;
+    }
+
+    void parse() throws IOException {
+      var len = bytes.length;
+      while (pos < len) {
+        skipBlanks();
+        if (pos + 1 < len && bytes[pos] == 'v' && isBlank(bytes[pos + 1])) {
+          ++pos;
+          vertices.add(parseFloat());
+          vertices.add(parseFloat());
+          vertices.add(parseFloat());
+        } else if (pos + 1 < len && bytes[pos] == 'f' && isBlank(bytes[pos + 1])) {
+          ++pos;
+          parseFace();
+        }
+        skipLine();
+      }
+    }
+
+    private void parseFace() throws IOException {
+      face.size = 0;
+      faceRelative.size = 0;
+      while (true) {
+        skipBlanks();
+        if (pos >= bytes.length || isEndOfLine(bytes[pos])) {
+          break;
+        }
+        var ref = parseInt();
+        if (ref > 0) {
+          face.add(ref - 1);
+          faceRelative.add(0);
+        } else if (ref < 0) {
+          face.add(vertices.size / 3 + ref);
+          faceRelative.add(1);
+        } else {
+          throw error("vertex reference of 0");
+        }
+        // skip any texture coordinate and normal references (v/vt/vn, v//vn)
+        while (pos < bytes.length && !isBlank(bytes[pos]) && !isEndOfLine(bytes[pos])) {
+          ++pos;
+        }
+      }
+      if (face.size < 3) {
+        throw error("face with fewer than 3 vertices");
+      }
+      for (int i = 1; i < face.size - 1; ++i) {
+        addRef(0);
+        addRef(i);
+        addRef(i + 1);
+      }
+    }
+
+    private void addRef(int i) {
+      if (faceRelative.data[i] != 0) {
+        relative.add(indices.size);
+      }
+      indices.add(face.data[i]);
+    }
+
+    private int parseInt() throws IOException {
+      var negative = false;
+      if (pos < bytes.length && (bytes[pos] == '-' || bytes[pos] == '+')) {
+        negative = bytes[pos++] == '-';
+      }
+      var start = pos;
+      long val = 0;
+      while (pos < bytes.length && isDigit(bytes[pos])) {
+        val = val * 10 + (bytes[pos++] - '0');
+        if (val > Integer.MAX_VALUE) {
+          throw error("integer too large");
+        }
+      }
+      if (pos == start) {
+        throw error("expected an integer");
+      }
+      return (int) (negative ? -val : val);
+    }
+
+    private float parseFloat() throws IOException {
+      skipBlanks();
+      var negative = false;
+      if (pos < bytes.length && (bytes[pos] == '-' || bytes[pos] == '+')) {
+        negative = bytes[pos++] == '-';
+      }
+      long mantissa = 0;
+      var digits = 0;
+      var exponent = 0;
+      var start = pos;
+      while (pos < bytes.length && isDigit(bytes[pos])) {
+        if (digits < 18) {
+          mantissa = mantissa * 10 + (bytes[pos] - '0');
+          if (mantissa != 0) {
+            ++digits;
+          }
+        } else {
+          ++exponent;
+        }
+        ++pos;
+      }
+      if (pos < bytes.length && bytes[pos] == '.') {
+        ++pos;
+        while (pos < bytes.length && isDigit(bytes[pos])) {
+          if (digits < 18) {
+            mantissa = mantissa * 10 + (bytes[pos] - '0');
+            if (mantissa != 0) {
+              ++digits;
+            }
+            --exponent;
+          }
+          ++pos;
+        }
+      }
+      if (pos == start || (pos == start + 1 && bytes[start] == '.')) {
+        throw error("expected a number");
+      }
+      if (pos < bytes.length && (bytes[pos] == 'e' || bytes[pos] == 'E')) {
+        ++pos;
+        exponent += parseInt();
+      }
+
+      double val = mantissa;
+      if (exponent < 0) {
+        val = -exponent < POWERS_OF_TEN.length ? val / POWERS_OF_TEN[-exponent] : 0;
+      } else if (exponent > 0) {
+        val =
+            exponent < POWERS_OF_TEN.length
+                ? val * POWERS_OF_TEN[exponent]
+                : Double.POSITIVE_INFINITY;
+      }
+      return (float) (negative ? -val : val);
+    }
+
+    private void skipBlanks() {
+      while (pos < bytes.length && isBlank(bytes[pos])) {
+        ++pos;
+      }
+    }
+
+    private void skipLine() {
+      while (pos < bytes.length && bytes[pos] != '\n') {
+        ++pos;
+      }
+      ++pos;
+    }
+
+    private IOException error(String message) {
+      return new IOException("Malformed OBJ file at byte " + (fileOffset + pos) + ": " + message);
+    }
+
+    private static boolean isBlank(byte b) {
+      return b == ' ' || b == '\t';
+    }
+
+    private static boolean isEndOfLine(byte b) {
+      return b == '\n' || b == '\r';
+    }
+
+    private static boolean isDigit(byte b) {
+      return b >= '0' && b <= '9';
+    }
+  }
+}
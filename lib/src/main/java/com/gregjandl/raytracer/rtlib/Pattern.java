@@ -0,0 +1,258 @@
+package com.gregjandl.raytracer.rtlib;
+
+import com.gregjandl.raytracer.rtlib.AbstractShape.TransformClass;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A procedural pattern of color over space, such as stripes or noise, giving the color of a
+ * surface at each point on it.
+ *
+ * <p>Patterns are immutable, and are composed by building one pattern out of others: a {@link
+ * StripePattern} of two {@link #solid(Color)} patterns alternates between two colors, while a
+ * {@link CheckerPattern} of two {@link PerlinPattern}s alternates between two kinds of noise. Each
+ * pattern has its own transform, from the space of the pattern containing it (or, for the
+ * outermost pattern, from the object space of the shape it's on) to its own. A pattern is the same
+ * in its own space however it's transformed, so a unit stripe can be made narrower by scaling it
+ * down, or turned by rotating it.
+ *
+ * <p>Patterns are evaluated either one point at a time, or in batches over arrays of points, each
+ * pattern doing its own part of the work for the whole batch at once. Neither allocates, once the
+ * {@link Scratch} space it works in has grown to fit.
+ */
+public abstract class Pattern {
+  private final Matrix4x4 transform;
+
+  /** Whether the transform is the identity, so points needn't be transformed at all. */
+  private final boolean identity;
+
+  /** The top three rows of the inverse of the transform. */
+  private final float m00;
+  private final float m01;
+  private final float m02;
+  private final float m03;
+  private final float m10;
+  private final float m11;
+  private final float m12;
+  private final float m13;
+  private final float m20;
+  private final float m21;
+  private final float m22;
+  private final float m23;
+
+  /**
+   * Create a {@code Pattern} with the specified transform.
+   *
+   * @throws IllegalArgumentException if the transform isn't invertible
+   */
+  Pattern(Matrix4x4 transform) {
+    Objects.requireNonNull(transform);
+    this.transform = transform;
+    identity = TransformClass.of(transform) == TransformClass.IDENTITY;
+    if (!transform.isInvertible()) {
+      throw new IllegalArgumentException("Pattern transform must be invertible: " + transform);
+    }
+    var inverse = transform.invert();
+    m00 = inverse.get(0, 0);
+    m01 = inverse.get(0, 1);
+    m02 = inverse.get(0, 2);
+    m03 = inverse.get(0, 3);
+    m10 = inverse.get(1, 0);
+    m11 = inverse.get(1, 1);
+    m12 = inverse.get(1, 2);
+    m13 = inverse.get(1, 3);
+    m20 = inverse.get(2, 0);
+    m21 = inverse.get(2, 1);
+    m22 = inverse.get(2, 2);
+    m23 = inverse.get(2, 3);
+  }
+
+  /**
+   * Return a pattern of a single color everywhere, for building other patterns from.
+   *
+   * @param color the color of the pattern
+   * @return the pattern
+   */
+  public static Pattern solid(Color color) {
+    return new SolidPattern(color);
+  }
+
+  /**
+   * Return this {@code Pattern}'s transformation matrix, which is the identity unless it was
+   * created by {@link #withTransform(Matrix4x4)}.
+   *
+   * @return the transformation matrix
+   */
+  public Matrix4x4 getTransform() {
+    return transform;
+  }
+
+  /**
+   * Return a pattern which is this one with the specified transform in place of its own.
+   *
+   * @param t the transformation matrix of the new pattern
+   * @return the new pattern
+   * @throws IllegalArgumentException if the transform isn't invertible
+   */
+  public abstract Pattern withTransform(Matrix4x4 t);
+
+  /**
+   * Return the color of this pattern at the specified point, in the space containing the pattern.
+   *
+   * @param p the point
+   * @return the color there
+   */
+  public Color colorAt(Point p) {
+    var result = new MutableColor();
+    colorAt(p.getX(), p.getY(), p.getZ(), new Scratch(), result);
+    return result.toColor();
+  }
+
+  /**
+   * Set {@code result} to the color of this pattern at the specified point, in the space
+   * containing the pattern.
+   */
+  final void colorAt(float x, float y, float z, Scratch s, MutableColor result) {
+    if (identity) {
+      localColorAt(x, y, z, s, result);
+    } else {
+      localColorAt(
+          m00 * x + m01 * y + m02 * z + m03,
+          m10 * x + m11 * y + m12 * z + m13,
+          m20 * x + m21 * y + m22 * z + m23,
+          s,
+          result);
+    }
+  }
+
+  /**
+   * Set elements {@code from} (inclusive) to {@code to} (exclusive) of {@code r}, {@code g} and
+   * {@code b} to the color of this pattern at the points in the same elements of {@code x}, {@code
+   * y} and {@code z}, in the space containing the pattern. The colors are exactly those {@link
+   * #colorAt(float, float, float, Scratch, MutableColor)} gives.
+   */
+  final void colorAt(
+      float[] x,
+      float[] y,
+      float[] z,
+      int from,
+      int to,
+      Scratch s,
+      float[] r,
+      float[] g,
+      float[] b) {
+    if (identity) {
+      localColorAt(x, y, z, from, to, s, r, g, b);
+      return;
+    }
+    var lx = s.array(to);
+    var ly = s.array(to);
+    var lz = s.array(to);
+    for (int i = from; i < to; ++i) {
+      var px = x[i];
+      var py = y[i];
+      var pz = z[i];
+      lx[i] = m00 * px + m01 * py + m02 * pz + m03;
+      ly[i] = m10 * px + m11 * py + m12 * pz + m13;
+      lz[i] = m20 * px + m21 * py + m22 * pz + m23;
+    }
+    localColorAt(lx, ly, lz, from, to, s, r, g, b);
+    s.releaseArrays(3);
+  }
+
+  /**
+   * Set {@code result} to the color of this pattern at the specified point, in the pattern's own
+   * space.
+   */
+  abstract void localColorAt(float x, float y, float z, Scratch s, MutableColor result);
+
+  /**
+   * Set elements {@code from} to {@code to} of {@code r}, {@code g} and {@code b} to the color of
+   * this pattern at the corresponding points, in the pattern's own space, exactly as {@link
+   * #localColorAt(float, float, float, Scratch, MutableColor)} would one at a time.
+   */
+  abstract void localColorAt(
+      float[] x,
+      float[] y,
+      float[] z,
+      int from,
+      int to,
+      Scratch s,
+      float[] r,
+      float[] g,
+      float[] b);
+
+  /**
+   * Compares this {@code Pattern} to the specified {@code object} for equality.
+   *
+   * @param o the object to compare
+   * @return {@code true} if and only if the object is a pattern of the same kind as this one, with
+   *     an equal transform and equal parts
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    return transform.equals(((Pattern) o).transform);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(getClass(), transform);
+  }
+
+  /**
+   * Space for evaluating patterns in: a stack of arrays for batches of points and colors, and of
+   * colors for single points, which patterns take from and give back in turn as they evaluate the
+   * patterns they're built from. A {@code Scratch} is not thread safe; each {@code Tracer} has its
+   * own.
+   */
+  static final class Scratch {
+    private float[][] arrays = new float[8][];
+    private int arrayCount;
+    private MutableColor[] colors = new MutableColor[4];
+    private int colorCount;
+
+    /** Take an array with at least {@code length} elements, whose contents are undefined. */
+    float[] array(int length) {
+      if (arrayCount == arrays.length) {
+        arrays = Arrays.copyOf(arrays, arrayCount * 2);
+      }
+      var array = arrays[arrayCount];
+      if (array == null || array.length < length) {
+        array = new float[length];
+        arrays[arrayCount] = array;
+      }
+      ++arrayCount;
+      return array;
+    }
+
+    /** Give back the {@code n} arrays taken most recently. */
+    void releaseArrays(int n) {
+      arrayCount -= n;
+    }
+
+    /** Take a color, whose contents are undefined. */
+    MutableColor color() {
+      if (colorCount == colors.length) {
+        colors = Arrays.copyOf(colors, colorCount * 2);
+      }
+      var color = colors[colorCount];
+      if (color == null) {
+        color = new MutableColor();
+        colors[colorCount] = color;
+      }
+      ++colorCount;
+      return color;
+    }
+
+    /** Give back the color taken most recently. */
+    void releaseColor() {
+      --colorCount;
+    }
+  }
+}
@@ -0,0 +1,240 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * A pattern which blends smoothly and irregularly between two other patterns, by Ken Perlin's
+ * improved gradient noise, whose features are about a unit across.
+ *
+ * <p>The noise is built from a pseudorandom gradient at each integer lattice point, where it is 0.
+ * Between them it interpolates the gradients' contributions from the 8 corners of the lattice
+ * cell, so it varies smoothly, from about -1 to 1, and repeats every 256 units. The permutation
+ * which picks each lattice point's gradient, and the gradients themselves, are tables built once,
+ * when the class is loaded.
+ */
+public final class PerlinPattern extends Pattern {
+  /** The permutation of 0 to 255, twice over, so that it can be indexed by the sum of two. */
+  private static final int[] PERMUTATION = new int[512];
+
+  /**
+   * The gradients: the 12 vectors from the center of a cube to the middles of its edges, and 4 of
+   * them again, so that they can be picked by the low 4 bits of a hash.
+   */
+  private static final float[] GRADIENT_X = {1, -1, 1, -1, 1, -1, 1, -1, 0, 0, 0, 0, 1, -1, 0, 0};
+
+  private static final float[] GRADIENT_Y = {1, 1, -1, -1, 0, 0, 0, 0, 1, -1, 1, -1, 1, 1, -1, -1};
+  private static final float[] GRADIENT_Z = {0, 0, 0, 0, 1, 1, -1, -1, 1, 1, -1, -1, 0, 0, 1, -1};
+
+  /**
+   * The gradient picked by the last step of hashing a lattice point, for each index into the
+   * permutation: {@code GRADIENT_X[PERMUTATION[i] & 15]} and so on, saving a lookup per corner.
+   */
+  private static final float[] HASHED_X = new float[512];
+
+  private static final float[] HASHED_Y = new float[512];
+  private static final float[] HASHED_Z = new float[512];
+
+  static {
+    // a fixed seed, so that the noise is the same from run to run
+    var random = new Random(0x5EED);
+    for (int i = 0; i < 256; ++i) {
+      PERMUTATION[i] = i;
+    }
+    for (int i = 255; i > 0; --i) {
+      var j = random.nextInt(i + 1);
+      var swap = PERMUTATION[i];
+      PERMUTATION[i] = PERMUTATION[j];
+      PERMUTATION[j] = swap;
+    }
+    System.arraycopy(PERMUTATION, 0, PERMUTATION, 256, 256);
+    for (int i = 0; i < 512; ++i) {
+      var h = PERMUTATION[i] & 15;
+      HASHED_X[i] = GRADIENT_X[h];
+      HASHED_Y[i] = GRADIENT_Y[h];
+      HASHED_Z[i] = GRADIENT_Z[h];
+    }
+  }
+
+  private final Pattern a;
+  private final Pattern b;
+
+  /**
+   * Create a {@code PerlinPattern} blending between the specified colors.
+   *
+   * @param a the color where the noise is lowest
+   * @param b the color where the noise is highest
+   */
+  public PerlinPattern(Color a, Color b) {
+    this(Pattern.solid(a), Pattern.solid(b));
+  }
+
+  /**
+   * Create a {@code PerlinPattern} blending between the specified patterns.
+   *
+   * @param a the pattern where the noise is lowest
+   * @param b the pattern where the noise is highest
+   */
+  public PerlinPattern(Pattern a, Pattern b) {
+    this(a, b, Matrix4x4.identity());
+  }
+
+  private PerlinPattern(Pattern a, Pattern b, Matrix4x4 transform) {
+    super(transform);
+    this.a = Objects.requireNonNull(a);
+    this.b = Objects.requireNonNull(b);
+  }
+
+  /**
+   * Return the pattern where the noise is lowest.
+   *
+   * @return the first pattern
+   */
+  public Pattern getA() {
+    return a;
+  }
+
+  /**
+   * Return the pattern where the noise is highest.
+   *
+   * @return the second pattern
+   */
+  public Pattern getB() {
+    return b;
+  }
+
+  @Override
+  public PerlinPattern withTransform(Matrix4x4 t) {
+    return new PerlinPattern(a, b, t);
+  }
+
+  /**
+   * Return the noise at the specified point, from about -1 to 1.
+   *
+   * @param x the x coordinate of the point
+   * @param y the y coordinate of the point
+   * @param z the z coordinate of the point
+   * @return the noise there
+   */
+  static float noise(float x, float y, float z) {
+    // the lattice cell, and the position within it
+    var ix = floor(x);
+    var iy = floor(y);
+    var iz = floor(z);
+    x -= ix;
+    y -= iy;
+    z -= iz;
+    var cx = ix & 255;
+    var cy = iy & 255;
+    var cz = iz & 255;
+    var u = fade(x);
+    var v = fade(y);
+    var w = fade(z);
+
+    var p = PERMUTATION;
+    var a = p[cx] + cy;
+    var aa = p[a] + cz;
+    var ab = p[a + 1] + cz;
+    var b = p[cx + 1] + cy;
+    var ba = p[b] + cz;
+    var bb = p[b + 1] + cz;
+    var x1 = x - 1;
+    var y1 = y - 1;
+    var z1 = z - 1;
+    return lerp(
+        w,
+        lerp(
+            v,
+            lerp(u, gradient(aa, x, y, z), gradient(ba, x1, y, z)),
+            lerp(u, gradient(ab, x, y1, z), gradient(bb, x1, y1, z))),
+        lerp(
+            v,
+            lerp(u, gradient(aa + 1, x, y, z1), gradient(ba + 1, x1, y, z1)),
+            lerp(u, gradient(ab + 1, x, y1, z1), gradient(bb + 1, x1, y1, z1))));
+  }
+
+  /** Return the largest integer no greater than {@code x}, for {@code x} well within int range. */
+  private static int floor(float x) {
+    var i = (int) x;
+    return x < i ? i - 1 : i;
+  }
+
+  /** Return {@code 6t^5 - 15t^4 + 10t^3}, which eases in and out of the lattice points. */
+  private static float fade(float t) {
+    return t * t * t * (t * (t * 6 - 15) + 10);
+  }
+
+  private static float lerp(float t, float a, float b) {
+    return a + t * (b - a);
+  }
+
+  /**
+   * Return the dot product of the specified vector with the gradient picked by the permutation at
+   * the specified index.
+   */
+  private static float gradient(int i, float x, float y, float z) {
+    return HASHED_X[i] * x + HASHED_Y[i] * y + HASHED_Z[i] * z;
+  }
+
+  /** Return how far to blend from {@code a} to {@code b} at the specified point. */
+  private static float blend(float x, float y, float z) {
+    return Math.min(1, Math.max(0, (noise(x, y, z) + 1) * .5f));
+  }
+
+  @Override
+  void localColorAt(float x, float y, float z, Scratch s, MutableColor result) {
+    a.colorAt(x, y, z, s, result);
+    var other = s.color();
+    b.colorAt(x, y, z, s, other);
+    var t = blend(x, y, z);
+    result.set(
+        result.r + (other.r - result.r) * t,
+        result.g + (other.g - result.g) * t,
+        result.b + (other.b - result.b) * t);
+    s.releaseColor();
+  }
+
+  @Override
+  void localColorAt(
+      float[] x,
+      float[] y,
+      float[] z,
+      int from,
+      int to,
+      Scratch s,
+      float[] r,
+      float[] g,
+      float[] b) {
+    a.colorAt(x, y, z, from, to, s, r, g, b);
+    var otherR = s.array(to);
+    var otherG = s.array(to);
+    var otherB = s.array(to);
+    this.b.colorAt(x, y, z, from, to, s, otherR, otherG, otherB);
+    for (int i = from; i < to; ++i) {
+      var t = blend(x[i], y[i], z[i]);
+      r[i] += (otherR[i] - r[i]) * t;
+      g[i] += (otherG[i] - g[i]) * t;
+      b[i] += (otherB[i] - b[i]) * t;
+    }
+    s.releaseArrays(3);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!super.equals(o)) {
+      return false;
+    }
+    var other = (PerlinPattern) o;
+    return a.equals(other.a) && b.equals(other.b);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), a, b);
+  }
+
+  @Override
+  public String toString() {
+    return "PerlinPattern{a=" + a + ", b=" + b + ", transform=" + getTransform() + '}';
+  }
+}
@@ -29,6 +29,23 @@ public class Plane extends AbstractShape<Plane> implements Shape {
     return xs;
   }
 
+  @Override
+  void localIntersect(Tracer tr) {
+    if (Math.abs(tr.localDirection.y) >= EPSILON) {
+      tr.offer(-tr.localOrigin.y / tr.localDirection.y, this, 0);
+    }
+  }
+
+  @Override
+  void localIntersect(RayPacket p, Tracer tr) {
+    var oy = p.localOrigin.y;
+    for (int i = 0; i < p.size; ++i) {
+      if (Math.abs(p.ldy[i]) >= EPSILON) {
+        p.offer(i, -oy / p.ldy[i], this, 0);
+      }
+    }
+  }
+
   /**
    * Return the normal at the specified point on this {@code Plane}.
    *
@@ -39,4 +56,9 @@ public class Plane extends AbstractShape<Plane> implements Shape {
   protected Vector3 localNormalAt(Point localPoint) {
     return normal;
   }
+
+  @Override
+  void localNormalAt(Tracer tr) {
+    tr.normal.set(normal);
+  }
 }
@@ -2,13 +2,23 @@ package com.gregjandl.raytracer.rtlib;
 
 import java.util.Objects;
 
-/** Represents a point light source. */
+/**
+ * Represents a point light source.
+ *
+ * <p>By default a light is equally bright at any distance. A light may instead fall off with
+ * distance, in which case its intensity at distance {@code d} is its color scaled by {@code 1 / (1
+ * + (d / r)²)}, where {@code r} is its falloff radius, the distance at which it's half as bright:
+ * close to the light the intensity is roughly its color, and far away it falls with the square of
+ * the distance.
+ */
 public class PointLight {
   private final Point position;
   private final Color color;
+  private final float falloffRadius;
 
   /**
-   * Create a {@code PointLight} with the specified position and color/intensity.
+   * Create a {@code PointLight} with the specified position and color/intensity, whose intensity
+   * doesn't fall off with distance.
    *
    * @param position position of the light
    * @param color color of the light
@@ -16,6 +26,25 @@ public class PointLight {
   public PointLight(Point position, Color color) {
     this.position = position;
     this.color = color;
+    falloffRadius = Float.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Create a {@code PointLight} with the specified position and color/intensity, whose intensity
+   * falls off with distance.
+   *
+   * @param position position of the light
+   * @param color color of the light
+   * @param falloffRadius the distance at which the light's intensity is half its color
+   * @throws IllegalArgumentException if {@code falloffRadius} isn't positive
+   */
+  public PointLight(Point position, Color color, float falloffRadius) {
+    if (!(falloffRadius > 0)) {
+      throw new IllegalArgumentException("Falloff radius must be positive: " + falloffRadius);
+    }
+    this.position = position;
+    this.color = color;
+    this.falloffRadius = falloffRadius;
   }
 
   /**
@@ -45,6 +74,48 @@ public class PointLight {
     return color;
   }
 
+  /**
+   * Return the distance at which this {@code PointLight}'s intensity is half its color, or {@code
+   * Float.POSITIVE_INFINITY} if its intensity doesn't fall off with distance.
+   *
+   * @return the light's falloff radius
+   */
+  public float getFalloffRadius() {
+    return falloffRadius;
+  }
+
+  /** Return whether this light's intensity falls off with distance. */
+  boolean hasFalloff() {
+    return falloffRadius != Float.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Return the factor by which this light's color is scaled at the specified distance from it, or
+   * 1 if the light doesn't fall off.
+   */
+  float attenuation(float distance) {
+    var d = distance / falloffRadius;
+    return 1 / (1 + d * d);
+  }
+
+  /**
+   * Return the distance beyond which this light's intensity, as the largest component of its
+   * attenuated color, is below {@code threshold}. That is {@code Float.POSITIVE_INFINITY} if the
+   * light doesn't fall off or the threshold isn't positive, and 0 if the light is never that
+   * bright.
+   */
+  float influenceRadius(float threshold) {
+    if (!hasFalloff() || threshold <= 0) {
+      return Float.POSITIVE_INFINITY;
+    }
+    var brightest = Math.max(color.getR(), Math.max(color.getG(), color.getB()));
+    if (brightest < threshold) {
+      return 0;
+    }
+    // brightest / (1 + (d / r)²) = threshold
+    return falloffRadius * (float) Math.sqrt(brightest / threshold - 1);
+  }
+
   /**
    * Returns a string representation of this {@code PointLight}. This method is intended to be used
    * for debugging purposes; the representation may change, but will not be {@code null}.
@@ -53,7 +124,13 @@ public class PointLight {
    */
   @Override
   public String toString() {
-    return "PointLight{position=" + position + ", color=" + color + '}';
+    return "PointLight{position="
+        + position
+        + ", color="
+        + color
+        + ", falloffRadius="
+        + falloffRadius
+        + '}';
   }
 
   /**
@@ -61,7 +138,7 @@ public class PointLight {
    *
    * @param o {@code Object} to which this {@code PointLight} is to be compared.
    * @return {@code true} if and only if the specified {@code Object} is a {@code PointLight} whose
-   *     position and color are equal to this {@code PointLight}'s
+   *     position, color and falloff radius are equal to this {@code PointLight}'s
    */
   @Override
   public boolean equals(Object o) {
@@ -72,7 +149,9 @@ public class PointLight {
       return false;
     }
     PointLight that = (PointLight) o;
-    return Objects.equals(position, that.position) && Objects.equals(color, that.color);
+    return Objects.equals(position, that.position)
+        && Objects.equals(color, that.color)
+        && Float.compare(falloffRadius, that.falloffRadius) == 0;
   }
 
   /**
@@ -82,6 +161,6 @@ public class PointLight {
    */
   @Override
   public int hashCode() {
-    return Objects.hash(position, color);
+    return Objects.hash(position, color, falloffRadius);
   }
 }
@@ -0,0 +1,150 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.util.Arrays;
+
+/**
+ * A packet of coherent rays which share an origin, such as the primary rays for a tile of pixels,
+ * to be intersected with a scene together.
+ *
+ * <p>Ray directions and hits are stored in structure of arrays form, one lane per ray, so that
+ * shapes can intersect every lane in a tight loop over primitive arrays which the JIT can
+ * vectorize. The packet's directions are also bounded by a cone around their mean, which lets a
+ * shape be skipped for the whole packet when its bounding sphere lies outside the cone.
+ *
+ * <p>A packet whose rays aren't coherent, i.e., whose cone is too wide to be useful, is traced one
+ * ray at a time instead.
+ */
+final class RayPacket {
+  /** Maximum number of rays in a packet (an 8x8 tile). */
+  static final int MAX_SIZE = 64;
+
+  /**
+   * Minimum cosine of the angle between the packet's axis and any of its rays for the packet to be
+   * considered coherent enough to trace as a packet.
+   */
+  static final float MIN_COHERENCE = 0.9f;
+
+  /** The origin shared by every ray, in world space and in the space of the shape intersected. */
+  final MutableVector3 origin = new MutableVector3();
+
+  final MutableVector3 localOrigin = new MutableVector3();
+
+  /** The ray directions, in world space. */
+  final float[] dx = new float[MAX_SIZE];
+
+  final float[] dy = new float[MAX_SIZE];
+  final float[] dz = new float[MAX_SIZE];
+
+  /** The ray directions, in the space of the shape being intersected. */
+  final float[] ldx = new float[MAX_SIZE];
+
+  final float[] ldy = new float[MAX_SIZE];
+  final float[] ldz = new float[MAX_SIZE];
+
+  /** The closest hit so far of each ray, as for {@code Tracer}. */
+  final float[] t = new float[MAX_SIZE];
+
+  final Shape[] object = new Shape[MAX_SIZE];
+  final int[] index = new int[MAX_SIZE];
+  final int[] objectIndex = new int[MAX_SIZE];
+
+  /** The number of rays in the packet. */
+  int size;
+
+  /** The index within the scene of the object currently being intersected. */
+  int candidate;
+
+  /** The axis of the cone bounding the ray directions, and the cone's half angle. */
+  final MutableVector3 axis = new MutableVector3();
+
+  float cosHalfAngle;
+  float sinHalfAngle;
+
+  /** Empty the packet, ready for rays from the specified origin to be added. */
+  void reset(float ox, float oy, float oz) {
+    origin.set(ox, oy, oz);
+    size = 0;
+  }
+
+  /** Add a ray, with the specified normalized direction, to the packet. */
+  void add(float x, float y, float z) {
+    dx[size] = x;
+    dy[size] = y;
+    dz[size] = z;
+    t[size] = Float.POSITIVE_INFINITY;
+    object[size] = null;
+    index[size] = 0;
+    objectIndex[size] = -1;
+    ++size;
+  }
+
+  /**
+   * Compute the cone bounding the packet's rays.
+   *
+   * @return {@code true} if the rays are coherent enough to be traced as a packet
+   */
+  boolean bound() {
+    axis.set(0, 0, 0);
+    for (int i = 0; i < size; ++i) {
+      axis.x += dx[i];
+      axis.y += dy[i];
+      axis.z += dz[i];
+    }
+    if (axis.magnitude() == 0) {
+      return false;
+    }
+    axis.normalize();
+    var cos = 1f;
+    for (int i = 0; i < size; ++i) {
+      cos = Math.min(cos, axis.x * dx[i] + axis.y * dy[i] + axis.z * dz[i]);
+    }
+    cosHalfAngle = cos;
+    sinHalfAngle = (float) Math.sqrt(Math.max(0, 1 - cos * cos));
+    return cos >= MIN_COHERENCE;
+  }
+
+  /**
+   * Determine whether the packet's cone misses the specified sphere entirely, in which case no ray
+   * in the packet can hit anything inside it. Only valid once {@link #bound()} has found the packet
+   * to be coherent.
+   */
+  boolean misses(MutableVector3 center, float radius) {
+    var vx = center.x - origin.x;
+    var vy = center.y - origin.y;
+    var vz = center.z - origin.z;
+    var distance = (float) Math.sqrt(vx * vx + vy * vy + vz * vz);
+    if (!(distance > radius)) {
+      // the origin is inside the sphere (or the sphere is unbounded)
+      return false;
+    }
+    // the sphere subtends a half angle of asin(radius / distance) about the direction to it, so
+    // it lies outside the cone if the angle between them exceeds the sum of the half angles
+    var cosToCenter = (axis.x * vx + axis.y * vy + axis.z * vz) / distance;
+    var sinSphere = radius / distance;
+    var cosSphere = (float) Math.sqrt(1 - sinSphere * sinSphere);
+    var cosSum = cosHalfAngle * cosSphere - sinHalfAngle * sinSphere;
+    // a little slack, so rounding can't cull a sphere which a ray only just grazes
+    return cosToCenter < cosSum - 1e-4f;
+  }
+
+  /** Record an intersection of a lane with the specified object, if it is the lane's closest. */
+  void offer(int lane, float t, Shape object, int index) {
+    if (t >= 0 && t < this.t[lane]) {
+      this.t[lane] = t;
+      this.object[lane] = object;
+      this.index[lane] = index;
+      objectIndex[lane] = candidate;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "RayPacket{origin="
+        + origin
+        + ", size="
+        + size
+        + ", t="
+        + Arrays.toString(Arrays.copyOf(t, size))
+        + '}';
+  }
+}
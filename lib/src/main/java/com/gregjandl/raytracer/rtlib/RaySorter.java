@@ -0,0 +1,140 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.util.Arrays;
+
+/**
+ * Orders batches of rays, such as shadow rays, so that rays which are likely to visit the same
+ * objects are traced one after another.
+ *
+ * <p>Each ray gets a 30 bit key: the octant of its direction in the top three bits, then the Morton
+ * code of the cell containing its origin, with the batch's bounding box divided into 512 cells
+ * along each axis. Sorting by key therefore buckets rays by direction octant and, within each
+ * octant, orders them along a Z-order curve through their origins, so rays from nearby origins
+ * heading roughly the same way end up close together. Keys are sorted with a three pass radix
+ * sort, in time linear in the number of rays.
+ *
+ * <p>A {@code RaySorter} holds the scratch buffers for sorting, so isn't thread safe.
+ */
+final class RaySorter {
+  /** Bits of each origin coordinate in the key. */
+  static final int CELL_BITS = 9;
+
+  private static final int CELLS = 1 << CELL_BITS;
+  private static final int RADIX_BITS = 10;
+  private static final int RADIX = 1 << RADIX_BITS;
+
+  private final int[] keys;
+  private final int[] tmpKeys;
+  private final int[] tmpOrder;
+  private final int[] counts = new int[RADIX];
+
+  /**
+   * Construct a {@code RaySorter} for batches of up to {@code capacity} rays.
+   *
+   * @param capacity the maximum number of rays to sort
+   */
+  RaySorter(int capacity) {
+    keys = new int[capacity];
+    tmpKeys = new int[capacity];
+    tmpOrder = new int[capacity];
+  }
+
+  /**
+   * Fill {@code order} with the indices of the {@code count} rays with the specified origins and
+   * directions, in the order in which they should be traced.
+   *
+   * @return {@code order}
+   */
+  int[] sort(
+      float[] ox,
+      float[] oy,
+      float[] oz,
+      float[] dx,
+      float[] dy,
+      float[] dz,
+      int count,
+      int[] order) {
+    var minX = Float.POSITIVE_INFINITY;
+    var minY = Float.POSITIVE_INFINITY;
+    var minZ = Float.POSITIVE_INFINITY;
+    var maxX = Float.NEGATIVE_INFINITY;
+    var maxY = Float.NEGATIVE_INFINITY;
+    var maxZ = Float.NEGATIVE_INFINITY;
+    for (int i = 0; i < count; ++i) {
+      minX = Math.min(minX, ox[i]);
+      minY = Math.min(minY, oy[i]);
+      minZ = Math.min(minZ, oz[i]);
+      maxX = Math.max(maxX, ox[i]);
+      maxY = Math.max(maxY, oy[i]);
+      maxZ = Math.max(maxZ, oz[i]);
+    }
+    var scaleX = cellScale(minX, maxX);
+    var scaleY = cellScale(minY, maxY);
+    var scaleZ = cellScale(minZ, maxZ);
+    for (int i = 0; i < count; ++i) {
+      var octant = (dx[i] < 0 ? 1 : 0) | (dy[i] < 0 ? 2 : 0) | (dz[i] < 0 ? 4 : 0);
+      keys[i] =
+          octant << 3 * CELL_BITS
+              | mortonCode(
+                  cell(ox[i], minX, scaleX), cell(oy[i], minY, scaleY), cell(oz[i], minZ, scaleZ));
+      order[i] = i;
+    }
+    // each pass sorts stably on the next RADIX_BITS of the key, swapping buffers
+    var srcKeys = keys;
+    var srcOrder = order;
+    var dstKeys = tmpKeys;
+    var dstOrder = tmpOrder;
+    for (int shift = 0; shift < 3 * CELL_BITS + 3; shift += RADIX_BITS) {
+      Arrays.fill(counts, 0);
+      for (int i = 0; i < count; ++i) {
+        ++counts[srcKeys[i] >>> shift & RADIX - 1];
+      }
+      var sum = 0;
+      for (int k = 0; k < RADIX; ++k) {
+        var n = counts[k];
+        counts[k] = sum;
+        sum += n;
+      }
+      for (int i = 0; i < count; ++i) {
+        var key = srcKeys[i];
+        var j = counts[key >>> shift & RADIX - 1]++;
+        dstKeys[j] = key;
+        dstOrder[j] = srcOrder[i];
+      }
+      var swapKeys = srcKeys;
+      srcKeys = dstKeys;
+      dstKeys = swapKeys;
+      var swapOrder = srcOrder;
+      srcOrder = dstOrder;
+      dstOrder = swapOrder;
+    }
+    if (srcOrder != order) {
+      System.arraycopy(srcOrder, 0, order, 0, count);
+    }
+    return order;
+  }
+
+  private static float cellScale(float min, float max) {
+    var extent = max - min;
+    return extent > 0 ? CELLS / extent : 0;
+  }
+
+  private static int cell(float v, float min, float scale) {
+    return Math.min(CELLS - 1, (int) ((v - min) * scale));
+  }
+
+  /** Interleave the low {@code CELL_BITS} bits of each of the specified cell coordinates. */
+  static int mortonCode(int x, int y, int z) {
+    return spread(x) | spread(y) << 1 | spread(z) << 2;
+  }
+
+  /** Spread the low 10 bits of {@code v} out so that there are two zero bits between each. */
+  private static int spread(int v) {
+    v &= 0x3ff;
+    v = (v | v << 16) & 0x030000ff;
+    v = (v | v << 8) & 0x0300f00f;
+    v = (v | v << 4) & 0x030c30c3;
+    v = (v | v << 2) & 0x09249249;
+    return v;
+  }
+}
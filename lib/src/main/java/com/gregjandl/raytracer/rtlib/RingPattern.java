@@ -0,0 +1,41 @@
+package com.gregjandl.raytracer.rtlib;
+
+/**
+ * A pattern of concentric rings a unit wide around the {@code y} axis, alternating between two
+ * other patterns, starting with {@code a} at the center.
+ */
+public final class RingPattern extends AlternatingPattern {
+  /**
+   * Create a {@code RingPattern} alternating between the specified colors.
+   *
+   * @param a the color of the rings at even distances from the axis
+   * @param b the color of the rings at odd distances from the axis
+   */
+  public RingPattern(Color a, Color b) {
+    this(Pattern.solid(a), Pattern.solid(b));
+  }
+
+  /**
+   * Create a {@code RingPattern} alternating between the specified patterns.
+   *
+   * @param a the pattern of the rings at even distances from the axis
+   * @param b the pattern of the rings at odd distances from the axis
+   */
+  public RingPattern(Pattern a, Pattern b) {
+    this(a, b, Matrix4x4.identity());
+  }
+
+  private RingPattern(Pattern a, Pattern b, Matrix4x4 transform) {
+    super(a, b, transform);
+  }
+
+  @Override
+  public RingPattern withTransform(Matrix4x4 t) {
+    return new RingPattern(getA(), getB(), t);
+  }
+
+  @Override
+  boolean isA(float x, float y, float z) {
+    return ((int) Math.sqrt(x * x + z * z) & 1) == 0;
+  }
+}
@@ -1,16 +1,57 @@
 package com.gregjandl.raytracer.rtlib;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 
 /**
  * Represents a scene to be rendered, made up of objects to be rendered lit by some number of
  * lights.
  */
 public class Scene {
-  private final ArrayList<Sphere> objects;
+  /**
+   * Number of rays cast by each parallel task of {@link #castRays} and {@link #lineOfSight}. A
+   * multiple of 64, so that each task sets whole words of a {@code BitSet}.
+   */
+  static final int BATCH_BLOCK_SIZE = 256;
+
+  /**
+   * The default contribution threshold, half of one step of an 8-bit color component, below which
+   * a reflected or refracted ray can't change the color of a pixel by more than one step.
+   */
+  static final float DEFAULT_CONTRIBUTION_THRESHOLD = 1 / 510f;
+
+  private final ArrayList<Shape> objects;
   private final ArrayList<PointLight> lights;
+  private float lightThreshold;
+  private volatile LightIndex lightIndex;
+  private int lightSamples;
+  private volatile LightTree lightTree;
+  private int shadowMapResolution;
+  private float shadowMapBias = .05f;
+  private volatile ShadowMaps shadowMaps;
+  private volatile MaterialRegistry materials;
+  private volatile LightingTable lightingTable;
+
+  /**
+   * The shape modification count (see {@link AbstractShape#modificationCount()}) when {@link
+   * #prepare()} last found everything derived from the objects up to date, or -1. Only meaningful
+   * while {@code countedObjects} holds.
+   */
+  private volatile long preparedModifications = -1;
+
+  /** Whether every object is an {@code AbstractShape}, whose modifications are counted. */
+  private boolean countedObjects = true;
+
+  private int maxDepth = 5;
+  private float contributionThreshold = DEFAULT_CONTRIBUTION_THRESHOLD;
+  private final LongAdder culledRays = new LongAdder();
+  private final LongAdder depthLimitedRays = new LongAdder();
+  private final LongAdder areaShadowTests = new LongAdder();
+  private final LongAdder areaShadowSamples = new LongAdder();
 
   /** Construct an empty scene. */
   public Scene() {
@@ -86,7 +127,7 @@ public class Scene {
    * @throws IndexOutOfBoundsException if the index is out of range ({@code i < 0 || i >=
    *     getObjectCount()})
    */
-  public Sphere getObject(int i) {
+  public Shape getObject(int i) {
     return objects.get(i);
   }
 
@@ -100,21 +141,403 @@ public class Scene {
 
   Color shadeHit(PreComps comps) {
     var material = comps.object.getMaterial();
-    return lights.stream()
-        .map(
-            (light) ->
-                material.lighting(
-                    light,
-                    comps.point,
-                    comps.eyeVec,
-                    comps.normal,
-                    isShadowed(comps.overPoint, light)))
-        .reduce(Color.BLACK, Color::add);
+    var color = Color.BLACK;
+    for (var light : lights) {
+      color =
+          color.add(
+              material.lighting(
+                  light,
+                  comps.point,
+                  comps.eyeVec,
+                  comps.normal,
+                  isShadowed(comps.overPoint, light)));
+    }
+    return color;
   }
 
   void setLights(List<PointLight> pointLights) {
     lights.clear();
     lights.addAll(pointLights);
+    lightIndex = null;
+    lightTree = null;
+    shadowMaps = null;
+    lightingTable = null;
+  }
+
+  /**
+   * Return the intensity below which a light is considered not to light a point.
+   *
+   * @return the light threshold
+   */
+  public float getLightThreshold() {
+    return lightThreshold;
+  }
+
+  /**
+   * Set the intensity below which a light is considered not to light a point, so that shading
+   * skips it (including its shadow ray). A light's intensity at a point is the largest component
+   * of its color, attenuated by the distance to the point if the light falls off with distance
+   * (see {@link PointLight}); only lights which fall off can ever be skipped.
+   *
+   * <p>With a positive threshold the lights are indexed spatially, so the cost of shading a point
+   * depends on the number of lights near it rather than the number in the scene. The default
+   * threshold of 0 considers every light at every point.
+   *
+   * @param threshold the light threshold
+   * @throws IllegalArgumentException if {@code threshold} is negative or NaN
+   */
+  public void setLightThreshold(float threshold) {
+    if (!(threshold >= 0)) {
+      throw new IllegalArgumentException("Light threshold must be non-negative: " + threshold);
+    }
+    lightThreshold = threshold;
+    lightIndex = null;
+  }
+
+  /**
+   * Return the number of lights sampled at each point shaded, or 0 if every light is considered.
+   *
+   * @return the number of light samples
+   */
+  public int getLightSamples() {
+    return lightSamples;
+  }
+
+  /**
+   * Set the number of lights sampled at each point shaded, or 0 to consider every light (the
+   * default).
+   *
+   * <p>When sampling, each point is lit by {@code samples} lights picked at random, with
+   * replacement, each with probability roughly proportional to its estimated contribution there:
+   * its intensity at the point, as for the light threshold, which for a light that falls off is
+   * about its brightness over its squared distance from the point. Each sampled light's
+   * contribution is divided by {@code samples} and by the probability it was picked, so the result
+   * is an unbiased estimate of the contribution of all the lights, which converges to it as the
+   * number of samples grows. Picking a light takes time logarithmic in the number of lights, so the
+   * cost of shading depends almost entirely on the number of samples, not lights. The light
+   * threshold is ignored while sampling.
+   *
+   * <p>The random numbers are determined by the point shaded and the sample number, so rendering
+   * is repeatable, but the noise of neighbouring points is uncorrelated.
+   *
+   * @param samples the number of light samples
+   * @throws IllegalArgumentException if {@code samples} is negative
+   */
+  public void setLightSamples(int samples) {
+    if (samples < 0) {
+      throw new IllegalArgumentException("Light samples must be non-negative: " + samples);
+    }
+    lightSamples = samples;
+  }
+
+  /**
+   * Return the maximum number of times a ray may be reflected or refracted.
+   *
+   * @return the maximum depth
+   */
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  /**
+   * Set the maximum number of times a ray may be reflected or refracted, beyond which reflective
+   * and transparent surfaces are shaded as if they were neither. The default is 5; 0 turns
+   * reflection and refraction off entirely.
+   *
+   * @param depth the maximum depth
+   * @throws IllegalArgumentException if {@code depth} is negative
+   */
+  public void setMaxDepth(int depth) {
+    if (depth < 0) {
+      throw new IllegalArgumentException("Maximum depth must be non-negative: " + depth);
+    }
+    maxDepth = depth;
+  }
+
+  /**
+   * Return the contribution below which a reflected or refracted ray isn't traced.
+   *
+   * @return the contribution threshold
+   */
+  public float getContributionThreshold() {
+    return contributionThreshold;
+  }
+
+  /**
+   * Set the contribution below which a reflected or refracted ray isn't traced.
+   *
+   * <p>A ray's contribution is the fraction of the color it sees which ends up in the color of the
+   * primary ray it descends from: 1 for a primary ray, and for a reflected or refracted ray, its
+   * parent's contribution times the surface's reflectivity or transparency (weighted by the
+   * Fresnel reflectance if the surface is both). Since the contribution only shrinks with depth,
+   * skipping a ray below the threshold skips all of its descendants too, which bounds the cost of a
+   * pixel by how much the rays could change it rather than only by the maximum depth. The default
+   * is 1/510, half a step of an 8-bit color component; 0 traces every ray up to the maximum depth.
+   *
+   * @param threshold the contribution threshold
+   * @throws IllegalArgumentException if {@code threshold} is negative or NaN
+   */
+  public void setContributionThreshold(float threshold) {
+    if (!(threshold >= 0)) {
+      throw new IllegalArgumentException(
+          "Contribution threshold must be non-negative: " + threshold);
+    }
+    contributionThreshold = threshold;
+  }
+
+  /**
+   * Return the number of reflected or refracted rays which weren't traced because their
+   * contribution was below the threshold, since this scene was created or the counts were reset.
+   *
+   * @return the number of rays culled
+   */
+  public long getCulledRayCount() {
+    return culledRays.sum();
+  }
+
+  /**
+   * Return the number of reflected or refracted rays which weren't traced because the maximum
+   * depth had been reached, since this scene was created or the counts were reset.
+   *
+   * @return the number of rays cut off by depth
+   */
+  public long getDepthLimitedRayCount() {
+    return depthLimitedRays.sum();
+  }
+
+  /**
+   * Return the number of times a point has been tested for being in the shadow of an {@link
+   * AreaLight}, since this scene was created or the counts were reset.
+   *
+   * @return the number of area light shadow tests
+   */
+  public long getAreaShadowTestCount() {
+    return areaShadowTests.sum();
+  }
+
+  /**
+   * Return the number of shadow rays traced to {@link AreaLight}s, since this scene was created or
+   * the counts were reset.
+   *
+   * @return the number of area light shadow rays
+   */
+  public long getAreaShadowSampleCount() {
+    return areaShadowSamples.sum();
+  }
+
+  /**
+   * Return the average number of shadow rays traced per test of a point against an {@link
+   * AreaLight}, since this scene was created or the counts were reset: between the lights' numbers
+   * of probe samples, if no point was in a penumbra, and their numbers of cells, if every point
+   * was.
+   *
+   * @return the average number of shadow rays per area light shadow test, or 0 if there were none
+   */
+  public double getAverageShadowSamples() {
+    var tests = areaShadowTests.sum();
+    return tests == 0 ? 0 : (double) areaShadowSamples.sum() / tests;
+  }
+
+  /** Reset the counts of rays culled and cut off by depth, and of area light shadow rays, to 0. */
+  public void resetRayCounts() {
+    culledRays.reset();
+    depthLimitedRays.reset();
+    areaShadowTests.reset();
+    areaShadowSamples.reset();
+  }
+
+  /** Count a reflected or refracted ray not traced, because it was culled or too deep. */
+  void countSkippedRay(boolean culled) {
+    (culled ? culledRays : depthLimitedRays).increment();
+  }
+
+  /** Count an area light shadow test which traced the specified number of shadow rays. */
+  void countShadowSamples(int samples) {
+    areaShadowTests.increment();
+    areaShadowSamples.add(samples);
+  }
+
+  /** Return the hierarchy of this scene's lights for sampling them, building it if necessary. */
+  LightTree lightTree() {
+    var tree = lightTree;
+    if (tree == null) {
+      synchronized (this) {
+        tree = lightTree;
+        if (tree == null) {
+          lightTree = tree = new LightTree(lights);
+        }
+      }
+    }
+    return tree;
+  }
+
+  /**
+   * Return the index of this scene's lights for the current threshold, building it if necessary,
+   * or {@code null} if every light is to be considered at every point.
+   */
+  LightIndex lightIndex() {
+    if (lightThreshold == 0) {
+      return null;
+    }
+    var index = lightIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = lightIndex;
+        if (index == null) {
+          lightIndex = index = new LightIndex(lights, lightThreshold);
+        }
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Return the number of texels along each side of each face of the lights' shadow maps, or 0 if
+   * shadows are found by tracing shadow rays.
+   *
+   * @return the shadow map resolution
+   */
+  public int getShadowMapResolution() {
+    return shadowMapResolution;
+  }
+
+  /**
+   * Set the number of texels along each side of each face of the lights' shadow maps, or 0 to find
+   * shadows by tracing shadow rays (the default).
+   *
+   * <p>With shadow maps, each light gets a cube map of the distance to the closest object in each
+   * direction from it, built by tracing {@code 6 * resolution²} rays from the light, so that
+   * whether a point is in a light's shadow is a lookup rather than a trace through the scene. The
+   * maps take {@code 24 * resolution²} bytes per light. They're built in parallel, using the common
+   * fork/join pool, the first time they're needed, and rebuilt when lights or objects are added, or
+   * by the next render after any of the scene's objects is given a new transform. Shadow edges are
+   * only as precise as the map's texels, and objects thinner than the bias (see {@link
+   * #setShadowMapBias(float)}) may let light through.
+   *
+   * @param resolution the shadow map resolution
+   * @throws IllegalArgumentException if {@code resolution} is negative
+   */
+  public void setShadowMapResolution(int resolution) {
+    if (resolution < 0) {
+      throw new IllegalArgumentException(
+          "Shadow map resolution must be non-negative: " + resolution);
+    }
+    shadowMapResolution = resolution;
+    shadowMaps = null;
+  }
+
+  /**
+   * Return the distance by which a point must be further from a light than the closest object in
+   * its shadow map to be shadowed.
+   *
+   * @return the shadow map bias
+   */
+  public float getShadowMapBias() {
+    return shadowMapBias;
+  }
+
+  /**
+   * Set the distance by which a point must be further from a light than the closest object in its
+   * shadow map to be shadowed. The default of 0.05 keeps surfaces from shadowing themselves where
+   * they're sampled at a slightly different distance than the point shaded; larger values are
+   * needed for lower resolutions and surfaces seen from the light at a glancing angle.
+   *
+   * @param bias the shadow map bias
+   * @throws IllegalArgumentException if {@code bias} is negative or NaN
+   */
+  public void setShadowMapBias(float bias) {
+    if (!(bias >= 0)) {
+      throw new IllegalArgumentException("Shadow map bias must be non-negative: " + bias);
+    }
+    shadowMapBias = bias;
+    shadowMaps = null;
+  }
+
+  /**
+   * Return the registry of this scene's objects' materials, building it if necessary. Materials
+   * given to objects since it was built only get ids once {@link #prepare()} has discarded it.
+   */
+  MaterialRegistry materials() {
+    var registry = materials;
+    if (registry == null) {
+      synchronized (this) {
+        registry = materials;
+        if (registry == null) {
+          materials = registry = new MaterialRegistry(this);
+        }
+      }
+    }
+    return registry;
+  }
+
+  /**
+   * Return the table of lighting constants for this scene's materials and lights, building it if
+   * necessary.
+   */
+  LightingTable lightingTable() {
+    var table = lightingTable;
+    if (table == null) {
+      synchronized (this) {
+        table = lightingTable;
+        if (table == null) {
+          lightingTable = table = new LightingTable(materials(), this);
+        }
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Discard anything derived from this scene's objects which is out of date because an object has
+   * been given a new transform or material since it was built: its shadow maps, or its material
+   * registry and lighting table. Checking every object is too slow to do for each ray, so it's
+   * skipped while no shape has been modified since the last check.
+   */
+  void prepare() {
+    // read first, so that a modification made during the check is caught by the next one
+    var modifications = AbstractShape.modificationCount();
+    if (countedObjects && modifications == preparedModifications) {
+      return;
+    }
+    var maps = shadowMaps;
+    if (maps != null && maps.isStale(this)) {
+      synchronized (this) {
+        if (shadowMaps == maps) {
+          shadowMaps = null;
+        }
+      }
+    }
+    var registry = materials;
+    if (registry != null && registry.isStale(this)) {
+      synchronized (this) {
+        if (materials == registry) {
+          materials = null;
+          lightingTable = null;
+        }
+      }
+    }
+    preparedModifications = modifications;
+  }
+
+  /**
+   * Return the shadow maps of this scene's lights, building them if necessary, or {@code null} if
+   * shadows are found by tracing shadow rays. Maps built before an object was moved are only
+   * rebuilt once {@link #prepare()} has discarded them.
+   */
+  ShadowMaps shadowMaps() {
+    if (shadowMapResolution == 0) {
+      return null;
+    }
+    var maps = shadowMaps;
+    if (maps == null) {
+      synchronized (this) {
+        maps = shadowMaps;
+        if (maps == null) {
+          shadowMaps = maps = new ShadowMaps(this, shadowMapResolution, shadowMapBias);
+        }
+      }
+    }
+    return maps;
   }
 
   /**
@@ -124,24 +547,175 @@ public class Scene {
    * @return the {@code Color} of the point the ray intersects
    */
   public Color colorAt(Ray r) {
-    var xs = intersect(r);
-    var hit = xs.hit();
-    if (hit.isEmpty()) {
-      return Color.BLACK;
+    var o = r.getOrigin();
+    var d = r.getDirection();
+    prepare();
+    try (var tr = tracer()) {
+      // a lone ray has no footprint, so textures are sampled at full resolution
+      tr.spread = 0;
+      tr.colorAt(o.getX(), o.getY(), o.getZ(), d.getX(), d.getY(), d.getZ());
+      return tr.color.toColor();
     }
+  }
+
+  /**
+   * Return the calling thread's {@code Tracer}, bound to this scene until it's closed, with which
+   * rays can be traced without allocating.
+   *
+   * @return the tracer
+   */
+  Tracer tracer() {
+    return Tracer.acquire(this);
+  }
 
-    var comps = new PreComps(hit.get(), r);
-    return shadeHit(comps);
+  /**
+   * Cast a batch of rays into this scene, finding the closest hit (at or in front of its origin) of
+   * each.
+   *
+   * <p>Rays are given as packed x, y, z origin and direction components; the directions needn't
+   * be normalized, in which case hit distances are in units of the direction's length. For each
+   * ray {@code i}, {@code hitDistances[i]} is set to the distance to the hit and {@code
+   * hitObjects[i]} to the index of the object hit (as for {@link #getObject(int)}), or to {@code
+   * Float.POSITIVE_INFINITY} and -1 if the ray hits nothing. If {@code hitNormals} is non-null,
+   * it is filled with the packed x, y, z components of the object's normal at each hit (which may
+   * face away from the ray), or zeros for misses.
+   *
+   * <p>The rays are cast in parallel, using the common fork/join pool, and nothing is allocated
+   * per ray. The scene must not be modified while rays are being cast.
+   *
+   * @param origins packed ray origins, three components per ray
+   * @param directions packed ray directions, three components per ray
+   * @param hitDistances receives the distance to each ray's hit
+   * @param hitObjects receives the index of the object each ray hit
+   * @param hitNormals receives the normal at each ray's hit, or {@code null} if not wanted
+   * @param count the number of rays to cast
+   * @throws IllegalArgumentException if {@code count} is negative
+   * @throws IndexOutOfBoundsException if any of the arrays is too short for {@code count} rays
+   */
+  public void castRays(
+      float[] origins,
+      float[] directions,
+      float[] hitDistances,
+      int[] hitObjects,
+      float[] hitNormals,
+      int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count must be non-negative: " + count);
+    }
+    Objects.checkFromIndexSize(0, 3L * count, origins.length);
+    Objects.checkFromIndexSize(0, 3L * count, directions.length);
+    Objects.checkFromIndexSize(0, count, hitDistances.length);
+    Objects.checkFromIndexSize(0, count, hitObjects.length);
+    if (hitNormals != null) {
+      Objects.checkFromIndexSize(0, 3L * count, hitNormals.length);
+    }
+    var blocks = (count + BATCH_BLOCK_SIZE - 1) / BATCH_BLOCK_SIZE;
+    IntStream.range(0, blocks)
+        .parallel()
+        .forEach(
+            block -> {
+              try (var tr = tracer()) {
+                var end = Math.min(count, (block + 1) * BATCH_BLOCK_SIZE);
+                for (int i = block * BATCH_BLOCK_SIZE; i < end; ++i) {
+                  var j = i * 3;
+                  tr.intersect(
+                      origins[j],
+                      origins[j + 1],
+                      origins[j + 2],
+                      directions[j],
+                      directions[j + 1],
+                      directions[j + 2]);
+                  hitDistances[i] = tr.t;
+                  hitObjects[i] = tr.objectIndex;
+                  if (hitNormals != null) {
+                    var n = tr.normal.set(0, 0, 0);
+                    if (tr.object != null) {
+                      tr.computeNormal();
+                    }
+                    hitNormals[j] = n.x;
+                    hitNormals[j + 1] = n.y;
+                    hitNormals[j + 2] = n.z;
+                  }
+                }
+              }
+            });
+  }
+
+  /**
+   * Determine, for each of a batch of pairs of points, whether the second point can be seen from
+   * the first; that is, whether no object in this scene intersects the line segment between them.
+   *
+   * <p>Points are given as packed x, y, z coordinates. An object hit exactly at the "to" point
+   * doesn't block the line of sight, but one exactly at the "from" point does, so a point on a
+   * surface should be nudged off it (as is done for shadows) if that surface shouldn't count. As
+   * soon as any blocking object is found the query is answered, without looking for others.
+   *
+   * <p>Queries are answered in parallel, using the common fork/join pool, and nothing is allocated
+   * per query. The scene must not be modified while queries are being answered.
+   *
+   * @param from packed coordinates of the points to look from, three per query
+   * @param to packed coordinates of the points to look at, three per query
+   * @param count the number of queries
+   * @return a {@code BitSet} in which bit {@code i} is set if and only if point {@code i} of
+   *     {@code to} is visible from point {@code i} of {@code from}
+   * @throws IllegalArgumentException if {@code count} is negative
+   * @throws IndexOutOfBoundsException if either of the arrays is too short for {@code count}
+   *     queries
+   */
+  public BitSet lineOfSight(float[] from, float[] to, int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count must be non-negative: " + count);
+    }
+    Objects.checkFromIndexSize(0, 3L * count, from.length);
+    Objects.checkFromIndexSize(0, 3L * count, to.length);
+    var words = new long[(count + 63) / 64];
+    var blocks = (count + BATCH_BLOCK_SIZE - 1) / BATCH_BLOCK_SIZE;
+    IntStream.range(0, blocks)
+        .parallel()
+        .forEach(
+            block -> {
+              try (var tr = tracer()) {
+                var end = Math.min(count, (block + 1) * BATCH_BLOCK_SIZE);
+                for (int i = block * BATCH_BLOCK_SIZE; i < end; ++i) {
+                  var j = i * 3;
+                  var dx = to[j] - from[j];
+                  var dy = to[j + 1] - from[j + 1];
+                  var dz = to[j + 2] - from[j + 2];
+                  var distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+                  if (distance == 0
+                      || !tr.occluded(
+                          from[j],
+                          from[j + 1],
+                          from[j + 2],
+                          dx / distance,
+                          dy / distance,
+                          dz / distance,
+                          distance)) {
+                    // each block covers whole words, so no other task touches this one
+                    words[i >>> 6] |= 1L << i;
+                  }
+                }
+              }
+            });
+    return BitSet.valueOf(words);
   }
 
   public void addLight(PointLight light) {
     Objects.requireNonNull(light, "Added lights must be non-null");
     lights.add(light);
+    lightIndex = null;
+    lightTree = null;
+    shadowMaps = null;
+    lightingTable = null;
   }
 
-  public void addObject(Sphere object) {
+  public void addObject(Shape object) {
     Objects.requireNonNull(object, "Added objects must be non-null");
     objects.add(object);
+    countedObjects &= object instanceof AbstractShape;
+    shadowMaps = null;
+    materials = null;
+    lightingTable = null;
   }
 
   boolean isShadowed(Point point, PointLight light) {
@@ -171,7 +745,7 @@ public class Scene {
       object = intersection.getObject();
       point = ray.getPosition(intersection.getT());
       eyeVec = ray.getDirection().negate();
-      var norm = intersection.getObject().normalAt(point);
+      var norm = intersection.getObject().normalAt(point, intersection.getIndex());
       if (norm.dot(eyeVec) < 0) {
         inside = true;
         norm = norm.negate();
@@ -0,0 +1,187 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * A depth cube map for each of a scene's lights, answering whether a point is shadowed from a light
+ * with a lookup and a comparison instead of tracing a shadow ray.
+ *
+ * <p>A light's map has six square faces, one per axis direction, each {@code resolution} texels
+ * across. Each texel holds the distance from the light to the closest object in the direction of
+ * the texel's center, found by tracing a ray from the light. A point is shadowed if it's further
+ * from the light, by more than the bias, than the depth of the texel in its direction. The bias
+ * keeps surfaces from shadowing themselves where they're sampled at a slightly different depth than
+ * the point, at the cost of letting light leak through objects thinner than it.
+ *
+ * <p>Since depths are only sampled at texel centers, shadow edges are blocky, and objects smaller
+ * than a texel may cast no shadow at all, but each lookup costs the same however complex the scene.
+ * Maps are only valid while the scene's objects and lights stay where they were when the maps were
+ * built, which {@link #isStale(Scene)} checks.
+ */
+final class ShadowMaps {
+  /** The steepest slope, to the light, of a surface allowed for when comparing depths. */
+  private static final float MAX_SLOPE = 8;
+
+  /**
+   * The largest fraction of a point's distance from the light by which its depth may be allowed to
+   * vary across a texel, so that coarse maps of surfaces at a glancing angle still cast shadows.
+   */
+  private static final float MAX_SLOPE_ALLOWANCE = .5f;
+
+  /** The number of texels along each side of each face. */
+  final int resolution;
+
+  /** The distance by which a point must be behind the depth in the map to be shadowed. */
+  final float bias;
+
+  /** The width of a texel at unit distance from the light, at the center of a face. */
+  private final float texelSize;
+
+  /** Each of the scene's objects' transform when the maps were built. */
+  private final Matrix4x4[] transforms;
+
+  /** Each light's position. */
+  private final float[] lx;
+
+  private final float[] ly;
+  private final float[] lz;
+
+  /** Each light's map, the faces in order +x, -x, +y, -y, +z, -z, each in row major order. */
+  private final float[][] depths;
+
+  /**
+   * Build maps for all of the specified scene's lights, in parallel, using the common fork/join
+   * pool.
+   *
+   * @param scene the scene
+   * @param resolution the number of texels along each side of each face
+   * @param bias the distance by which a point must be behind the depth in the map to be shadowed
+   */
+  ShadowMaps(Scene scene, int resolution, float bias) {
+    this.resolution = resolution;
+    this.bias = bias;
+    texelSize = 2f / resolution;
+    transforms = new Matrix4x4[scene.getObjectCount()];
+    for (int i = 0; i < transforms.length; ++i) {
+      transforms[i] = scene.getObject(i).getTransform();
+    }
+    var n = scene.getLightCount();
+    lx = new float[n];
+    ly = new float[n];
+    lz = new float[n];
+    depths = new float[n][6 * resolution * resolution];
+    for (int i = 0; i < n; ++i) {
+      var p = scene.getLight(i).getPosition();
+      lx[i] = p.getX();
+      ly[i] = p.getY();
+      lz[i] = p.getZ();
+    }
+    // tracers of their own, since the maps may be built while a thread's tracer is shading, and
+    // not thread locals, which would keep the scene for as long as the pool's threads live
+    var tracers = new ConcurrentHashMap<Thread, Tracer>();
+    // one task per row of each face of each map
+    IntStream.range(0, n * 6 * resolution)
+        .parallel()
+        .forEach(
+            task -> {
+              var light = task / (6 * resolution);
+              var row = task % (6 * resolution);
+              var face = row / resolution;
+              var v = row % resolution;
+              var tr = tracers.computeIfAbsent(Thread.currentThread(), t -> new Tracer(scene));
+              var depth = depths[light];
+              var x = lx[light];
+              var y = ly[light];
+              var z = lz[light];
+              var d = tr.scratch;
+              for (int u = 0; u < resolution; ++u) {
+                faceDirection(face, toFace(u), toFace(v), d);
+                tr.intersect(x, y, z, d.x, d.y, d.z);
+                depth[row * resolution + u] = tr.t;
+              }
+            });
+  }
+
+  /**
+   * Return whether any of the specified scene's objects has been given a new transform since these
+   * maps were built from it, so that they no longer match it.
+   */
+  boolean isStale(Scene scene) {
+    if (scene.getObjectCount() != transforms.length) {
+      return true;
+    }
+    for (int i = 0; i < transforms.length; ++i) {
+      if (scene.getObject(i).getTransform() != transforms[i]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Return the coordinate, in [-1, 1], of the center of the specified texel along a face. */
+  private float toFace(int texel) {
+    return (texel + .5f) / resolution * 2 - 1;
+  }
+
+  /** Return the texel containing the specified coordinate, in [-1, 1], along a face. */
+  private int toTexel(float f) {
+    return Math.max(0, Math.min(resolution - 1, (int) ((f + 1) / 2 * resolution)));
+  }
+
+  /**
+   * Set {@code direction} to the normalized direction from a light through the point with the
+   * specified coordinates on the specified face of the unit cube around it.
+   */
+  private static void faceDirection(int face, float a, float b, MutableVector3 direction) {
+    var major = (face & 1) == 0 ? 1 : -1;
+    switch (face >> 1) {
+      case 0 -> direction.set(major, a, b);
+      case 1 -> direction.set(a, major, b);
+      default -> direction.set(a, b, major);
+    }
+    direction.normalize();
+  }
+
+  /**
+   * Return whether the specified point, on a surface with the specified normal, is shadowed from
+   * the specified light, by its index within the scene, according to the light's map.
+   *
+   * <p>Besides the bias, the point is compared against the depth of its texel less how much a
+   * surface at its slope to the light varies in depth across a texel, so that a surface lit at a
+   * glancing angle doesn't shadow itself where the texel's center sees it closer to the light. The
+   * allowance is at most half the point's distance, however coarse the map, so that shadows don't
+   * disappear where texels are wide.
+   */
+  boolean isShadowed(int light, float x, float y, float z, float nx, float ny, float nz) {
+    var dx = x - lx[light];
+    var dy = y - ly[light];
+    var dz = z - lz[light];
+    var ax = Math.abs(dx);
+    var ay = Math.abs(dy);
+    var az = Math.abs(dz);
+    int face;
+    float a;
+    float b;
+    if (ax >= ay && ax >= az) {
+      face = dx >= 0 ? 0 : 1;
+      a = dy / ax;
+      b = dz / ax;
+    } else if (ay >= az) {
+      face = dy >= 0 ? 2 : 3;
+      a = dx / ay;
+      b = dz / ay;
+    } else {
+      face = dz >= 0 ? 4 : 5;
+      a = dx / az;
+      b = dy / az;
+    }
+    var distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    var depth = depths[light][(face * resolution + toTexel(b)) * resolution + toTexel(a)];
+    // the tangent of the angle between the normal and the direction to the light
+    var cos = Math.abs(dx * nx + dy * ny + dz * nz) / distance;
+    var slope = Math.min(MAX_SLOPE, (float) Math.sqrt(Math.max(0, 1 - cos * cos)) / cos);
+    var allowance = Math.min(texelSize * slope, MAX_SLOPE_ALLOWANCE);
+    return depth < distance * (1 - allowance) - bias;
+  }
+}
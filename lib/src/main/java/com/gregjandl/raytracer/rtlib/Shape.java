@@ -61,4 +61,18 @@ public interface Shape {
    * @return the normal
    */
   Vector3 normalAt(Point worldPoint);
+
+  /**
+   * Return the normal at the specified point on the sub-primitive (e.g., the face of a mesh) of
+   * this {@code Shape} indicated by {@code index}, as reported by an intersection.
+   *
+   * <p>Shapes which aren't made up of sub-primitives ignore the index.
+   *
+   * @param worldPoint Point on {@code Shape} for which to calculate the normal
+   * @param index index of the sub-primitive on which the point lies
+   * @return the normal
+   */
+  default Vector3 normalAt(Point worldPoint, int index) {
+    return normalAt(worldPoint);
+  }
 }
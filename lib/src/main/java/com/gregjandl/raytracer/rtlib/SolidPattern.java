@@ -0,0 +1,69 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/** A pattern of a single color everywhere, from which other patterns are built. */
+final class SolidPattern extends Pattern {
+  private final Color color;
+  private final float r;
+  private final float g;
+  private final float b;
+
+  SolidPattern(Color color) {
+    this(color, Matrix4x4.identity());
+  }
+
+  private SolidPattern(Color color, Matrix4x4 transform) {
+    super(transform);
+    this.color = Objects.requireNonNull(color);
+    r = color.getR();
+    g = color.getG();
+    b = color.getB();
+  }
+
+  Color getColor() {
+    return color;
+  }
+
+  @Override
+  public SolidPattern withTransform(Matrix4x4 t) {
+    return new SolidPattern(color, t);
+  }
+
+  @Override
+  void localColorAt(float x, float y, float z, Scratch s, MutableColor result) {
+    result.set(r, g, b);
+  }
+
+  @Override
+  void localColorAt(
+      float[] x,
+      float[] y,
+      float[] z,
+      int from,
+      int to,
+      Scratch s,
+      float[] r,
+      float[] g,
+      float[] b) {
+    Arrays.fill(r, from, to, this.r);
+    Arrays.fill(g, from, to, this.g);
+    Arrays.fill(b, from, to, this.b);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return super.equals(o) && color.equals(((SolidPattern) o).color);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), color);
+  }
+
+  @Override
+  public String toString() {
+    return "SolidPattern{color=" + color + '}';
+  }
+}
@@ -25,8 +25,73 @@ public class Sphere extends AbstractShape<Sphere> implements Shape {
     return xs;
   }
 
+  @Override
+  void localIntersect(Tracer tr) {
+    // the sphere is centered on the origin, so the origin is also the vector from the sphere
+    var sphereToRay = tr.localOrigin;
+    var direction = tr.localDirection;
+    var a = direction.dot(direction);
+    var b = 2 * direction.dot(sphereToRay);
+    var c = sphereToRay.dot(sphereToRay) - 1;
+
+    var discriminant = (b * b) - 4 * a * c;
+
+    if (discriminant >= 0) {
+      var sqrtOfDiscriminant = Math.sqrt(discriminant);
+      tr.offer((float) (-b - sqrtOfDiscriminant) / (2 * a), this, 0);
+      tr.offer((float) (-b + sqrtOfDiscriminant) / (2 * a), this, 0);
+    }
+  }
+
+  @Override
+  void localIntersect(RayPacket p, Tracer tr) {
+    var sphereToRay = p.localOrigin;
+    var c = sphereToRay.dot(sphereToRay) - 1;
+    for (int i = 0; i < p.size; ++i) {
+      var dx = p.ldx[i];
+      var dy = p.ldy[i];
+      var dz = p.ldz[i];
+      var a = dx * dx + dy * dy + dz * dz;
+      var b = 2 * (dx * sphereToRay.x + dy * sphereToRay.y + dz * sphereToRay.z);
+
+      var discriminant = (b * b) - 4 * a * c;
+
+      if (discriminant >= 0) {
+        var sqrtOfDiscriminant = Math.sqrt(discriminant);
+        p.offer(i, (float) (-b - sqrtOfDiscriminant) / (2 * a), this, 0);
+        p.offer(i, (float) (-b + sqrtOfDiscriminant) / (2 * a), this, 0);
+      }
+    }
+  }
+
+  @Override
+  float localBoundingSphere(MutableVector3 center) {
+    center.set(0, 0, 0);
+    return 1;
+  }
+
   @Override
   protected Vector3 localNormalAt(Point localPoint) {
     return localPoint.subtract(Point.ORIGIN);
   }
+
+  @Override
+  void localNormalAt(Tracer tr) {
+    tr.normal.set(tr.localPoint);
+  }
+
+  /**
+   * Map the sphere onto the texture by longitude and latitude: {@code u} runs once around the
+   * y axis, and {@code v} from the bottom pole to the top one.
+   */
+  @Override
+  float textureCoordinates(Tracer tr) {
+    var p = tr.localPoint;
+    var theta = Math.atan2(p.x, p.z);
+    var phi = Math.acos(Math.max(-1, Math.min(1, p.y / p.magnitude())));
+    tr.u = (float) (.5 - theta / (2 * Math.PI));
+    tr.v = (float) (1 - phi / Math.PI);
+    // v changes fastest, by 1 over the half circumference of the unit sphere
+    return (float) (1 / Math.PI);
+  }
 }
@@ -0,0 +1,41 @@
+package com.gregjandl.raytracer.rtlib;
+
+/**
+ * A pattern of stripes a unit wide, alternating in {@code x} between two other patterns, starting
+ * with {@code a} at {@code x = 0}.
+ */
+public final class StripePattern extends AlternatingPattern {
+  /**
+   * Create a {@code StripePattern} alternating between the specified colors.
+   *
+   * @param a the color of the stripes at even {@code x}
+   * @param b the color of the stripes at odd {@code x}
+   */
+  public StripePattern(Color a, Color b) {
+    this(Pattern.solid(a), Pattern.solid(b));
+  }
+
+  /**
+   * Create a {@code StripePattern} alternating between the specified patterns.
+   *
+   * @param a the pattern of the stripes at even {@code x}
+   * @param b the pattern of the stripes at odd {@code x}
+   */
+  public StripePattern(Pattern a, Pattern b) {
+    this(a, b, Matrix4x4.identity());
+  }
+
+  private StripePattern(Pattern a, Pattern b, Matrix4x4 transform) {
+    super(a, b, transform);
+  }
+
+  @Override
+  public StripePattern withTransform(Matrix4x4 t) {
+    return new StripePattern(getA(), getB(), t);
+  }
+
+  @Override
+  boolean isA(float x, float y, float z) {
+    return ((int) Math.floor(x) & 1) == 0;
+  }
+}
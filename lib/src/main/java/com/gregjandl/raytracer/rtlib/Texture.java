@@ -0,0 +1,426 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An image texture, read a tile at a time, as it's sampled, from a file of precomputed mip levels
+ * through a {@link TextureCache}, so that only the parts of it which are seen, at the resolution
+ * they're seen at, are held in memory.
+ *
+ * <p>A texture file is written from an image by {@link #write(BufferedImage, Path)}. Each mip level
+ * is half the width and height of the one before (rounding up), down to 1 by 1, each texel the
+ * average of the 2 by 2 texels it covers. Each level is stored as square tiles of {@link
+ * #TILE_SIZE} texels along each side, in row major order, with the tiles at the right and bottom
+ * edges padded by repeating the last texel. A texel is a packed 8-bit RGB {@code int}. The file is
+ * a 64 byte header followed by the tiles of each level in turn, all values little endian.
+ *
+ * <pre>
+ *   offset  size  contents
+ *   0       8     magic "RTTEX\0\0\0"
+ *   8       4     format version (1)
+ *   12      4     width of level 0
+ *   16      4     height of level 0
+ *   20      4     number of levels
+ *   24      4     tile size
+ *   28      36    reserved (0)
+ * </pre>
+ *
+ * <p>Texture coordinates {@code u} and {@code v} run from 0 to 1 across the image, from its left
+ * edge and its bottom edge, and repeat outside that range. A texture is sampled with trilinear
+ * filtering: bilinearly in the two mip levels whose texels are closest in size to the footprint
+ * being sampled, blended by how close each is.
+ */
+public final class Texture implements Closeable {
+  static final long MAGIC = 0x0000_0058_4554_5452L; // "RTTEX\0\0\0" read little endian
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+
+  /** The number of texels along each side of a tile. */
+  public static final int TILE_SIZE = 64;
+
+  /** The number of bytes of a tile, in a file and in a cache. */
+  static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+
+  private static final AtomicInteger nextId = new AtomicInteger();
+
+  /** Identifies this texture's tiles in caches. */
+  final int id = nextId.getAndIncrement();
+
+  private final FileChannel channel;
+  private final TextureCache cache;
+  private final int width;
+  private final int height;
+
+  /** Each level's width and height, and number of tiles across, and offset within the file. */
+  private final int[] levelWidth;
+
+  private final int[] levelHeight;
+  private final int[] levelTiles;
+  private final long[] levelOffset;
+
+  private Texture(FileChannel channel, TextureCache cache, int width, int height, int levels) {
+    this.channel = channel;
+    this.cache = cache;
+    this.width = width;
+    this.height = height;
+    levelWidth = new int[levels];
+    levelHeight = new int[levels];
+    levelTiles = new int[levels];
+    levelOffset = new long[levels];
+    var offset = (long) HEADER_SIZE;
+    var w = width;
+    var h = height;
+    for (int level = 0; level < levels; ++level) {
+      levelWidth[level] = w;
+      levelHeight[level] = h;
+      levelTiles[level] = tiles(w);
+      levelOffset[level] = offset;
+      offset += (long) tiles(w) * tiles(h) * TILE_BYTES;
+      w = half(w);
+      h = half(h);
+    }
+  }
+
+  /** Return the number of tiles needed to cover the specified number of texels. */
+  private static int tiles(int texels) {
+    return (texels + TILE_SIZE - 1) / TILE_SIZE;
+  }
+
+  /** Return the size of the next mip level after one of the specified size. */
+  private static int half(int size) {
+    return Math.max(1, (size + 1) / 2);
+  }
+
+  /** Return the number of mip levels of an image of the specified size, down to 1 by 1. */
+  static int levels(int width, int height) {
+    var levels = 1;
+    while (width > 1 || height > 1) {
+      width = half(width);
+      height = half(height);
+      ++levels;
+    }
+    return levels;
+  }
+
+  /**
+   * Write the specified image as a texture file, replacing any existing contents of the file. The
+   * whole image and its mip levels are held in memory while writing, so converting images to
+   * textures is best done once, ahead of rendering.
+   *
+   * @param image the image to write
+   * @param path the file to write to
+   * @throws IOException if the file can't be written
+   */
+  public static void write(BufferedImage image, Path path) throws IOException {
+    var width = image.getWidth();
+    var height = image.getHeight();
+    var levels = levels(width, height);
+    var texels = image.getRGB(0, 0, width, height, null, 0, width);
+    var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header
+        .putLong(MAGIC)
+        .putInt(VERSION)
+        .putInt(width)
+        .putInt(height)
+        .putInt(levels)
+        .putInt(TILE_SIZE)
+        .position(HEADER_SIZE)
+        .flip();
+    try (var channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      var pos = (long) writeFully(channel, header, 0);
+      var tile = ByteBuffer.allocate(TILE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      for (int level = 0; level < levels; ++level) {
+        for (int ty = 0; ty < tiles(height); ++ty) {
+          for (int tx = 0; tx < tiles(width); ++tx) {
+            tile.clear();
+            for (int y = 0; y < TILE_SIZE; ++y) {
+              var row = Math.min(ty * TILE_SIZE + y, height - 1) * width;
+              for (int x = 0; x < TILE_SIZE; ++x) {
+                tile.putInt(texels[row + Math.min(tx * TILE_SIZE + x, width - 1)] & 0xffffff);
+              }
+            }
+            pos += writeFully(channel, tile.flip(), pos);
+          }
+        }
+        var w = half(width);
+        var h = half(height);
+        texels = downsample(texels, width, height, w, h);
+        width = w;
+        height = h;
+      }
+    }
+  }
+
+  /** Return the next mip level of the specified texels, each the average of 2 by 2 of them. */
+  private static int[] downsample(int[] texels, int width, int height, int w, int h) {
+    var result = new int[w * h];
+    for (int y = 0; y < h; ++y) {
+      var y0 = Math.min(2 * y, height - 1) * width;
+      var y1 = Math.min(2 * y + 1, height - 1) * width;
+      for (int x = 0; x < w; ++x) {
+        var x0 = Math.min(2 * x, width - 1);
+        var x1 = Math.min(2 * x + 1, width - 1);
+        var a = texels[y0 + x0];
+        var b = texels[y0 + x1];
+        var c = texels[y1 + x0];
+        var d = texels[y1 + x1];
+        var rgb = 0;
+        for (int shift = 0; shift < 24; shift += 8) {
+          var sum = (a >> shift & 0xff) + (b >> shift & 0xff) + (c >> shift & 0xff);
+          sum += d >> shift & 0xff;
+          rgb |= (sum + 2) / 4 << shift;
+        }
+        result[y * w + x] = rgb;
+      }
+    }
+    return result;
+  }
+
+  private static int writeFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+    var written = 0;
+    while (buf.hasRemaining()) {
+      written += channel.write(buf, pos + written);
+    }
+    return written;
+  }
+
+  /**
+   * Open the specified texture file, to be read through the {@linkplain TextureCache#getDefault()
+   * default cache}.
+   *
+   * @param path the file to open
+   * @return the texture
+   * @throws IOException if the file can't be read or isn't a texture file
+   */
+  public static Texture open(Path path) throws IOException {
+    return open(path, TextureCache.getDefault());
+  }
+
+  /**
+   * Open the specified texture file, to be read through the specified cache. Only the header is
+   * read; tiles are read as they're sampled, so the file must be left in place until the texture
+   * is closed.
+   *
+   * @param path the file to open
+   * @param cache the cache to hold the texture's tiles
+   * @return the texture
+   * @throws IOException if the file can't be read or isn't a texture file
+   */
+  public static Texture open(Path path, TextureCache cache) throws IOException {
+    var channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining()) {
+        if (channel.read(header, header.position()) < 0) {
+          throw new IOException(path + " is too short to be a texture file");
+        }
+      }
+      header.flip();
+      if (header.getLong() != MAGIC) {
+        throw new IOException(path + " is not a texture file");
+      }
+      var version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException(path + " has unsupported texture file version " + version);
+      }
+      var width = header.getInt();
+      var height = header.getInt();
+      var levels = header.getInt();
+      var tileSize = header.getInt();
+      if (width < 1 || height < 1 || levels != levels(width, height) || tileSize != TILE_SIZE) {
+        throw new IOException(path + " has a corrupt texture file header");
+      }
+      var texture = new Texture(channel, cache, width, height, levels);
+      var last = levels - 1;
+      var end = texture.levelOffset[last] + TILE_BYTES;
+      if (channel.size() < end) {
+        throw new IOException(path + " is too short for its texture file header");
+      }
+      return texture;
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Return the width of this {@code Texture}'s full resolution image.
+   *
+   * @return the width in texels
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Return the height of this {@code Texture}'s full resolution image.
+   *
+   * @return the height in texels
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Return the number of mip levels of this {@code Texture}, including the full resolution image.
+   *
+   * @return the number of levels
+   */
+  public int getLevelCount() {
+    return levelWidth.length;
+  }
+
+  /**
+   * Return the cache this {@code Texture}'s tiles are read through.
+   *
+   * @return the cache
+   */
+  public TextureCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Close the file this {@code Texture} is read from. Sampling it afterwards fails unless the tiles
+   * sampled are still in the cache.
+   *
+   * @throws IOException if the file can't be closed
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Return the mip level, with a fraction for blending with the next, whose texels are the
+   * specified size in texture coordinates: 0 for a footprint no bigger than a texel of the full
+   * resolution image, and each level up as the footprint doubles.
+   */
+  float level(float footprint) {
+    var texels = footprint * Math.max(width, height);
+    if (!(texels > 1)) {
+      return 0;
+    }
+    var level = (float) (Math.log(texels) / Math.log(2));
+    return Math.min(level, levelWidth.length - 1);
+  }
+
+  /**
+   * Set {@code into} to the color of this texture at the specified texture coordinates, filtered
+   * over a footprint of the specified size in texture coordinates, using the mip levels chosen by
+   * {@link #level(float)}.
+   *
+   * @throws UncheckedIOException if a tile can't be read
+   */
+  void sample(float u, float v, float footprint, MutableColor into) {
+    var level = level(footprint);
+    var lower = (int) level;
+    var fraction = level - lower;
+    sample(lower, u, v, into);
+    if (fraction > 0) {
+      var r = into.r;
+      var g = into.g;
+      var b = into.b;
+      sample(lower + 1, u, v, into);
+      into.set(
+          r + (into.r - r) * fraction, g + (into.g - g) * fraction, b + (into.b - b) * fraction);
+    }
+  }
+
+  /** Set {@code into} to the bilinearly filtered color of the specified level at (u, v). */
+  private void sample(int level, float u, float v, MutableColor into) {
+    var w = levelWidth[level];
+    var h = levelHeight[level];
+    // texel centers are at half texels, and v runs up from the bottom row
+    var x = (u - (float) Math.floor(u)) * w - .5f;
+    var y = (1 - (v - (float) Math.floor(v))) * h - .5f;
+    var x0 = (int) Math.floor(x);
+    var y0 = (int) Math.floor(y);
+    var fx = x - x0;
+    var fy = y - y0;
+    var x1 = Math.floorMod(x0 + 1, w);
+    var y1 = Math.floorMod(y0 + 1, h);
+    x0 = Math.floorMod(x0, w);
+    y0 = Math.floorMod(y0, h);
+    // the four texels are usually in the same tile, so only look up each tile once
+    var tx0 = x0 / TILE_SIZE;
+    var ty0 = y0 / TILE_SIZE;
+    var tx1 = x1 / TILE_SIZE;
+    var ty1 = y1 / TILE_SIZE;
+    var t00 = cache.tile(this, level, tx0, ty0);
+    var t10 = tx1 == tx0 ? t00 : cache.tile(this, level, tx1, ty0);
+    var t01 = ty1 == ty0 ? t00 : cache.tile(this, level, tx0, ty1);
+    var t11 = ty1 == ty0 ? t10 : tx1 == tx0 ? t01 : cache.tile(this, level, tx1, ty1);
+    var a = t00[offset(x0, y0)];
+    var b = t10[offset(x1, y0)];
+    var c = t01[offset(x0, y1)];
+    var d = t11[offset(x1, y1)];
+    into.set(
+        bilinear(a >> 16, b >> 16, c >> 16, d >> 16, fx, fy),
+        bilinear(a >> 8, b >> 8, c >> 8, d >> 8, fx, fy),
+        bilinear(a, b, c, d, fx, fy));
+  }
+
+  /** Return the bilinear interpolation of the low 8 bits of each of 4 texels, scaled to [0, 1]. */
+  private static float bilinear(int a, int b, int c, int d, float fx, float fy) {
+    var top = (a & 0xff) + ((b & 0xff) - (a & 0xff)) * fx;
+    var bottom = (c & 0xff) + ((d & 0xff) - (c & 0xff)) * fx;
+    return (top + (bottom - top) * fy) / 255;
+  }
+
+  /** Return the offset within its tile of the texel at the specified column and row. */
+  private static int offset(int x, int y) {
+    return y % TILE_SIZE * TILE_SIZE + x % TILE_SIZE;
+  }
+
+  /** Return the texel at the specified column and row of the specified level. */
+  int texel(int level, int x, int y) {
+    return cache.tile(this, level, x / TILE_SIZE, y / TILE_SIZE)[offset(x, y)];
+  }
+
+  /**
+   * Read the specified tile of the specified level from the file.
+   *
+   * @throws UncheckedIOException if the tile can't be read
+   */
+  int[] readTile(int level, int tx, int ty) {
+    var offset = levelOffset[level] + ((long) ty * levelTiles[level] + tx) * TILE_BYTES;
+    var buf = ByteBuffer.allocate(TILE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    try {
+      while (buf.hasRemaining()) {
+        if (channel.read(buf, offset + buf.position()) < 0) {
+          throw new IOException("Texture file ends within tile " + tx + ", " + ty);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    var tile = new int[TILE_SIZE * TILE_SIZE];
+    buf.flip().asIntBuffer().get(tile);
+    return tile;
+  }
+
+  /**
+   * Returns a string representation of this {@code Texture}. This method is intended to be used
+   * for debugging purposes; the representation may change, but will not be {@code null}.
+   *
+   * @return a string representation of this {@code Texture}
+   */
+  @Override
+  public String toString() {
+    return "Texture{id=" + id + ", width=" + width + ", height=" + height + '}';
+  }
+}
@@ -0,0 +1,364 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds the tiles of {@link Texture}s which have been read, within a fixed memory budget, evicting
+ * the least recently used tile to make room for another once the budget is reached.
+ *
+ * <p>A cache may be shared by any number of textures, and is thread safe. A large cache is split
+ * into up to {@value #MAX_STRIPES} stripes, each holding its share of the budget and evicting its
+ * own least recently used tile, so threads sampling different tiles rarely wait on the same lock.
+ * Tiles are looked up under their stripe's lock, but read from their files outside it, so threads
+ * missing the cache don't hold up those hitting it; two threads missing the same tile at once may
+ * both read it. Tiles are keyed by a {@code long}, in tables of primitives, so a lookup allocates
+ * nothing.
+ */
+public final class TextureCache {
+  /** The budget of the default cache, in bytes: 64 MiB. */
+  public static final long DEFAULT_BUDGET = 64L << 20;
+
+  /** The most stripes a cache is split into. */
+  static final int MAX_STRIPES = 16;
+
+  /** The fewest tiles a stripe holds, so small caches evict close to the least recently used. */
+  private static final int MIN_STRIPE_TILES = 64;
+
+  private static final TextureCache DEFAULT = new TextureCache(DEFAULT_BUDGET);
+
+  private final long budget;
+  private final Stripe[] stripes;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Create an empty {@code TextureCache} which holds at most {@code budget} bytes of tiles.
+   *
+   * @param budget the most memory, in bytes, for the cache's tiles to use
+   * @throws IllegalArgumentException if {@code budget} is too small to hold a single tile
+   */
+  public TextureCache(long budget) {
+    if (budget < Texture.TILE_BYTES) {
+      throw new IllegalArgumentException(
+          "Texture cache budget must be at least " + Texture.TILE_BYTES + " bytes: " + budget);
+    }
+    this.budget = budget;
+    var capacity = budget / Texture.TILE_BYTES;
+    var stripeCount = (int) Math.max(1, Math.min(MAX_STRIPES, capacity / MIN_STRIPE_TILES));
+    // a power of two, so a stripe can be picked by masking
+    stripeCount = Integer.highestOneBit(stripeCount);
+    var stripeCapacity = (int) Math.min(Stripe.MAX_CAPACITY, capacity / stripeCount);
+    stripes = new Stripe[stripeCount];
+    for (int i = 0; i < stripeCount; ++i) {
+      stripes[i] = new Stripe(stripeCapacity);
+    }
+  }
+
+  /**
+   * Return the cache shared by textures opened without one, whose budget is {@link
+   * #DEFAULT_BUDGET}.
+   *
+   * @return the default cache
+   */
+  public static TextureCache getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Return the most memory, in bytes, this cache's tiles may use.
+   *
+   * @return the budget
+   */
+  public long getBudget() {
+    return budget;
+  }
+
+  /**
+   * Return the number of tiles this cache is holding.
+   *
+   * @return the number of tiles
+   */
+  public int getTileCount() {
+    var count = 0;
+    for (var tiles : stripes) {
+      synchronized (tiles) {
+        count += tiles.size();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Return the number of tile lookups which found the tile in the cache, since it was created or
+   * the counts were reset.
+   *
+   * @return the number of hits
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * Return the number of tile lookups which had to read the tile from its texture's file, since
+   * the cache was created or the counts were reset.
+   *
+   * @return the number of misses
+   */
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * Return the number of tiles evicted to keep within the budget, since the cache was created or
+   * the counts were reset.
+   *
+   * @return the number of evictions
+   */
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * Return the fraction of tile lookups which found the tile in the cache, since it was created or
+   * the counts were reset.
+   *
+   * @return the hit rate, or 0 if there have been no lookups
+   */
+  public double getHitRate() {
+    var hitCount = hits.sum();
+    var lookups = hitCount + misses.sum();
+    return lookups == 0 ? 0 : (double) hitCount / lookups;
+  }
+
+  /** Reset the counts of hits, misses and evictions to 0. */
+  public void resetCounts() {
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+  }
+
+  /** Remove every tile from this cache. */
+  public void clear() {
+    for (var tiles : stripes) {
+      synchronized (tiles) {
+        tiles.clear();
+      }
+    }
+  }
+
+  /**
+   * Return the specified tile of the specified level of the specified texture, reading it from the
+   * texture's file if it isn't in the cache.
+   */
+  int[] tile(Texture texture, int level, int tx, int ty) {
+    // up to 2^24 textures of up to 256 levels of up to 65536 by 65536 tiles
+    var key = (long) texture.id << 40 | (long) level << 32 | (long) ty << 16 | tx;
+    // neighboring tiles differ only in their low bits, so pick the stripe by mixed ones
+    var tiles = stripes[(int) (hash(key) >>> 32) & (stripes.length - 1)];
+    synchronized (tiles) {
+      var tile = tiles.get(key);
+      if (tile != null) {
+        hits.increment();
+        return tile;
+      }
+    }
+    misses.increment();
+    var tile = texture.readTile(level, tx, ty);
+    synchronized (tiles) {
+      if (tiles.put(key, tile)) {
+        evictions.increment();
+      }
+    }
+    return tile;
+  }
+
+  /** Return a hash of a tile key, with all of its bits mixed into the high ones. */
+  private static long hash(long key) {
+    return key * 0x9e3779b97f4a7c15L;
+  }
+
+  /**
+   * One stripe of a cache: an open addressing hash table of tiles by key, whose entries are also
+   * linked in order of use, from the least recently used to the most. Entries are allocated as
+   * the stripe fills, up to its capacity, after which each new tile takes the place of the least
+   * recently used. Not thread safe; the cache locks a stripe to use it.
+   */
+  private static final class Stripe {
+    /** The most tiles a stripe holds, far more than fit in memory, so that slots fit an int. */
+    static final int MAX_CAPACITY = 1 << 28;
+
+    private final int capacity;
+    private int size;
+
+    /** Each entry's key and tile, and the entries used before and after it, or -1. */
+    private long[] keys;
+
+    private int[][] tiles;
+    private int[] previous;
+    private int[] next;
+
+    /** The least and most recently used entries, or -1 if the stripe is empty. */
+    private int oldest = -1;
+
+    private int newest = -1;
+
+    /**
+     * The hash table: each slot holds one more than the index of an entry, or 0 if it's empty.
+     * There are at least twice as many slots as entries, and always a power of two.
+     */
+    private int[] slots;
+
+    Stripe(int capacity) {
+      this.capacity = capacity;
+      allocate(Math.min(capacity, 16));
+    }
+
+    /** Return the tile with the specified key, making it the most recently used, or null. */
+    int[] get(long key) {
+      var e = find(key);
+      if (e < 0) {
+        return null;
+      }
+      use(e);
+      return tiles[e];
+    }
+
+    /**
+     * Hold the specified tile under the specified key, as the most recently used, in place of any
+     * tile already held under the key, evicting the least recently used tile if the stripe is full.
+     *
+     * @return whether a tile was evicted
+     */
+    boolean put(long key, int[] tile) {
+      var e = find(key);
+      if (e >= 0) {
+        tiles[e] = tile;
+        use(e);
+        return false;
+      }
+      var evicted = size == capacity;
+      if (evicted) {
+        e = oldest;
+        unlink(e);
+        remove(e);
+      } else {
+        if (size == keys.length) {
+          allocate(Math.min(capacity, size * 2));
+        }
+        e = size++;
+      }
+      keys[e] = key;
+      tiles[e] = tile;
+      place(e);
+      link(e);
+      return evicted;
+    }
+
+    int size() {
+      return size;
+    }
+
+    void clear() {
+      Arrays.fill(tiles, 0, size, null);
+      Arrays.fill(slots, 0);
+      size = 0;
+      oldest = -1;
+      newest = -1;
+    }
+
+    /** Return the slot at which the search for the specified key starts. */
+    private int home(long key) {
+      // the top bits, since the cache picks the stripe by lower ones
+      return (int) (hash(key) >>> 64 - Integer.numberOfTrailingZeros(slots.length));
+    }
+
+    /** Return the entry with the specified key, or -1 if there's none. */
+    private int find(long key) {
+      var mask = slots.length - 1;
+      for (int s = home(key); slots[s] != 0; s = s + 1 & mask) {
+        if (keys[slots[s] - 1] == key) {
+          return slots[s] - 1;
+        }
+      }
+      return -1;
+    }
+
+    /** Put entry {@code e} in the first empty slot from its home. */
+    private void place(int e) {
+      var mask = slots.length - 1;
+      var s = home(keys[e]);
+      while (slots[s] != 0) {
+        s = s + 1 & mask;
+      }
+      slots[s] = e + 1;
+    }
+
+    /**
+     * Remove entry {@code e} from the table, moving back any entries after it in its cluster which
+     * would otherwise no longer be found from their home slots.
+     */
+    private void remove(int e) {
+      var mask = slots.length - 1;
+      var gap = home(keys[e]);
+      while (slots[gap] != e + 1) {
+        gap = gap + 1 & mask;
+      }
+      for (int s = gap + 1 & mask; slots[s] != 0; s = s + 1 & mask) {
+        // an entry can fill the gap unless its home is after the gap, up to where it is
+        if ((s - home(keys[slots[s] - 1]) & mask) >= (s - gap & mask)) {
+          slots[gap] = slots[s];
+          gap = s;
+        }
+      }
+      slots[gap] = 0;
+    }
+
+    /** Grow the entries to the specified number, with a table of at least twice as many slots. */
+    private void allocate(int entries) {
+      keys = keys == null ? new long[entries] : Arrays.copyOf(keys, entries);
+      tiles = tiles == null ? new int[entries][] : Arrays.copyOf(tiles, entries);
+      previous = previous == null ? new int[entries] : Arrays.copyOf(previous, entries);
+      next = next == null ? new int[entries] : Arrays.copyOf(next, entries);
+      slots = new int[Integer.highestOneBit(entries * 4 - 1)];
+      for (int e = 0; e < size; ++e) {
+        place(e);
+      }
+    }
+
+    /** Make entry {@code e} the most recently used. */
+    private void use(int e) {
+      if (e != newest) {
+        unlink(e);
+        link(e);
+      }
+    }
+
+    /** Add entry {@code e} to the end of the list, as the most recently used. */
+    private void link(int e) {
+      previous[e] = newest;
+      next[e] = -1;
+      if (newest >= 0) {
+        next[newest] = e;
+      } else {
+        oldest = e;
+      }
+      newest = e;
+    }
+
+    /** Take entry {@code e} out of the list. */
+    private void unlink(int e) {
+      if (previous[e] >= 0) {
+        next[previous[e]] = next[e];
+      } else {
+        oldest = next[e];
+      }
+      if (next[e] >= 0) {
+        previous[next[e]] = previous[e];
+      } else {
+        newest = previous[e];
+      }
+    }
+  }
+}
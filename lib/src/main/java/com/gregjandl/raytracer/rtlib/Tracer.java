@@ -0,0 +1,737 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static com.gregjandl.raytracer.rtlib.Utils.EPSILON;
+
+import java.util.Arrays;
+
+/**
+ * Traces rays through a {@code Scene} without allocating.
+ *
+ * <p>Everything needed to find and shade a hit (the ray, the closest hit, the point, eye vector and
+ * normal at the hit, and the accumulated color) is kept in fields of the tracer, as primitives or
+ * {@code MutableVector3}s and {@code MutableColor}s, which are reused for every ray a thread
+ * traces, instead of in {@code Ray}s, {@code IntersectionList}s, {@code Point}s, {@code Vector3}s
+ * and {@code Color}s. Shapes and materials read and write these fields directly.
+ *
+ * <p>A {@code Tracer} is not thread safe; use {@link Scene#tracer()} to get the calling thread's,
+ * and close it when done. Each thread keeps one tracer, with its buffers, for every scene it
+ * traces, bound to a scene only until it's closed, so that a thread which has traced a scene
+ * doesn't keep it, or its objects, from being collected.
+ */
+final class Tracer implements AutoCloseable {
+  /** Each thread's tracer, which refers to no scene while it isn't tracing one. */
+  private static final ThreadLocal<Tracer> TRACERS = ThreadLocal.withInitial(Tracer::new);
+
+  /** The scene being traced, or {@code null} if the tracer is free. */
+  Scene scene;
+
+  /** The number of times the tracer has been acquired for its scene and not yet closed. */
+  private int holds;
+
+  /** Whether the visibility buffer holds the hits of a render not yet released. */
+  private boolean rasterized;
+
+  /** Traversal stack for shapes with a hierarchy, such as {@code TriangleMesh}. */
+  final int[] stack = new int[MeshBvh.MAX_DEPTH * 2];
+
+  /** The world space ray being intersected. */
+  final MutableVector3 origin = new MutableVector3();
+
+  final MutableVector3 direction = new MutableVector3();
+
+  /** The ray transformed into the space of the shape being intersected. */
+  final MutableVector3 localOrigin = new MutableVector3();
+
+  final MutableVector3 localDirection = new MutableVector3();
+
+  /** The distance to the closest hit so far, if {@code object} is non-null. */
+  float t;
+
+  Shape object;
+  int index;
+
+  /** The index within the scene of {@code object}. */
+  int objectIndex;
+
+  /** The index within the scene of the object currently being intersected. */
+  private int candidate;
+
+  /** Whether any hit will do, in which case shapes may stop intersecting once one is found. */
+  boolean anyHit;
+
+  /** The hit point, in world and object space. */
+  final MutableVector3 point = new MutableVector3();
+
+  final MutableVector3 localPoint = new MutableVector3();
+
+  /** The eye vector and surface normal at the hit point. */
+  final MutableVector3 eye = new MutableVector3();
+
+  final MutableVector3 normal = new MutableVector3();
+
+  /** The hit point, nudged off the surface to avoid self shadowing. */
+  final MutableVector3 overPoint = new MutableVector3();
+
+  /** Whether the hit is on the inside of the surface, so that the normal was flipped. */
+  boolean inside;
+
+  /**
+   * The width, per unit of distance from the eye, of the cone of rays through a pixel, or 0 if the
+   * rays being traced aren't from a camera. Set by whoever traces primary rays.
+   */
+  float spread;
+
+  /** The distance from the eye to the origin of the ray being traced, along its path. */
+  float traveled;
+
+  /** The distance from the eye to the hit point, along the ray's path. */
+  float hitDistance;
+
+  /**
+   * The texture coordinates at the hit point, and the color there of its material's texture and
+   * pattern, multiplied together.
+   */
+  float u;
+
+  float v;
+  final MutableColor texel = new MutableColor();
+
+  /** Space for evaluating patterns. */
+  final Pattern.Scratch patternScratch = new Pattern.Scratch();
+
+  /** Scratch space for lighting calculations. */
+  final MutableVector3 scratch = new MutableVector3();
+
+  /** The shaded color. */
+  final MutableColor color = new MutableColor();
+
+  /** The contribution of a sampled light, and the probability with which it was picked. */
+  final MutableColor sample = new MutableColor();
+
+  float lightProbability;
+
+  /** The lighting constants of a textured material, scaled by the texel at the hit point. */
+  final float[] constants = new float[LightingTable.SIZE];
+
+  /**
+   * The outputs to record the next primary hit (or miss) in, and its pixel, by index in row major
+   * order, or -1 if there's nothing to record. Set by whoever traces primary rays, and reset once
+   * recorded, so that secondary hits aren't.
+   */
+  Aov[] aovs;
+
+  int aovPixel = -1;
+
+  /** A packet for tracing coherent rays, such as primary rays, together. */
+  final RayPacket packet = new RayPacket();
+
+  /** The queues of the last wavefront render this thread ran, kept for the next. */
+  private Wavefront wavefront;
+
+  /** The visibility buffer of the last render this thread rasterized, kept for the next. */
+  private VisibilityBuffer visibility;
+
+  /** The sampler this thread antialiases with, created on first use. */
+  private AdaptiveSampler sampler;
+
+  /**
+   * The transform of the last shape, other than an {@link AbstractShape}, whose normal was
+   * computed, and its inverse, so that hits on the same shape don't invert it again.
+   */
+  private Matrix4x4 lastTransform;
+
+  private Matrix4x4 lastInverse;
+
+  /** Construct a free {@code Tracer}. */
+  private Tracer() {}
+
+  /**
+   * Construct a {@code Tracer} of its own for the specified scene, for work which can't share the
+   * calling thread's.
+   */
+  Tracer(Scene scene) {
+    this.scene = scene;
+  }
+
+  /**
+   * Return the calling thread's tracer, bound to the specified scene until it's closed. If the
+   * thread is already tracing the same scene, the tracer is shared, and it's released when the
+   * last holder closes it; if it's tracing another scene, a new tracer is returned instead.
+   */
+  static Tracer acquire(Scene scene) {
+    var tr = TRACERS.get();
+    if (tr.scene != null && tr.scene != scene) {
+      tr = new Tracer();
+    }
+    tr.scene = scene;
+    ++tr.holds;
+    return tr;
+  }
+
+  /**
+   * Release this tracer from its scene once every holder has closed it, dropping its references
+   * to the scene and to the objects it last hit.
+   */
+  @Override
+  public void close() {
+    if (--holds > 0) {
+      return;
+    }
+    holds = 0;
+    scene = null;
+    object = null;
+    aovs = null;
+    aovPixel = -1;
+    lastTransform = null;
+    lastInverse = null;
+    Arrays.fill(packet.object, null);
+    if (rasterized) {
+      Arrays.fill(visibility.object, null);
+      rasterized = false;
+    }
+  }
+
+  /**
+   * Return a wavefront renderer of the specified capacity for this thread's renders, reusing the
+   * last one if it's the same size.
+   */
+  Wavefront wavefront(int capacity) {
+    if (wavefront == null || wavefront.capacity != capacity) {
+      wavefront = new Wavefront(capacity);
+    }
+    return wavefront;
+  }
+
+  /**
+   * Return a visibility buffer of the specified size for this thread's renders, reusing the last
+   * one if it's the same size.
+   */
+  VisibilityBuffer visibility(int width, int height) {
+    if (visibility == null || visibility.width != width || visibility.height != height) {
+      visibility = new VisibilityBuffer(width, height);
+    }
+    rasterized = true;
+    return visibility;
+  }
+
+  /** Return the adaptive sampler for this thread's antialiased renders. */
+  AdaptiveSampler sampler() {
+    if (sampler == null) {
+      sampler = new AdaptiveSampler(this);
+    }
+    return sampler;
+  }
+
+  /**
+   * Trace the specified ray into the scene and shade the closest hit, leaving the resulting color
+   * in {@code color}. The equivalent of {@link Scene#colorAt(Ray)}.
+   */
+  void colorAt(float ox, float oy, float oz, float dx, float dy, float dz) {
+    traveled = 0;
+    colorAt(ox, oy, oz, dx, dy, dz, scene.getMaxDepth(), 1);
+  }
+
+  /**
+   * Trace the specified ray as {@link #colorAt(float, float, float, float, float, float)} does,
+   * with the specified number of reflections or refractions left to it and the specified
+   * contribution to the color of its primary ray.
+   */
+  private void colorAt(
+      float ox, float oy, float oz, float dx, float dy, float dz, int remaining, float weight) {
+    color.set(0, 0, 0);
+    intersect(ox, oy, oz, dx, dy, dz);
+    shade(remaining, weight);
+  }
+
+  /**
+   * Shade the current hit, if any, with the specified number of reflections or refractions left to
+   * it and the specified contribution to the color of its primary ray, adding to {@code color}.
+   */
+  private void shade(int remaining, float weight) {
+    if (object == null) {
+      if (aovPixel >= 0) {
+        for (var aov : aovs) {
+          aov.clear(aovPixel);
+        }
+        aovPixel = -1;
+      }
+      return;
+    }
+    prepare();
+    var material = scene.materials().idOf(objectIndex);
+    sampleTexture(material);
+    samplePattern(material);
+    if (aovPixel >= 0) {
+      var m = scene.materials().get(material);
+      var n = normal;
+      for (var aov : aovs) {
+        aov.record(aovPixel, t, n.x, n.y, n.z, m, texel.r, texel.g, texel.b, objectIndex);
+      }
+      aovPixel = -1;
+    }
+    shadeHit(material);
+    shadeSecondary(material, remaining, weight);
+  }
+
+  /**
+   * Find the closest hit, at or in front of the origin, of the specified ray with the objects in
+   * the scene. On return {@code object} is the object hit (or {@code null} if there was no hit),
+   * {@code t} the distance along the ray, and {@code index} the sub-primitive hit.
+   */
+  void intersect(float ox, float oy, float oz, float dx, float dy, float dz) {
+    anyHit = false;
+    intersect(ox, oy, oz, dx, dy, dz, Float.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Determine whether any object in the scene lies between the origin of the specified ray and
+   * {@code maxT} along it, stopping at the first such object found. On return {@code object} is
+   * that object, or {@code null} if there is none, and {@code t} is its distance along the ray,
+   * which isn't necessarily the closest.
+   */
+  boolean occluded(float ox, float oy, float oz, float dx, float dy, float dz, float maxT) {
+    anyHit = true;
+    intersect(ox, oy, oz, dx, dy, dz, maxT);
+    return object != null;
+  }
+
+  private void intersect(float ox, float oy, float oz, float dx, float dy, float dz, float maxT) {
+    origin.set(ox, oy, oz);
+    direction.set(dx, dy, dz);
+    t = maxT;
+    object = null;
+    index = 0;
+    objectIndex = -1;
+    for (int i = 0; i < scene.getObjectCount(); ++i) {
+      intersectObject(i);
+      if (anyHit && object != null) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Intersect the current ray ({@code origin} and {@code direction}) with the object at the
+   * specified index within the scene alone, offering its hits, so the current hit is kept unless
+   * that object is hit closer. Intersecting each object in turn, in scene order, gives exactly the
+   * hit {@link #intersect(float, float, float, float, float, float)} does.
+   */
+  void intersectObject(int i) {
+    var obj = scene.getObject(i);
+    candidate = i;
+    if (obj instanceof AbstractShape<?> shape) {
+      shape.intersect(this);
+    } else {
+      var ray = new Ray(origin.toPoint(), direction.toVector3());
+      for (var x : obj.intersects(ray)) {
+        offer(x.getT(), obj, x.getIndex());
+      }
+    }
+  }
+
+  /**
+   * Find the closest hit of each ray of the specified packet with the objects in the scene, as
+   * {@link #intersect(float, float, float, float, float, float)} would for each ray alone. The
+   * results are left in the packet's lanes.
+   */
+  void intersect(RayPacket p) {
+    if (!p.bound()) {
+      // too incoherent for a packet to help
+      var o = p.origin;
+      for (int i = 0; i < p.size; ++i) {
+        intersect(o.x, o.y, o.z, p.dx[i], p.dy[i], p.dz[i]);
+        p.t[i] = t;
+        p.object[i] = object;
+        p.index[i] = index;
+        p.objectIndex[i] = objectIndex;
+      }
+      return;
+    }
+    anyHit = false;
+    for (int i = 0; i < scene.getObjectCount(); ++i) {
+      var obj = scene.getObject(i);
+      p.candidate = i;
+      candidate = i;
+      if (obj instanceof AbstractShape<?> shape) {
+        shape.intersect(p, this);
+      } else {
+        for (int lane = 0; lane < p.size; ++lane) {
+          var ray = new Ray(p.origin.toPoint(), new Vector3(p.dx[lane], p.dy[lane], p.dz[lane]));
+          for (var x : obj.intersects(ray)) {
+            p.offer(lane, x.getT(), obj, x.getIndex());
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Shade the hit of the specified lane of a packet which has been intersected with the scene,
+   * leaving the resulting color in {@code color}, as {@link #colorAt(float, float, float, float,
+   * float, float)} would for the lane's ray alone.
+   */
+  void colorAt(RayPacket p, int lane) {
+    color.set(0, 0, 0);
+    object = p.object[lane];
+    origin.set(p.origin);
+    direction.set(p.dx[lane], p.dy[lane], p.dz[lane]);
+    t = p.t[lane];
+    index = p.index[lane];
+    objectIndex = p.objectIndex[lane];
+    traveled = 0;
+    shade(scene.getMaxDepth(), 1);
+  }
+
+  /**
+   * Shade the primary hit, found by rasterizing, at the specified pixel of a visibility buffer,
+   * leaving the resulting color in {@code color}, as {@link #colorAt(float, float, float, float,
+   * float, float)} would for the pixel's ray.
+   */
+  void colorAt(VisibilityBuffer v, int pixel) {
+    color.set(0, 0, 0);
+    object = v.object[pixel];
+    origin.set(v.ox, v.oy, v.oz);
+    direction.set(v.dx[pixel], v.dy[pixel], v.dz[pixel]);
+    t = v.t[pixel];
+    index = v.index[pixel];
+    objectIndex = v.objectIndex[pixel];
+    traveled = 0;
+    shade(scene.getMaxDepth(), 1);
+  }
+
+  /**
+   * Record an intersection of the current ray with the specified object, if it is the closest hit
+   * so far (and closer than the limit, if any, on the distance of hits).
+   */
+  void offer(float t, Shape object, int index) {
+    if (t >= 0 && t < this.t) {
+      this.t = t;
+      this.object = object;
+      this.index = index;
+      objectIndex = candidate;
+    }
+  }
+
+  /**
+   * Compute the hit point, in world and object space, and the surface normal there for the current
+   * hit. The normal is the shape's, so may face away from the ray's origin.
+   */
+  void computeNormal() {
+    point.set(origin).addScaled(direction, t);
+    if (object instanceof AbstractShape<?> shape) {
+      shape.normalAt(this);
+    } else {
+      normal.set(object.normalAt(point.toPoint(), index));
+      var transform = object.getTransform();
+      if (transform != lastTransform) {
+        lastInverse = transform.invert();
+        lastTransform = transform;
+      }
+      localPoint.set(point).transformPoint(lastInverse);
+    }
+  }
+
+  /**
+   * Compute the hit point, eye vector, normal, over point and distance from the eye for the current
+   * hit.
+   */
+  void prepare() {
+    hitDistance = traveled + t;
+    computeNormal();
+    eye.set(direction).negate();
+    inside = normal.dot(eye) < 0;
+    if (inside) {
+      normal.negate();
+    }
+    overPoint.set(point).addScaled(normal, EPSILON * 16);
+  }
+
+  /**
+   * Sample the texture, if any, of the material with the specified id at the current hit point into
+   * {@code texel}, filtered over the footprint there of the cone of rays through the pixel.
+   *
+   * <p>The footprint is the cone's width at the hit's distance from the eye, along the ray's path,
+   * in texture coordinates. It doesn't allow for the surface being seen at a glancing angle, or for
+   * reflection and refraction changing how fast the cone spreads.
+   */
+  void sampleTexture(int materialId) {
+    var texture = scene.materials().get(materialId).getTexture();
+    if (texture == null) {
+      return;
+    }
+    var footprint = 0f;
+    if (object instanceof AbstractShape<?> shape) {
+      footprint = spread * hitDistance * shape.localScale(this) * shape.textureCoordinates(this);
+    } else {
+      u = 0;
+      v = 0;
+    }
+    texture.sample(u, v, footprint, texel);
+  }
+
+  /**
+   * Multiply {@code texel} by the color of the pattern, if any, of the material with the specified
+   * id at the current hit point, or set it to the pattern's color if the material has no texture.
+   */
+  void samplePattern(int materialId) {
+    var material = scene.materials().get(materialId);
+    var pattern = material.getPattern();
+    if (pattern == null) {
+      return;
+    }
+    var p = localPoint;
+    if (material.getTexture() == null) {
+      pattern.colorAt(p.x, p.y, p.z, patternScratch, texel);
+    } else {
+      var c = patternScratch.color();
+      pattern.colorAt(p.x, p.y, p.z, patternScratch, c);
+      texel.set(texel.r * c.r, texel.g * c.g, texel.b * c.b);
+      patternScratch.releaseColor();
+    }
+  }
+
+  private void shadeHit(int material) {
+    // visibility() replaces the hit, but lighting only needs the material, point, eye vector and
+    // normal
+    var maps = scene.shadowMaps();
+    var table = scene.lightingTable();
+    var samples = scene.getLightSamples();
+    if (samples > 0) {
+      var tree = scene.lightTree();
+      for (int s = 0; s < samples; ++s) {
+        var i = tree.sample(this, LightTree.random(point.x, point.y, point.z, s));
+        if (i < 0) {
+          return;
+        }
+        var weight = 1 / (samples * lightProbability);
+        lighting(table, material, i, visibility(i, maps), sample.set(0, 0, 0));
+        color.addScaled(sample, weight);
+      }
+      return;
+    }
+    var lights = scene.lightIndex();
+    if (lights == null) {
+      for (int i = 0; i < scene.getLightCount(); ++i) {
+        lighting(table, material, i, visibility(i, maps), color);
+      }
+      return;
+    }
+    var cell = lights.cell(point.x, point.y, point.z);
+    for (int k = lights.start(cell); k < lights.end(cell); ++k) {
+      var i = lights.light(k);
+      if (lights.influences(i, point.x, point.y, point.z)) {
+        lighting(table, material, i, visibility(i, maps), color);
+      }
+    }
+  }
+
+  /**
+   * Add the color seen by reflection off, and refraction through, the current hit point, whose
+   * material has the specified id, to {@code color}, which holds the surface's own shaded color.
+   *
+   * <p>A reflected or refracted ray is traced only if the ray being shaded has reflections or
+   * refractions {@code remaining}, and its contribution, {@code weight} times the surface's
+   * reflectivity or transparency, is at least the scene's contribution threshold; rays which aren't
+   * traced are counted by the scene. If the surface is both reflective and transparent, the
+   * reflectivity and transparency are weighted by Schlick's approximation of the Fresnel
+   * reflectance. Refraction assumes the medium outside every object is air (a refractive index of
+   * 1), so objects nested in transparent ones bend light as if they weren't.
+   *
+   * <p>Tracing a ray replaces the hit and color, so everything needed from them is copied first.
+   */
+  void shadeSecondary(int materialId, int remaining, float weight) {
+    var material = scene.materials().get(materialId);
+    var reflective = material.getReflective();
+    var transparency = material.getTransparency();
+    if (reflective <= 0 && transparency <= 0) {
+      return;
+    }
+    var r = color.r;
+    var g = color.g;
+    var b = color.b;
+    var distance = hitDistance;
+    var nx = normal.x;
+    var ny = normal.y;
+    var nz = normal.z;
+    var ex = eye.x;
+    var ey = eye.y;
+    var ez = eye.z;
+    var cosI = ex * nx + ey * ny + ez * nz;
+
+    // refraction, by Snell's law, unless there is total internal reflection
+    var nRatio = inside ? material.getRefractiveIndex() : 1 / material.getRefractiveIndex();
+    var sin2T = nRatio * nRatio * (1 - cosI * cosI);
+    var totalInternalReflection = sin2T > 1;
+    var cosT = (float) Math.sqrt(Math.max(0, 1 - sin2T));
+    if (reflective > 0 && transparency > 0) {
+      // Schlick uses the angle on the side with the lower refractive index
+      var reflectance = totalInternalReflection ? 1 : schlick(nRatio > 1 ? cosT : cosI, nRatio);
+      reflective *= reflectance;
+      transparency *= 1 - reflectance;
+    }
+    if (totalInternalReflection) {
+      transparency = 0;
+    }
+    var underX = point.x - nx * EPSILON * 16;
+    var underY = point.y - ny * EPSILON * 16;
+    var underZ = point.z - nz * EPSILON * 16;
+    var refractX = nx * (nRatio * cosI - cosT) - ex * nRatio;
+    var refractY = ny * (nRatio * cosI - cosT) - ey * nRatio;
+    var refractZ = nz * (nRatio * cosI - cosT) - ez * nRatio;
+
+    // reflection of the incoming ray, -eye, about the normal
+    if (reflective > 0 && trace(remaining, weight * reflective)) {
+      traveled = distance;
+      colorAt(
+          overPoint.x,
+          overPoint.y,
+          overPoint.z,
+          2 * cosI * nx - ex,
+          2 * cosI * ny - ey,
+          2 * cosI * nz - ez,
+          remaining - 1,
+          weight * reflective);
+      r += color.r * reflective;
+      g += color.g * reflective;
+      b += color.b * reflective;
+    }
+    if (transparency > 0 && trace(remaining, weight * transparency)) {
+      traveled = distance;
+      colorAt(
+          underX,
+          underY,
+          underZ,
+          refractX,
+          refractY,
+          refractZ,
+          remaining - 1,
+          weight * transparency);
+      r += color.r * transparency;
+      g += color.g * transparency;
+      b += color.b * transparency;
+    }
+    color.set(r, g, b);
+  }
+
+  /**
+   * Return whether a reflected or refracted ray with the specified contribution should be traced
+   * from a ray with the specified number of reflections or refractions remaining, counting it as
+   * skipped if not.
+   */
+  private boolean trace(int remaining, float weight) {
+    if (remaining <= 0) {
+      scene.countSkippedRay(false);
+      return false;
+    }
+    if (weight < scene.getContributionThreshold()) {
+      scene.countSkippedRay(true);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Return Schlick's approximation of the fraction of light reflected at a surface, given the
+   * cosine of the angle between the ray and the normal on the side with the lower refractive index
+   * and the ratio of the refractive indices of the two sides (either way up).
+   */
+  static float schlick(float cos, float nRatio) {
+    var r0 = (nRatio - 1) / (nRatio + 1);
+    r0 *= r0;
+    var c = 1 - cos;
+    return r0 + (1 - r0) * c * c * c * c * c;
+  }
+
+  /**
+   * Add the light reflected from the current hit point, whose material has the specified id, by
+   * the specified light, by its index within the scene, to {@code result}, using the constants in
+   * the lighting table. {@code visibility} is the fraction of the light
+   * visible from the point. If the material has a texture or pattern, its color there must be
+   * in {@code texel}.
+   */
+  void lighting(
+      LightingTable table, int materialId, int light, float visibility, MutableColor result) {
+    var material = scene.materials().get(materialId);
+    var pointLight = scene.getLight(light);
+    var c = table.constants;
+    var at = table.offset(materialId, light);
+    if (material.isTextured()) {
+      // the effective and ambient colors are the material's color times the texel's
+      System.arraycopy(c, at, constants, 0, LightingTable.SIZE);
+      c = constants;
+      at = 0;
+      constants[0] *= texel.r;
+      constants[1] *= texel.g;
+      constants[2] *= texel.b;
+      constants[3] *= texel.r;
+      constants[4] *= texel.g;
+      constants[5] *= texel.b;
+    }
+    material.lighting(pointLight, c, at, point, eye, normal, visibility, scratch, result);
+  }
+
+  /**
+   * Return the fraction of the specified light, by its index within the scene, visible from the
+   * current hit point: 0 or 1 for a point light, looking it up in the shadow maps if there are any,
+   * and for an area light, the fraction of its samples visible.
+   */
+  private float visibility(int light, ShadowMaps maps) {
+    var p = overPoint;
+    var pointLight = scene.getLight(light);
+    if (pointLight instanceof AreaLight area) {
+      return visibility(area, p.x, p.y, p.z);
+    }
+    if (maps != null) {
+      return maps.isShadowed(light, p.x, p.y, p.z, normal.x, normal.y, normal.z) ? 0 : 1;
+    }
+    var toLight = scratch.setBetween(overPoint, pointLight.getPosition());
+    var distance = toLight.magnitude();
+    toLight.divide(distance);
+    return occluded(p.x, p.y, p.z, toLight.x, toLight.y, toLight.z, distance) ? 0 : 1;
+  }
+
+  /**
+   * Return the fraction of the specified area light visible from the specified point, tracing
+   * shadow rays to its probe samples and, only if some but not all of them are occluded, to the
+   * rest of its cells too. The number of shadow rays traced is counted by the scene.
+   *
+   * <p>Each ray goes to a point within its cell picked by {@link LightTree#random}, so that the
+   * result only depends on the point. Shadow maps don't apply to area lights.
+   */
+  float visibility(AreaLight light, float x, float y, float z) {
+    var probes = light.getProbeSamples();
+    var visible = 0;
+    for (int k = 0; k < probes; ++k) {
+      if (!occluded(light, k, x, y, z)) {
+        ++visible;
+      }
+    }
+    var samples = probes;
+    if (visible > 0 && visible < probes) {
+      samples = light.getSamples();
+      for (int k = probes; k < samples; ++k) {
+        if (!occluded(light, k, x, y, z)) {
+          ++visible;
+        }
+      }
+    }
+    scene.countShadowSamples(samples);
+    return visible / (float) samples;
+  }
+
+  /**
+   * Return whether the ray from the specified point to the {@code k}th sample of the specified
+   * area light is occluded.
+   */
+  private boolean occluded(AreaLight light, int k, float x, float y, float z) {
+    // sample numbers distinct from those used for picking lights to sample
+    var ju = LightTree.random(x, y, z, ~(2 * k));
+    var jv = LightTree.random(x, y, z, ~(2 * k + 1));
+    var toLight = scratch;
+    light.samplePoint(k, ju, jv, toLight);
+    toLight.set(toLight.x - x, toLight.y - y, toLight.z - z);
+    var distance = toLight.magnitude();
+    toLight.divide(distance);
+    return occluded(x, y, z, toLight.x, toLight.y, toLight.z, distance);
+  }
+}
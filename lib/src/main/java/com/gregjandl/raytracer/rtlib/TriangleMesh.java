@@ -0,0 +1,403 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static com.gregjandl.raytracer.rtlib.Utils.EPSILON;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Objects;
+
+/**
+ * Represents a mesh of flat shaded triangles, stored as packed primitive vertex and index data.
+ *
+ * <p>Vertices are stored as consecutive x, y, z coordinates, and each triangle as three
+ * consecutive zero based vertex indices. The data may live on the heap or in a memory mapped file;
+ * either way it is not copied. Intersections with a mesh report the index of the intersected face
+ * via {@link IntersectionList.Intersection#getIndex()}.
+ *
+ * <p>Ray intersection is accelerated by a bounding volume hierarchy, which is built the first time
+ * the mesh is intersected, unless one was supplied when the mesh was created. Building the
+ * hierarchy reorders the faces, so face indices are only meaningful relative to {@link
+ * #getIndices()}.
+ */
+public class TriangleMesh extends AbstractShape<TriangleMesh> implements Shape {
+  private final FloatBuffer vertices;
+  private final int vertexCount;
+  private final int triangleCount;
+  private IntBuffer indices;
+  private volatile MeshBvh bvh;
+
+  /**
+   * Create a {@code TriangleMesh} from the specified vertex coordinates and triangle vertex
+   * indices. The arrays are used directly, not copied.
+   *
+   * @param vertices packed x, y, z vertex coordinates
+   * @param indices packed zero based vertex indices, three per triangle
+   * @throws IllegalArgumentException if the array lengths aren't multiples of three, or an index
+   *     is out of range
+   */
+  public TriangleMesh(float[] vertices, int[] indices) {
+    this(FloatBuffer.wrap(vertices), IntBuffer.wrap(indices), null);
+    for (var i : indices) {
+      if (i < 0 || i >= vertexCount) {
+        throw new IllegalArgumentException(
+            "TriangleMesh vertex index " + i + " not in [0, " + vertexCount + ")");
+      }
+    }
+  }
+
+  TriangleMesh(FloatBuffer vertices, IntBuffer indices, MeshBvh bvh) {
+    Objects.requireNonNull(vertices);
+    Objects.requireNonNull(indices);
+    if (vertices.limit() % 3 != 0 || indices.limit() % 3 != 0) {
+      throw new IllegalArgumentException(
+          "TriangleMesh data sizes must be multiples of 3 ["
+              + vertices.limit()
+              + ", "
+              + indices.limit()
+              + "]");
+    }
+    this.vertices = vertices;
+    this.vertexCount = vertices.limit() / 3;
+    this.triangleCount = indices.limit() / 3;
+    this.indices = bvh == null ? indices : bvh.indices;
+    this.bvh = bvh;
+  }
+
+  @Override
+  protected TriangleMesh getThis() {
+    return this;
+  }
+
+  /**
+   * Return the number of vertices in this mesh.
+   *
+   * @return the vertex count
+   */
+  public int getVertexCount() {
+    return vertexCount;
+  }
+
+  /**
+   * Return the number of triangles in this mesh.
+   *
+   * @return the triangle count
+   */
+  public int getTriangleCount() {
+    return triangleCount;
+  }
+
+  /**
+   * Return a read-only view of this mesh's packed vertex coordinates.
+   *
+   * @return the vertex coordinates
+   */
+  public FloatBuffer getVertices() {
+    return vertices.asReadOnlyBuffer();
+  }
+
+  /**
+   * Return a read-only view of this mesh's packed triangle vertex indices, in face order.
+   *
+   * @return the vertex indices
+   */
+  public IntBuffer getIndices() {
+    return getBvh().indices.asReadOnlyBuffer();
+  }
+
+  MeshBvh getBvh() {
+    var b = bvh;
+    if (b == null) {
+      synchronized (this) {
+        b = bvh;
+        if (b == null) {
+          b = MeshBvh.build(vertices, indices);
+          indices = b.indices;
+          bvh = b;
+        }
+      }
+    }
+    return b;
+  }
+
+  /**
+   * Adds entries to the specified {@code IntersectionList} representing where the specified {@code
+   * Ray} (which has been transformed relative to this {@code TriangleMesh}) intersects its faces.
+   *
+   * @param r the {@code Ray} that may intersect with this {@code TriangleMesh}
+   * @param xs the {@code IntersectionList} to which any new intersections should be added
+   * @return the specified {@code IntersectionList} with zero or more {@code Intersection}s with
+   *     this {@code TriangleMesh} added
+   */
+  @Override
+  protected IntersectionList localIntersect(Ray r, IntersectionList xs) {
+    var o = r.getOrigin();
+    var d = r.getDirection();
+    traverse(
+        o.getX(),
+        o.getY(),
+        o.getZ(),
+        d.getX(),
+        d.getY(),
+        d.getZ(),
+        new int[MeshBvh.MAX_DEPTH * 2],
+        xs,
+        null);
+    return xs;
+  }
+
+  @Override
+  void localIntersect(Tracer tr) {
+    var o = tr.localOrigin;
+    var d = tr.localDirection;
+    traverse(o.x, o.y, o.z, d.x, d.y, d.z, tr.stack, null, tr);
+  }
+
+  @Override
+  float localBoundingSphere(MutableVector3 center) {
+    if (triangleCount == 0) {
+      center.set(0, 0, 0);
+      return 0;
+    }
+    // the sphere around the root node's box
+    var bounds = getBvh().bounds;
+    var hx = (bounds.get(3) - bounds.get(0)) / 2;
+    var hy = (bounds.get(4) - bounds.get(1)) / 2;
+    var hz = (bounds.get(5) - bounds.get(2)) / 2;
+    center.set(bounds.get(0) + hx, bounds.get(1) + hy, bounds.get(2) + hz);
+    return (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+  }
+
+  /** Walk the BVH, adding each face the ray hits to {@code xs} or offering it to {@code tr}. */
+  private void traverse(
+      float ox,
+      float oy,
+      float oz,
+      float dx,
+      float dy,
+      float dz,
+      int[] stack,
+      IntersectionList xs,
+      Tracer tr) {
+    if (triangleCount == 0) {
+      return;
+    }
+    var b = getBvh();
+    var sp = 0;
+    stack[sp++] = 0;
+    while (sp > 0) {
+      var node = stack[--sp];
+      if (!hitsBox(b.bounds, node, ox, oy, oz, 1 / dx, 1 / dy, 1 / dz)) {
+        continue;
+      }
+      var a = b.nodes.get(node * 2);
+      var count = b.nodes.get(node * 2 + 1);
+      if (count == 0) {
+        stack[sp++] = a;
+        stack[sp++] = a + 1;
+        continue;
+      }
+      for (int tri = a; tri < a + count; ++tri) {
+        var t = intersectTriangle(b.indices, tri, ox, oy, oz, dx, dy, dz);
+        if (Float.isNaN(t)) {
+          continue;
+        }
+        if (xs != null) {
+          xs.add(t, this, tri);
+        } else {
+          tr.offer(t, this, tri);
+          if (tr.anyHit && tr.object != null) {
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  /** Slab test of a ray against the bounds of the specified node. */
+  static boolean hitsBox(
+      FloatBuffer bounds, int node, float ox, float oy, float oz, float ix, float iy, float iz) {
+    var base = node * 6;
+    var t1 = (bounds.get(base) - ox) * ix;
+    var t2 = (bounds.get(base + 3) - ox) * ix;
+    var tMin = Math.min(t1, t2);
+    var tMax = Math.max(t1, t2);
+    t1 = (bounds.get(base + 1) - oy) * iy;
+    t2 = (bounds.get(base + 4) - oy) * iy;
+    tMin = Math.max(tMin, Math.min(t1, t2));
+    tMax = Math.min(tMax, Math.max(t1, t2));
+    t1 = (bounds.get(base + 2) - oz) * iz;
+    t2 = (bounds.get(base + 5) - oz) * iz;
+    tMin = Math.max(tMin, Math.min(t1, t2));
+    tMax = Math.min(tMax, Math.max(t1, t2));
+    // NaN (a ray parallel to and in the plane of a slab) compares false, so such boxes are kept
+    return !(tMax < tMin);
+  }
+
+  /**
+   * Intersect a ray with the specified face using the Möller–Trumbore algorithm.
+   *
+   * @return the distance along the ray, or {@code NaN} if the ray misses the face
+   */
+  float intersectTriangle(
+      IntBuffer idx, int tri, float ox, float oy, float oz, float dx, float dy, float dz) {
+    var i0 = idx.get(tri * 3) * 3;
+    var i1 = idx.get(tri * 3 + 1) * 3;
+    var i2 = idx.get(tri * 3 + 2) * 3;
+    var p0x = vertices.get(i0);
+    var p0y = vertices.get(i0 + 1);
+    var p0z = vertices.get(i0 + 2);
+    var e1x = vertices.get(i1) - p0x;
+    var e1y = vertices.get(i1 + 1) - p0y;
+    var e1z = vertices.get(i1 + 2) - p0z;
+    var e2x = vertices.get(i2) - p0x;
+    var e2y = vertices.get(i2 + 1) - p0y;
+    var e2z = vertices.get(i2 + 2) - p0z;
+
+    // dir x e2
+    var px = dy * e2z - dz * e2y;
+    var py = dz * e2x - dx * e2z;
+    var pz = dx * e2y - dy * e2x;
+    var det = e1x * px + e1y * py + e1z * pz;
+    if (Math.abs(det) < EPSILON * EPSILON) {
+      return Float.NaN;
+    }
+    var f = 1 / det;
+    var sx = ox - p0x;
+    var sy = oy - p0y;
+    var sz = oz - p0z;
+    var u = f * (sx * px + sy * py + sz * pz);
+    if (u < 0 || u > 1) {
+      return Float.NaN;
+    }
+    // origin x e1
+    var qx = sy * e1z - sz * e1y;
+    var qy = sz * e1x - sx * e1z;
+    var qz = sx * e1y - sy * e1x;
+    var v = f * (dx * qx + dy * qy + dz * qz);
+    if (v < 0 || u + v > 1) {
+      return Float.NaN;
+    }
+    return f * (e2x * qx + e2y * qy + e2z * qz);
+  }
+
+  /**
+   * Return the normal of the face on which the specified point lies.
+   *
+   * <p>Without a face index this has to search the faces for one containing the point, so prefer
+   * {@link #normalAt(Point, int)} with the index reported by an intersection.
+   *
+   * @param localPoint Point for which to calculate the normal
+   * @return the normal
+   * @throws IllegalArgumentException if the point doesn't lie on any face of this mesh
+   */
+  @Override
+  protected Vector3 localNormalAt(Point localPoint) {
+    var idx = getBvh().indices;
+    for (int tri = 0; tri < triangleCount; ++tri) {
+      var n = localNormalAt(localPoint, tri);
+      var i0 = idx.get(tri * 3) * 3;
+      var toPoint =
+          localPoint.subtract(
+              new Point(vertices.get(i0), vertices.get(i0 + 1), vertices.get(i0 + 2)));
+      if (Math.abs(toPoint.dot(n)) < EPSILON) {
+        // on the face's plane, now check it lies within the face by casting along the normal
+        var origin = localPoint.add(n);
+        var t =
+            intersectTriangle(
+                idx,
+                tri,
+                origin.getX(),
+                origin.getY(),
+                origin.getZ(),
+                -n.getX(),
+                -n.getY(),
+                -n.getZ());
+        if (!Float.isNaN(t)) {
+          return n;
+        }
+      }
+    }
+    throw new IllegalArgumentException(localPoint + " does not lie on the TriangleMesh");
+  }
+
+  /**
+   * Return the normal of the specified face.
+   *
+   * @param localPoint Point for which to calculate the normal (unused, as faces are flat)
+   * @param index the face on which the point lies
+   * @return the normal
+   */
+  @Override
+  protected Vector3 localNormalAt(Point localPoint, int index) {
+    var idx = getBvh().indices;
+    var i0 = idx.get(index * 3) * 3;
+    var i1 = idx.get(index * 3 + 1) * 3;
+    var i2 = idx.get(index * 3 + 2) * 3;
+    var p0 = new Point(vertices.get(i0), vertices.get(i0 + 1), vertices.get(i0 + 2));
+    var e1 = new Point(vertices.get(i1), vertices.get(i1 + 1), vertices.get(i1 + 2)).subtract(p0);
+    var e2 = new Point(vertices.get(i2), vertices.get(i2 + 1), vertices.get(i2 + 2)).subtract(p0);
+    return e2.cross(e1).normalize();
+  }
+
+  @Override
+  void localNormalAt(Tracer tr) {
+    var idx = getBvh().indices;
+    var i0 = idx.get(tr.index * 3) * 3;
+    var i1 = idx.get(tr.index * 3 + 1) * 3;
+    var i2 = idx.get(tr.index * 3 + 2) * 3;
+    var p0x = vertices.get(i0);
+    var p0y = vertices.get(i0 + 1);
+    var p0z = vertices.get(i0 + 2);
+    var e1x = vertices.get(i1) - p0x;
+    var e1y = vertices.get(i1 + 1) - p0y;
+    var e1z = vertices.get(i1 + 2) - p0z;
+    var e2x = vertices.get(i2) - p0x;
+    var e2y = vertices.get(i2 + 1) - p0y;
+    var e2z = vertices.get(i2 + 2) - p0z;
+    // e2 x e1, as in localNormalAt(Point, int)
+    tr.normal.set(e2y * e1z - e2z * e1y, e2z * e1x - e2x * e1z, e2x * e1y - e2y * e1x);
+  }
+
+  /**
+   * Returns a string representation of this {@code TriangleMesh}. This method is intended to be
+   * used for debugging purposes; the representation may change, but will not be {@code null}.
+   *
+   * @return a string representation of this {@code TriangleMesh}
+   */
+  @Override
+  public String toString() {
+    return "TriangleMesh{vertices="
+        + vertexCount
+        + ", triangles="
+        + triangleCount
+        + ", transform="
+        + transform
+        + ", material="
+        + material
+        + '}';
+  }
+
+  /**
+   * Compares this {@code TriangleMesh} with the specified {@code Object} for equality.
+   *
+   * <p>Meshes are compared by identity, as comparing their (potentially very large) geometry isn't
+   * practical.
+   *
+   * @param o {@code Object} to which this {@code TriangleMesh} is to be compared.
+   * @return {@code true} if and only if the specified {@code Object} is this {@code TriangleMesh}
+   */
+  @Override
+  public boolean equals(Object o) {
+    return this == o;
+  }
+
+  /**
+   * Returns the hash code for this {@code TriangleMesh}
+   *
+   * @return hash code for this {@code TriangleMesh}
+   */
+  @Override
+  public int hashCode() {
+    return System.identityHashCode(this);
+  }
+}
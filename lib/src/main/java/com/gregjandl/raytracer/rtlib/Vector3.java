@@ -189,10 +189,10 @@ public class Vector3 {
    *     division by zero.
    */
   public Vector3 normalize() {
-    if (magnitude() == 0) {
+    var m = magnitude();
+    if (m == 0) {
       throw new ArithmeticException("Can't normalize a Vector3 with zero magnitude");
     }
-    var m = magnitude();
     return new Vector3(x / m, y / m, z / m);
   }
 
@@ -0,0 +1,145 @@
+package com.gregjandl.raytracer.rtlib;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@code MatrixKernels} implemented with the Vector API, holding one matrix row (or column) per
+ * 128 bit vector.
+ *
+ * <p>Don't reference this class directly: it can only be loaded when the {@code
+ * jdk.incubator.vector} module is present. Use {@link MatrixKernels#load()}.
+ */
+final class VectorMatrixKernels implements MatrixKernels {
+  private static final VectorSpecies<Float> S = FloatVector.SPECIES_128;
+
+  /** Swap adjacent pairs of lanes: (1, 0, 3, 2). */
+  private static final VectorShuffle<Float> SWAP_PAIRS = VectorShuffle.fromValues(S, 1, 0, 3, 2);
+
+  /** Swap the low and high halves: (2, 3, 0, 1). */
+  private static final VectorShuffle<Float> SWAP_HALVES = VectorShuffle.fromValues(S, 2, 3, 0, 1);
+
+  private static final VectorMask<Float> XYZ = VectorMask.fromValues(S, true, true, true, false);
+
+  // Gather maps which load columns 0 and 2, and columns 1 and 3 with their halves swapped
+  private static final int[] COL0 = {0, 4, 8, 12};
+  private static final int[] COL1_SWAPPED = {9, 13, 1, 5};
+  private static final int[] COL2 = {2, 6, 10, 14};
+  private static final int[] COL3_SWAPPED = {11, 15, 3, 7};
+  private static final int[] COL1 = {1, 5, 9, 13};
+  private static final int[] COL3 = {3, 7, 11, 15};
+
+  @Override
+  public void multiply(float[] a, float[] b, float[] r) {
+    var b0 = FloatVector.fromArray(S, b, 0);
+    var b1 = FloatVector.fromArray(S, b, 4);
+    var b2 = FloatVector.fromArray(S, b, 8);
+    var b3 = FloatVector.fromArray(S, b, 12);
+    for (int row = 0; row < 16; row += 4) {
+      // same operation order as the scalar code, so results are identical
+      b0.mul(a[row])
+          .add(b1.mul(a[row + 1]))
+          .add(b2.mul(a[row + 2]))
+          .add(b3.mul(a[row + 3]))
+          .intoArray(r, row);
+    }
+  }
+
+  /**
+   * Invert using Cramer's rule, computing the cofactors four at a time from the transposed matrix
+   * (after Intel's "Streaming SIMD Extensions - Inverse of 4x4 Matrix", AP-928).
+   */
+  @Override
+  public boolean invert(float[] a, float[] r) {
+    var row0 = FloatVector.fromArray(S, a, 0, COL0, 0);
+    var row1 = FloatVector.fromArray(S, a, 0, COL1_SWAPPED, 0);
+    var row2 = FloatVector.fromArray(S, a, 0, COL2, 0);
+    var row3 = FloatVector.fromArray(S, a, 0, COL3_SWAPPED, 0);
+
+    var tmp = row2.mul(row3).rearrange(SWAP_PAIRS);
+    var minor0 = row1.mul(tmp);
+    var minor1 = row0.mul(tmp);
+    tmp = tmp.rearrange(SWAP_HALVES);
+    minor0 = row1.mul(tmp).sub(minor0);
+    minor1 = row0.mul(tmp).sub(minor1).rearrange(SWAP_HALVES);
+
+    tmp = row1.mul(row2).rearrange(SWAP_PAIRS);
+    minor0 = row3.mul(tmp).add(minor0);
+    var minor3 = row0.mul(tmp);
+    tmp = tmp.rearrange(SWAP_HALVES);
+    minor0 = minor0.sub(row3.mul(tmp));
+    minor3 = row0.mul(tmp).sub(minor3).rearrange(SWAP_HALVES);
+
+    tmp = row1.rearrange(SWAP_HALVES).mul(row3).rearrange(SWAP_PAIRS);
+    row2 = row2.rearrange(SWAP_HALVES);
+    minor0 = row2.mul(tmp).add(minor0);
+    var minor2 = row0.mul(tmp);
+    tmp = tmp.rearrange(SWAP_HALVES);
+    minor0 = minor0.sub(row2.mul(tmp));
+    minor2 = row0.mul(tmp).sub(minor2).rearrange(SWAP_HALVES);
+
+    tmp = row0.mul(row1).rearrange(SWAP_PAIRS);
+    minor2 = row3.mul(tmp).add(minor2);
+    minor3 = row2.mul(tmp).sub(minor3);
+    tmp = tmp.rearrange(SWAP_HALVES);
+    minor2 = row3.mul(tmp).sub(minor2);
+    minor3 = minor3.sub(row2.mul(tmp));
+
+    tmp = row0.mul(row3).rearrange(SWAP_PAIRS);
+    minor1 = minor1.sub(row2.mul(tmp));
+    minor2 = row1.mul(tmp).add(minor2);
+    tmp = tmp.rearrange(SWAP_HALVES);
+    minor1 = row2.mul(tmp).add(minor1);
+    minor2 = minor2.sub(row1.mul(tmp));
+
+    tmp = row0.mul(row2).rearrange(SWAP_PAIRS);
+    minor1 = row3.mul(tmp).add(minor1);
+    minor3 = minor3.sub(row1.mul(tmp));
+    tmp = tmp.rearrange(SWAP_HALVES);
+    minor1 = minor1.sub(row3.mul(tmp));
+    minor3 = row1.mul(tmp).add(minor3);
+
+    var det = row0.mul(minor0).reduceLanes(VectorOperators.ADD);
+    if (det == 0) {
+      return false;
+    }
+    var invDet = 1 / det;
+    minor0.mul(invDet).intoArray(r, 0);
+    minor1.mul(invDet).intoArray(r, 4);
+    minor2.mul(invDet).intoArray(r, 8);
+    minor3.mul(invDet).intoArray(r, 12);
+    return true;
+  }
+
+  @Override
+  public void transform(
+      float[] a, float[] src, int srcOffset, float[] dst, int dstOffset, int count, int w) {
+    var c0 = FloatVector.fromArray(S, a, 0, COL0, 0);
+    var c1 = FloatVector.fromArray(S, a, 0, COL1, 0);
+    var c2 = FloatVector.fromArray(S, a, 0, COL2, 0);
+    var c3 = FloatVector.fromArray(S, a, 0, COL3, 0).mul(w);
+    if (count == 0) {
+      return;
+    }
+    var end = count * 3;
+    var x = src[srcOffset];
+    for (int i = 0; i < end - 3; i += 3) {
+      var y = src[srcOffset + i + 1];
+      var z = src[srcOffset + i + 2];
+      // read ahead before storing: the fourth lane lands on the next x, which src may alias
+      var nextX = src[srcOffset + i + 3];
+      c0.mul(x).add(c1.mul(y)).add(c2.mul(z)).add(c3).intoArray(dst, dstOffset + i);
+      x = nextX;
+    }
+    // masked, so the fourth lane doesn't write past the end of the range
+    var i = end - 3;
+    c0.mul(x)
+        .add(c1.mul(src[srcOffset + i + 1]))
+        .add(c2.mul(src[srcOffset + i + 2]))
+        .add(c3)
+        .intoArray(dst, dstOffset + i, XYZ);
+  }
+}
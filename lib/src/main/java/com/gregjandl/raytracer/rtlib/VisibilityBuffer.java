@@ -0,0 +1,252 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.util.Arrays;
+
+/**
+ * The primary hits of a camera's view, found by rasterizing the scene's objects, one object at a
+ * time, instead of tracing each pixel's ray through every object.
+ *
+ * <p>Each object covers the pixels within the screen space bounds of its world space bounding
+ * sphere, projected through the camera's view transform, or, for a {@link Plane}, those on its
+ * side of the plane's horizon. Its exact intersection with the ray of each pixel it covers then
+ * updates that pixel's closest hit (its depth, object and sub-primitive), so objects which cover a
+ * small part of the screen are never tested against the rest. The bounds are conservative and the
+ * objects are taken in scene order, so the hits are exactly those ray tracing finds; shading,
+ * shadows and every ray after the primary one are traced as usual.
+ *
+ * <p>A {@code VisibilityBuffer} is not thread safe.
+ */
+final class VisibilityBuffer {
+  final int width;
+  final int height;
+
+  /** The eye, which is the origin of every pixel's ray. */
+  float ox;
+
+  float oy;
+  float oz;
+
+  /** Each pixel's ray direction and closest hit, in row major order. */
+  final float[] dx;
+
+  final float[] dy;
+  final float[] dz;
+  final float[] t;
+  final Shape[] object;
+  final int[] index;
+  final int[] objectIndex;
+
+  /** The number of pixels tested against an object by the last rasterization. */
+  private long testCount;
+
+  /**
+   * Construct a {@code VisibilityBuffer} for a view of the specified size.
+   *
+   * @param width the width of the view in pixels
+   * @param height the height of the view in pixels
+   * @throws IllegalArgumentException if {@code width} or {@code height} isn't positive
+   */
+  VisibilityBuffer(int width, int height) {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException(
+          "Visibility buffer size must be positive: " + width + " x " + height);
+    }
+    this.width = width;
+    this.height = height;
+    var size = width * height;
+    dx = new float[size];
+    dy = new float[size];
+    dz = new float[size];
+    t = new float[size];
+    object = new Shape[size];
+    index = new int[size];
+    objectIndex = new int[size];
+  }
+
+  /**
+   * Return the number of pixel rays intersected with an object by the last call to {@link
+   * #rasterize(Camera, Scene, Tracer)}; ray tracing the same view intersects every ray with every
+   * object.
+   */
+  long getTestCount() {
+    return testCount;
+  }
+
+  /**
+   * Find the closest hit of the ray through each pixel of the specified camera's view of the
+   * specified scene, using the specified tracer, whose current ray is overwritten.
+   *
+   * @throws IllegalArgumentException if the camera's view isn't the size of this buffer
+   */
+  void rasterize(Camera camera, Scene scene, Tracer tr) {
+    if (camera.getHSize() != width || camera.getVSize() != height) {
+      throw new IllegalArgumentException(
+          "Camera size must match the visibility buffer's: "
+              + camera.getHSize()
+              + " x "
+              + camera.getVSize());
+    }
+    var inverse = camera.getInverseViewTransform();
+    // the eye is at the origin of camera space
+    var origin = tr.origin.set(0, 0, 0).transformPoint(inverse);
+    ox = origin.x;
+    oy = origin.y;
+    oz = origin.z;
+    var direction = tr.direction;
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        var p = y * width + x;
+        camera.pixelDirection(x, y, inverse, direction);
+        dx[p] = direction.x;
+        dy[p] = direction.y;
+        dz[p] = direction.z;
+      }
+    }
+    Arrays.fill(t, Float.POSITIVE_INFINITY);
+    Arrays.fill(object, null);
+    Arrays.fill(index, 0);
+    Arrays.fill(objectIndex, -1);
+    testCount = 0;
+    tr.anyHit = false;
+    var center = new MutableVector3();
+    for (int i = 0; i < scene.getObjectCount(); ++i) {
+      var obj = scene.getObject(i);
+      if (obj instanceof Plane plane && plane.getTransform().isInvertible()) {
+        rasterizePlane(camera, plane, tr, i);
+        continue;
+      }
+      var radius =
+          obj instanceof AbstractShape<?> shape
+              ? shape.worldBoundingSphere(center)
+              : Float.POSITIVE_INFINITY;
+      if (radius < Float.POSITIVE_INFINITY) {
+        rasterizeSphere(camera, center, radius, tr, i);
+      } else {
+        for (int y = 0; y < height; ++y) {
+          rasterizeSpan(tr, i, y, 0, width - 1);
+        }
+      }
+    }
+  }
+
+  /**
+   * Intersect the object at index {@code i} with the rays of the pixels within the screen space
+   * bounds of the specified world space sphere.
+   */
+  private void rasterizeSphere(
+      Camera camera, MutableVector3 center, float radius, Tracer tr, int i) {
+    var view = camera.getViewTransform();
+    var c = center.transformPoint(view);
+    var r = (double) radius * AbstractShape.largestScale(view);
+    // in camera space the eye looks down -z, and the ray through a pixel passes through (u, v, -1)
+    var depth = -(double) c.z;
+    if (depth < -r) {
+      // entirely behind the eye
+      return;
+    }
+    var pixelSize = (double) camera.getPixelSize();
+    int minX = 0;
+    int maxX = width - 1;
+    int minY = 0;
+    int maxY = height - 1;
+    if (depth > r) {
+      // entirely in front, so each axis' bounds are the tangents of the angles it spans
+      var halfWidth = (double) camera.getHalfWidth();
+      var halfHeight = (double) camera.getHalfHeight();
+      // the bounds are padded by a pixel for rounding
+      minX = Math.max(minX, (int) Math.floor(pixel(halfWidth, c.x, depth, r, 1, pixelSize)) - 1);
+      maxX = Math.min(maxX, (int) Math.ceil(pixel(halfWidth, c.x, depth, r, -1, pixelSize)) + 1);
+      minY = Math.max(minY, (int) Math.floor(pixel(halfHeight, c.y, depth, r, 1, pixelSize)) - 1);
+      maxY = Math.min(maxY, (int) Math.ceil(pixel(halfHeight, c.y, depth, r, -1, pixelSize)) + 1);
+    }
+    for (int y = minY; y <= maxY; ++y) {
+      rasterizeSpan(tr, i, y, minX, maxX);
+    }
+  }
+
+  /**
+   * Return the (fractional) column or row of one edge of the screen space extent, along one axis,
+   * of a sphere of radius {@code r} at {@code offset} along that axis and {@code depth} in front of
+   * the eye: the upper edge, which is the lower column or row, if {@code sign} is 1, and the lower
+   * edge if it's -1. {@code half} is the half width or height of the canvas.
+   */
+  private static double pixel(
+      double half, double offset, double depth, double r, int sign, double pixelSize) {
+    // the edge is where the tangent to the sphere through the eye crosses the canvas at z = -1
+    var angle = Math.atan2(offset, depth);
+    var spread = Math.asin(r / Math.hypot(offset, depth));
+    var u = Math.tan(angle + sign * spread);
+    // the inverse of u = half - (x + .5) * pixelSize
+    return (half - u) / pixelSize - .5;
+  }
+
+  /**
+   * Intersect the plane at index {@code i} with the rays of the pixels on its side of its horizon:
+   * those whose rays head toward it, rather than away.
+   */
+  private void rasterizePlane(Camera camera, Plane plane, Tracer tr, int i) {
+    var inverse = plane.getTransform().invert();
+    // the ray through (u, v, -1) in camera space has an object space y direction of a*u + b*v - c
+    var m = inverse.multiply(camera.getInverseViewTransform());
+    var a = (double) m.get(1, 0);
+    var b = (double) m.get(1, 1);
+    var c = (double) m.get(1, 2);
+    // and heads toward the plane if that has the opposite sign to the eye's height above it
+    var elevation =
+        (double) inverse.get(1, 0) * ox
+            + inverse.get(1, 1) * oy
+            + inverse.get(1, 2) * oz
+            + inverse.get(1, 3);
+    if (Math.abs(elevation) < Utils.EPSILON) {
+      // the eye is (close enough to) on the plane, which every ray may hit at 0
+      for (int y = 0; y < height; ++y) {
+        rasterizeSpan(tr, i, y, 0, width - 1);
+      }
+      return;
+    }
+    var halfWidth = (double) camera.getHalfWidth();
+    var halfHeight = (double) camera.getHalfHeight();
+    var pixelSize = (double) camera.getPixelSize();
+    var sign = elevation > 0 ? -1 : 1;
+    // along a row, the y direction times sign is f + slope * x, which must be positive; f is padded
+    // by a pixel's worth, and a little more for rounding
+    var slope = -sign * a * pixelSize;
+    var scale = Math.abs(a) * halfWidth + Math.abs(b) * halfHeight + Math.abs(c);
+    var tolerance = Math.abs(slope) + 1e-4 * scale;
+    for (int y = 0; y < height; ++y) {
+      var v = halfHeight - (y + .5) * pixelSize;
+      var f = sign * (a * (halfWidth - .5 * pixelSize) + b * v - c) + tolerance;
+      int minX = 0;
+      int maxX = width - 1;
+      if (slope > 0) {
+        minX = (int) Math.max(minX, Math.floor(-f / slope));
+      } else if (slope < 0) {
+        maxX = (int) Math.min(maxX, Math.ceil(-f / slope));
+      } else if (f <= 0) {
+        continue;
+      }
+      rasterizeSpan(tr, i, y, minX, maxX);
+    }
+  }
+
+  /**
+   * Intersect the object at index {@code i} with the rays of pixels {@code minX} to {@code maxX}
+   * (inclusive) of row {@code y}, keeping the closer of each pixel's hit and the object's.
+   */
+  private void rasterizeSpan(Tracer tr, int i, int y, int minX, int maxX) {
+    tr.origin.set(ox, oy, oz);
+    for (int p = y * width + minX, end = y * width + maxX; p <= end; ++p) {
+      tr.direction.set(dx[p], dy[p], dz[p]);
+      tr.t = t[p];
+      tr.object = object[p];
+      tr.index = index[p];
+      tr.objectIndex = objectIndex[p];
+      tr.intersectObject(i);
+      t[p] = tr.t;
+      object[p] = tr.object;
+      index[p] = tr.index;
+      objectIndex[p] = tr.objectIndex;
+    }
+    testCount += Math.max(0, maxX - minX + 1);
+  }
+}
@@ -0,0 +1,659 @@
+package com.gregjandl.raytracer.rtlib;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Renders a scene in waves of rays, running each step of tracing as a separate stage over every
+ * ray of the wave, instead of taking each pixel through every step in turn.
+ *
+ * <p>A wave's rays, their hits and their shadow rays are kept in queues in structure of arrays
+ * form, one element per ray. Each stage (ray generation, intersection, surface preparation, shadow
+ * ray generation, shadow tracing and shading) is a tight loop over one or two queues, run in
+ * parallel using the common fork/join pool, so it keeps just its own code and data in cache.
+ * Between stages the queues can be reordered: if {@link #setSorted(boolean) sorting} is enabled,
+ * hits are grouped by the object (and so the material) hit, and shadow rays are ordered by a {@link
+ * RaySorter}.
+ *
+ * <p>Reflected and refracted rays are traced in a final stage, recursively, a ray at a time.
+ *
+ * <p>The rendered image is exactly the same as {@link Camera}'s pixel at a time renderer's. A
+ * {@code Wavefront} is not thread safe, but its stages use each thread's own {@code Tracer}.
+ */
+final class Wavefront {
+  /** Number of rays processed by each parallel task of a stage. */
+  private static final int BLOCK_SIZE = Scene.BATCH_BLOCK_SIZE;
+
+  /** The maximum number of rays in a wave. */
+  final int capacity;
+
+  private boolean sorted;
+
+  /** The width of the cone of rays through a pixel per unit of distance, for texture filtering. */
+  private float spread;
+
+  /** The arbitrary output variables being filled by the current render. */
+  private Aov[] aovs;
+
+  /** The rasterized primary hits of the current render, if its rays aren't to be traced. */
+  private VisibilityBuffer rasterized;
+
+  /** The ray queue: each ray's origin, direction, closest hit, and the pixel it contributes to. */
+  final float[] ox;
+
+  final float[] oy;
+  final float[] oz;
+  final float[] dx;
+  final float[] dy;
+  final float[] dz;
+  final float[] t;
+  final Shape[] object;
+  final int[] index;
+  final int[] objectIndex;
+  final int[] pixel;
+  int rayCount;
+
+  /**
+   * The hit queue: for each ray which hit something, the index of the ray, the id of the material
+   * hit, the hit point, the normal (facing the ray's origin) and over point there, whether the hit
+   * is on the inside of the surface, the color of the material's texture there, if it has one, the
+   * cell of the scene's light index it's in, if lights are indexed, and the color accumulated so
+   * far.
+   */
+  final int[] hitRay;
+
+  final int[] hitMaterial;
+  final boolean[] hitInside;
+  final int[] hitCell;
+
+  final float[] px;
+  final float[] py;
+  final float[] pz;
+  final float[] nx;
+  final float[] ny;
+  final float[] nz;
+  final float[] opx;
+  final float[] opy;
+  final float[] opz;
+  final float[] texelR;
+  final float[] texelG;
+  final float[] texelB;
+  final float[] r;
+  final float[] g;
+  final float[] b;
+  int hitCount;
+
+  /**
+   * The shadow queue: for each hit, the light being shaded (by its index within the scene) and the
+   * weight of its contribution if it was sampled, whether it's bright enough there to be considered
+   * at all, the normalized direction and distance from the hit's over point to it, the fraction of
+   * it visible from there, and the order in which to trace them.
+   */
+  final int[] hitLight;
+
+  final float[] weight;
+  final float[] sdx;
+
+  final float[] sdy;
+  final float[] sdz;
+  final float[] sDistance;
+  final boolean[] lit;
+  final float[] visibility;
+  final int[] shadowOrder;
+
+  /** Bucket counts for grouping hits, and the sorter for shadow rays. */
+  private int[] counts = new int[1];
+
+  private final RaySorter sorter;
+
+  /**
+   * Construct a {@code Wavefront} which processes up to {@code capacity} rays at a time.
+   *
+   * @param capacity the maximum number of rays in a wave
+   * @throws IllegalArgumentException if {@code capacity} isn't positive
+   */
+  Wavefront(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Wavefront capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    ox = new float[capacity];
+    oy = new float[capacity];
+    oz = new float[capacity];
+    dx = new float[capacity];
+    dy = new float[capacity];
+    dz = new float[capacity];
+    t = new float[capacity];
+    object = new Shape[capacity];
+    index = new int[capacity];
+    objectIndex = new int[capacity];
+    pixel = new int[capacity];
+    hitRay = new int[capacity];
+    hitMaterial = new int[capacity];
+    hitInside = new boolean[capacity];
+    hitCell = new int[capacity];
+    px = new float[capacity];
+    py = new float[capacity];
+    pz = new float[capacity];
+    nx = new float[capacity];
+    ny = new float[capacity];
+    nz = new float[capacity];
+    opx = new float[capacity];
+    opy = new float[capacity];
+    opz = new float[capacity];
+    texelR = new float[capacity];
+    texelG = new float[capacity];
+    texelB = new float[capacity];
+    r = new float[capacity];
+    g = new float[capacity];
+    b = new float[capacity];
+    hitLight = new int[capacity];
+    weight = new float[capacity];
+    sdx = new float[capacity];
+    sdy = new float[capacity];
+    sdz = new float[capacity];
+    sDistance = new float[capacity];
+    lit = new boolean[capacity];
+    visibility = new float[capacity];
+    shadowOrder = new int[capacity];
+    sorter = new RaySorter(capacity);
+  }
+
+  boolean isSorted() {
+    return sorted;
+  }
+
+  /**
+   * Set whether queues are reordered between stages for coherence: hits by the object hit, before
+   * they're prepared and shaded, and shadow rays by direction octant and origin, before they're
+   * traced. Sorting doesn't change the rendered image.
+   */
+  void setSorted(boolean sorted) {
+    this.sorted = sorted;
+  }
+
+  /**
+   * Render the specified scene, as seen by the specified camera, into the specified array of
+   * packed RGB pixels, in row major order.
+   *
+   * @param camera the camera whose view to render
+   * @param scene the scene to render
+   * @param pixels array of at least {@code hSize * vSize} pixels to fill
+   * @param rasterized the primary hits, already rasterized, or {@code null} to trace them
+   * @param aovs the outputs to fill from the primary hits, of the camera's size
+   * @return {@code pixels}
+   */
+  int[] render(
+      Camera camera, Scene scene, int[] pixels, VisibilityBuffer rasterized, Aov... aovs) {
+    var total = camera.getHSize() * camera.getVSize();
+    spread = camera.getPixelSize();
+    this.rasterized = rasterized;
+    this.aovs = aovs;
+    try {
+      for (int start = 0; start < total; start += capacity) {
+        generate(camera, scene, start, Math.min(capacity, total - start));
+        intersect(scene);
+        compact(scene, pixels);
+        prepare(scene);
+        // each pass shades one light, or one sampled light, at every hit
+        var samples = scene.getLightSamples();
+        var passes = samples > 0 ? samples : lightPasses(scene);
+        for (int pass = 0; pass < passes; ++pass) {
+          generateShadows(scene, pass);
+          sortShadows();
+          traceShadows(scene);
+          shade(scene);
+        }
+        shadeSecondary(scene);
+        write(pixels);
+      }
+    } finally {
+      // a render mustn't hold on to its outputs, or to the objects it hit, once it's done
+      this.rasterized = null;
+      this.aovs = null;
+      Arrays.fill(object, null);
+    }
+    return pixels;
+  }
+
+  /** Fill the ray queue with the primary rays for {@code count} pixels from {@code start}. */
+  private void generate(Camera camera, Scene scene, int start, int count) {
+    var inverse = camera.getInverseViewTransform();
+    var hSize = camera.getHSize();
+    rayCount = count;
+    forEachBlock(
+        scene,
+        count,
+        (tr, from, to) -> {
+          // the eye is at the origin of camera space
+          var origin = tr.origin.set(0, 0, 0).transformPoint(inverse);
+          var direction = tr.direction;
+          for (int i = from; i < to; ++i) {
+            var p = start + i;
+            camera.pixelDirection(p % hSize, p / hSize, inverse, direction);
+            ox[i] = origin.x;
+            oy[i] = origin.y;
+            oz[i] = origin.z;
+            dx[i] = direction.x;
+            dy[i] = direction.y;
+            dz[i] = direction.z;
+            pixel[i] = p;
+          }
+        });
+  }
+
+  /**
+   * Find the closest hit of each ray in the ray queue, or, if the primary hits were rasterized,
+   * look them up.
+   */
+  private void intersect(Scene scene) {
+    if (rasterized != null) {
+      for (int i = 0; i < rayCount; ++i) {
+        var p = pixel[i];
+        t[i] = rasterized.t[p];
+        object[i] = rasterized.object[p];
+        index[i] = rasterized.index[p];
+        objectIndex[i] = rasterized.objectIndex[p];
+      }
+      return;
+    }
+    forEachBlock(
+        scene,
+        rayCount,
+        (tr, from, to) -> {
+          for (int i = from; i < to; ++i) {
+            tr.intersect(ox[i], oy[i], oz[i], dx[i], dy[i], dz[i]);
+            t[i] = tr.t;
+            object[i] = tr.object;
+            index[i] = tr.index;
+            objectIndex[i] = tr.objectIndex;
+          }
+        });
+  }
+
+  /**
+   * Fill the hit queue with the rays which hit something, grouped by object hit if sorting, and
+   * finish the pixels (and outputs) of those which didn't.
+   */
+  private void compact(Scene scene, int[] pixels) {
+    var black = Color.toRgb(0, 0, 0);
+    hitCount = 0;
+    if (!sorted) {
+      for (int i = 0; i < rayCount; ++i) {
+        if (object[i] == null) {
+          pixels[pixel[i]] = black;
+          clearAovs(pixel[i]);
+        } else {
+          hitRay[hitCount++] = i;
+        }
+      }
+      return;
+    }
+    var buckets = counts(scene.getObjectCount());
+    for (int i = 0; i < rayCount; ++i) {
+      if (object[i] == null) {
+        pixels[pixel[i]] = black;
+        clearAovs(pixel[i]);
+      } else {
+        ++buckets[objectIndex[i] + 1];
+        ++hitCount;
+      }
+    }
+    prefixSums(buckets, scene.getObjectCount());
+    for (int i = 0; i < rayCount; ++i) {
+      if (object[i] != null) {
+        hitRay[buckets[objectIndex[i]]++] = i;
+      }
+    }
+  }
+
+  /** Set the specified pixel of each output to the values of the background. */
+  private void clearAovs(int p) {
+    for (var aov : aovs) {
+      aov.clear(p);
+    }
+  }
+
+  /**
+   * Compute the material, hit point, normal and over point of each hit in the hit queue, sample the
+   * material's texture and pattern there, find the cell of the light index it's in, record it in
+   * the outputs, and clear its color.
+   *
+   * <p>Patterns are evaluated in batches, over each run of hits in a block with the same material.
+   * As hits are grouped by the object hit, runs are usually as long as the block.
+   */
+  private void prepare(Scene scene) {
+    var materials = scene.materials();
+    var lights = scene.getLightSamples() > 0 ? null : scene.lightIndex();
+    forEachBlock(
+        scene,
+        hitCount,
+        (tr, from, to) -> {
+          // the object space hit points, for patterns, from the start of the block
+          var s = tr.patternScratch;
+          var lx = s.array(to - from);
+          var ly = s.array(to - from);
+          var lz = s.array(to - from);
+          for (int h = from; h < to; ++h) {
+            var i = hitRay[h];
+            tr.origin.set(ox[i], oy[i], oz[i]);
+            tr.direction.set(dx[i], dy[i], dz[i]);
+            tr.t = t[i];
+            tr.object = object[i];
+            tr.index = index[i];
+            tr.traveled = 0;
+            tr.spread = spread;
+            tr.prepare();
+            hitMaterial[h] = materials.idOf(objectIndex[i]);
+            tr.sampleTexture(hitMaterial[h]);
+            texelR[h] = tr.texel.r;
+            texelG[h] = tr.texel.g;
+            texelB[h] = tr.texel.b;
+            lx[h - from] = tr.localPoint.x;
+            ly[h - from] = tr.localPoint.y;
+            lz[h - from] = tr.localPoint.z;
+            px[h] = tr.point.x;
+            py[h] = tr.point.y;
+            pz[h] = tr.point.z;
+            nx[h] = tr.normal.x;
+            ny[h] = tr.normal.y;
+            nz[h] = tr.normal.z;
+            opx[h] = tr.overPoint.x;
+            opy[h] = tr.overPoint.y;
+            opz[h] = tr.overPoint.z;
+            hitInside[h] = tr.inside;
+            if (lights != null) {
+              hitCell[h] = lights.cell(px[h], py[h], pz[h]);
+            }
+            r[h] = 0;
+            g[h] = 0;
+            b[h] = 0;
+          }
+          for (int h = from, end; h < to; h = end) {
+            var material = hitMaterial[h];
+            end = h + 1;
+            while (end < to && hitMaterial[end] == material) {
+              ++end;
+            }
+            samplePatterns(materials.get(material), lx, ly, lz, from, h, end, s);
+          }
+          s.releaseArrays(3);
+          for (var aov : aovs) {
+            for (int h = from; h < to; ++h) {
+              var i = hitRay[h];
+              aov.record(
+                  pixel[i],
+                  t[i],
+                  nx[h],
+                  ny[h],
+                  nz[h],
+                  materials.get(hitMaterial[h]),
+                  texelR[h],
+                  texelG[h],
+                  texelB[h],
+                  objectIndex[i]);
+            }
+          }
+        });
+  }
+
+  /**
+   * Apply the pattern, if any, of the specified material to the texels of hits {@code from} to
+   * {@code to}, whose object space hit points are in {@code lx}, {@code ly} and {@code lz}, from
+   * the hit {@code base} on, as {@link Tracer#samplePattern(int)} would one at a time.
+   */
+  private void samplePatterns(
+      Material material,
+      float[] lx,
+      float[] ly,
+      float[] lz,
+      int base,
+      int from,
+      int to,
+      Pattern.Scratch s) {
+    var pattern = material.getPattern();
+    if (pattern == null) {
+      return;
+    }
+    var pr = s.array(to - base);
+    var pg = s.array(to - base);
+    var pb = s.array(to - base);
+    pattern.colorAt(lx, ly, lz, from - base, to - base, s, pr, pg, pb);
+    if (material.getTexture() == null) {
+      for (int h = from; h < to; ++h) {
+        texelR[h] = pr[h - base];
+        texelG[h] = pg[h - base];
+        texelB[h] = pb[h - base];
+      }
+    } else {
+      for (int h = from; h < to; ++h) {
+        texelR[h] *= pr[h - base];
+        texelG[h] *= pg[h - base];
+        texelB[h] *= pb[h - base];
+      }
+    }
+    s.releaseArrays(3);
+  }
+
+  /**
+   * Return the number of passes needed to shade every hit in the hit queue by each light which may
+   * light it: the most lights listed in any hit's cell of the scene's light index, or every light
+   * if there's no index.
+   */
+  int lightPasses(Scene scene) {
+    var lights = scene.lightIndex();
+    if (lights == null) {
+      return scene.getLightCount();
+    }
+    var passes = 0;
+    for (int h = 0; h < hitCount; ++h) {
+      passes = Math.max(passes, lights.end(hitCell[h]) - lights.start(hitCell[h]));
+    }
+    return passes;
+  }
+
+  /**
+   * Fill the shadow queue with a ray from each hit's over point toward the light it's shaded by in
+   * the specified pass: the light that far down the list of the hit's cell of the light index (or
+   * the pass's light, if there's no index), or a light sampled for the hit if sampling lights. Note
+   * whether there is such a light bright enough at the hit to be considered at all.
+   */
+  private void generateShadows(Scene scene, int pass) {
+    var samples = scene.getLightSamples();
+    var tree = samples > 0 ? scene.lightTree() : null;
+    var lights = samples > 0 ? null : scene.lightIndex();
+    forEachBlock(
+        scene,
+        hitCount,
+        (tr, from, to) -> {
+          for (int h = from; h < to; ++h) {
+            var i = pass;
+            if (tree != null) {
+              tr.point.set(px[h], py[h], pz[h]);
+              i = tree.sample(tr, LightTree.random(px[h], py[h], pz[h], pass));
+              lit[h] = i >= 0;
+              weight[h] = 1 / (samples * tr.lightProbability);
+            } else if (lights != null) {
+              // the cell's lights in scene order, as Tracer.shadeHit() shades them
+              var k = lights.start(hitCell[h]) + pass;
+              i = k < lights.end(hitCell[h]) ? lights.light(k) : -1;
+              lit[h] = i >= 0 && lights.influences(i, px[h], py[h], pz[h]);
+            } else {
+              lit[h] = true;
+            }
+            if (!lit[h]) {
+              continue;
+            }
+            hitLight[h] = i;
+            tr.overPoint.set(opx[h], opy[h], opz[h]);
+            var toLight = tr.scratch.setBetween(tr.overPoint, scene.getLight(i).getPosition());
+            var distance = toLight.magnitude();
+            toLight.divide(distance);
+            sdx[h] = toLight.x;
+            sdy[h] = toLight.y;
+            sdz[h] = toLight.z;
+            sDistance[h] = distance;
+          }
+        });
+  }
+
+  /**
+   * Order the shadow queue by direction octant and origin, if sorting, or leave it in hit order.
+   */
+  void sortShadows() {
+    if (!sorted) {
+      for (int h = 0; h < hitCount; ++h) {
+        shadowOrder[h] = h;
+      }
+      return;
+    }
+    sorter.sort(opx, opy, opz, sdx, sdy, sdz, hitCount, shadowOrder);
+  }
+
+  /**
+   * Determine the fraction of its light visible from each hit in the shadow queue, by tracing its
+   * shadow ray or, if the scene has shadow maps, looking it up. Area lights are sampled by the
+   * tracer just as when rendering a pixel at a time, since their shadow rays depend on each other.
+   */
+  void traceShadows(Scene scene) {
+    var maps = scene.shadowMaps();
+    forEachBlock(
+        scene,
+        hitCount,
+        (tr, from, to) -> {
+          for (int s = from; s < to; ++s) {
+            var h = shadowOrder[s];
+            if (!lit[h]) {
+              visibility[h] = 0;
+            } else if (scene.getLight(hitLight[h]) instanceof AreaLight area) {
+              visibility[h] = tr.visibility(area, opx[h], opy[h], opz[h]);
+            } else if (maps != null) {
+              var shadowed =
+                  maps.isShadowed(hitLight[h], opx[h], opy[h], opz[h], nx[h], ny[h], nz[h]);
+              visibility[h] = shadowed ? 0 : 1;
+            } else {
+              var shadowed =
+                  tr.occluded(opx[h], opy[h], opz[h], sdx[h], sdy[h], sdz[h], sDistance[h]);
+              visibility[h] = shadowed ? 0 : 1;
+            }
+          }
+        });
+  }
+
+  /**
+   * Add the color seen by reflection off, and refraction through, each hit to its color. The
+   * reflected and refracted rays, which are few and incoherent compared to the primary and shadow
+   * rays, are traced recursively a ray at a time, just as when rendering a pixel at a time.
+   */
+  private void shadeSecondary(Scene scene) {
+    var maxDepth = scene.getMaxDepth();
+    var materials = scene.materials();
+    forEachBlock(
+        scene,
+        hitCount,
+        (tr, from, to) -> {
+          for (int h = from; h < to; ++h) {
+            var material = materials.get(hitMaterial[h]);
+            if (material.getReflective() <= 0 && material.getTransparency() <= 0) {
+              continue;
+            }
+            var i = hitRay[h];
+            tr.point.set(px[h], py[h], pz[h]);
+            tr.eye.set(dx[i], dy[i], dz[i]).negate();
+            tr.normal.set(nx[h], ny[h], nz[h]);
+            tr.overPoint.set(opx[h], opy[h], opz[h]);
+            tr.inside = hitInside[h];
+            tr.spread = spread;
+            tr.hitDistance = t[i];
+            tr.color.set(r[h], g[h], b[h]);
+            tr.shadeSecondary(hitMaterial[h], maxDepth, 1);
+            r[h] = tr.color.r;
+            g[h] = tr.color.g;
+            b[h] = tr.color.b;
+          }
+        });
+  }
+
+  /** Add the contribution of each hit's light in this pass to its color. */
+  private void shade(Scene scene) {
+    var sampling = scene.getLightSamples() > 0;
+    var table = scene.lightingTable();
+    forEachBlock(
+        scene,
+        hitCount,
+        (tr, from, to) -> {
+          for (int h = from; h < to; ++h) {
+            if (!lit[h]) {
+              continue;
+            }
+            var i = hitRay[h];
+            tr.point.set(px[h], py[h], pz[h]);
+            tr.eye.set(dx[i], dy[i], dz[i]).negate();
+            tr.normal.set(nx[h], ny[h], nz[h]);
+            tr.texel.set(texelR[h], texelG[h], texelB[h]);
+            var color = tr.color.set(r[h], g[h], b[h]);
+            if (sampling) {
+              var sample = tr.sample.set(0, 0, 0);
+              tr.lighting(table, hitMaterial[h], hitLight[h], visibility[h], sample);
+              color.addScaled(sample, weight[h]);
+            } else {
+              tr.lighting(table, hitMaterial[h], hitLight[h], visibility[h], color);
+            }
+            r[h] = color.r;
+            g[h] = color.g;
+            b[h] = color.b;
+          }
+        });
+  }
+
+  /** Write the color of each hit in the hit queue to its pixel. */
+  private void write(int[] pixels) {
+    forEachBlock(
+        null,
+        hitCount,
+        (tr, from, to) -> {
+          for (int h = from; h < to; ++h) {
+            pixels[pixel[hitRay[h]]] = Color.toRgb(r[h], g[h], b[h]);
+          }
+        });
+  }
+
+  /** Return a zeroed array of at least {@code n + 1} bucket counts. */
+  private int[] counts(int n) {
+    if (counts.length < n + 1) {
+      counts = new int[n + 1];
+    } else {
+      Arrays.fill(counts, 0, n + 1, 0);
+    }
+    return counts;
+  }
+
+  /** Turn the counts of buckets {@code 0..n-1}, held at {@code 1..n}, into their start offsets. */
+  private static void prefixSums(int[] buckets, int n) {
+    for (int k = 1; k < n; ++k) {
+      buckets[k] += buckets[k - 1];
+    }
+  }
+
+  /** A stage's work on the elements of a queue from {@code from} (inclusive) to {@code to}. */
+  @FunctionalInterface
+  private interface Block {
+    void run(Tracer tr, int from, int to);
+  }
+
+  /**
+   * Run the specified work over {@code count} queue elements, in parallel blocks, passing each the
+   * calling thread's tracer for {@code scene}, or {@code null} if there's no scene.
+   */
+  private static void forEachBlock(Scene scene, int count, Block block) {
+    var blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    IntStream.range(0, blocks)
+        .parallel()
+        .forEach(
+            i -> {
+              try (var tr = scene == null ? null : scene.tracer()) {
+                block.run(tr, i * BLOCK_SIZE, Math.min(count, (i + 1) * BLOCK_SIZE));
+              }
+            });
+  }
+}
@@ -100,6 +100,77 @@ public class AbstractShapeTest {
     assertEquals(new Vector3(0, 0, 1), s.localRay.getDirection());
   }
 
+  @Test
+  @DisplayName("Shape transforms are classified when set")
+  void testTransformClass() {
+    var s = new TestShape();
+    assertEquals(AbstractShape.TransformClass.IDENTITY, s.getTransformClass());
+    s.setTransform(Matrix4x4.translation(1, 2, 3));
+    assertEquals(AbstractShape.TransformClass.TRANSLATION, s.getTransformClass());
+    s.setTransform(Matrix4x4.scaling(2, 2, 2).translate(1, 2, 3));
+    assertEquals(AbstractShape.TransformClass.UNIFORM_SCALE, s.getTransformClass());
+    s.setTransform(Matrix4x4.scaling(-1, -1, -1));
+    assertEquals(AbstractShape.TransformClass.UNIFORM_SCALE, s.getTransformClass());
+    s.setTransform(Matrix4x4.scaling(2, 2, 3));
+    assertEquals(AbstractShape.TransformClass.GENERAL, s.getTransformClass());
+    s.setTransform(Matrix4x4.rotationOnZ(Math.PI / 5));
+    assertEquals(AbstractShape.TransformClass.GENERAL, s.getTransformClass());
+    s.setTransform(Matrix4x4.scaling(0, 0, 0));
+    assertEquals(AbstractShape.TransformClass.GENERAL, s.getTransformClass());
+    s.setTransform(Matrix4x4.identity());
+    assertEquals(AbstractShape.TransformClass.IDENTITY, s.getTransformClass());
+  }
+
+  @Test
+  @DisplayName("Fast transform paths give the same results as general matrix math")
+  void testFastPathsMatchGeneral() {
+    var transforms =
+        new Matrix4x4[] {
+          Matrix4x4.identity(),
+          Matrix4x4.translation(1, -2, 3),
+          Matrix4x4.scaling(2.5f, 2.5f, 2.5f).translate(-1, 2, .5f),
+          Matrix4x4.scaling(-.5f, -.5f, -.5f).translate(3, 0, 1)
+        };
+    var r = new Ray(new Point(1, 2, -5), new Vector3(.1f, -.2f, 1));
+    var p = new Point(.3f, -.7f, 1.1f);
+    for (var t : transforms) {
+      var s = new TestShape().setTransform(t);
+      s.intersects(r);
+      var expected = r.transform(t.invert());
+      assertEquals(expected, s.localRay, t.toString());
+      var local = t.invert().multiply(p);
+      var expectedNormal =
+          t.invert()
+              .transpose()
+              .multiply(new Vector3(local.getX(), local.getY(), local.getZ()))
+              .normalize();
+      assertEquals(expectedNormal, s.normalAt(p), t.toString());
+    }
+  }
+
+  @Test
+  @DisplayName("A shape with a singular transform can't be intersected")
+  void testSingularTransform() {
+    var s = new TestShape().setTransform(Matrix4x4.scaling(2, 0, 2));
+    var r = new Ray(Point.ORIGIN, new Vector3(0, 0, 1));
+    assertThrows(ArithmeticException.class, () -> s.intersects(r));
+  }
+
+  @Test
+  @DisplayName("A transform's largest scale bounds how far it stretches any vector")
+  void testLargestScale() {
+    assertEquals(1, AbstractShape.largestScale(Matrix4x4.identity()), 1e-4);
+    assertEquals(3, AbstractShape.largestScale(Matrix4x4.scaling(-3, -3, -3)), 1e-4);
+    assertEquals(1, AbstractShape.largestScale(Matrix4x4.rotationOnY(1).translate(4, 5, 6)), 1e-4);
+    // rotating before scaling mixes the axes, so no column is as long as the largest scale
+    var m = Matrix4x4.rotationOnZ(Math.PI / 4).scale(2, 1, 1);
+    assertEquals(2, AbstractShape.largestScale(m), 1e-4);
+    // (1 + sqrt(5)) / 2, stretching (1, 1) by more than either column's length of 1 or sqrt(2)
+    var shear = Matrix4x4.shearing(1, 0, 0, 0, 0, 0);
+    assertEquals(1.618034f, AbstractShape.largestScale(shear), 1e-4);
+    assertTrue(AbstractShape.largestScale(shear) >= 1.618034f);
+  }
+
   static class TestShape extends AbstractShape<TestShape> implements Shape {
     Ray localRay;
 
@@ -0,0 +1,86 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+public class AovTest {
+  @Test
+  @DisplayName("A new AOV holds the background's values")
+  void testCreate() {
+    var depth = new Aov(Aov.Kind.DEPTH, 3, 2);
+    assertEquals(Aov.Kind.DEPTH, depth.getKind());
+    assertEquals(3, depth.getWidth());
+    assertEquals(2, depth.getHeight());
+    assertEquals(6, depth.getValues().length);
+    assertEquals(Float.POSITIVE_INFINITY, depth.get(2, 1));
+    var normal = new Aov(Aov.Kind.NORMAL, 3, 2);
+    assertEquals(18, normal.getValues().length);
+    assertEquals(0, normal.get(2, 1, 2));
+    assertEquals(0, new Aov(Aov.Kind.ALBEDO, 3, 2).get(0, 0, 1));
+    assertEquals(-1, new Aov(Aov.Kind.OBJECT_ID, 3, 2).get(1, 1));
+  }
+
+  @Test
+  @DisplayName("An AOV must have pixels, and only its own pixels and channels can be read")
+  void testBounds() {
+    assertThrows(IllegalArgumentException.class, () -> new Aov(Aov.Kind.DEPTH, 0, 2));
+    assertThrows(IllegalArgumentException.class, () -> new Aov(Aov.Kind.DEPTH, 2, -1));
+    var normal = new Aov(Aov.Kind.NORMAL, 3, 2);
+    assertThrows(IndexOutOfBoundsException.class, () -> normal.get(3, 0));
+    assertThrows(IndexOutOfBoundsException.class, () -> normal.get(0, 2));
+    assertThrows(IndexOutOfBoundsException.class, () -> normal.get(0, 0, 3));
+    assertThrows(IndexOutOfBoundsException.class, () -> new Aov(Aov.Kind.DEPTH, 2, 2).get(0, 0, 1));
+  }
+
+  @Test
+  @DisplayName("Recording a hit sets the pixel's channels, and clearing it restores the background")
+  void testRecord() {
+    var material =
+        new Material.Builder()
+            .color(new Color(.5f, 1, .25f))
+            .pattern(new StripePattern(Color.WHITE, Color.BLACK))
+            .build();
+    var depth = new Aov(Aov.Kind.DEPTH, 2, 2);
+    var normal = new Aov(Aov.Kind.NORMAL, 2, 2);
+    var albedo = new Aov(Aov.Kind.ALBEDO, 2, 2);
+    var id = new Aov(Aov.Kind.OBJECT_ID, 2, 2);
+    for (var aov : new Aov[] {depth, normal, albedo, id}) {
+      aov.record(3, 7.5f, 0, 1, 0, material, .5f, .5f, 1, 4);
+    }
+    assertEquals(7.5f, depth.get(1, 1));
+    assertEquals(1, normal.get(1, 1, 1));
+    assertEquals(.25f, albedo.get(1, 1, 0));
+    assertEquals(.5f, albedo.get(1, 1, 1));
+    assertEquals(.25f, albedo.get(1, 1, 2));
+    assertEquals(4, id.get(1, 1));
+    // an untextured material's albedo is its color, whatever the texel
+    albedo.record(2, 1, 0, 1, 0, new Material.Builder().build(), 0, 0, 0, 0);
+    assertEquals(1, albedo.get(0, 1, 0));
+    depth.clear(3);
+    id.clear(3);
+    albedo.clear(3);
+    assertEquals(Float.POSITIVE_INFINITY, depth.get(1, 1));
+    assertEquals(-1, id.get(1, 1));
+    assertEquals(0, albedo.get(1, 1, 2));
+  }
+
+  @ParameterizedTest
+  @EnumSource(Aov.Kind.class)
+  @DisplayName("An AOV can be viewed as an image, with the background black")
+  void testToImage(Aov.Kind kind) {
+    var aov = new Aov(kind, 2, 1);
+    var material = new Material.Builder().build();
+    aov.record(0, 2, 0, 0, -1, material, 1, 1, 1, 3);
+    var image = aov.toImage();
+    assertEquals(2, image.getWidth());
+    assertEquals(1, image.getHeight());
+    assertEquals(0, image.getRGB(1, 0) & 0xffffff);
+    assertNotEquals(0, image.getRGB(0, 0) & 0xffffff);
+  }
+}
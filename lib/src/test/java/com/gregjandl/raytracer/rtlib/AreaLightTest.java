@@ -0,0 +1,179 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class AreaLightTest {
+  /** An area light above the origin, and a sphere between them. */
+  static Scene penumbraScene(int probeSamples) {
+    var scene = new Scene();
+    scene.addLight(
+        new AreaLight(
+            new Point(-1, 5, -1),
+            new Vector3(2, 0, 0),
+            4,
+            new Vector3(0, 0, 2),
+            4,
+            Color.WHITE,
+            probeSamples));
+    scene.addObject(new Plane());
+    scene.addObject(new Sphere().setTransform(Matrix4x4.translation(0, 2.5f, 0)));
+    return scene;
+  }
+
+  @Test
+  @DisplayName("An area light is centered on its position")
+  void testCreateAreaLight() {
+    var light =
+        new AreaLight(
+            new Point(0, 0, 0), new Vector3(2, 0, 0), 4, new Vector3(0, 0, 1), 2, Color.WHITE);
+    assertEquals(new Point(1, 0, .5f), light.getPosition());
+    assertEquals(new Point(0, 0, 0), light.getCorner());
+    assertEquals(new Vector3(2, 0, 0), light.getUVec());
+    assertEquals(new Vector3(0, 0, 1), light.getVVec());
+    assertEquals(4, light.getUSteps());
+    assertEquals(2, light.getVSteps());
+    assertEquals(8, light.getSamples());
+    assertEquals(AreaLight.DEFAULT_PROBE_SAMPLES, light.getProbeSamples());
+    assertEquals(Color.WHITE, light.getColor());
+  }
+
+  @Test
+  @DisplayName("An area light samples each of its cells once, its corners first")
+  void testSamplePoints() {
+    var light =
+        new AreaLight(
+            new Point(0, 0, 0), new Vector3(2, 0, 0), 4, new Vector3(0, 0, 1), 2, Color.WHITE);
+    var p = new MutableVector3();
+    var cells = new HashSet<Integer>();
+    for (int k = 0; k < light.getSamples(); ++k) {
+      light.samplePoint(k, .5f, .5f, p);
+      assertEquals(0, p.y);
+      cells.add((int) (p.x / .5f) + 4 * (int) (p.z / .5f));
+      if (k < 4) {
+        // a corner cell's center
+        assertTrue(p.x == .25f || p.x == 1.75f, "x " + p.x);
+        assertTrue(p.z == .25f || p.z == .75f, "z " + p.z);
+      }
+    }
+    assertEquals(8, cells.size());
+    light.samplePoint(0, 0, 0, p);
+    assertEquals(0, p.x);
+    assertEquals(0, p.z);
+  }
+
+  @Test
+  @DisplayName("Area lights need cells, and between 1 and all of them as probes")
+  void testValidation() {
+    var corner = new Point(0, 0, 0);
+    var u = new Vector3(1, 0, 0);
+    var v = new Vector3(0, 1, 0);
+    assertThrows(IllegalArgumentException.class, () -> new AreaLight(corner, u, 0, v, 2, null));
+    assertThrows(IllegalArgumentException.class, () -> new AreaLight(corner, u, 2, v, -1, null));
+    assertThrows(IllegalArgumentException.class, () -> new AreaLight(corner, u, 2, v, 2, null, 0));
+    assertThrows(IllegalArgumentException.class, () -> new AreaLight(corner, u, 2, v, 2, null, 5));
+    // fewer cells than the default probe samples
+    assertEquals(2, new AreaLight(corner, u, 1, v, 2, Color.WHITE).getProbeSamples());
+  }
+
+  @Test
+  @DisplayName("Area lights are equal if they have the same extent, grid, color and probes")
+  void testEquals() {
+    var corner = new Point(0, 0, 0);
+    var u = new Vector3(1, 0, 0);
+    var v = new Vector3(0, 1, 0);
+    var light = new AreaLight(corner, u, 2, v, 2, Color.WHITE);
+    assertEquals(light, new AreaLight(corner, u, 2, v, 2, Color.WHITE, 4));
+    assertEquals(light.hashCode(), new AreaLight(corner, u, 2, v, 2, Color.WHITE).hashCode());
+    assertNotEquals(light, new AreaLight(corner, u, 2, v, 2, Color.WHITE, 2));
+    assertNotEquals(light, new AreaLight(corner, u, 1, v, 4, Color.WHITE));
+    assertNotEquals(light, new PointLight(light.getPosition()));
+  }
+
+  @Test
+  @DisplayName("Only points whose probes disagree are sampled from every cell")
+  void testAdaptiveSampling() {
+    var scene = penumbraScene(4);
+    var tr = new Tracer(scene);
+    var light = (AreaLight) scene.getLight(0);
+    // directly below the sphere, in the umbra
+    assertEquals(0, tr.visibility(light, 0, .001f, 0));
+    assertEquals(4, scene.getAreaShadowSampleCount());
+    // well away from it, fully lit
+    assertEquals(1, tr.visibility(light, 10, .001f, 0));
+    assertEquals(8, scene.getAreaShadowSampleCount());
+    assertEquals(2, scene.getAreaShadowTestCount());
+    assertEquals(4, scene.getAverageShadowSamples());
+    // at the edge of the shadow, partly lit
+    var visibility = tr.visibility(light, 1.4f, .001f, 0);
+    assertTrue(visibility > 0 && visibility < 1, "visibility " + visibility);
+    assertEquals(24, scene.getAreaShadowSampleCount());
+    assertEquals(8, scene.getAverageShadowSamples());
+    scene.resetRayCounts();
+    assertEquals(0, scene.getAreaShadowTestCount());
+    assertEquals(0, scene.getAverageShadowSamples());
+  }
+
+  @Test
+  @DisplayName("Visibility falls off smoothly across the penumbra")
+  void testPenumbra() {
+    var scene = penumbraScene(4);
+    var tr = new Tracer(scene);
+    var light = (AreaLight) scene.getLight(0);
+    var last = 0f;
+    for (int i = 0; i <= 40; ++i) {
+      var visibility = tr.visibility(light, i / 10f, .001f, 0);
+      assertTrue(visibility >= last - .2f, "visibility " + visibility + " at " + i / 10f);
+      last = Math.max(last, visibility);
+    }
+    assertEquals(1, last);
+    // penumbra points were sampled from every cell, the rest from only the probes
+    var average = scene.getAverageShadowSamples();
+    assertTrue(average > 4 && average < 16, "average " + average);
+  }
+
+  @Test
+  @DisplayName("Sampling every cell finds nearly the same penumbra, at a higher cost")
+  void testProbeEverything() {
+    var adaptive = penumbraScene(4);
+    var full = penumbraScene(16);
+    var light = (AreaLight) adaptive.getLight(0);
+    var fullLight = (AreaLight) full.getLight(0);
+    var adaptiveTracer = new Tracer(adaptive);
+    var fullTracer = new Tracer(full);
+    var differ = 0;
+    for (int i = 0; i <= 400; ++i) {
+      var x = i / 100f;
+      var expected = fullTracer.visibility(fullLight, x, .001f, 0);
+      var actual = adaptiveTracer.visibility(light, x, .001f, 0);
+      if (actual > 0 && actual < 1) {
+        assertEquals(expected, actual, "at " + x);
+      } else if (actual != expected) {
+        // the probes agreed, but missed a cell which didn't
+        assertEquals(actual, expected, .25f, "at " + x);
+        ++differ;
+      }
+    }
+    assertTrue(differ < 40, differ + " differ");
+    assertEquals(16, full.getAverageShadowSamples());
+    assertTrue(adaptive.getAverageShadowSamples() < 16);
+  }
+
+  @Test
+  @DisplayName("A scene lit by an area light shades points by how much of it they see")
+  void testColorAt() {
+    var scene = penumbraScene(4);
+    var down = new Vector3(0, -1, 0);
+    var lit = scene.colorAt(new Ray(new Point(10, 1, 0), down));
+    var shadowed = scene.colorAt(new Ray(new Point(.1f, 1, 0), down));
+    var penumbra = scene.colorAt(new Ray(new Point(1.4f, 1, 0), down));
+    assertEquals(new Color(.1f, .1f, .1f), shadowed);
+    assertTrue(penumbra.getR() > shadowed.getR() && penumbra.getR() < lit.getR());
+  }
+}
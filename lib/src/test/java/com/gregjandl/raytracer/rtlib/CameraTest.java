@@ -1,12 +1,26 @@
 package com.gregjandl.raytracer.rtlib;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
 public class CameraTest {
   @Test
@@ -143,4 +157,544 @@ public class CameraTest {
     var expected = new Color(0.38066f, 0.47583f, 0.2855f).toAwtColor();
     assertEquals(expected.getRGB(), image.getRGB(5, 5));
   }
+
+  @ParameterizedTest
+  @CsvSource({"1, false", "8, false", "1, true", "8, true"})
+  @DisplayName("Rendering doesn't allocate per pixel, even of textures and patterns")
+  void testRenderDoesNotAllocate(int packetSize, boolean textured, @TempDir Path dir)
+      throws IOException {
+    var bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    var threads = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    var cache = new TextureCache(1 << 20);
+    var image = TextureTest.noise(300, 200, 1);
+    try (var texture = TextureTest.texture(image, dir.resolve("t"), cache)) {
+      var scene = SceneTest.testScene();
+      if (textured) {
+        var checker =
+            new CheckerPattern(
+                new PerlinPattern(Color.RED, Color.BLUE),
+                new RingPattern(Color.WHITE, Color.GREEN));
+        scene.getObject(0).setMaterial(new Material.Builder().texture(texture).build());
+        scene.getObject(1).setMaterial(new Material.Builder().pattern(checker).build());
+        scene
+            .getObject(2)
+            .setMaterial(new Material.Builder().texture(texture).pattern(checker).build());
+      }
+      var c = new Camera(64, 48, Math.PI / 3);
+      c.setViewTransform(new Point(0, 1.5f, -5), new Point(0, 0, 0), new Vector3(0, 1, 0));
+      c.setPacketSize(packetSize);
+      var pixels = new int[c.getHSize() * c.getVSize()];
+      // the first render creates the thread's tracer, builds the mesh's hierarchy and reads tiles
+      c.render(scene, pixels);
+      c.render(scene, pixels);
+
+      // the least of a few renders, since the JIT compiling the renderer can allocate in one
+      var id = Thread.currentThread().getId();
+      var allocated = Long.MAX_VALUE;
+      for (int i = 0; i < 5; ++i) {
+        var before = threads.getThreadAllocatedBytes(id);
+        c.render(scene, pixels);
+        allocated = Math.min(allocated, threads.getThreadAllocatedBytes(id) - before);
+      }
+      // allow for a little noise from the measurement itself, but nowhere near a byte per pixel
+      assertTrue(allocated < pixels.length / 4, "render allocated " + allocated + " bytes");
+    }
+  }
+
+  @Test
+  @DisplayName("Rendering fills every pixel")
+  void testRenderFillsImage() {
+    var w = Scene.getDefault();
+    var c = new Camera(11, 11, Math.PI / 2);
+    c.setViewTransform(new Point(0, 0, -5), Point.ORIGIN, new Vector3(0, 1, 0));
+    var image = c.render(w);
+    for (int y = 0; y < 11; ++y) {
+      for (int x = 0; x < 11; ++x) {
+        var expected = w.colorAt(c.rayForPixel(x, y)).toAwtColor();
+        assertEquals(expected.getRGB(), image.getRGB(x, y), "pixel " + x + ", " + y);
+      }
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {2, 3, 4, 8})
+  @DisplayName("Tracing packets renders the same image as tracing single rays")
+  void testPacketsMatchSingleRays(int packetSize) {
+    var scene = SceneTest.testScene();
+    // a field of small spheres, most of which each packet can skip
+    for (int z = 0; z < 6; ++z) {
+      for (int x = 0; x < 6; ++x) {
+        scene.addObject(
+            new Sphere()
+                .setTransform(Matrix4x4.scaling(.2f, .2f, .2f).translate(x - 2.5f, -.8f, z)));
+      }
+    }
+    // rotating before scaling, or shearing, stretches a sphere further than any of the
+    // transform's columns is long, so their bounds must come from its largest singular value
+    scene.addObject(
+        new Sphere()
+            .setTransform(
+                Matrix4x4.scaling(.3f, .3f, .3f)
+                    .rotateOnZ(Math.PI / 4)
+                    .scale(8, .2f, .2f)
+                    .translate(0, 1.2f, -1)));
+    scene.addObject(
+        new Sphere()
+            .setTransform(
+                Matrix4x4.scaling(.2f, .2f, .2f)
+                    .shear(0, 0, 4, 0, 0, 0)
+                    .rotateOnY(.5)
+                    .translate(-1.5f, 2, 0)));
+    // the packets of the tiny image span too wide an angle to be traced as packets
+    for (var c : new Camera[] {new Camera(61, 37, 2), new Camera(6, 5, 2)}) {
+      c.setViewTransform(new Point(0, 1.5f, -5), new Point(0, 0, 0), new Vector3(0, 1, 0));
+      var expected = c.render(scene, new int[c.getHSize() * c.getVSize()]);
+      c.setPacketSize(packetSize);
+      assertArrayEquals(expected, c.render(scene, new int[c.getHSize() * c.getVSize()]));
+    }
+  }
+
+  @Test
+  @DisplayName("Packet sizes are limited to 1 to 8")
+  void testPacketSizeRange() {
+    var c = new Camera(10, 10, 1);
+    assertEquals(1, c.getPacketSize());
+    c.setPacketSize(8);
+    assertEquals(8, c.getPacketSize());
+    assertThrows(IllegalArgumentException.class, () -> c.setPacketSize(0));
+    assertThrows(IllegalArgumentException.class, () -> c.setPacketSize(9));
+  }
+
+  @ParameterizedTest
+  @CsvSource({"1, false", "97, false", "97, true", "100000, false", "100000, true"})
+  @DisplayName("The wavefront renderer renders the same image as rendering a pixel at a time")
+  void testWavefrontMatchesPixelAtATime(int wavefrontSize, boolean sortingRays) {
+    var scene = SceneTest.testScene();
+    scene.addLight(new PointLight(new Point(3, 4, -6), new Color(.2f, .3f, .4f)));
+    var c = new Camera(61, 37, Math.PI / 3);
+    c.setViewTransform(new Point(0, 1.5f, -5), new Point(0, 0, 0), new Vector3(0, 1, 0));
+    var expected = c.render(scene, new int[c.getHSize() * c.getVSize()]);
+    c.setWavefrontSize(wavefrontSize);
+    c.setSortingRays(sortingRays);
+    var pixels = new int[c.getHSize() * c.getVSize()];
+    assertArrayEquals(expected, c.render(scene, pixels));
+    // rendering again reuses the queues
+    assertArrayEquals(expected, c.render(scene, pixels));
+  }
+
+  /**
+   * Assert that the wavefront renderer, sorting rays or not, renders the specified scene the same
+   * as rendering a pixel at a time, taking as many samples of any area lights' shadows.
+   */
+  private static void assertWavefrontMatches(Scene scene, boolean sortingRays) {
+    var c = new Camera(31, 23, Math.PI / 3);
+    c.setViewTransform(new Point(0, 1.5f, -5), new Point(0, 0, 0), new Vector3(0, 1, 0));
+    scene.resetRayCounts();
+    var expected = c.render(scene, new int[c.getHSize() * c.getVSize()]);
+    var samples = scene.getAreaShadowSampleCount();
+    c.setWavefrontSize(100);
+    c.setSortingRays(sortingRays);
+    assertArrayEquals(expected, c.render(scene, new int[c.getHSize() * c.getVSize()]));
+    assertEquals(2 * samples, scene.getAreaShadowSampleCount());
+  }
+
+  @ParameterizedTest
+  @CsvSource({"false, 0", "true, 0", "false, 3", "true, 3"})
+  @DisplayName(
+      "The wavefront renderer skips or samples the same lights as rendering a pixel at a time")
+  void testWavefrontLightSelection(boolean sortingRays, int lightSamples) {
+    var scene = SceneTest.addSmallLights(SceneTest.testScene());
+    scene.setLightThreshold(.1f);
+    scene.setLightSamples(lightSamples);
+    assertWavefrontMatches(scene, sortingRays);
+  }
+
+  @Test
+  @DisplayName("The wavefront renderer takes a pass per light of a hit's cell, not per light")
+  void testWavefrontLightPasses() {
+    var scene = SceneTest.addSmallLights(SceneTest.testScene());
+    scene.setLightThreshold(.1f);
+    var c = new Camera(31, 23, Math.PI / 3);
+    c.setViewTransform(new Point(0, 1.5f, -5), new Point(0, 0, 0), new Vector3(0, 1, 0));
+    var wavefront = new Wavefront(c.getHSize() * c.getVSize());
+    wavefront.render(c, scene, new int[c.getHSize() * c.getVSize()], null);
+    var passes = wavefront.lightPasses(scene);
+    assertTrue(passes > 0 && passes < scene.getLightCount() / 2, passes + " passes");
+    scene.setLightThreshold(0);
+    assertEquals(scene.getLightCount(), wavefront.lightPasses(scene));
+  }
+
+  @ParameterizedTest
+  @CsvSource({"false, 0", "true, 0", "false, 3"})
+  @DisplayName("The wavefront renderer looks shadows up in the same shadow maps")
+  void testWavefrontShadowMaps(boolean sortingRays, int lightSamples) {
+    var scene = SceneTest.testScene();
+    scene.setShadowMapResolution(128);
+    scene.setLightSamples(lightSamples);
+    assertWavefrontMatches(scene, sortingRays);
+  }
+
+  @ParameterizedTest
+  @CsvSource({"false, 5", "true, 5", "false, 1"})
+  @DisplayName("The wavefront renderer reflects and refracts the same rays")
+  void testWavefrontSecondaryRays(boolean sortingRays, int maxDepth) {
+    var scene = SceneTest.testScene();
+    scene.addObject(
+        new Sphere()
+            .setTransform(Matrix4x4.scaling(.6f, .6f, .6f).translate(.5f, .2f, -1.5f))
+            .setMaterial(
+                new Material.Builder()
+                    .color(new Color(.1f, .1f, .1f))
+                    .reflective(.9f)
+                    .transparency(.9f)
+                    .refractiveIndex(1.5f)
+                    .build()));
+    scene.getObject(0).setMaterial(new Material.Builder().reflective(.3f).build());
+    scene.setMaxDepth(maxDepth);
+    assertWavefrontMatches(scene, sortingRays);
+  }
+
+  @ParameterizedTest
+  @CsvSource({"false, 0, 0", "true, 0, 0", "false, 3, 0", "false, 0, 128"})
+  @DisplayName("The wavefront renderer samples the same soft shadows of area lights")
+  void testWavefrontAreaLights(boolean sortingRays, int lightSamples, int shadowMapResolution) {
+    var scene = SceneTest.testScene();
+    scene.addLight(
+        new AreaLight(
+            new Point(2, 6, -4),
+            new Vector3(1, 0, 0),
+            3,
+            new Vector3(0, 1, 1),
+            3,
+            new Color(.5f, .5f, .4f)));
+    scene.setLightSamples(lightSamples);
+    scene.setShadowMapResolution(shadowMapResolution);
+    assertWavefrontMatches(scene, sortingRays);
+  }
+
+  @ParameterizedTest
+  @CsvSource({"false, 0", "true, 0", "false, 3"})
+  @DisplayName("The wavefront renderer samples textures from the same mip levels")
+  void testWavefrontTextures(boolean sortingRays, int lightSamples, @TempDir Path dir)
+      throws IOException {
+    var cache = new TextureCache(1 << 20);
+    try (var noise = TextureTest.texture(TextureTest.noise(100, 60, 1), dir.resolve("1"), cache);
+        var checker = TextureTest.texture(TextureTest.checker(256), dir.resolve("2"), cache)) {
+      var scene = SceneTest.testScene();
+      scene.getObject(0).setMaterial(new Material.Builder().texture(checker).build());
+      scene.getObject(1).setMaterial(new Material.Builder().texture(noise).reflective(.5f).build());
+      scene.getObject(3).setMaterial(new Material.Builder().texture(checker).build());
+      scene.setLightSamples(lightSamples);
+      assertWavefrontMatches(scene, sortingRays);
+    }
+  }
+
+  @ParameterizedTest
+  @CsvSource({"false, false", "true, false", "false, true"})
+  @DisplayName("The wavefront renderer evaluates patterns in batches to the same colors")
+  void testWavefrontPatterns(boolean sortingRays, boolean textured, @TempDir Path dir)
+      throws IOException {
+    var cache = new TextureCache(1 << 20);
+    try (var texture = TextureTest.texture(TextureTest.noise(40, 40, 1), dir.resolve("t"), cache)) {
+      var noise =
+          new PerlinPattern(Color.RED, Color.BLUE).withTransform(Matrix4x4.scaling(.2f, 1, 1));
+      var checker =
+          new CheckerPattern(noise, new RingPattern(Color.WHITE, Color.GREEN))
+              .withTransform(Matrix4x4.rotationOnY(.5).scale(.5f, .5f, .5f));
+      var scene = SceneTest.testScene();
+      var floor = new Material.Builder().pattern(checker).reflective(.3f);
+      scene.getObject(0).setMaterial((textured ? floor.texture(texture) : floor).build());
+      var stripes = new StripePattern(Color.RED, Color.CYAN);
+      scene.getObject(1).setMaterial(new Material.Builder().pattern(stripes).build());
+      assertWavefrontMatches(scene, sortingRays);
+    }
+  }
+
+  @Test
+  @DisplayName("Rendering fills AOVs from the primary hits")
+  void testAovs() {
+    var scene = Scene.getDefault();
+    var c = new Camera(11, 11, Math.PI / 2);
+    c.setViewTransform(new Point(0, 0, -5), Point.ORIGIN, new Vector3(0, 1, 0));
+    var depth = new Aov(Aov.Kind.DEPTH, 11, 11);
+    var normal = new Aov(Aov.Kind.NORMAL, 11, 11);
+    var albedo = new Aov(Aov.Kind.ALBEDO, 11, 11);
+    var id = new Aov(Aov.Kind.OBJECT_ID, 11, 11);
+    var image = c.render(scene, depth, normal, albedo, id);
+    // the center ray hits the front of the outer sphere
+    assertEquals(4, depth.get(5, 5), 1e-5f);
+    assertEquals(-1, normal.get(5, 5, 2), 1e-5f);
+    assertEquals(0.8f, albedo.get(5, 5, 0));
+    assertEquals(1, albedo.get(5, 5, 1));
+    assertEquals(0.6f, albedo.get(5, 5, 2));
+    assertEquals(0, id.get(5, 5));
+    // the corner ray misses
+    assertEquals(Float.POSITIVE_INFINITY, depth.get(0, 0));
+    assertEquals(0, normal.get(0, 0, 2));
+    assertEquals(-1, id.get(0, 0));
+    // and the rendered image is the same as without them
+    var plain = c.render(scene);
+    for (int y = 0; y < 11; ++y) {
+      for (int x = 0; x < 11; ++x) {
+        assertEquals(plain.getRGB(x, y), image.getRGB(x, y));
+      }
+    }
+    assertThrows(
+        IllegalArgumentException.class, () -> c.render(scene, new Aov(Aov.Kind.DEPTH, 11, 10)));
+  }
+
+  @Test
+  @DisplayName("A render which fails part way doesn't leave the tracer recording into its AOVs")
+  void testAovsAfterFailedRender() {
+    var scene = SceneTest.testScene();
+    var c = new Camera(11, 11, Math.PI / 2);
+    c.setViewTransform(new Point(0, 0, -5), Point.ORIGIN, new Vector3(0, 1, 0));
+    var depth = new Aov(Aov.Kind.DEPTH, 11, 11);
+    // too few pixels for the view
+    assertThrows(ArrayIndexOutOfBoundsException.class, () -> c.render(scene, new int[5], depth));
+    try (var tr = scene.tracer()) {
+      assertNull(tr.aovs);
+      assertEquals(-1, tr.aovPixel);
+    }
+  }
+
+  @ParameterizedTest
+  @CsvSource({"1, 0, false", "4, 0, false", "1, 100, false", "1, 100, true"})
+  @DisplayName("Packets and the wavefront renderer fill the same AOVs as single rays")
+  void testAovsMatch(int packetSize, int wavefrontSize, boolean sortingRays) {
+    var scene = SceneTest.testScene();
+    scene
+        .getObject(0)
+        .setMaterial(
+            new Material.Builder().pattern(new CheckerPattern(Color.RED, Color.BLUE)).build());
+    var c = new Camera(31, 23, Math.PI / 3);
+    c.setViewTransform(new Point(0, 1.5f, -5), new Point(0, 0, 0), new Vector3(0, 1, 0));
+    var expected = new Aov[Aov.Kind.values().length];
+    var actual = new Aov[expected.length];
+    for (var kind : Aov.Kind.values()) {
+      expected[kind.ordinal()] = new Aov(kind, 31, 23);
+      actual[kind.ordinal()] = new Aov(kind, 31, 23);
+    }
+    c.render(scene, new int[31 * 23], expected);
+    c.setPacketSize(packetSize);
+    c.setWavefrontSize(wavefrontSize);
+    c.setSortingRays(sortingRays);
+    c.render(scene, new int[31 * 23], actual);
+    for (int k = 0; k < expected.length; ++k) {
+      assertArrayEquals(expected[k].getValues(), actual[k].getValues(), expected[k].getKind() + "");
+    }
+    // some pixels hit and some missed
+    assertEquals(-1, expected[Aov.Kind.OBJECT_ID.ordinal()].get(0, 0));
+    assertEquals(0, expected[Aov.Kind.OBJECT_ID.ordinal()].get(15, 22));
+  }
+
+  @ParameterizedTest
+  @CsvSource({"0, false", "100, false", "100, true"})
+  @DisplayName("Rasterizing primary visibility renders the same image and AOVs as tracing it")
+  void testRasterizingMatchesRayTracing(int wavefrontSize, boolean sortingRays) {
+    var scene = VisibilityBufferTest.testScene();
+    var c = new Camera(61, 37, Math.PI / 3);
+    assertFalse(c.isRasterizing());
+    for (var from : new Point[] {new Point(0, 1.5f, -5), new Point(.3f, -.5f, 6), Point.ORIGIN}) {
+      c.setViewTransform(from, new Point(0, 0, 0.5f), new Vector3(.2f, 1, 0));
+      c.setRasterizing(false);
+      c.setWavefrontSize(0);
+      var expectedAov = new Aov(Aov.Kind.OBJECT_ID, 61, 37);
+      var expected = c.render(scene, new int[61 * 37], expectedAov);
+      c.setRasterizing(true);
+      c.setWavefrontSize(wavefrontSize);
+      c.setSortingRays(sortingRays);
+      // packets are ignored
+      c.setPacketSize(4);
+      var aov = new Aov(Aov.Kind.OBJECT_ID, 61, 37);
+      assertArrayEquals(expected, c.render(scene, new int[61 * 37], aov), from.toString());
+      assertArrayEquals(expectedAov.getValues(), aov.getValues(), from.toString());
+    }
+  }
+
+  /** A flat colored unit sphere, lit only by ambient light, so it has a hard edge. */
+  private static Scene flatSphere() {
+    var scene = new Scene();
+    scene.addLight(new PointLight(new Point(-10, 10, -10)));
+    scene.addObject(
+        new Sphere()
+            .setMaterial(
+                new Material.Builder()
+                    .color(new Color(1, .5f, .25f))
+                    .ambient(1)
+                    .diffuse(0)
+                    .specular(0)
+                    .build()));
+    return scene;
+  }
+
+  @Test
+  @DisplayName("Antialiasing samples pixel corners, splitting pixels only along edges")
+  void testAntialiasing() {
+    var scene = flatSphere();
+    var c = new Camera(40, 30, Math.PI / 3);
+    c.setViewTransform(new Point(0, 0, -5), Point.ORIGIN, new Vector3(0, 1, 0));
+    assertEquals(0, c.getRaysPerPixel());
+    var aliased = c.render(scene, new int[40 * 30]);
+    assertEquals(1, c.getRaysPerPixel());
+    var inside = aliased[15 * 40 + 20];
+    var outside = aliased[0];
+    for (var rgb : aliased) {
+      assertTrue(rgb == inside || rgb == outside);
+    }
+
+    c.setAntialiasingDepth(2);
+    var pixels = c.render(scene, new int[40 * 30]);
+    var edges = 0;
+    for (int p = 0; p < pixels.length; ++p) {
+      if (pixels[p] != inside && pixels[p] != outside) {
+        ++edges;
+      } else {
+        assertEquals(aliased[p], pixels[p], "pixel " + p);
+      }
+    }
+    assertTrue(edges > 0);
+    // every corner, plus for each split pixel its center and the edge midpoints it shares with at
+    // most one neighbor, and at most the rest of its 5 x 5 grid of samples
+    var corners = 41 * 31;
+    var rays = c.getRaysPerPixel() * 40 * 30;
+    assertTrue(rays >= corners + 3 * edges, rays + " rays");
+    assertTrue(rays <= corners + 21 * edges, rays + " rays");
+
+    // colors never differ by more than 1, so nothing is split
+    c.setAntialiasingThreshold(1);
+    c.render(scene, pixels);
+    assertEquals(corners / (40.0 * 30), c.getRaysPerPixel(), 1e-9);
+  }
+
+  @Test
+  @DisplayName("Antialiasing an image with no edges traces one ray per pixel corner")
+  void testAntialiasingSmooth() {
+    var c = new Camera(16, 9, Math.PI / 3);
+    c.setAntialiasingDepth(4);
+    c.setAntialiasingThreshold(0);
+    var pixels = c.render(new Scene(), new int[16 * 9]);
+    for (var rgb : pixels) {
+      assertEquals(Color.toRgb(0, 0, 0), rgb);
+    }
+    assertEquals(17 * 10 / (16.0 * 9), c.getRaysPerPixel(), 1e-9);
+  }
+
+  @Test
+  @DisplayName("Antialiasing traces each sample once, however many squares it's a corner of")
+  void testAntialiasingSharedSamples() {
+    // the view is filled by the lit sphere, so every square's corners differ
+    var c = new Camera(8, 6, Math.PI / 6);
+    c.setViewTransform(new Point(0, 0, -1.5f), Point.ORIGIN, new Vector3(0, 1, 0));
+    c.setAntialiasingDepth(2);
+    c.setAntialiasingThreshold(0);
+    c.render(Scene.getDefault(), new int[8 * 6]);
+    // every point of a grid 4 times finer than the pixels'
+    assertEquals((8 * 4 + 1) * (6 * 4 + 1) / (8.0 * 6), c.getRaysPerPixel(), 1e-9);
+  }
+
+  @Test
+  @DisplayName("Each thread sees the rays per pixel of its own last render")
+  void testRaysPerPixelPerThread() throws InterruptedException {
+    var c = new Camera(8, 6, Math.PI / 6);
+    c.setViewTransform(new Point(0, 0, -1.5f), Point.ORIGIN, new Vector3(0, 1, 0));
+    c.setAntialiasingDepth(2);
+    c.setAntialiasingThreshold(0);
+    c.render(new Scene(), new int[8 * 6]);
+    var other = new double[2];
+    var thread =
+        new Thread(
+            () -> {
+              other[0] = c.getRaysPerPixel();
+              c.render(Scene.getDefault(), new int[8 * 6]);
+              other[1] = c.getRaysPerPixel();
+            });
+    thread.start();
+    thread.join();
+    assertEquals(0, other[0]);
+    assertEquals((8 * 4 + 1) * (6 * 4 + 1) / (8.0 * 6), other[1], 1e-9);
+    assertEquals(9 * 7 / (8.0 * 6), c.getRaysPerPixel(), 1e-9);
+  }
+
+  @Test
+  @DisplayName("Antialiasing fills AOVs from the hits at the pixels' centers")
+  void testAntialiasingAovs() {
+    var scene = flatSphere();
+    var c = new Camera(20, 15, Math.PI / 3);
+    c.setViewTransform(new Point(0, 0, -5), Point.ORIGIN, new Vector3(0, 1, 0));
+    var expected = new Aov(Aov.Kind.DEPTH, 20, 15);
+    c.render(scene, new int[20 * 15], expected);
+    c.setAntialiasingDepth(1);
+    var actual = new Aov(Aov.Kind.DEPTH, 20, 15);
+    c.render(scene, new int[20 * 15], actual);
+    assertArrayEquals(expected.getValues(), actual.getValues());
+    assertTrue(c.getRaysPerPixel() > 2);
+  }
+
+  @Test
+  @DisplayName("Antialiasing depths are limited to 0 to 4, and thresholds are non-negative")
+  void testAntialiasingRange() {
+    var c = new Camera(10, 10, 1);
+    assertEquals(0, c.getAntialiasingDepth());
+    assertEquals(.1f, c.getAntialiasingThreshold());
+    c.setAntialiasingDepth(4);
+    assertEquals(4, c.getAntialiasingDepth());
+    c.setAntialiasingThreshold(0);
+    assertEquals(0, c.getAntialiasingThreshold());
+    assertThrows(IllegalArgumentException.class, () -> c.setAntialiasingDepth(-1));
+    assertThrows(IllegalArgumentException.class, () -> c.setAntialiasingDepth(5));
+    assertThrows(IllegalArgumentException.class, () -> c.setAntialiasingThreshold(-.1f));
+    assertThrows(IllegalArgumentException.class, () -> c.setAntialiasingThreshold(Float.NaN));
+  }
+
+  @ParameterizedTest
+  @CsvSource({"97, false, 0", "0, true, 0", "97, true, 0", "0, false, 2"})
+  @DisplayName("A camera may render from several threads at once")
+  void testConcurrentRenders(int wavefrontSize, boolean rasterizing, int antialiasingDepth)
+      throws InterruptedException {
+    var scene = SceneTest.testScene();
+    var c = new Camera(31, 23, Math.PI / 3);
+    c.setViewTransform(new Point(0, 1.5f, -5), new Point(0, 0, 0), new Vector3(0, 1, 0));
+    c.setWavefrontSize(wavefrontSize);
+    c.setRasterizing(rasterizing);
+    c.setAntialiasingDepth(antialiasingDepth);
+    var expected = c.render(scene, new int[31 * 23]);
+    var images = new int[4][10][];
+    var threads = new Thread[images.length];
+    for (int i = 0; i < threads.length; ++i) {
+      var rendered = images[i];
+      threads[i] =
+          new Thread(
+              () -> {
+                for (int n = 0; n < rendered.length; ++n) {
+                  rendered[n] = c.render(scene, new int[31 * 23]);
+                }
+              });
+      threads[i].start();
+    }
+    for (var thread : threads) {
+      thread.join();
+    }
+    for (var rendered : images) {
+      for (var image : rendered) {
+        assertArrayEquals(expected, image);
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Wavefront sizes are non-negative")
+  void testWavefrontSizeRange() {
+    var c = new Camera(10, 10, 1);
+    assertEquals(0, c.getWavefrontSize());
+    c.setWavefrontSize(4096);
+    assertEquals(4096, c.getWavefrontSize());
+    c.setWavefrontSize(0);
+    assertEquals(0, c.getWavefrontSize());
+    assertThrows(IllegalArgumentException.class, () -> c.setWavefrontSize(-1));
+  }
 }
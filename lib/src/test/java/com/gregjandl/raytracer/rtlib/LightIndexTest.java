@@ -0,0 +1,71 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LightIndexTest {
+  /** The lights bright enough at the point, found the slow way, in scene order. */
+  static List<Integer> influencing(List<PointLight> lights, float threshold, Point p) {
+    var expected = new ArrayList<Integer>();
+    for (int i = 0; i < lights.size(); ++i) {
+      var distance = lights.get(i).getPosition().subtract(p).magnitude();
+      if (distance <= lights.get(i).influenceRadius(threshold)) {
+        expected.add(i);
+      }
+    }
+    return expected;
+  }
+
+  static List<Integer> lookUp(LightIndex index, Point p) {
+    var actual = new ArrayList<Integer>();
+    var cell = index.cell(p.getX(), p.getY(), p.getZ());
+    for (int k = index.start(cell); k < index.end(cell); ++k) {
+      var i = index.light(k);
+      if (index.influences(i, p.getX(), p.getY(), p.getZ())) {
+        actual.add(i);
+      }
+    }
+    return actual;
+  }
+
+  @Test
+  @DisplayName("Looking up a point finds exactly the lights bright enough there, in order")
+  void testLookUp() {
+    var random = new Random(3);
+    var lights = new ArrayList<PointLight>();
+    for (int i = 0; i < 500; ++i) {
+      var position =
+          new Point(random.nextFloat() * 40, random.nextFloat() * 4, random.nextFloat() * 40);
+      var color = new Color(random.nextFloat(), random.nextFloat(), random.nextFloat());
+      lights.add(new PointLight(position, color, .2f + random.nextFloat()));
+    }
+    // lights which don't fall off, and one which is never bright enough
+    lights.add(100, new PointLight(new Point(5, 50, 5)));
+    lights.add(new PointLight(new Point(-5, 50, 5), new Color(.1f, .2f, .3f)));
+    lights.add(7, new PointLight(new Point(20, 2, 20), new Color(.01f, .01f, .01f), 100));
+    var threshold = .05f;
+    var index = new LightIndex(lights, threshold);
+    for (int i = 0; i < 2000; ++i) {
+      // including points outside the grid
+      var x = random.nextFloat() * 60 - 10;
+      var y = random.nextFloat() * 10 - 3;
+      var p = new Point(x, y, random.nextFloat() * 60 - 10);
+      assertEquals(influencing(lights, threshold, p), lookUp(index, p), "point " + p);
+    }
+  }
+
+  @Test
+  @DisplayName("Indexing lights which don't fall off, or no lights")
+  void testUnbounded() {
+    var lights = List.of(new PointLight(new Point(1, 2, 3)), new PointLight(new Point(-1, 2, 3)));
+    var index = new LightIndex(lights, .5f);
+    assertEquals(List.of(0, 1), lookUp(index, new Point(0, 0, 0)));
+    assertEquals(List.of(0, 1), lookUp(index, new Point(1000, -1000, 0)));
+    assertEquals(List.of(), lookUp(new LightIndex(List.of(), .5f), new Point(0, 0, 0)));
+  }
+}
@@ -0,0 +1,88 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LightTreeTest {
+  static List<PointLight> randomLights(int n) {
+    var random = new Random(4);
+    var lights = new ArrayList<PointLight>();
+    for (int i = 0; i < n; ++i) {
+      var position =
+          new Point(random.nextFloat() * 20 - 10, random.nextFloat() * 5, random.nextFloat() * 20);
+      var color = new Color(random.nextFloat(), random.nextFloat(), random.nextFloat());
+      lights.add(new PointLight(position, color, .5f));
+    }
+    return lights;
+  }
+
+  @Test
+  @DisplayName("Each light's probability of being picked is positive, and they sum to 1")
+  void testProbabilities() {
+    var lights = randomLights(300);
+    // including a light at the same position as another, and one with no power
+    lights.add(new PointLight(lights.get(0).getPosition(), Color.WHITE));
+    lights.add(new PointLight(new Point(0, 0, 0), Color.BLACK));
+    var tree = new LightTree(lights);
+    for (var p : new Point[] {new Point(0, 0, 5), new Point(-30, 2, 40), Point.ORIGIN}) {
+      var sum = 0.0;
+      for (int i = 0; i < lights.size(); ++i) {
+        var probability = tree.probability(i, p.getX(), p.getY(), p.getZ());
+        if (i == lights.size() - 1) {
+          assertEquals(0, probability);
+        } else {
+          assertTrue(probability > 0, "light " + i + " at " + p);
+        }
+        sum += probability;
+      }
+      assertEquals(1, sum, 1e-4);
+    }
+  }
+
+  @Test
+  @DisplayName("Lights are picked with their probabilities, which are reported")
+  void testSample() {
+    var lights = randomLights(20);
+    var tree = new LightTree(lights);
+    var tr = new Tracer(new Scene());
+    tr.point.set(1, 2, 3);
+    var n = 100_000;
+    var picks = new int[lights.size()];
+    for (int k = 0; k < n; ++k) {
+      var i = tree.sample(tr, (k + .5f) / n);
+      ++picks[i];
+      assertEquals(tree.probability(i, 1, 2, 3), tr.lightProbability, 1e-6f);
+    }
+    for (int i = 0; i < lights.size(); ++i) {
+      assertEquals(tree.probability(i, 1, 2, 3), picks[i] / (float) n, 1e-3f, "light " + i);
+    }
+  }
+
+  @Test
+  @DisplayName("No light is picked if no light has any power")
+  void testNoPower() {
+    var tr = new Tracer(new Scene());
+    assertEquals(-1, new LightTree(List.of()).sample(tr, .5f));
+    var dark = List.of(new PointLight(Point.ORIGIN, Color.BLACK));
+    assertEquals(-1, new LightTree(dark).sample(tr, .5f));
+  }
+
+  @Test
+  @DisplayName("Random numbers are repeatable, and in [0, 1)")
+  void testRandom() {
+    assertEquals(LightTree.random(1, 2, 3, 4), LightTree.random(1, 2, 3, 4));
+    var sum = 0.0;
+    for (int i = 0; i < 10_000; ++i) {
+      var u = LightTree.random(i * .01f, 1, -i, i % 7);
+      assertTrue(u >= 0 && u < 1);
+      sum += u;
+    }
+    assertEquals(.5, sum / 10_000, .01);
+  }
+}
@@ -0,0 +1,80 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LightingTableTest {
+  @Test
+  @DisplayName("The table holds the constants of each material and light")
+  void testConstants() {
+    var scene = SceneTest.testScene();
+    var materials = new MaterialRegistry(scene);
+    var table = new LightingTable(materials, scene);
+    var expected = new float[LightingTable.SIZE];
+    for (int i = 0; i < scene.getObjectCount(); ++i) {
+      var material = scene.getObject(i).getMaterial();
+      for (int light = 0; light < scene.getLightCount(); ++light) {
+        LightingTable.compute(material, scene.getLight(light), expected, 0);
+        var at = table.offset(materials.idOf(i), light);
+        var actual = Arrays.copyOfRange(table.constants, at, at + LightingTable.SIZE);
+        assertArrayEquals(expected, actual);
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Objects with equal materials share their constants")
+  void testSharedMaterial() {
+    var scene = SceneTest.testScene();
+    var shared = new Material.Builder().color(new Color(.2f, .4f, .6f)).build();
+    var sphere = new Sphere().setMaterial(shared);
+    var plane = new Plane().setMaterial(new Material.Builder(shared).build());
+    scene.addObject(sphere);
+    scene.addObject(plane);
+    var materials = new MaterialRegistry(scene);
+    var table = new LightingTable(materials, scene);
+    var n = scene.getObjectCount();
+    var id = materials.idOf(n - 2);
+    assertEquals(id, materials.idOf(n - 1));
+    assertNotEquals(table.offset(id, 1), table.offset(id, 0));
+    assertEquals(scene.getLightCount() * LightingTable.SIZE * 4, table.constants.length);
+  }
+
+  @Test
+  @DisplayName("The table is rebuilt once the scene is prepared after a material is replaced")
+  void testReplacedMaterial() {
+    var scene = SceneTest.testScene();
+    var table = scene.lightingTable();
+    scene.prepare();
+    assertSame(table, scene.lightingTable());
+    var replacement = new Material.Builder().color(new Color(.3f, .1f, .7f)).build();
+    scene.getObject(1).setMaterial(replacement);
+    scene.prepare();
+    var rebuilt = scene.lightingTable();
+    assertNotSame(table, rebuilt);
+    var expected = new float[LightingTable.SIZE];
+    LightingTable.compute(replacement, scene.getLight(0), expected, 0);
+    var at = rebuilt.offset(scene.materials().idOf(1), 0);
+    assertArrayEquals(expected, Arrays.copyOfRange(rebuilt.constants, at, at + LightingTable.SIZE));
+  }
+
+  @Test
+  @DisplayName("Shading uses an object's replaced material")
+  void testShadeReplacedMaterial() {
+    var scene = SceneTest.testScene();
+    var ray = new Ray(new Point(0, 0, -5), new Vector3(0, 0, 1));
+    scene.colorAt(ray);
+    var replacement = new Material.Builder().color(new Color(1, 0, 0)).build();
+    scene.getObject(1).setMaterial(replacement);
+    var hit = scene.intersect(ray).hit().orElseThrow();
+    var expected = scene.shadeHit(new Scene.PreComps(hit, ray));
+    assertEquals(expected, scene.colorAt(ray));
+  }
+}
@@ -0,0 +1,97 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class MaterialRegistryTest {
+  @Test
+  @DisplayName("Objects with equal materials get the same id, and share the material of the first")
+  void testEqualMaterials() {
+    var first = new Material.Builder().color(new Color(.25f, .5f, .125f)).shininess(17).build();
+    var scene = new Scene();
+    scene.addObject(new Sphere().setMaterial(first));
+    scene.addObject(new Plane().setMaterial(new Material.Builder(first).build()));
+    var different = new Material.Builder(first).shininess(18).build();
+    scene.addObject(new Sphere().setMaterial(different));
+    var materials = new MaterialRegistry(scene);
+    assertEquals(materials.idOf(0), materials.idOf(1));
+    assertSame(first, materials.get(materials.idOf(1)));
+    assertSame(first, scene.getObject(1).getMaterial());
+    assertNotEquals(materials.idOf(0), materials.idOf(2));
+    assertSame(different, materials.get(materials.idOf(2)));
+    assertFalse(materials.isStale(scene));
+  }
+
+  @Test
+  @DisplayName("Ids are dense, and only count the scene's own materials")
+  void testDense() {
+    // materials of other scenes don't take up ids
+    var other = new Scene();
+    other.addObject(new Sphere().setMaterial(new Material.Builder().ambient(.7f).build()));
+    other.materials();
+    var scene = new Scene();
+    for (int i = 0; i < 100; ++i) {
+      var m = new Material.Builder().ambient(.5f).diffuse(i / 1000f).build();
+      scene.addObject(new Sphere().setMaterial(m));
+      scene.addObject(new Plane().setMaterial(new Material.Builder(m).build()));
+    }
+    var materials = scene.materials();
+    assertEquals(100, materials.size());
+    for (int i = 0; i < scene.getObjectCount(); ++i) {
+      assertEquals(i / 2, materials.idOf(i), "object " + i);
+    }
+  }
+
+  @Test
+  @DisplayName("A scene's registry is rebuilt once it's prepared after a material is replaced")
+  void testStale() {
+    var scene = SceneTest.testScene();
+    var materials = scene.materials();
+    scene.prepare();
+    assertSame(materials, scene.materials());
+    assertFalse(materials.isStale(scene));
+    var replacement = new Material.Builder().color(new Color(.3f, .1f, .7f)).build();
+    scene.getObject(1).setMaterial(replacement);
+    assertTrue(materials.isStale(scene));
+    scene.prepare();
+    var rebuilt = scene.materials();
+    assertNotSame(materials, rebuilt);
+    assertSame(replacement, rebuilt.get(rebuilt.idOf(1)));
+    scene.addObject(new Sphere());
+    assertNotSame(rebuilt, scene.materials());
+  }
+
+  @Test
+  @DisplayName("A scene's objects are only checked again once some shape has been modified")
+  void testUnmodified() {
+    var reads = new int[1];
+    var scene = new Scene();
+    scene.addObject(
+        new Sphere() {
+          @Override
+          public Material getMaterial() {
+            ++reads[0];
+            return super.getMaterial();
+          }
+        });
+    var materials = scene.materials();
+    reads[0] = 0;
+    scene.prepare();
+    assertEquals(1, reads[0]);
+    scene.prepare();
+    scene.colorAt(new Ray(new Point(0, 0, -5), new Vector3(0, 0, 1)));
+    assertEquals(1, reads[0]);
+    // even a shape outside the scene
+    new Plane().setMaterial(new Material.Builder().build());
+    scene.prepare();
+    assertEquals(2, reads[0]);
+    assertSame(materials, scene.materials());
+  }
+}
@@ -3,11 +3,17 @@ package com.gregjandl.raytracer.rtlib;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import java.lang.management.ManagementFactory;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
 public class MaterialTest {
   @Test
@@ -19,6 +25,11 @@ public class MaterialTest {
     assertTrue(Utils.aboutEqual(0.9, m.getDiffuse()));
     assertTrue(Utils.aboutEqual(0.9, m.getSpecular()));
     assertTrue(Utils.aboutEqual(200, m.getShininess()));
+    assertTrue(Utils.aboutEqual(0, m.getReflective()));
+    assertTrue(Utils.aboutEqual(0, m.getTransparency()));
+    assertTrue(Utils.aboutEqual(1, m.getRefractiveIndex()));
+    assertNull(m.getTexture());
+    assertNull(m.getPattern());
   }
 
   @Test
@@ -31,12 +42,20 @@ public class MaterialTest {
             .diffuse(.3f)
             .specular(.4f)
             .shininess(100)
+            .reflective(.5f)
+            .transparency(.6f)
+            .refractiveIndex(1.5f)
             .build();
     assertEquals(Color.BLUE, m.getColor());
     assertTrue(Utils.aboutEqual(0.2, m.getAmbient()));
     assertTrue(Utils.aboutEqual(0.3, m.getDiffuse()));
     assertTrue(Utils.aboutEqual(0.4, m.getSpecular()));
     assertTrue(Utils.aboutEqual(100, m.getShininess()));
+    assertTrue(Utils.aboutEqual(.5, m.getReflective()));
+    assertTrue(Utils.aboutEqual(.6, m.getTransparency()));
+    assertTrue(Utils.aboutEqual(1.5, m.getRefractiveIndex()));
+    assertEquals(m, new Material.Builder(m).build());
+    assertFalse(m.equals(new Material.Builder(m).refractiveIndex(1).build()));
   }
 
   @Test
@@ -136,5 +155,84 @@ public class MaterialTest {
       var result = m.lighting(light, position, eyeVec, normal, true);
       assertEquals(new Color(0.1f, 0.1f, 0.1f), result);
     }
+
+    @Test
+    @DisplayName("Lighting with a light which falls off with distance")
+    void testLightWithFalloff() {
+      var eyeVec = new Vector3(0, 0, -1);
+      var light = new PointLight(new Point(0, 0, -10), Color.WHITE, 10);
+      var result = m.lighting(light, position, eyeVec, normal, false);
+      assertEquals(new Color(.95f, .95f, .95f), result);
+      result = m.lighting(light, position, eyeVec, normal, true);
+      assertEquals(new Color(.05f, .05f, .05f), result);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1, 1", ".5, .55", "0, .1"})
+    @DisplayName("Lighting scales the diffuse and specular components by the light's visibility")
+    void testLightWithVisibility(float visibility, float expected) {
+      var eyeVec = new Vector3(0, 0, -1);
+      var light = new PointLight(new Point(0, 0, -10));
+      var material = new Material.Builder().specular(0).build();
+      var result = material.lighting(light, position, eyeVec, normal, visibility);
+      assertEquals(new Color(expected, expected, expected), result);
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(floats = {.5f, 1, 2, 3.5f, 10, 50, 200, 1000, 1e5f})
+  @DisplayName("The specular response is within its error bound of Math.pow")
+  void testSpecularResponse(float shininess) {
+    var m = new Material.Builder().shininess(shininess).build();
+    var worst = 0.0;
+    for (int i = 0; i <= 1 << 20; ++i) {
+      // evenly spaced over [0, 1], and as finely as floats allow just below 1
+      for (var x : new float[] {i / (float) (1 << 20), 1 - i * 0x1p-24f}) {
+        worst = Math.max(worst, Math.abs(m.specularResponse(x) - Math.pow(x, shininess)));
+      }
+    }
+    assertTrue(worst <= Material.SPECULAR_ERROR, "error " + worst);
+    assertEquals(1, m.specularResponse(1));
+  }
+
+  @Test
+  @DisplayName("Materials keep their specular response when more shininesses are used than cached")
+  void testSpecularTableEviction() {
+    var materials = new Material[Material.SPECULAR_TABLE_CACHE_SIZE * 4];
+    for (int i = 0; i < materials.length; ++i) {
+      materials[i] = new Material.Builder().shininess(2 + i * .25f).build();
+    }
+    for (int i = 0; i < materials.length; ++i) {
+      var shininess = 2 + i * .25f;
+      for (var x : new float[] {0, .5f, .9f, .99f, 1}) {
+        var expected = Math.pow(x, shininess);
+        assertEquals(expected, materials[i].specularResponse(x), 1e-5, "shininess " + shininess);
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Materials of round shininesses share their tables, rather than evicting each other")
+  void testSpecularTableSharing() {
+    var bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    var threads = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    var shininesses = new float[] {10, 50, 100, 200, 300};
+    for (var shininess : shininesses) {
+      new Material.Builder().shininess(shininess).build();
+    }
+    var count = 100;
+    var id = Thread.currentThread().getId();
+    var before = threads.getThreadAllocatedBytes(id);
+    for (int i = 0; i < count; ++i) {
+      new Material.Builder().shininess(shininesses[i % shininesses.length]).build();
+    }
+    var allocated = threads.getThreadAllocatedBytes(id) - before;
+    // the materials themselves, but not a table, of 4 bytes an entry, for each
+    var table = 4L * Material.SPECULAR_TABLE_SIZE;
+    assertTrue(allocated < count * table / 8, count + " materials allocated " + allocated);
   }
 }
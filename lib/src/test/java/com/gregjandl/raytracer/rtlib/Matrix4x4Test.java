@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -453,4 +454,98 @@ public class Matrix4x4Test {
     var p2 = Matrix4x4.rotationOnX(Math.PI / 2).scale(5, 5, 5).translate(10, 5, 7).multiply(p);
     assertEquals(expected, p2);
   }
+
+  private static final Matrix4x4 AFFINE =
+      Matrix4x4.scaling(2, .5f, 3)
+          .rotateOnX(.7)
+          .shear(.1f, 0, .2f, 0, 0, .3f)
+          .rotateOnY(-1.1)
+          .translate(4, -5, 6);
+
+  @Test
+  @DisplayName("Matrices with a bottom row of 0 0 0 1 are affine")
+  void testIsAffine() {
+    assertTrue(Matrix4x4.identity().isAffine());
+    assertTrue(AFFINE.isAffine());
+    assertFalse(new Matrix4x4().isAffine());
+    assertFalse(Matrix4x4.identity().set(3, 1, 2).isAffine());
+  }
+
+  @Test
+  @DisplayName("Affine specializations agree with the general 4x4 operations")
+  void testAffineMatchesGeneral() {
+    var other = Matrix4x4.rotationOnZ(.4).translate(-1, 2, .5f);
+    assertEquals(AFFINE.multiplyGeneral(other), AFFINE.multiply(other));
+    assertTrue(AFFINE.multiply(other).isAffine());
+    assertEquals(AFFINE.determinantGeneral(), AFFINE.determinant(), 1e-4f);
+    assertEquals(AFFINE.invertGeneral(), AFFINE.invert());
+    assertEquals(Matrix4x4.identity(), AFFINE.multiply(AFFINE.invert()));
+  }
+
+  @Test
+  @DisplayName("Singular affine matrices can't be inverted")
+  void testAffineSingular() {
+    var m = Matrix4x4.scaling(1, 0, 1).translate(1, 2, 3);
+    assertEquals(0, m.determinant());
+    assertThrows(ArithmeticException.class, m::invert);
+  }
+
+  @Test
+  @DisplayName("Packed arrays of points and vectors may be transformed in bulk")
+  void testBulkTransforms() {
+    var src = new float[] {99, 1, 2, 3, -4, 5, .5f, 0, 0, 0};
+    var points = new float[10];
+    var vectors = new float[10];
+    AFFINE.transformPoints(src, 1, points, 0, 3);
+    AFFINE.transformVectors(src, 1, vectors, 1, 3);
+    for (int i = 0; i < 3; ++i) {
+      var x = src[1 + i * 3];
+      var y = src[2 + i * 3];
+      var z = src[3 + i * 3];
+      var p = AFFINE.multiply(new Point(x, y, z));
+      assertEquals(p, new Point(points[i * 3], points[i * 3 + 1], points[i * 3 + 2]));
+      var v = AFFINE.multiply(new Vector3(x, y, z));
+      assertEquals(v, new Vector3(vectors[1 + i * 3], vectors[2 + i * 3], vectors[3 + i * 3]));
+    }
+
+    // in place
+    var copy = src.clone();
+    AFFINE.transformPoints(copy, 1, copy, 1, 3);
+    assertEquals(points[3], copy[4]);
+
+    assertThrows(IndexOutOfBoundsException.class, () -> AFFINE.transformPoints(src, 2, src, 0, 3));
+    assertThrows(IllegalArgumentException.class, () -> AFFINE.transformVectors(src, 0, src, 0, -1));
+  }
+
+  @Test
+  @DisplayName("Vectorized kernels agree with the scalar code")
+  void testKernelsMatchScalar() {
+    assumeTrue(Matrix4x4.KERNELS != null, "Vector API not available");
+    var general =
+        new Matrix4x4(
+            new float[][] {
+              {-5, 2, 6, -8},
+              {1, -5, 1, 8},
+              {7, 7, -6, -7},
+              {1, -3, 7, 4}
+            });
+    for (var a : new Matrix4x4[] {AFFINE, general, general.multiplyGeneral(AFFINE)}) {
+      var product = new Matrix4x4();
+      Matrix4x4.KERNELS.multiply(general.m(), a.m(), product.m());
+      assertEquals(general.multiplyGeneral(a), product);
+
+      var inverse = new Matrix4x4();
+      assertTrue(Matrix4x4.KERNELS.invert(a.m(), inverse.m()));
+      assertEquals(a.invertGeneral(), inverse);
+
+      var src = new float[] {1, 2, 3, -4, 5, .5f, 7, 8, 9};
+      var dst = new float[9];
+      Matrix4x4.KERNELS.transform(a.m(), src, 0, dst, 0, 3, 1);
+      for (int i = 0; i < 9; i += 3) {
+        var p = a.multiply(new Point(src[i], src[i + 1], src[i + 2]));
+        assertEquals(p, new Point(dst[i], dst[i + 1], dst[i + 2]));
+      }
+    }
+    assertFalse(Matrix4x4.KERNELS.invert(new float[16], new float[16]));
+  }
 }
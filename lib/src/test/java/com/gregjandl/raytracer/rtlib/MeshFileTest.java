@@ -0,0 +1,76 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MeshFileTest {
+  @TempDir Path dir;
+
+  @Test
+  @DisplayName("A mesh written to a mesh file loads with identical geometry")
+  void testRoundTrip() throws IOException {
+    var mesh = TriangleMeshTest.grid(16);
+    var file = dir.resolve("grid.mesh");
+    MeshFile.write(mesh, file);
+    var loaded = MeshFile.load(file);
+
+    assertEquals(mesh.getVertexCount(), loaded.getVertexCount());
+    assertEquals(mesh.getTriangleCount(), loaded.getTriangleCount());
+    var v1 = new float[mesh.getVertexCount() * 3];
+    var v2 = new float[v1.length];
+    mesh.getVertices().get(v1);
+    loaded.getVertices().get(v2);
+    assertArrayEquals(v1, v2);
+    var i1 = new int[mesh.getTriangleCount() * 3];
+    var i2 = new int[i1.length];
+    mesh.getIndices().get(i1);
+    loaded.getIndices().get(i2);
+    assertArrayEquals(i1, i2);
+  }
+
+  @Test
+  @DisplayName("A loaded mesh intersects rays just as the original")
+  void testLoadedIntersects() throws IOException {
+    var mesh = TriangleMeshTest.grid(8);
+    var file = dir.resolve("grid.mesh");
+    MeshFile.write(mesh, file);
+    var loaded = MeshFile.load(file);
+    for (int i = 0; i < 50; ++i) {
+      var r = new Ray(new Point(i * .16f + .0037f, i * .13f + .0041f, -1), new Vector3(0, 0, 1));
+      var expected = mesh.intersects(r);
+      var actual = loaded.intersects(r);
+      assertEquals(expected.size(), actual.size());
+      assertEquals(expected.get(0).getT(), actual.get(0).getT());
+      assertEquals(expected.get(0).getIndex(), actual.get(0).getIndex());
+    }
+  }
+
+  @Test
+  @DisplayName("An empty mesh may be written and loaded")
+  void testEmpty() throws IOException {
+    var file = dir.resolve("empty.mesh");
+    MeshFile.write(new TriangleMesh(new float[0], new int[0]), file);
+    var loaded = MeshFile.load(file);
+    assertEquals(0, loaded.getTriangleCount());
+    assertTrue(loaded.intersects(new Ray(Point.ORIGIN, new Vector3(0, 0, 1))).isEmpty());
+  }
+
+  @Test
+  @DisplayName("Files which aren't mesh files are rejected")
+  void testNotMeshFile() throws IOException {
+    var file = dir.resolve("bad.mesh");
+    Files.writeString(file, "v 1 2 3\n");
+    assertThrows(IOException.class, () -> MeshFile.load(file));
+    Files.write(file, new byte[MeshFile.HEADER_SIZE]);
+    assertThrows(IOException.class, () -> MeshFile.load(file));
+  }
+}
@@ -0,0 +1,45 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class MutableColorTest {
+  final Color a = new Color(.9f, .6f, .75f);
+  final Color b = new Color(.7f, .1f, .25f);
+
+  @Test
+  @DisplayName("MutableColor has toString")
+  void testToString() {
+    assertNotNull(new MutableColor().toString());
+  }
+
+  @Test
+  @DisplayName("Operations modify the color in place and return it")
+  void testInPlace() {
+    var c = new MutableColor();
+    assertSame(c, c.set(a).add(new MutableColor().set(b)).multiply(2).multiply(b));
+  }
+
+  @Test
+  @DisplayName("Operations match those of Color")
+  void testMatchesColor() {
+    var mb = new MutableColor().set(b);
+    assertEquals(a.add(b), new MutableColor().set(a).add(mb).toColor());
+    assertEquals(a.multiply(3), new MutableColor().set(a).multiply(3).toColor());
+    assertEquals(a.multiply(b), new MutableColor().set(a).multiply(b).toColor());
+    assertEquals(a.add(b.multiply(.5f)), new MutableColor().set(a).addScaled(mb, .5f).toColor());
+    assertEquals(a.add(b.multiply(.5f)), new MutableColor().set(a).addScaled(b, .5f).toColor());
+  }
+
+  @Test
+  @DisplayName("Packing to RGB matches java.awt.Color, including clamping")
+  void testToRgb() {
+    for (var c : new Color[] {a, b, Color.WHITE, new Color(1.5f, -.5f, .5f)}) {
+      assertEquals(c.toAwtColor().getRGB(), new MutableColor().set(c).toRgb());
+    }
+  }
+}
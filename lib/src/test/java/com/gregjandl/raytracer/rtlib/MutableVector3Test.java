@@ -0,0 +1,65 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class MutableVector3Test {
+  final Vector3 a = new Vector3(1, -2, 3);
+  final Vector3 b = new Vector3(-4, .5f, 2);
+
+  @Test
+  @DisplayName("MutableVector3 has toString")
+  void testToString() {
+    assertNotNull(new MutableVector3().toString());
+  }
+
+  @Test
+  @DisplayName("Operations modify the vector in place and return it")
+  void testInPlace() {
+    var v = new MutableVector3();
+    assertSame(v, v.set(a).add(new MutableVector3().set(b)).multiply(2).negate().normalize());
+  }
+
+  @Test
+  @DisplayName("Operations match those of Vector3")
+  void testMatchesVector3() {
+    var mb = new MutableVector3().set(b);
+    assertEquals(a.add(b), new MutableVector3().set(a).add(mb).toVector3());
+    assertEquals(a.subtract(b), new MutableVector3().set(a).subtract(mb).toVector3());
+    assertEquals(a.multiply(3), new MutableVector3().set(a).multiply(3).toVector3());
+    assertEquals(a.divide(3), new MutableVector3().set(a).divide(3).toVector3());
+    assertEquals(a.negate(), new MutableVector3().set(a).negate().toVector3());
+    assertEquals(a.normalize(), new MutableVector3().set(a).normalize().toVector3());
+    assertEquals(a.magnitude(), new MutableVector3().set(a).magnitude());
+    assertEquals(a.dot(b), new MutableVector3().set(a).dot(mb));
+    var n = b.normalize();
+    assertEquals(
+        a.reflect(n), new MutableVector3().set(a).reflect(new MutableVector3().set(n)).toVector3());
+    assertEquals(
+        a.add(b.multiply(.5f)), new MutableVector3().set(a).addScaled(mb, .5f).toVector3());
+  }
+
+  @Test
+  @DisplayName("Operations on points match those of Point")
+  void testMatchesPoint() {
+    var p = new Point(1, 2, 3);
+    var q = new Point(-1, 0, 5);
+    assertEquals(
+        q.subtract(p), new MutableVector3().setBetween(new MutableVector3().set(p), q).toVector3());
+    var m = Matrix4x4.scaling(2, 1, 3).rotateOnX(.3).translate(1, 2, 3);
+    assertEquals(m.multiply(p), new MutableVector3().set(p).transformPoint(m).toPoint());
+    assertEquals(m.multiply(a), new MutableVector3().set(a).transformVector(m).toVector3());
+  }
+
+  @Test
+  @DisplayName("Normalizing a zero vector gives NaNs, rather than throwing")
+  void testNormalizeZero() {
+    var v = new MutableVector3().normalize();
+    assertTrue(Float.isNaN(v.x) && Float.isNaN(v.y) && Float.isNaN(v.z));
+  }
+}
@@ -0,0 +1,143 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ObjLoaderTest {
+  @TempDir Path dir;
+
+  private Path write(String contents) throws IOException {
+    var file = dir.resolve("test.obj");
+    Files.writeString(file, contents);
+    return file;
+  }
+
+  private static float[] vertices(TriangleMesh m) {
+    var v = new float[m.getVertexCount() * 3];
+    m.getVertices().get(v);
+    return v;
+  }
+
+  private static int[] indices(TriangleMesh m) {
+    var i = new int[m.getTriangleCount() * 3];
+    m.getIndices().get(i);
+    return i;
+  }
+
+  @Test
+  @DisplayName("Unrecognized lines are ignored")
+  void testGibberish() throws IOException {
+    var m =
+        ObjLoader.load(
+            write(
+                """
+                There was a young lady named Bright
+                who traveled much faster than light.
+                She set out one day
+                in a relative way,
+                and came back the previous night.
+                """));
+    assertEquals(0, m.getVertexCount());
+    assertEquals(0, m.getTriangleCount());
+  }
+
+  @Test
+  @DisplayName("Vertex records are parsed")
+  void testVertices() throws IOException {
+    var m =
+        ObjLoader.load(
+            write(
+                """
+                v -1 1 0
+                v -1.0000 0.5000 0.0000
+                v\t1 0 0  # trailing comment
+                vn 0 0 1
+                v 1e2 -2.5E-1 +.75
+                """));
+    assertArrayEquals(
+        new float[] {-1, 1, 0, -1, .5f, 0, 1, 0, 0, 100, -.25f, .75f}, vertices(m), 1e-6f);
+  }
+
+  @Test
+  @DisplayName("Faces are parsed and polygons triangulated")
+  void testFaces() throws IOException {
+    var m =
+        ObjLoader.load(
+            write(
+                """
+                v -1 1 0
+                v -1 0 0
+                v 1 0 0
+                v 1 1 0
+                v 0 2 0
+
+                f 1 2 3
+                f 1/1 3/2 4/3
+                f 1//1 -2//2 -1//3
+                f 1/2/3 2/3/4 3/4/5 4 5
+                """),
+            64);
+    assertEquals(6, m.getTriangleCount());
+    var sorted = indices(m);
+    var expected = new int[][] {{0, 1, 2}, {0, 2, 3}, {0, 3, 4}, {0, 1, 2}, {0, 2, 3}, {0, 3, 4}};
+    // building the BVH reorders faces, so compare as multisets
+    var found = new int[6];
+    for (int f = 0; f < 6; ++f) {
+      for (int e = 0; e < 6; ++e) {
+        if (found[e] == 0
+            && expected[e][0] == sorted[f * 3]
+            && expected[e][1] == sorted[f * 3 + 1]
+            && expected[e][2] == sorted[f * 3 + 2]) {
+          found[e] = 1;
+          break;
+        }
+      }
+    }
+    assertArrayEquals(new int[] {1, 1, 1, 1, 1, 1}, found);
+  }
+
+  @Test
+  @DisplayName("Files split into many chunks load identically to a single chunk")
+  void testChunking() throws IOException {
+    var b = new StringBuilder();
+    for (int i = 0; i < 500; ++i) {
+      b.append("v ").append(i).append(" ").append(i * .5).append(" -").append(i % 7).append('\n');
+      if (i >= 2) {
+        b.append(i % 2 == 0 ? "f -1 -2 -3\n" : "f " + (i - 1) + " " + i + " " + (i + 1) + "\n");
+      }
+    }
+    var file = write(b.toString());
+    var whole = ObjLoader.load(file);
+    var chunked = ObjLoader.load(file, 100);
+    assertArrayEquals(vertices(whole), vertices(chunked));
+    assertEquals(498, chunked.getTriangleCount());
+    var wholeIndices = indices(whole);
+    var chunkedIndices = indices(chunked);
+    java.util.Arrays.sort(wholeIndices);
+    java.util.Arrays.sort(chunkedIndices);
+    assertArrayEquals(wholeIndices, chunkedIndices);
+  }
+
+  @Test
+  @DisplayName("Malformed files are rejected")
+  void testMalformed() throws IOException {
+    assertThrows(IOException.class, () -> ObjLoader.load(write("v 1 2 x\n")));
+    assertThrows(IOException.class, () -> ObjLoader.load(write("v 1 2 3\nf 1 2\n")));
+    assertThrows(IOException.class, () -> ObjLoader.load(write("v 1 2 3\nf 1 2 4\n")));
+    assertThrows(IOException.class, () -> ObjLoader.load(write("v 1 2 3\nf 0 1 1\n")));
+    // a relative reference to just before the first vertex resolves to index -1
+    assertThrows(
+        IOException.class, () -> ObjLoader.load(write("v 1 2 3\nv 4 5 6\nf -1 -2 -3\n")));
+    assertThrows(
+        IOException.class,
+        () -> ObjLoader.load(write("v 1 2 3\nv 4 5 6\nf -1 -2 -3\n".repeat(50)), 100));
+  }
+}
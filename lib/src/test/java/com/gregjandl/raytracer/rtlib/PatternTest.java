@@ -0,0 +1,257 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+public class PatternTest {
+  private static final Color WHITE = Color.WHITE;
+  private static final Color BLACK = Color.BLACK;
+
+  @Nested
+  @DisplayName("Stripe patterns")
+  class TestStripes {
+    final Pattern pattern = new StripePattern(WHITE, BLACK);
+
+    @Test
+    @DisplayName("A stripe pattern is constant in y")
+    void testConstantInY() {
+      assertEquals(WHITE, pattern.colorAt(new Point(0, 0, 0)));
+      assertEquals(WHITE, pattern.colorAt(new Point(0, 1, 0)));
+      assertEquals(WHITE, pattern.colorAt(new Point(0, 2, 0)));
+    }
+
+    @Test
+    @DisplayName("A stripe pattern is constant in z")
+    void testConstantInZ() {
+      assertEquals(WHITE, pattern.colorAt(new Point(0, 0, 1)));
+      assertEquals(WHITE, pattern.colorAt(new Point(0, 0, 2)));
+    }
+
+    @Test
+    @DisplayName("A stripe pattern alternates in x")
+    void testAlternatesInX() {
+      assertEquals(WHITE, pattern.colorAt(new Point(0.9f, 0, 0)));
+      assertEquals(BLACK, pattern.colorAt(new Point(1, 0, 0)));
+      assertEquals(BLACK, pattern.colorAt(new Point(-0.1f, 0, 0)));
+      assertEquals(BLACK, pattern.colorAt(new Point(-1, 0, 0)));
+      assertEquals(WHITE, pattern.colorAt(new Point(-1.1f, 0, 0)));
+    }
+
+    @Test
+    @DisplayName("A pattern's transform is applied to points before evaluating it")
+    void testTransform() {
+      var scaled = pattern.withTransform(Matrix4x4.scaling(2, 2, 2));
+      assertEquals(Matrix4x4.scaling(2, 2, 2), scaled.getTransform());
+      assertEquals(Matrix4x4.identity(), pattern.getTransform());
+      assertEquals(WHITE, scaled.colorAt(new Point(1.5f, 0, 0)));
+      assertEquals(BLACK, scaled.colorAt(new Point(2.5f, 0, 0)));
+      var moved = pattern.withTransform(Matrix4x4.translation(.5f, 0, 0));
+      assertEquals(BLACK, moved.colorAt(new Point(0, 0, 0)));
+      assertEquals(WHITE, moved.colorAt(new Point(1, 0, 0)));
+    }
+  }
+
+  @Test
+  @DisplayName("A ring pattern extends in both x and z")
+  void testRings() {
+    var pattern = new RingPattern(WHITE, BLACK);
+    assertEquals(WHITE, pattern.colorAt(new Point(0, 0, 0)));
+    assertEquals(BLACK, pattern.colorAt(new Point(1, 0, 0)));
+    assertEquals(BLACK, pattern.colorAt(new Point(0, 0, 1)));
+    // 0.708 is just slightly more than √2/2
+    assertEquals(BLACK, pattern.colorAt(new Point(0.708f, 0, 0.708f)));
+    assertEquals(WHITE, pattern.colorAt(new Point(0, 5, 2.5f)));
+  }
+
+  @Test
+  @DisplayName("Checkers repeat in x, y and z")
+  void testCheckers() {
+    var pattern = new CheckerPattern(WHITE, BLACK);
+    assertEquals(WHITE, pattern.colorAt(new Point(0, 0, 0)));
+    assertEquals(WHITE, pattern.colorAt(new Point(0.99f, 0, 0)));
+    assertEquals(BLACK, pattern.colorAt(new Point(1.01f, 0, 0)));
+    assertEquals(WHITE, pattern.colorAt(new Point(0, 0.99f, 0)));
+    assertEquals(BLACK, pattern.colorAt(new Point(0, 1.01f, 0)));
+    assertEquals(WHITE, pattern.colorAt(new Point(0, 0, 0.99f)));
+    assertEquals(BLACK, pattern.colorAt(new Point(0, 0, 1.01f)));
+    assertEquals(WHITE, pattern.colorAt(new Point(-0.5f, -0.5f, 0)));
+    // points a rounding error below a face are taken to be on it
+    assertEquals(WHITE, pattern.colorAt(new Point(0.5f, -1e-6f, 0.5f)));
+  }
+
+  @Nested
+  @DisplayName("Perlin noise")
+  class TestPerlin {
+    @Test
+    @DisplayName("Noise is 0 at the lattice points and repeats every 256 units")
+    void testLattice() {
+      for (int i = -3; i <= 3; ++i) {
+        assertEquals(0, PerlinPattern.noise(i, 2 * i, -i));
+      }
+      var random = new Random(1);
+      for (int i = 0; i < 100; ++i) {
+        var x = random.nextFloat() * 10;
+        var y = random.nextFloat() * 10;
+        var z = random.nextFloat() * 10;
+        var repeated = PerlinPattern.noise(x + 256, y, z - 256);
+        assertEquals(PerlinPattern.noise(x, y, z), repeated, 1e-4f);
+      }
+    }
+
+    @Test
+    @DisplayName("Noise is between -1 and 1, varies, and varies smoothly")
+    void testRange() {
+      var random = new Random(2);
+      var min = Float.POSITIVE_INFINITY;
+      var max = Float.NEGATIVE_INFINITY;
+      for (int i = 0; i < 10_000; ++i) {
+        var x = random.nextFloat() * 20 - 10;
+        var y = random.nextFloat() * 20 - 10;
+        var z = random.nextFloat() * 20 - 10;
+        var n = PerlinPattern.noise(x, y, z);
+        min = Math.min(min, n);
+        max = Math.max(max, n);
+        // the gradients are at most √2 long, so the noise can't change much faster
+        var step = PerlinPattern.noise(x + 1e-3f, y, z) - n;
+        assertTrue(Math.abs(step) < 4e-3f, "step " + step);
+      }
+      assertTrue(min >= -1 && min < -.5f, "min " + min);
+      assertTrue(max <= 1 && max > .5f, "max " + max);
+    }
+
+    @Test
+    @DisplayName("A Perlin pattern blends between its two patterns")
+    void testBlend() {
+      var pattern = new PerlinPattern(BLACK, WHITE);
+      // noise is 0 at a lattice point, so the pattern is halfway between black and white
+      assertEquals(new Color(.5f, .5f, .5f), pattern.colorAt(new Point(1, 2, 3)));
+      var p = new Point(.3f, .6f, .2f);
+      var t = (PerlinPattern.noise(.3f, .6f, .2f) + 1) / 2;
+      assertEquals(new Color(t, t, t), pattern.colorAt(p));
+      assertNotEquals(.5f, t);
+    }
+  }
+
+  @Test
+  @DisplayName("Patterns are built from other patterns, each with its own transform")
+  void testComposition() {
+    var half = Matrix4x4.scaling(.5f, .5f, .5f);
+    var across = new StripePattern(Color.RED, Color.GREEN).withTransform(half);
+    var along =
+        new StripePattern(Color.BLUE, Color.YELLOW)
+            .withTransform(Matrix4x4.rotationOnY(Math.PI / 2).scale(.5f, .5f, .5f));
+    var pattern = new CheckerPattern(across, along).withTransform(Matrix4x4.scaling(2, 2, 2));
+    // the checker's cubes are 2 units across, and the stripes within them 1 unit wide
+    assertEquals(Color.RED, pattern.colorAt(new Point(.5f, .5f, .5f)));
+    assertEquals(Color.GREEN, pattern.colorAt(new Point(1.5f, .5f, .5f)));
+    // the next cube along x is striped in z
+    assertEquals(Color.YELLOW, pattern.colorAt(new Point(2.5f, .5f, .5f)));
+    assertEquals(Color.BLUE, pattern.colorAt(new Point(2.5f, .5f, 1.5f)));
+  }
+
+  @Test
+  @DisplayName("Evaluating patterns in batches gives exactly the colors of evaluating one point")
+  void testBatches() {
+    var noise =
+        new PerlinPattern(Color.RED, Color.BLUE).withTransform(Matrix4x4.scaling(.3f, .3f, .3f));
+    var patterns =
+        new Pattern[] {
+          Pattern.solid(Color.CYAN),
+          new StripePattern(WHITE, BLACK).withTransform(Matrix4x4.rotationOnZ(.3)),
+          new RingPattern(WHITE, Color.GRAY),
+          new CheckerPattern(noise, new StripePattern(Color.GREEN, Color.MAGENTA)),
+          new PerlinPattern(noise, new RingPattern(BLACK, Color.YELLOW))
+              .withTransform(Matrix4x4.translation(1, 2, 3).scale(1, 2, 3)),
+        };
+    var random = new Random(3);
+    var n = 200;
+    float[] x = new float[n];
+    float[] y = new float[n];
+    float[] z = new float[n];
+    for (int i = 0; i < n; ++i) {
+      x[i] = random.nextFloat() * 10 - 5;
+      y[i] = random.nextFloat() * 10 - 5;
+      z[i] = random.nextFloat() * 10 - 5;
+    }
+    var s = new Pattern.Scratch();
+    var color = new MutableColor();
+    for (var pattern : patterns) {
+      float[] r = new float[n];
+      float[] g = new float[n];
+      float[] b = new float[n];
+      // leave the ends alone, to check that only the range asked for is evaluated
+      pattern.colorAt(x, y, z, 10, n - 10, s, r, g, b);
+      for (int i = 0; i < n; ++i) {
+        if (i < 10 || i >= n - 10) {
+          assertEquals(0, r[i] + g[i] + b[i]);
+          continue;
+        }
+        pattern.colorAt(x[i], y[i], z[i], s, color);
+        assertEquals(color.r, r[i], pattern + " at " + i);
+        assertEquals(color.g, g[i], pattern + " at " + i);
+        assertEquals(color.b, b[i], pattern + " at " + i);
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Patterns are equal if they're built the same way")
+  void testEquals() {
+    var a = new CheckerPattern(new StripePattern(WHITE, BLACK), Pattern.solid(Color.RED));
+    var b = new CheckerPattern(new StripePattern(WHITE, BLACK), Pattern.solid(Color.RED));
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    var red = Pattern.solid(Color.RED);
+    assertNotEquals(a, new StripePattern(new StripePattern(WHITE, BLACK), red));
+    assertNotEquals(a, a.withTransform(Matrix4x4.scaling(2, 2, 2)));
+    assertNotEquals(a, new CheckerPattern(new StripePattern(BLACK, WHITE), red));
+    assertNotEquals(new PerlinPattern(WHITE, BLACK), new PerlinPattern(BLACK, WHITE));
+    assertNotNull(a.toString());
+    // so equal patterned materials share an id
+    var scene = new Scene();
+    scene.addObject(new Sphere().setMaterial(new Material.Builder().pattern(a).build()));
+    scene.addObject(new Sphere().setMaterial(new Material.Builder().pattern(b).build()));
+    assertEquals(scene.materials().idOf(0), scene.materials().idOf(1));
+  }
+
+  @Test
+  @DisplayName("A pattern's transform must be invertible")
+  void testSingularTransform() {
+    var pattern = new StripePattern(WHITE, BLACK);
+    assertThrows(
+        IllegalArgumentException.class, () -> pattern.withTransform(Matrix4x4.scaling(1, 0, 1)));
+  }
+
+  @Test
+  @DisplayName("A pattern is evaluated in the object space of the shape it's on")
+  void testPatternedShape() {
+    var scene = new Scene();
+    scene.addLight(new PointLight(new Point(-10, 10, -10)));
+    var pattern =
+        new StripePattern(WHITE, BLACK).withTransform(Matrix4x4.translation(.5f, 0, 0));
+    var material =
+        new Material.Builder()
+            .color(new Color(1, .5f, 1))
+            .pattern(pattern)
+            .ambient(1)
+            .diffuse(0)
+            .specular(0)
+            .build();
+    scene.addObject(
+        new Sphere().setTransform(Matrix4x4.scaling(2, 2, 2)).setMaterial(material));
+    // the hit point (2, 0, 0) is (1, 0, 0) in object space, and (.5, 0, 0) in pattern space
+    var color = scene.colorAt(new Ray(new Point(5, 0, 0), new Vector3(-1, 0, 0)));
+    assertEquals(new Color(1, .5f, 1), color);
+    // whereas (0, 0, -2) is (-.5, 0, 0) in pattern space
+    color = scene.colorAt(new Ray(new Point(0, 0, -5), new Vector3(0, 0, 1)));
+    assertEquals(BLACK, color);
+  }
+}
@@ -3,6 +3,7 @@ package com.gregjandl.raytracer.rtlib;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.DisplayName;
@@ -28,6 +29,34 @@ public class PointLightTest {
     assertEquals(Color.WHITE, light.getColor());
   }
 
+  @Test
+  @DisplayName("By default a point light doesn't fall off with distance")
+  void testNoFalloff() {
+    var light = new PointLight(new Point(0, 0, 0));
+    assertEquals(Float.POSITIVE_INFINITY, light.getFalloffRadius());
+    assertFalse(light.hasFalloff());
+    assertEquals(Float.POSITIVE_INFINITY, light.influenceRadius(.01f));
+  }
+
+  @Test
+  @DisplayName("A point light may fall off with the square of the distance")
+  void testFalloff() {
+    var light = new PointLight(new Point(0, 0, 0), new Color(.5f, 2, 1), 4);
+    assertEquals(4, light.getFalloffRadius());
+    assertTrue(light.hasFalloff());
+    assertEquals(1, light.attenuation(0));
+    assertEquals(.5f, light.attenuation(4));
+    assertEquals(.2f, light.attenuation(8));
+    // 2 / (1 + (d / 4)²) = .5 at d = 4 * sqrt(3)
+    assertEquals(4 * (float) Math.sqrt(3), light.influenceRadius(.5f), 1e-5f);
+    assertEquals(Float.POSITIVE_INFINITY, light.influenceRadius(0));
+    assertEquals(0, light.influenceRadius(3));
+    assertThrows(
+        IllegalArgumentException.class, () -> new PointLight(Point.ORIGIN, Color.WHITE, 0));
+    assertThrows(
+        IllegalArgumentException.class, () -> new PointLight(Point.ORIGIN, Color.WHITE, Float.NaN));
+  }
+
   @Test
   @DisplayName("PointLights have toString")
   void testToString() {
@@ -50,6 +79,7 @@ public class PointLightTest {
     var p3 = new PointLight(new Point(2, 2, 2), Color.BLUE);
     var pCol = new PointLight(new Point(1, 1, 1), Color.BLUE);
     var pPoint = new PointLight(new Point(2, 2, 2));
+    var pFalloff = new PointLight(new Point(1, 1, 1), Color.WHITE, 5);
 
     assertTrue(p1.equals(p1)); // self
     assertTrue(p1.equals(p2)); // equal
@@ -58,6 +88,7 @@ public class PointLightTest {
     assertFalse(p3.equals(p2)); // symmetry
     assertFalse(p2.equals(pCol)); // differ color
     assertFalse(p2.equals(pPoint)); // differ point
+    assertFalse(p2.equals(pFalloff)); // differ falloff
     assertFalse(p2.equals(null)); // null
     assertFalse(p2.equals("not a point light")); // different class
   }
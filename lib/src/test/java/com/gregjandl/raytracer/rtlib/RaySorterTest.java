@@ -0,0 +1,87 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class RaySorterTest {
+  @Test
+  @DisplayName("Morton codes interleave the bits of the cell coordinates")
+  void testMortonCode() {
+    assertEquals(0, RaySorter.mortonCode(0, 0, 0));
+    assertEquals(1, RaySorter.mortonCode(1, 0, 0));
+    assertEquals(2, RaySorter.mortonCode(0, 1, 0));
+    assertEquals(4, RaySorter.mortonCode(0, 0, 1));
+    assertEquals(0b111_000, RaySorter.mortonCode(2, 2, 2));
+    assertEquals((1 << 3 * RaySorter.CELL_BITS) - 1, RaySorter.mortonCode(511, 511, 511));
+  }
+
+  @Test
+  @DisplayName("Sorting orders rays by direction octant, then along a Z-order curve of origins")
+  void testSortOrder() {
+    // rays along a line, alternately heading up and down, in shuffled order
+    var n = 100;
+    var ox = new float[n];
+    var oy = new float[n];
+    var oz = new float[n];
+    var dx = new float[n];
+    var dy = new float[n];
+    var dz = new float[n];
+    var random = new Random(1);
+    for (int i = 0; i < n; ++i) {
+      var j = random.nextInt(i + 1);
+      ox[i] = ox[j];
+      dy[i] = dy[j];
+      ox[j] = i;
+      dy[j] = i % 2 == 0 ? 1 : -1;
+    }
+    var order = new RaySorter(n).sort(ox, oy, oz, dx, dy, dz, n, new int[n]);
+    for (int i = 1; i < n; ++i) {
+      var a = order[i - 1];
+      var b = order[i];
+      if (dy[a] == dy[b]) {
+        assertTrue(ox[a] < ox[b], "ray " + a + " should follow ray " + b);
+      } else {
+        assertTrue(dy[a] > dy[b], "upward rays should come first");
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Sorting returns a permutation of the rays")
+  void testSortPermutes() {
+    var n = 5000;
+    var random = new Random(2);
+    var arrays = new float[6][n];
+    for (var a : arrays) {
+      for (int i = 0; i < n; ++i) {
+        a[i] = random.nextFloat() * 20 - 10;
+      }
+    }
+    var sorter = new RaySorter(n);
+    var order = new int[n];
+    // sort fewer rays than the sorter's capacity, and sort twice with the same sorter
+    for (var count : new int[] {n - 1, n}) {
+      sorter.sort(arrays[0], arrays[1], arrays[2], arrays[3], arrays[4], arrays[5], count, order);
+      var sorted = Arrays.copyOf(order, count);
+      Arrays.sort(sorted);
+      var expected = new int[count];
+      Arrays.setAll(expected, i -> i);
+      assertArrayEquals(expected, sorted);
+    }
+  }
+
+  @Test
+  @DisplayName("Rays from a single point can be sorted")
+  void testSortCoincidentOrigins() {
+    var zeros = new float[3];
+    var dx = new float[] {1, -1, 1};
+    var order = new RaySorter(3).sort(zeros, zeros, zeros, dx, zeros, zeros, 3, new int[3]);
+    assertArrayEquals(new int[] {0, 2, 1}, order);
+  }
+}
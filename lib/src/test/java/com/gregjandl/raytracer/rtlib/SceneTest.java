@@ -1,15 +1,58 @@
 package com.gregjandl.raytracer.rtlib;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class SceneTest {
+  /**
+   * A scene with two lights and a shape of each kind and with each class of transform, so that
+   * shadows, meshes and all of the transform fast paths are exercised.
+   */
+  static Scene testScene() {
+    var scene = new Scene();
+    scene.addLight(new PointLight(new Point(-10, 10, -10)));
+    scene.addLight(new PointLight(new Point(5, 8, -6), new Color(.4f, .4f, .6f)));
+    scene.addObject(
+        new Plane()
+            .setTransform(Matrix4x4.translation(0, -1, 0))
+            .setMaterial(new Material.Builder().color(new Color(1, .9f, .9f)).specular(0).build()));
+    scene.addObject(
+        new Sphere()
+            .setMaterial(
+                new Material.Builder().color(new Color(.1f, 1, .5f)).diffuse(.7f).build()));
+    scene.addObject(
+        new Sphere().setTransform(Matrix4x4.scaling(.5f, .5f, .5f).translate(1.5f, 0, -.5f)));
+    scene.addObject(
+        new Sphere()
+            .setTransform(
+                Matrix4x4.scaling(.33f, .5f, .33f).rotateOnZ(.4).translate(-1.5f, 0, -.75f)));
+    scene.addObject(
+        TriangleMeshTest.grid(4)
+            .setTransform(Matrix4x4.scaling(.5f, .5f, .5f).rotateOnY(.5).translate(-1, -1, 2)));
+    return scene;
+  }
+
   @Test
   @DisplayName("Creating an empty World")
   void testCreateEmpty() {
@@ -154,6 +197,490 @@ public class SceneTest {
     assertEquals(inner.getMaterial().getColor(), c);
   }
 
+  @Test
+  @DisplayName("Scene colors match shading precomputed intersections")
+  void testColorAtMatchesShadeHit() {
+    var scene = testScene();
+    var eye = new Point(0, 1.5f, -5);
+    for (int y = 0; y < 16; ++y) {
+      for (int x = 0; x < 16; ++x) {
+        var target = new Point(x / 4f - 2, y / 4f - 2, 0);
+        var r = new Ray(eye, target.subtract(eye).normalize());
+        var hit = scene.intersect(r).hit();
+        var expected =
+            hit.isPresent() ? scene.shadeHit(new Scene.PreComps(hit.get(), r)) : Color.BLACK;
+        assertEquals(expected, scene.colorAt(r), "ray " + r);
+      }
+    }
+  }
+
+  /** Add a grid of small lights which fall off with distance to the specified scene. */
+  static Scene addSmallLights(Scene scene) {
+    for (int z = 0; z < 10; ++z) {
+      for (int x = 0; x < 10; ++x) {
+        var color = new Color(.5f + x / 20f, .5f, 1 - z / 20f);
+        scene.addLight(new PointLight(new Point(x * .5f - 2.5f, .5f, z * .5f - 2), color, .3f));
+      }
+    }
+    return scene;
+  }
+
+  @Test
+  @DisplayName("Shading skips just the lights too dim at the point to reach the light threshold")
+  void testLightThreshold() {
+    var scene = addSmallLights(testScene());
+    assertEquals(0, scene.getLightThreshold());
+    assertEquals(null, scene.lightIndex());
+    var threshold = .1f;
+    scene.setLightThreshold(threshold);
+    assertEquals(threshold, scene.getLightThreshold());
+    var eye = new Point(0, 1.5f, -5);
+    for (int y = 0; y < 16; ++y) {
+      for (int x = 0; x < 16; ++x) {
+        var target = new Point(x / 4f - 2, y / 4f - 2, 0);
+        var r = new Ray(eye, target.subtract(eye).normalize());
+        var hit = scene.intersect(r).hit();
+        var expected = Color.BLACK;
+        if (hit.isPresent()) {
+          var comps = new Scene.PreComps(hit.get(), r);
+          var material = comps.object.getMaterial();
+          for (var i : LightIndexTest.influencing(lights(scene), threshold, comps.point)) {
+            var light = scene.getLight(i);
+            var shadowed = scene.isShadowed(comps.overPoint, light);
+            expected =
+                expected.add(
+                    material.lighting(light, comps.point, comps.eyeVec, comps.normal, shadowed));
+          }
+        }
+        assertEquals(expected, scene.colorAt(r), "ray " + r);
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("The light index is rebuilt when lights are added or the threshold changes")
+  void testLightIndexRebuilt() {
+    var scene = testScene();
+    scene.setLightThreshold(.1f);
+    var index = scene.lightIndex();
+    assertSame(index, scene.lightIndex());
+    scene.addLight(new PointLight(new Point(0, 1, 0), Color.WHITE, 1));
+    assertNotSame(index, scene.lightIndex());
+    index = scene.lightIndex();
+    scene.setLightThreshold(.2f);
+    assertNotSame(index, scene.lightIndex());
+    scene.setLightThreshold(0);
+    assertEquals(null, scene.lightIndex());
+    assertThrows(IllegalArgumentException.class, () -> scene.setLightThreshold(-1));
+    assertThrows(IllegalArgumentException.class, () -> scene.setLightThreshold(Float.NaN));
+  }
+
+  @Test
+  @DisplayName("Sampling lights converges to considering every light")
+  void testLightSamplesConverge() {
+    var scene = addSmallLights(testScene());
+    var eye = new Point(0, 1.5f, -5);
+    var rays = new ArrayList<Ray>();
+    var expected = new ArrayList<Color>();
+    for (int y = 0; y < 8; ++y) {
+      for (int x = 0; x < 8; ++x) {
+        var target = new Point(x / 2f - 2, y / 2f - 2, 0);
+        var r = new Ray(eye, target.subtract(eye).normalize());
+        rays.add(r);
+        expected.add(scene.colorAt(r));
+      }
+    }
+    var total = 0.0;
+    for (var e : expected) {
+      total += e.getR() + e.getG() + e.getB();
+    }
+    // the relative error should fall by about 4 each time, as the samples go up 16 fold
+    var previousError = Double.POSITIVE_INFINITY;
+    for (var samples : new int[] {16, 256, 4096}) {
+      scene.setLightSamples(samples);
+      assertEquals(samples, scene.getLightSamples());
+      var error = 0.0;
+      for (int i = 0; i < rays.size(); ++i) {
+        var c = scene.colorAt(rays.get(i));
+        var e = expected.get(i);
+        error += Math.abs(c.getR() - e.getR()) + Math.abs(c.getG() - e.getG());
+        error += Math.abs(c.getB() - e.getB());
+      }
+      error /= total;
+      assertTrue(error < previousError / 2, samples + " samples: relative error " + error);
+      previousError = error;
+    }
+    assertTrue(previousError < .015, "relative error " + previousError);
+    assertThrows(IllegalArgumentException.class, () -> scene.setLightSamples(-1));
+  }
+
+  @Test
+  @DisplayName("Shadow maps are rebuilt when lights or objects are added or settings change")
+  void testShadowMapsRebuilt() {
+    var scene = testScene();
+    assertEquals(0, scene.getShadowMapResolution());
+    assertEquals(null, scene.shadowMaps());
+    scene.setShadowMapResolution(16);
+    assertEquals(16, scene.getShadowMapResolution());
+    var maps = scene.shadowMaps();
+    assertSame(maps, scene.shadowMaps());
+    scene.addLight(new PointLight(new Point(0, 5, 0)));
+    assertNotSame(maps, scene.shadowMaps());
+    maps = scene.shadowMaps();
+    scene.addObject(new Sphere());
+    assertNotSame(maps, scene.shadowMaps());
+    maps = scene.shadowMaps();
+    scene.setShadowMapBias(.1f);
+    assertEquals(.1f, scene.getShadowMapBias());
+    assertNotSame(maps, scene.shadowMaps());
+    scene.setShadowMapResolution(0);
+    assertEquals(null, scene.shadowMaps());
+    assertThrows(IllegalArgumentException.class, () -> scene.setShadowMapResolution(-1));
+    assertThrows(IllegalArgumentException.class, () -> scene.setShadowMapBias(-1));
+    assertThrows(IllegalArgumentException.class, () -> scene.setShadowMapBias(Float.NaN));
+  }
+
+  @Test
+  @DisplayName("A scene which has been rendered and traced can be collected")
+  void testCollectable() {
+    var scene = traceAndForget();
+    for (int i = 0; i < 100 && scene.get() != null; ++i) {
+      System.gc();
+    }
+    assertNull(scene.get());
+  }
+
+  @Test
+  @DisplayName("Shading textured and patterned surfaces doesn't allocate per ray")
+  void testShadingDoesNotAllocate(@TempDir Path dir) throws IOException {
+    var bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    var threads = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    var cache = new TextureCache(1 << 20);
+    var image = TextureTest.noise(300, 200, 1);
+    try (var texture = TextureTest.texture(image, dir.resolve("t"), cache)) {
+      var scene = testScene();
+      var pattern =
+          new CheckerPattern(
+              new PerlinPattern(Color.RED, Color.BLUE),
+              new StripePattern(Color.WHITE, Color.GREEN));
+      scene.getObject(0).setMaterial(new Material.Builder().texture(texture).build());
+      scene.getObject(1).setMaterial(new Material.Builder().pattern(pattern).build());
+      var both = new Material.Builder().texture(texture).pattern(pattern).reflective(.5f);
+      scene.getObject(2).setMaterial(both.build());
+      var n = 20_000;
+      var id = Thread.currentThread().getId();
+      var allocated = Long.MAX_VALUE;
+      // the least of a few rounds, the first reading the tiles, and any allocating in the JIT
+      for (int round = 0; round < 5; ++round) {
+        var before = threads.getThreadAllocatedBytes(id);
+        try (var tr = scene.tracer()) {
+          tr.spread = .002f;
+          for (int i = 0; i < n; ++i) {
+            var x = (i % 200) / 50f - 2;
+            var y = (i / 200) / 50f - 1;
+            tr.colorAt(0, 1.5f, -5, x, y - 1.5f, 5);
+          }
+        }
+        allocated = Math.min(allocated, threads.getThreadAllocatedBytes(id) - before);
+      }
+      assertTrue(allocated < n, "shading allocated " + allocated + " bytes");
+    }
+  }
+
+  /**
+   * Render and trace rays through a scene, in every way which keeps per-thread state, on this
+   * thread and the common pool's, and return a weak reference to it.
+   */
+  private static WeakReference<Scene> traceAndForget() {
+    var scene = testScene();
+    scene.setShadowMapResolution(16);
+    var c = new Camera(32, 32, Math.PI / 2);
+    c.setViewTransform(new Point(0, 1.5f, -5), Point.ORIGIN, new Vector3(0, 1, 0));
+    c.render(scene);
+    c.setPacketSize(4);
+    c.render(scene);
+    c.setRasterizing(true);
+    c.setWavefrontSize(256);
+    c.render(scene, new Aov(Aov.Kind.DEPTH, 32, 32));
+    c.setWavefrontSize(0);
+    c.setAntialiasingDepth(1);
+    c.render(scene);
+    scene.colorAt(new Ray(new Point(0, 0, -5), new Vector3(0, 0, 1)));
+    var n = 4096;
+    var origins = new float[n * 3];
+    var directions = new float[n * 3];
+    for (int i = 0; i < n; ++i) {
+      origins[i * 3 + 2] = -5;
+      directions[i * 3] = i / (float) n - .5f;
+      directions[i * 3 + 2] = 1;
+    }
+    scene.castRays(origins, directions, new float[n], new int[n], new float[n * 3], n);
+    scene.lineOfSight(origins, directions, n);
+    return new WeakReference<>(scene);
+  }
+
+  @Nested
+  @DisplayName("Reflection and refraction")
+  class SecondaryRaysTest {
+    final Scene scene = Scene.getDefault();
+    final float half = (float) Math.sqrt(2) / 2;
+    final Ray ray = new Ray(new Point(0, 0, -3), new Vector3(0, -half, half));
+
+    /** Add a floor below the default scene's spheres, and a red ball below that. */
+    void addFloor(Material.Builder floorMaterial) {
+      var floor = new Plane().setTransform(Matrix4x4.translation(0, -1, 0));
+      scene.addObject(floor.setMaterial(floorMaterial.build()));
+      scene.addObject(
+          new Sphere()
+              .setTransform(Matrix4x4.translation(0, -3.5f, -.5f))
+              .setMaterial(new Material.Builder().color(new Color(1, 0, 0)).ambient(.5f).build()));
+    }
+
+    @Test
+    @DisplayName("Shading a reflective material")
+    void testReflective() {
+      addFloor(new Material.Builder().reflective(.5f));
+      // the reflected ray starts from an over point further off the surface than in the book
+      var c = scene.colorAt(ray);
+      assertEquals(.87677f, c.getR(), .0005f);
+      assertEquals(.92436f, c.getG(), .0005f);
+      assertEquals(.82918f, c.getB(), .0005f);
+    }
+
+    @Test
+    @DisplayName("Shading a transparent material")
+    void testTransparent() {
+      addFloor(new Material.Builder().transparency(.5f).refractiveIndex(1.5f));
+      assertEquals(new Color(.93642f, .68642f, .68642f), scene.colorAt(ray));
+    }
+
+    @Test
+    @DisplayName("Shading a reflective, transparent material")
+    void testReflectiveTransparent() {
+      addFloor(new Material.Builder().reflective(.5f).transparency(.5f).refractiveIndex(1.5f));
+      assertEquals(new Color(.93391f, .69643f, .69243f), scene.colorAt(ray));
+    }
+
+    @Test
+    @DisplayName("Mutually reflective surfaces stop at the maximum depth")
+    void testMutuallyReflective() {
+      var s = new Scene();
+      s.addLight(new PointLight(new Point(0, 0, 0)));
+      var mirror = new Material.Builder().reflective(1).build();
+      s.addObject(new Plane().setTransform(Matrix4x4.translation(0, -1, 0)).setMaterial(mirror));
+      s.addObject(new Plane().setTransform(Matrix4x4.translation(0, 1, 0)).setMaterial(mirror));
+      s.colorAt(new Ray(new Point(0, 0, 0), new Vector3(0, 1, 0)));
+      assertEquals(1, s.getDepthLimitedRayCount());
+      assertEquals(0, s.getCulledRayCount());
+    }
+
+    @Test
+    @DisplayName("Rays beyond the maximum depth, or contributing too little, aren't traced")
+    void testLimits() {
+      addFloor(new Material.Builder().reflective(.5f));
+      scene.setMaxDepth(0);
+      var direct = scene.colorAt(ray);
+      assertNotEquals(scene.colorAt(ray), new Color(.87677f, .92436f, .82918f));
+      assertEquals(2, scene.getDepthLimitedRayCount());
+      assertEquals(0, scene.getCulledRayCount());
+      scene.setMaxDepth(5);
+      scene.setContributionThreshold(.6f);
+      assertEquals(direct, scene.colorAt(ray));
+      assertEquals(1, scene.getCulledRayCount());
+      scene.resetRayCounts();
+      assertEquals(0, scene.getDepthLimitedRayCount());
+      assertEquals(0, scene.getCulledRayCount());
+      assertThrows(IllegalArgumentException.class, () -> scene.setMaxDepth(-1));
+      assertThrows(IllegalArgumentException.class, () -> scene.setContributionThreshold(-1));
+      assertThrows(
+          IllegalArgumentException.class, () -> scene.setContributionThreshold(Float.NaN));
+    }
+
+    @Test
+    @DisplayName("Schlick's approximation")
+    void testSchlick() {
+      assertEquals(.04f, Tracer.schlick(1, 1.5f), Utils.EPSILON);
+      assertEquals(.04f, Tracer.schlick(1, 1 / 1.5f), Utils.EPSILON);
+      assertEquals(1, Tracer.schlick(0, 1.5f), Utils.EPSILON);
+    }
+  }
+
+  static List<PointLight> lights(Scene scene) {
+    var lights = new ArrayList<PointLight>();
+    for (int i = 0; i < scene.getLightCount(); ++i) {
+      lights.add(scene.getLight(i));
+    }
+    return lights;
+  }
+
+  @Nested
+  @DisplayName("Casting batches of rays")
+  class CastRaysTest {
+    final Scene scene = testScene();
+    final int count = 1000;
+    final float[] origins = new float[count * 3];
+    final float[] directions = new float[count * 3];
+
+    CastRaysTest() {
+      // a fan of rays from a few origins, some of which miss everything
+      for (int i = 0; i < count; ++i) {
+        origins[i * 3] = i % 3 - 1;
+        origins[i * 3 + 1] = 1.5f;
+        origins[i * 3 + 2] = -5;
+        directions[i * 3] = (i % 40) / 10f - 2;
+        directions[i * 3 + 1] = (i / 40) / 10f - 2;
+        directions[i * 3 + 2] = 5;
+      }
+    }
+
+    @Test
+    @DisplayName("Each ray's hit matches intersecting it alone")
+    void testMatchesIntersect() {
+      var distances = new float[count];
+      var objects = new int[count];
+      var normals = new float[count * 3];
+      scene.castRays(origins, directions, distances, objects, normals, count);
+      var misses = 0;
+      for (int i = 0; i < count; ++i) {
+        var r =
+            new Ray(
+                new Point(origins[i * 3], origins[i * 3 + 1], origins[i * 3 + 2]),
+                new Vector3(directions[i * 3], directions[i * 3 + 1], directions[i * 3 + 2]));
+        var hit = scene.intersect(r).hit();
+        if (hit.isEmpty()) {
+          ++misses;
+          assertEquals(-1, objects[i]);
+          assertEquals(Float.POSITIVE_INFINITY, distances[i]);
+          assertEquals(new Vector3(0, 0, 0), normal(normals, i));
+          continue;
+        }
+        var x = hit.get();
+        assertEquals(x.getT(), distances[i], 1e-4);
+        assertEquals(x.getObject(), scene.getObject(objects[i]));
+        var expected = x.getObject().normalAt(r.getPosition(x.getT()), x.getIndex());
+        assertEquals(expected, normal(normals, i));
+      }
+      assertTrue(misses > 0 && misses < count);
+    }
+
+    @Test
+    @DisplayName("Normals are optional")
+    void testNoNormals() {
+      var distances = new float[count];
+      var objects = new int[count];
+      var expectedDistances = new float[count];
+      var expectedObjects = new int[count];
+      var normals = new float[count * 3];
+      scene.castRays(origins, directions, expectedDistances, expectedObjects, normals, count);
+      scene.castRays(origins, directions, distances, objects, null, count);
+      assertArrayEquals(expectedDistances, distances);
+      assertArrayEquals(expectedObjects, objects);
+    }
+
+    @Test
+    @DisplayName("Arrays must be large enough for the number of rays")
+    void testBounds() {
+      var distances = new float[count];
+      var objects = new int[count];
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> scene.castRays(origins, directions, distances, objects, null, -1));
+      assertThrows(
+          IndexOutOfBoundsException.class,
+          () -> scene.castRays(origins, directions, distances, objects, null, count + 1));
+      assertThrows(
+          IndexOutOfBoundsException.class,
+          () -> scene.castRays(origins, directions, distances, objects, new float[3], count));
+    }
+
+    @Test
+    @DisplayName("Casting rays doesn't allocate per ray")
+    void testNoAllocation() {
+      var bean = ManagementFactory.getThreadMXBean();
+      assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+      var threads = (com.sun.management.ThreadMXBean) bean;
+      assumeTrue(threads.isThreadAllocatedMemorySupported());
+      threads.setThreadAllocatedMemoryEnabled(true);
+
+      var n = 200_000;
+      var o = new float[n * 3];
+      var d = new float[n * 3];
+      for (int i = 0; i < n; ++i) {
+        System.arraycopy(origins, (i % count) * 3, o, i * 3, 3);
+        System.arraycopy(directions, (i % count) * 3, d, i * 3, 3);
+      }
+      var distances = new float[n];
+      var objects = new int[n];
+      var normals = new float[n * 3];
+      scene.castRays(o, d, distances, objects, normals, n);
+
+      // count allocation by every thread, as the rays are cast in parallel
+      var ids = Arrays.stream(threads.getAllThreadIds()).toArray();
+      var before = Arrays.stream(threads.getThreadAllocatedBytes(ids)).filter(b -> b > 0).sum();
+      scene.castRays(o, d, distances, objects, normals, n);
+      var after = Arrays.stream(threads.getThreadAllocatedBytes(ids)).filter(b -> b > 0).sum();
+      // splitting the work into tasks allocates a little, but any per ray object would be at least
+      // 16 bytes per ray
+      assertTrue(after - before < n, "castRays allocated " + (after - before) + " bytes");
+    }
+
+    private Vector3 normal(float[] normals, int i) {
+      return new Vector3(normals[i * 3], normals[i * 3 + 1], normals[i * 3 + 2]);
+    }
+  }
+
+  @Nested
+  @DisplayName("Bulk line of sight queries")
+  class LineOfSightTest {
+    final Scene scene = testScene();
+
+    @Test
+    @DisplayName("Each query matches intersecting the segment alone")
+    void testMatchesIntersect() {
+      var count = 1000;
+      var from = new float[count * 3];
+      var to = new float[count * 3];
+      var random = new Random(42);
+      for (int i = 0; i < count * 3; ++i) {
+        from[i] = random.nextFloat() * 8 - 4;
+        to[i] = random.nextFloat() * 8 - 4;
+      }
+      var visible = scene.lineOfSight(from, to, count);
+      var blocked = 0;
+      for (int i = 0; i < count; ++i) {
+        var a = new Point(from[i * 3], from[i * 3 + 1], from[i * 3 + 2]);
+        var b = new Point(to[i * 3], to[i * 3 + 1], to[i * 3 + 2]);
+        var v = b.subtract(a);
+        var hit = scene.intersect(new Ray(a, v.normalize())).hit();
+        var expected = hit.isEmpty() || hit.get().getT() >= v.magnitude();
+        assertEquals(expected, visible.get(i), "query " + i);
+        blocked += expected ? 0 : 1;
+      }
+      assertTrue(blocked > 0 && blocked < count);
+      assertTrue(visible.length() <= count);
+    }
+
+    @Test
+    @DisplayName("A point can always see itself")
+    void testSamePoint() {
+      var p = new float[] {0, 0, 0};
+      assertTrue(scene.lineOfSight(p, p, 1).get(0));
+    }
+
+    @Test
+    @DisplayName("Arrays must be large enough for the number of queries")
+    void testBounds() {
+      var p = new float[6];
+      assertThrows(IllegalArgumentException.class, () -> scene.lineOfSight(p, p, -1));
+      assertThrows(IndexOutOfBoundsException.class, () -> scene.lineOfSight(p, p, 3));
+      assertEquals(0, scene.lineOfSight(p, p, 0).cardinality());
+    }
+  }
+
   @Nested
   @DisplayName("Shadows")
   class ShadowsTest {
@@ -0,0 +1,88 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ShadowMapsTest {
+  @Test
+  @DisplayName("Shadow maps agree with shadow rays away from shadow edges")
+  void testMatchesShadowRays() {
+    var scene = SceneTest.testScene();
+    var maps = new ShadowMaps(scene, 512, .05f);
+    var eye = new Point(0, 1.5f, -5);
+    var tr = new Tracer(scene);
+    var points = 0;
+    var agree = 0;
+    for (int y = 0; y < 64; ++y) {
+      for (int x = 0; x < 64; ++x) {
+        var target = new Point(x / 16f - 2, y / 16f - 2, 0);
+        var d = target.subtract(eye).normalize();
+        tr.intersect(eye.getX(), eye.getY(), eye.getZ(), d.getX(), d.getY(), d.getZ());
+        if (tr.object == null) {
+          continue;
+        }
+        tr.prepare();
+        var p = tr.overPoint.toPoint();
+        var n = tr.normal.toVector3();
+        for (int i = 0; i < scene.getLightCount(); ++i) {
+          // near the terminator, where shadows don't matter, maps see a sphere's silhouette which
+          // rays nudged off the surface miss
+          if (scene.getLight(i).getPosition().subtract(p).normalize().dot(n) < .1f) {
+            continue;
+          }
+          ++points;
+          var mapped =
+              maps.isShadowed(i, p.getX(), p.getY(), p.getZ(), n.getX(), n.getY(), n.getZ());
+          if (mapped == scene.isShadowed(p, scene.getLight(i))) {
+            ++agree;
+          }
+        }
+      }
+    }
+    assertTrue(points > 4000);
+    assertTrue(agree > points * .99, agree + " of " + points + " agree");
+  }
+
+  @Test
+  @DisplayName("Shadow maps are rebuilt when an object moves")
+  void testRebuiltWhenObjectMoves() {
+    var scene = new Scene();
+    scene.addLight(new PointLight(new Point(0, 10, 0)));
+    scene.addObject(new Plane());
+    var sphere = new Sphere().setTransform(Matrix4x4.translation(0, 2, 0));
+    scene.addObject(sphere);
+    scene.setShadowMapResolution(64);
+    var maps = scene.shadowMaps();
+    assertSame(maps, scene.shadowMaps());
+    assertTrue(maps.isShadowed(0, 0, .01f, 0, 0, 1, 0));
+    assertFalse(maps.isShadowed(0, 5, .01f, 0, 0, 1, 0));
+    // moving an object of another scene leaves this scene's maps alone
+    new Sphere().setTransform(Matrix4x4.translation(1, 2, 3));
+    scene.prepare();
+    assertSame(maps, scene.shadowMaps());
+    sphere.setTransform(Matrix4x4.translation(5, 2, 0));
+    scene.prepare();
+    var moved = scene.shadowMaps();
+    assertNotSame(maps, moved);
+    assertFalse(moved.isShadowed(0, 0, .01f, 0, 0, 1, 0));
+    assertTrue(moved.isShadowed(0, 6.25f, .01f, 0, 0, 1, 0));
+  }
+
+  @Test
+  @DisplayName("Coarse shadow maps still shadow surfaces lit at a glancing angle")
+  void testLowResolution() {
+    var scene = new Scene();
+    scene.addLight(new PointLight(new Point(0, 10, 0)));
+    scene.addObject(new Plane());
+    scene.addObject(new Sphere().setTransform(Matrix4x4.scaling(2, 2, 2).translate(4, 8, 0)));
+    var maps = new ShadowMaps(scene, 4, .05f);
+    // behind the sphere from the light, and at the same angle on the other side, where nothing is
+    assertTrue(maps.isShadowed(0, 20, .01f, 0, 0, 1, 0));
+    assertFalse(maps.isShadowed(0, -20, .01f, 0, 0, 1, 0));
+  }
+}
@@ -0,0 +1,149 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TextureCacheTest {
+  @TempDir Path dir;
+
+  @Test
+  @DisplayName("A cache holds its budget's worth of tiles, evicting the least recently used")
+  void testLeastRecentlyUsed() throws IOException {
+    var cache = new TextureCache(2L * Texture.TILE_BYTES);
+    // 2 by 2 tiles at full resolution
+    var image = TextureTest.noise(2 * Texture.TILE_SIZE, 2 * Texture.TILE_SIZE, 1);
+    try (var texture = TextureTest.texture(image, dir.resolve("noise.tex"), cache)) {
+      var a = cache.tile(texture, 0, 0, 0);
+      cache.tile(texture, 0, 1, 0);
+      assertEquals(2, cache.getMissCount());
+      assertSame(a, cache.tile(texture, 0, 0, 0));
+      assertEquals(1, cache.getHitCount());
+      // evicts (1, 0), which was used less recently than (0, 0)
+      cache.tile(texture, 0, 0, 1);
+      assertEquals(1, cache.getEvictionCount());
+      assertEquals(2, cache.getTileCount());
+      assertSame(a, cache.tile(texture, 0, 0, 0));
+      cache.tile(texture, 0, 1, 0);
+      assertEquals(4, cache.getMissCount());
+      assertEquals(2, cache.getHitCount());
+      assertEquals(2, cache.getEvictionCount());
+      assertEquals(1 / 3.0, cache.getHitRate());
+      // (0, 1) was evicted, and (0, 0) wasn't
+      cache.tile(texture, 0, 0, 0);
+      assertEquals(3, cache.getHitCount());
+    }
+  }
+
+  @Test
+  @DisplayName("A large cache's stripes together hold its budget's worth of tiles")
+  void testStripes() throws IOException {
+    // two stripes of 64 tiles
+    var cache = new TextureCache(128L * Texture.TILE_BYTES);
+    // 16 by 16 tiles at full resolution
+    var image = TextureTest.noise(16 * Texture.TILE_SIZE, 16 * Texture.TILE_SIZE, 1);
+    try (var texture = TextureTest.texture(image, dir.resolve("noise.tex"), cache)) {
+      for (int ty = 0; ty < 16; ++ty) {
+        for (int tx = 0; tx < 16; ++tx) {
+          assertSame(cache.tile(texture, 0, tx, ty), cache.tile(texture, 0, tx, ty));
+        }
+      }
+      assertEquals(256, cache.getMissCount());
+      assertEquals(256, cache.getHitCount());
+      assertEquals(128, cache.getTileCount());
+      assertEquals(128, cache.getEvictionCount());
+    }
+  }
+
+  @Test
+  @DisplayName("Tiles of different textures and levels are cached separately")
+  void testKeys() throws IOException {
+    var cache = new TextureCache(1 << 20);
+    var image = TextureTest.noise(100, 100, 2);
+    try (var t1 = TextureTest.texture(image, dir.resolve("1.tex"), cache);
+        var t2 = TextureTest.texture(TextureTest.checker(100), dir.resolve("2.tex"), cache)) {
+      cache.tile(t1, 0, 1, 1);
+      cache.tile(t2, 0, 1, 1);
+      cache.tile(t1, 1, 0, 0);
+      cache.tile(t1, 0, 0, 1);
+      assertEquals(4, cache.getMissCount());
+      assertEquals(image.getRGB(99, 99) & 0xffffff, t1.texel(0, 99, 99));
+      assertEquals(0xffffff, t2.texel(0, 99, 99));
+      assertEquals(2, cache.getHitCount());
+    }
+  }
+
+  @Test
+  @DisplayName("A cache evicts exactly the tiles an LRU map would, however its tables fill")
+  void testMatchesLinkedHashMap() throws IOException {
+    // one stripe of 40 tiles, which grows its tables twice, and then evicts
+    var capacity = 40;
+    var cache = new TextureCache(capacity * Texture.TILE_BYTES);
+    var image = TextureTest.noise(12 * Texture.TILE_SIZE, 12 * Texture.TILE_SIZE, 3);
+    var evictions = new int[1];
+    var expected =
+        new LinkedHashMap<Integer, Boolean>(16, .75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+            if (size() <= capacity) {
+              return false;
+            }
+            ++evictions[0];
+            return true;
+          }
+        };
+    try (var texture = TextureTest.texture(image, dir.resolve("noise.tex"), cache)) {
+      var random = new Random(11);
+      var misses = 0;
+      for (int i = 0; i < 5000; ++i) {
+        // mostly a working set of fewer tiles than fit, now and then others
+        var tile = random.nextInt(8) == 0 ? random.nextInt(144) : random.nextInt(36);
+        if (expected.put(tile, true) == null) {
+          ++misses;
+        }
+        var tx = tile % 12;
+        var ty = tile / 12;
+        assertSame(cache.tile(texture, 0, tx, ty), cache.tile(texture, 0, tx, ty));
+        assertEquals(misses, cache.getMissCount(), "lookup " + i);
+      }
+      assertEquals(evictions[0], cache.getEvictionCount());
+      assertEquals(capacity, cache.getTileCount());
+    }
+  }
+
+  @Test
+  @DisplayName("Counts can be reset and tiles cleared")
+  void testResetAndClear() throws IOException {
+    var cache = new TextureCache(1 << 20);
+    assertEquals(0, cache.getHitRate());
+    try (var texture = TextureTest.texture(TextureTest.checker(8), dir.resolve("c.tex"), cache)) {
+      cache.tile(texture, 0, 0, 0);
+      cache.tile(texture, 0, 0, 0);
+      cache.resetCounts();
+      assertEquals(0, cache.getHitCount());
+      assertEquals(0, cache.getMissCount());
+      assertEquals(1, cache.getTileCount());
+      cache.clear();
+      assertEquals(0, cache.getTileCount());
+      cache.tile(texture, 0, 0, 0);
+      assertEquals(1, cache.getMissCount());
+    }
+  }
+
+  @Test
+  @DisplayName("A cache's budget must hold at least one tile")
+  void testBudget() {
+    assertEquals(64L << 20, TextureCache.getDefault().getBudget());
+    assertEquals(Texture.TILE_BYTES, new TextureCache(Texture.TILE_BYTES).getBudget());
+    assertThrows(IllegalArgumentException.class, () -> new TextureCache(Texture.TILE_BYTES - 1));
+  }
+}
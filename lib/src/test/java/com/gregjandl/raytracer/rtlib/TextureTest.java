@@ -0,0 +1,225 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TextureTest {
+  @TempDir Path dir;
+
+  /** An image of random colors. */
+  static BufferedImage noise(int width, int height, long seed) {
+    var random = new Random(seed);
+    var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        image.setRGB(x, y, random.nextInt(1 << 24));
+      }
+    }
+    return image;
+  }
+
+  /** A checkerboard of black and white texels. */
+  static BufferedImage checker(int size) {
+    var image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < size; ++y) {
+      for (int x = 0; x < size; ++x) {
+        image.setRGB(x, y, (x + y) % 2 == 0 ? 0xffffff : 0);
+      }
+    }
+    return image;
+  }
+
+  static Texture texture(BufferedImage image, Path file, TextureCache cache) throws IOException {
+    Texture.write(image, file);
+    return Texture.open(file, cache);
+  }
+
+  @Test
+  @DisplayName("Mip levels halve in size, rounding up, down to 1 by 1")
+  void testLevels() {
+    assertEquals(1, Texture.levels(1, 1));
+    assertEquals(2, Texture.levels(2, 1));
+    assertEquals(8, Texture.levels(100, 40));
+    assertEquals(13, Texture.levels(4096, 4096));
+  }
+
+  @Test
+  @DisplayName("A texture file holds every texel of the image, across tiles")
+  void testRoundTrip() throws IOException {
+    var image = noise(150, 70, 1);
+    try (var texture = texture(image, dir.resolve("noise.tex"), new TextureCache(1 << 20))) {
+      assertEquals(150, texture.getWidth());
+      assertEquals(70, texture.getHeight());
+      assertEquals(9, texture.getLevelCount());
+      for (int y = 0; y < 70; ++y) {
+        for (int x = 0; x < 150; ++x) {
+          assertEquals(image.getRGB(x, y) & 0xffffff, texture.texel(0, x, y), x + ", " + y);
+        }
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Each mip level's texels are the averages of the level before's")
+  void testMipLevels() throws IOException {
+    var image = noise(5, 3, 2);
+    try (var texture = texture(image, dir.resolve("noise.tex"), new TextureCache(1 << 20))) {
+      // level 1 is 3 by 2, its last column and row averaging the clamped edge texels
+      for (int y = 0; y < 2; ++y) {
+        for (int x = 0; x < 3; ++x) {
+          for (int shift = 0; shift < 24; shift += 8) {
+            var sum = 0;
+            for (int dy = 0; dy < 2; ++dy) {
+              for (int dx = 0; dx < 2; ++dx) {
+                var rgb = image.getRGB(Math.min(2 * x + dx, 4), Math.min(2 * y + dy, 2));
+                sum += rgb >> shift & 0xff;
+              }
+            }
+            assertEquals((sum + 2) / 4, texture.texel(1, x, y) >> shift & 0xff);
+          }
+        }
+      }
+      assertEquals(4, texture.getLevelCount());
+    }
+  }
+
+  @Test
+  @DisplayName("Sampling at a texel's center gives its color, and coordinates repeat")
+  void testSampleTexelCenters() throws IOException {
+    var image = noise(80, 70, 3);
+    try (var texture = texture(image, dir.resolve("noise.tex"), new TextureCache(1 << 20))) {
+      var color = new MutableColor();
+      for (int y = 0; y < 70; y += 7) {
+        for (int x = 0; x < 80; x += 9) {
+          var rgb = image.getRGB(x, y);
+          // v runs up from the bottom row
+          var u = (x + .5f) / 80;
+          var v = 1 - (y + .5f) / 70;
+          for (var offset : new int[] {0, 1, -3}) {
+            texture.sample(u + offset, v + offset, 0, color);
+            assertEquals((rgb >> 16 & 0xff) / 255f, color.r, 1e-4f);
+            assertEquals((rgb >> 8 & 0xff) / 255f, color.g, 1e-4f);
+            assertEquals((rgb & 0xff) / 255f, color.b, 1e-4f);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Sampling between texels blends them, wrapping around the edges")
+  void testBilinear() throws IOException {
+    var image = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+    image.setRGB(0, 0, 0xff0000);
+    image.setRGB(1, 0, 0x0000ff);
+    try (var texture = texture(image, dir.resolve("two.tex"), new TextureCache(1 << 20))) {
+      var color = new MutableColor();
+      texture.sample(.5f, .5f, 0, color);
+      assertEquals(.5f, color.r, 1e-6f);
+      assertEquals(.5f, color.b, 1e-6f);
+      // a quarter texel past the right texel's center, toward the left one
+      texture.sample(.875f, .5f, 0, color);
+      assertEquals(.25f, color.r, 1e-6f);
+      assertEquals(.75f, color.b, 1e-6f);
+    }
+  }
+
+  @Test
+  @DisplayName("The footprint selects the mip level, blending between levels")
+  void testLevelSelection() throws IOException {
+    var cache = new TextureCache(1 << 20);
+    try (var texture = texture(checker(64), dir.resolve("checker.tex"), cache)) {
+      assertEquals(0, texture.level(0));
+      assertEquals(0, texture.level(1 / 64f));
+      assertEquals(1, texture.level(2 / 64f));
+      assertEquals(2.5f, texture.level((float) Math.pow(2, 2.5) / 64), 1e-5f);
+      assertEquals(6, texture.level(1000));
+      var color = new MutableColor();
+      texture.sample(.5f / 64, .5f / 64, 0, color);
+      assertEquals(0, color.r);
+      // every texel of level 1 and up is the average of black and white
+      texture.sample(.5f / 64, .5f / 64, 2 / 64f, color);
+      assertEquals(128 / 255f, color.r);
+      texture.sample(.3f, .7f, 1, color);
+      assertEquals(128 / 255f, color.r);
+      texture.sample(.5f / 64, .5f / 64, 1.5f / 64, color);
+      assertNotEquals(0, color.r);
+      assertNotEquals(128 / 255f, color.r);
+    }
+  }
+
+  @Test
+  @DisplayName("Opening a file which isn't a texture file fails")
+  void testNotATextureFile() throws IOException {
+    var file = dir.resolve("bad.tex");
+    Files.write(file, new byte[100]);
+    assertThrows(IOException.class, () -> Texture.open(file));
+    Files.write(file, new byte[10]);
+    assertThrows(IOException.class, () -> Texture.open(file));
+    // a valid header, but the tiles are missing
+    Texture.write(noise(10, 10, 4), file);
+    var bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, Texture.HEADER_SIZE + 100));
+    assertThrows(IOException.class, () -> Texture.open(file));
+  }
+
+  @Test
+  @DisplayName("A textured material's color is the texture's times its own")
+  void testTexturedMaterial() throws IOException {
+    var image = noise(16, 16, 5);
+    try (var texture = texture(image, dir.resolve("noise.tex"), new TextureCache(1 << 20))) {
+      var scene = new Scene();
+      scene.addLight(new PointLight(new Point(0, 10, 0)));
+      var material =
+          new Material.Builder()
+              .color(new Color(1, .5f, 1))
+              .texture(texture)
+              .ambient(1)
+              .diffuse(0)
+              .specular(0)
+              .build();
+      scene.addObject(new Plane().setMaterial(material));
+      // the plane's texture repeats every unit in x and z, v along z
+      var rgb = image.getRGB(3, 16 - 1 - 5);
+      var color =
+          scene.colorAt(new Ray(new Point(3.5f / 16, 1, 5.5f / 16), new Vector3(0, -1, 0)));
+      assertEquals((rgb >> 16 & 0xff) / 255f, color.getR(), 1e-4f);
+      assertEquals((rgb >> 8 & 0xff) / 255f * .5f, color.getG(), 1e-4f);
+      assertEquals((rgb & 0xff) / 255f, color.getB(), 1e-4f);
+    }
+  }
+
+  @Test
+  @DisplayName("Distant surfaces are textured from coarser mip levels")
+  void testDistantSurfaces() throws IOException {
+    var cache = new TextureCache(1 << 20);
+    try (var texture = texture(checker(64), dir.resolve("checker.tex"), cache)) {
+      var scene = new Scene();
+      scene.addLight(new PointLight(new Point(0, 10, 0)));
+      var material =
+          new Material.Builder().texture(texture).ambient(1).diffuse(0).specular(0).build();
+      scene.addObject(new Plane().setMaterial(material));
+      var tr = new Tracer(scene);
+      // a pixel a hundredth of a unit wide at unit distance
+      tr.spread = .01f;
+      // the bottom left texel, which is black
+      tr.colorAt(.5f / 64, 1, .5f / 64, 0, -1, 0);
+      assertEquals(0, tr.color.r);
+      tr.colorAt(.5f / 64, 1000, .5f / 64, 0, -1, 0);
+      assertEquals(128 / 255f, tr.color.r);
+      // only the coarsest level's tile was read for the distant point
+      assertEquals(2, cache.getMissCount());
+    }
+  }
+}
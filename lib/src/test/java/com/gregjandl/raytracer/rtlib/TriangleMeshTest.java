@@ -0,0 +1,116 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class TriangleMeshTest {
+  /** A single triangle with vertices (0, 1, 0), (-1, 0, 0), and (1, 0, 0). */
+  static TriangleMesh triangle() {
+    return new TriangleMesh(new float[] {0, 1, 0, -1, 0, 0, 1, 0, 0}, new int[] {0, 1, 2});
+  }
+
+  /** A grid of {@code n} x {@code n} unit squares in the z = 0 plane, two triangles per square. */
+  static TriangleMesh grid(int n) {
+    var vertices = new float[(n + 1) * (n + 1) * 3];
+    var indices = new int[n * n * 6];
+    for (int y = 0; y <= n; ++y) {
+      for (int x = 0; x <= n; ++x) {
+        var v = (y * (n + 1) + x) * 3;
+        vertices[v] = x;
+        vertices[v + 1] = y;
+      }
+    }
+    var i = 0;
+    for (int y = 0; y < n; ++y) {
+      for (int x = 0; x < n; ++x) {
+        var v = y * (n + 1) + x;
+        indices[i++] = v;
+        indices[i++] = v + 1;
+        indices[i++] = v + n + 1;
+        indices[i++] = v + 1;
+        indices[i++] = v + n + 2;
+        indices[i++] = v + n + 1;
+      }
+    }
+    return new TriangleMesh(vertices, indices);
+  }
+
+  @Test
+  @DisplayName("A mesh is a shape and has a toString")
+  void testMeshIsShape() {
+    var m = triangle();
+    assertTrue(m instanceof Shape);
+    assertNotNull(m.toString());
+    assertEquals(3, m.getVertexCount());
+    assertEquals(1, m.getTriangleCount());
+  }
+
+  @Test
+  @DisplayName("Mesh data must be well formed")
+  void testBadData() {
+    assertThrows(IllegalArgumentException.class, () -> new TriangleMesh(new float[4], new int[3]));
+    assertThrows(IllegalArgumentException.class, () -> new TriangleMesh(new float[9], new int[2]));
+    assertThrows(
+        IllegalArgumentException.class, () -> new TriangleMesh(new float[9], new int[] {0, 1, 3}));
+  }
+
+  @Test
+  @DisplayName("A ray strikes a triangle")
+  void testRayStrikesTriangle() {
+    var r = new Ray(new Point(0, .5f, -2), new Vector3(0, 0, 1));
+    var xs = triangle().intersects(r);
+    assertEquals(1, xs.size());
+    assertEquals(2, xs.get(0).getT());
+    assertEquals(0, xs.get(0).getIndex());
+  }
+
+  @Test
+  @DisplayName("A ray misses the edges of a triangle, or is parallel to it")
+  void testRayMissesTriangle() {
+    var t = triangle();
+    assertTrue(t.intersects(new Ray(new Point(0, -1, -2), new Vector3(0, 1, 0))).isEmpty());
+    assertTrue(t.intersects(new Ray(new Point(1, 1, -2), new Vector3(0, 0, 1))).isEmpty());
+    assertTrue(t.intersects(new Ray(new Point(-1, 1, -2), new Vector3(0, 0, 1))).isEmpty());
+    assertTrue(t.intersects(new Ray(new Point(0, -1, -2), new Vector3(0, 0, 1))).isEmpty());
+  }
+
+  @Test
+  @DisplayName("The normal of a face is constant across it")
+  void testNormal() {
+    var t = triangle();
+    assertEquals(new Vector3(0, 0, -1), t.normalAt(new Point(0, .5f, 0), 0));
+    assertEquals(new Vector3(0, 0, -1), t.normalAt(new Point(-.25f, .5f, 0)));
+    assertThrows(IllegalArgumentException.class, () -> t.normalAt(new Point(5, 5, 0)));
+  }
+
+  @Test
+  @DisplayName("Intersections with a large mesh find the correct face")
+  void testLargeMesh() {
+    var m = grid(64);
+    for (int i = 0; i < 200; ++i) {
+      var x = (i * 7919 % 6400) / 100f + .0037f;
+      var y = (i * 104729 % 6400) / 100f + .0037f;
+      var r = new Ray(new Point(x, y, -3), new Vector3(0, 0, 1));
+      var xs = m.intersects(r);
+      assertEquals(1, xs.size(), "ray at " + x + ", " + y);
+      var hit = xs.get(0);
+      assertEquals(3, hit.getT());
+      assertEquals(new Vector3(0, 0, -1), m.normalAt(r.getPosition(hit.getT()), hit.getIndex()));
+    }
+  }
+
+  @Test
+  @DisplayName("A transformed mesh may be added to and rendered in a scene")
+  void testMeshInScene() {
+    var scene = new Scene();
+    scene.addLight(new PointLight(new Point(0, 0, -10)));
+    scene.addObject(grid(4).setTransform(Matrix4x4.translation(-2, -2, 0)));
+    var c = scene.colorAt(new Ray(new Point(0, 0, -5), new Vector3(0, 0, 1)));
+    assertEquals(new Color(1.9f, 1.9f, 1.9f), c);
+  }
+}
@@ -0,0 +1,111 @@
+package com.gregjandl.raytracer.rtlib;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class VisibilityBufferTest {
+  /**
+   * The test scene, plus objects in awkward places for rasterizing: a field of small spheres, a
+   * sheared sphere, a tilted plane, and spheres behind, around and beside the edges of the view.
+   */
+  static Scene testScene() {
+    var scene = SceneTest.testScene();
+    for (int z = 0; z < 6; ++z) {
+      for (int x = 0; x < 6; ++x) {
+        scene.addObject(
+            new Sphere()
+                .setTransform(Matrix4x4.scaling(.2f, .2f, .2f).translate(x - 2.5f, -.8f, z)));
+      }
+    }
+    scene.addObject(
+        new Sphere()
+            .setTransform(
+                Matrix4x4.scaling(.3f, .3f, .3f)
+                    .rotateOnY(.7)
+                    .scale(2, .5f, 1)
+                    .shear(.8f, 0, 0, .5f, 0, 0)
+                    .translate(2, 1, 1)));
+    scene.addObject(
+        new Plane().setTransform(Matrix4x4.rotationOnX(1.2).rotateOnZ(.3).translate(0, 0, 12)));
+    scene.addObject(new Sphere().setTransform(Matrix4x4.translation(0, 2, -9)));
+    scene.addObject(new Sphere().setTransform(Matrix4x4.scaling(30, 30, 30)));
+    scene.addObject(new Sphere().setTransform(Matrix4x4.translation(-4.2f, 2.5f, 0)));
+    return scene;
+  }
+
+  @Test
+  @DisplayName("Rasterizing finds exactly the hits tracing each pixel's ray finds")
+  void testMatchesTracing() {
+    var scene = testScene();
+    var c = new Camera(61, 37, Math.PI / 3);
+    var buffer = new VisibilityBuffer(61, 37);
+    var tr = new Tracer(scene);
+    for (var from : new Point[] {new Point(0, 1.5f, -5), new Point(.3f, -.5f, 6), Point.ORIGIN}) {
+      c.setViewTransform(from, new Point(0, 0, 0.5f), new Vector3(.2f, 1, 0));
+      buffer.rasterize(c, scene, tr);
+      var inverse = c.getInverseViewTransform();
+      var direction = new MutableVector3();
+      for (int y = 0; y < 37; ++y) {
+        for (int x = 0; x < 61; ++x) {
+          c.pixelDirection(x, y, inverse, direction);
+          tr.intersect(buffer.ox, buffer.oy, buffer.oz, direction.x, direction.y, direction.z);
+          var p = y * 61 + x;
+          var at = from + " pixel " + x + ", " + y;
+          assertSame(tr.object, buffer.object[p], at);
+          assertEquals(tr.t, buffer.t[p], at);
+          assertEquals(tr.index, buffer.index[p], at);
+          assertEquals(tr.objectIndex, buffer.objectIndex[p], at);
+        }
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Small objects are only intersected with the rays of the pixels they cover")
+  void testCoverage() {
+    var scene = new Scene();
+    for (int i = 0; i < 10; ++i) {
+      scene.addObject(
+          new Sphere().setTransform(Matrix4x4.scaling(.1f, .1f, .1f).translate(i - 4.5f, 0, 0)));
+    }
+    var c = new Camera(100, 50, Math.PI / 2);
+    c.setViewTransform(new Point(0, 0, -5), Point.ORIGIN, new Vector3(0, 1, 0));
+    var buffer = new VisibilityBuffer(100, 50);
+    buffer.rasterize(c, scene, new Tracer(scene));
+    // each sphere spans about 2 pixels, padded to 6 by 6, of the 5000 ray tracing would test
+    assertTrue(buffer.getTestCount() <= 10 * 6 * 6, buffer.getTestCount() + " tests");
+    assertSame(scene.getObject(5), buffer.object[25 * 100 + 55]);
+  }
+
+  @Test
+  @DisplayName("A plane is only intersected with the rays of the pixels below its horizon")
+  void testPlaneCoverage() {
+    var scene = new Scene();
+    scene.addObject(new Plane().setTransform(Matrix4x4.translation(0, -1, 0)));
+    var c = new Camera(40, 40, Math.PI / 2);
+    c.setViewTransform(new Point(0, 0, -5), Point.ORIGIN, new Vector3(0, 1, 0));
+    var buffer = new VisibilityBuffer(40, 40);
+    buffer.rasterize(c, scene, new Tracer(scene));
+    // the horizon is level, halfway down, so each row is entirely above or below it
+    assertEquals(20 * 40, buffer.getTestCount());
+    assertSame(scene.getObject(0), buffer.object[39 * 40]);
+    assertNull(buffer.object[0]);
+  }
+
+  @Test
+  @DisplayName("A visibility buffer's size must be positive, and match the camera's")
+  void testSize() {
+    assertThrows(IllegalArgumentException.class, () -> new VisibilityBuffer(0, 10));
+    var buffer = new VisibilityBuffer(10, 10);
+    var scene = new Scene();
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> buffer.rasterize(new Camera(10, 11, 1), scene, new Tracer(scene)));
+  }
+}